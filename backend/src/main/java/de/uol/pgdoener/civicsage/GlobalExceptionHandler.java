@@ -7,6 +7,7 @@ import de.uol.pgdoener.civicsage.business.index.exception.ReadFileException;
 import de.uol.pgdoener.civicsage.business.index.exception.ReadUrlException;
 import de.uol.pgdoener.civicsage.business.index.exception.SplittingException;
 import de.uol.pgdoener.civicsage.business.index.exception.StorageException;
+import de.uol.pgdoener.civicsage.business.index.job.exception.IndexJobNotFoundException;
 import de.uol.pgdoener.civicsage.business.search.exception.FilterExpressionException;
 import de.uol.pgdoener.civicsage.business.search.exception.NotEnoughResultsAvailableException;
 import de.uol.pgdoener.civicsage.business.search.exception.SearchRateLimitException;
@@ -46,6 +47,13 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.NOT_FOUND).body(errorResponse.getBody());
     }
 
+    @ExceptionHandler(IndexJobNotFoundException.class)
+    public ResponseEntity<Object> handleIndexJobNotFoundException(IndexJobNotFoundException ex) {
+        ErrorResponse errorResponse = ErrorResponse.create(ex, HttpStatus.NOT_FOUND, ex.getMessage());
+        log.debug("IndexJobNotFoundException: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(errorResponse.getBody());
+    }
+
     @ExceptionHandler(SearchRateLimitException.class)
     public ResponseEntity<Object> handleSearchRateLimitException(SearchRateLimitException ex) {
         ErrorResponse errorResponse = ErrorResponse.create(ex, HttpStatus.SERVICE_UNAVAILABLE, ex.getMessage());
@@ -1,14 +1,21 @@
 package de.uol.pgdoener.civicsage.api.controller;
 
 import de.uol.pgdoener.civicsage.api.CompletionsApiDelegate;
+import de.uol.pgdoener.civicsage.autoconfigure.AIProperties;
 import de.uol.pgdoener.civicsage.business.completion.ChatService;
+import de.uol.pgdoener.civicsage.business.completion.exception.ChatRateLimitException;
 import de.uol.pgdoener.civicsage.business.dto.ChatDto;
 import de.uol.pgdoener.civicsage.business.dto.ChatMessageDto;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.Disposable;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -17,7 +24,14 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class CompletionsController implements CompletionsApiDelegate {
 
+    static final String TOKEN_EVENT = "token";
+    static final String CHAT_EVENT = "chat";
+    static final String ERROR_EVENT = "error";
+    static final String RATE_LIMIT_EXCEEDED = "RATE_LIMIT_EXCEEDED";
+    static final String INTERNAL_ERROR = "INTERNAL_ERROR";
+
     private final ChatService chatService;
+    private final AIProperties aiProperties;
 
     @Override
     public ResponseEntity<ChatDto> getChat(Optional<UUID> chatId) {
@@ -49,6 +63,50 @@ public class CompletionsController implements CompletionsApiDelegate {
         return ResponseEntity.ok(chat);
     }
 
+    @Override
+    public ResponseEntity<SseEmitter> streamMessage(UUID chatId, ChatMessageDto chatMessageDto) {
+        log.debug("Received request to stream message in chat with ID: {}", chatId);
+        SseEmitter emitter = new SseEmitter(aiProperties.getChat().getStreamTimeout().toMillis());
+        Disposable subscription = chatService.streamMessage(chatId, chatMessageDto, chat -> send(emitter, CHAT_EVENT, chat))
+                .subscribe(
+                        token -> send(emitter, TOKEN_EVENT, token),
+                        e -> {
+                            log.error("Streaming message in chat with ID: {} failed", chatId, e);
+                            try {
+                                emitter.send(SseEmitter.event().name(ERROR_EVENT).data(getErrorCode(e)));
+                            } catch (IOException ignored) {
+                                // the client is gone
+                            }
+                            emitter.complete();
+                        },
+                        () -> {
+                            log.debug("Message streamed in chat with ID: {}", chatId);
+                            emitter.complete();
+                        }
+                );
+        emitter.onTimeout(subscription::dispose);
+        emitter.onError(e -> subscription.dispose());
+        return ResponseEntity.ok(emitter);
+    }
+
+    /**
+     * @return the stable code of the error sent to the client instead of internal details
+     */
+    private static String getErrorCode(Throwable e) {
+        return e instanceof ChatRateLimitException ? RATE_LIMIT_EXCEEDED : INTERNAL_ERROR;
+    }
+
+    /**
+     * Sends an event with JSON data, so line breaks in the response do not break the event stream.
+     */
+    private static void send(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not send event to client", e);
+        }
+    }
+
     @Override
     public ResponseEntity<Void> deleteChat(UUID chatId) {
         log.debug("Received request to delete chat with ID: {}", chatId);
@@ -8,11 +8,14 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.io.Resource;
 import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -24,17 +27,21 @@ public class FilesController implements FilesApiDelegate {
     private final FileService fileService;
 
     @Override
-    public ResponseEntity<Resource> downloadFile(UUID id) {
+    public ResponseEntity<Resource> downloadFile(UUID id, Optional<String> range) {
+        Optional<List<HttpRange>> ranges = range.flatMap(this::parseRanges);
+        if (ranges.isPresent()) {
+            // the size is only needed to resolve the range
+            Optional<Long> size = fileService.getFileSize(id);
+            if (size.isPresent())
+                return downloadRange(id, ranges.get(), size.get());
+        }
+
         Optional<FileService.DownloadFile> optionalResult = fileService.loadFile(id);
         if (optionalResult.isEmpty())
             return ResponseEntity.notFound().build();
         FileService.DownloadFile file = optionalResult.get();
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentDisposition(ContentDisposition.builder("attachment")
-                .filename(file.filename())
-                .build());
-        headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+        HttpHeaders headers = createHeaders(file);
 
         log.debug("Returning file as download");
         return ResponseEntity.ok()
@@ -42,6 +49,52 @@ public class FilesController implements FilesApiDelegate {
                 .body(file.resource());
     }
 
+    /**
+     * Returns the requested range of the file. Multiple ranges are combined into a single range spanning all of them.
+     */
+    private ResponseEntity<Resource> downloadRange(UUID id, List<HttpRange> ranges, long size) {
+        long start = ranges.stream().mapToLong(r -> r.getRangeStart(size)).min().orElseThrow();
+        long end = ranges.stream().mapToLong(r -> r.getRangeEnd(size)).max().orElseThrow();
+        if (start >= size || start > end)
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + size)
+                    .build();
+
+        Optional<FileService.DownloadFile> optionalResult = fileService.loadFile(id, start, end - start + 1);
+        if (optionalResult.isEmpty())
+            return ResponseEntity.notFound().build();
+        FileService.DownloadFile file = optionalResult.get();
+
+        HttpHeaders headers = createHeaders(file);
+        headers.setContentLength(end - start + 1);
+        headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+
+        log.debug("Returning bytes {} to {} of file as download", start, end);
+        return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                .headers(headers)
+                .body(file.resource());
+    }
+
+    private Optional<List<HttpRange>> parseRanges(String range) {
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(range);
+            return ranges.isEmpty() ? Optional.empty() : Optional.of(ranges);
+        } catch (IllegalArgumentException e) {
+            log.debug("Ignoring invalid range header {}", range);
+            return Optional.empty();
+        }
+    }
+
+    private HttpHeaders createHeaders(FileService.DownloadFile file) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentDisposition(ContentDisposition.builder("attachment")
+                .filename(file.filename())
+                .build());
+        headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        return headers;
+    }
+
     @Override
     public ResponseEntity<UploadFile200ResponseDto> uploadFile(MultipartFile file, Optional<Boolean> temporary) {
         UUID objectID = fileService.storeFile(file, file.getOriginalFilename(), temporary.orElse(false));
@@ -2,15 +2,20 @@ package de.uol.pgdoener.civicsage.api.controller;
 
 import de.uol.pgdoener.civicsage.api.IndexApiDelegate;
 import de.uol.pgdoener.civicsage.business.dto.IndexFilesRequestInnerDto;
+import de.uol.pgdoener.civicsage.business.dto.IndexJobDto;
 import de.uol.pgdoener.civicsage.business.dto.IndexWebsiteRequestDto;
 import de.uol.pgdoener.civicsage.business.embedding.backlog.EmbeddingPriority;
 import de.uol.pgdoener.civicsage.business.index.IndexService;
+import de.uol.pgdoener.civicsage.business.index.job.IndexJob;
+import de.uol.pgdoener.civicsage.business.index.job.IndexJobMapper;
+import de.uol.pgdoener.civicsage.business.index.job.IndexJobService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
+import java.util.UUID;
 
 @Slf4j
 @Component
@@ -18,23 +23,27 @@ import java.util.List;
 public class IndexController implements IndexApiDelegate {
 
     private final IndexService indexService;
+    private final IndexJobService indexJobService;
+    private final IndexJobMapper indexJobMapper;
 
     @Override
-    public ResponseEntity<Void> indexFiles(List<IndexFilesRequestInnerDto> requests) {
+    public ResponseEntity<IndexJobDto> indexFiles(List<IndexFilesRequestInnerDto> requests) {
         log.info("Received {} files to index", requests.size());
-        for (IndexFilesRequestInnerDto request : requests) {
-            log.info("Indexing file {}", request.getTitle());
-            indexService.indexFile(request, EmbeddingPriority.HIGH);
-            log.info("File {} indexed successfully", request.getTitle());
-        }
+        IndexJob job = indexJobService.submit(requests);
 
-        return ResponseEntity.accepted().build();
+        return ResponseEntity.accepted().body(indexJobMapper.toDto(job));
+    }
+
+    @Override
+    public ResponseEntity<IndexJobDto> getIndexJob(UUID jobId) {
+        IndexJob job = indexJobService.getJob(jobId);
+        return ResponseEntity.ok(indexJobMapper.toDto(job));
     }
 
     @Override
     public ResponseEntity<Void> indexWebsite(IndexWebsiteRequestDto indexWebsiteRequestDto) {
         log.info("Indexing website {}", indexWebsiteRequestDto.getUrl());
-        indexService.indexURL(indexWebsiteRequestDto, EmbeddingPriority.HIGH);
+        indexService.indexURL(indexWebsiteRequestDto, EmbeddingPriority.INTERACTIVE);
         log.info("Website {} indexed successfully", indexWebsiteRequestDto.getUrl());
 
         return ResponseEntity.accepted().build();
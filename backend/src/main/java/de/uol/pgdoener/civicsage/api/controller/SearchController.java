@@ -3,6 +3,7 @@ package de.uol.pgdoener.civicsage.api.controller;
 import de.uol.pgdoener.civicsage.api.SearchApiDelegate;
 import de.uol.pgdoener.civicsage.business.dto.SearchQueryDto;
 import de.uol.pgdoener.civicsage.business.dto.SearchResultDto;
+import de.uol.pgdoener.civicsage.business.search.SearchResultPage;
 import de.uol.pgdoener.civicsage.business.search.SearchService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -17,14 +18,18 @@ import java.util.Optional;
 @RequiredArgsConstructor
 public class SearchController implements SearchApiDelegate {
 
+    public static final String SEARCH_CURSOR_HEADER = "X-Search-Cursor";
+
     private final SearchService searchService;
 
     @Override
-    public ResponseEntity<List<SearchResultDto>> searchFiles(SearchQueryDto searchQueryDto, Optional<Integer> pageNumber, Optional<Integer> pageSize) {
+    public ResponseEntity<List<SearchResultDto>> searchFiles(SearchQueryDto searchQueryDto, Optional<Integer> pageNumber, Optional<Integer> pageSize, Optional<String> cursor) {
         log.info("Received search query: {}", searchQueryDto.getQuery());
-        List<SearchResultDto> results = searchService.search(searchQueryDto, pageNumber, pageSize);
-        log.info("Returning {} results", results.size());
-        return ResponseEntity.ok(results);
+        SearchResultPage page = searchService.search(searchQueryDto, pageNumber, pageSize, cursor);
+        log.info("Returning {} results", page.results().size());
+        return ResponseEntity.ok()
+                .header(SEARCH_CURSOR_HEADER, page.cursor().toString())
+                .body(page.results());
     }
 
 }
@@ -3,6 +3,7 @@ package de.uol.pgdoener.civicsage.autoconfigure;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.nio.file.Path;
 import java.time.Duration;
 
 @Data
@@ -39,12 +40,61 @@ public class AIProperties {
          */
         private Duration unusedFileLifetime = Duration.ofHours(1);
 
+        /**
+         * If the cached text of a file or website has not been used in any chat after this duration, it will be deleted.
+         * Default is 7 days.
+         */
+        private Duration convertedMediaLifetime = Duration.ofDays(7);
+
+        /**
+         * The timeout of the request determining the version of a website attached to a chat message.
+         * Default is 3 seconds.
+         */
+        private Duration websiteVersionTimeout = Duration.ofSeconds(3);
+
+        /**
+         * The version of a website attached to a chat message is reused for this duration instead of being requested
+         * again for every message of the chat.
+         * Default is 1 minute.
+         */
+        private Duration websiteVersionLifetime = Duration.ofMinutes(1);
+
+        /**
+         * The maximum duration of a streamed chat response. The stream is cancelled afterward.
+         * Default is 5 minutes.
+         */
+        private Duration streamTimeout = Duration.ofMinutes(5);
+
+        private History history = new History();
+
         @Data
         public static class Model {
             /**
              * The context length for the chat model.
              */
             private Integer contextLength = 8000;
+
+            /**
+             * The share of the context length, which may be filled with the contents of the documents of a chat.
+             * The remaining tokens are left for the system prompt, the history and the response.
+             */
+            private double documentContextRatio = 0.5;
+        }
+
+        @Data
+        public static class History {
+            /**
+             * The share of the context length, which may be filled with the messages of a chat sent verbatim.
+             * Older messages are summarized.
+             * Together with the share of the documents, it must leave room for the system prompt, the summary and
+             * the response.
+             */
+            private double contextRatio = 0.25;
+            /**
+             * The share of the tokens of the history kept verbatim when older messages are summarized.
+             * Must be smaller than 1, so the summary is not updated with every message.
+             */
+            private double retainedRatio = 0.5;
         }
     }
 
@@ -63,6 +113,18 @@ public class AIProperties {
          */
         private int documentContextLength = 256;
 
+        /**
+         * The number of workers processing embedding tasks concurrently.
+         * Each worker processes a different source.
+         */
+        private int workers = 1;
+
+        private Backlog backlog = new Backlog();
+
+        private RateLimit rateLimit = new RateLimit();
+
+        private QueryCache queryCache = new QueryCache();
+
         @Data
         public static class Model {
             /**
@@ -70,6 +132,105 @@ public class AIProperties {
              */
             private Integer contextLength = 256;
         }
+
+        @Data
+        public static class QueryCache {
+            /**
+             * The maximum number of cached query embeddings.
+             */
+            private long maximumSize = 10_000;
+            /**
+             * Query embeddings are removed from the cache this duration after they have been computed.
+             */
+            private Duration timeToLive = Duration.ofDays(7);
+        }
+
+        @Data
+        public static class RateLimit {
+            /**
+             * Whether requests to the embedding model are rate limited on the client side.
+             * If disabled, rate limited embedding tasks are retried after the retry delay.
+             */
+            private boolean enabled = true;
+            /**
+             * The number of requests per second at startup.
+             * The rate adapts to the capacity of the provider afterward.
+             */
+            private double initialRate = 5;
+            /**
+             * The lower bound for the number of requests per second.
+             */
+            private double minRate = 0.1;
+            /**
+             * The upper bound for the number of requests per second.
+             */
+            private double maxRate = 100;
+            /**
+             * By how many requests per second the rate grows every second while no request is rate limited.
+             */
+            private double additiveIncrease = 1;
+            /**
+             * The factor the rate is multiplied with if a request is rate limited.
+             */
+            private double decreaseFactor = 0.5;
+            /**
+             * How long unused permits are accumulated.
+             * Allows short bursts of requests after idle periods.
+             */
+            private Duration burst = Duration.ofSeconds(1);
+            /**
+             * How long a search waits for a permit to embed the query before failing.
+             */
+            private Duration queryMaxWait = Duration.ofSeconds(5);
+        }
+
+        @Data
+        public static class Backlog {
+            /**
+             * Where pending embedding tasks are stored.
+             */
+            private Type type = Type.IN_MEMORY;
+            /**
+             * Tasks waiting longer than this duration are processed before all other tasks,
+             * regardless of their priority.
+             */
+            private Duration maxWait = Duration.ofMinutes(15);
+            /**
+             * How often workers look for new tasks in a JDBC backlog
+             * if no task has been added by this instance.
+             * This is also the interval in which the removal of a task processed
+             * by another instance checks whether the other instance has stopped.
+             */
+            private Duration pollInterval = Duration.ofSeconds(5);
+            /**
+             * How long a task of a JDBC backlog is leased to the instance that claimed it.
+             * Leases are renewed by heartbeats while the task is processed.
+             * If an instance stops renewing its leases, e.g. because it crashed,
+             * its tasks can be claimed by other instances after this duration.
+             */
+            private Duration leaseDuration = Duration.ofMinutes(2);
+            /**
+             * How often the leases of a JDBC backlog are renewed.
+             * Must be considerably shorter than the lease duration.
+             */
+            private Duration heartbeatInterval = Duration.ofSeconds(30);
+
+            public enum Type {
+                /**
+                 * Tasks are kept on the heap and are lost on restart.
+                 */
+                IN_MEMORY,
+                /**
+                 * Like {@link #IN_MEMORY}, but without a global lock.
+                 * Recommended if many sources are pending at the same time.
+                 */
+                CONCURRENT,
+                /**
+                 * Tasks are stored in the database and can be shared by multiple instances.
+                 */
+                JDBC
+            }
+        }
     }
 
     @Data
@@ -106,8 +267,68 @@ public class AIProperties {
          */
         private Distance distance = Distance.COSINE;
 
+        private Hnsw hnsw = new Hnsw();
+
         public enum Type {
-            MARIADB, POSTGRESQL
+            MARIADB, POSTGRESQL,
+            /**
+             * An in-process HNSW graph, see {@link de.uol.pgdoener.civicsage.business.embedding.hnsw.HnswVectorStore}.
+             */
+            HNSW
+        }
+
+        @Data
+        public static class Hnsw {
+            /**
+             * The directory containing the files of the vector store.
+             * There is one file per embedding model named after the table name of the other vector stores,
+             * and one file with the suffix {@code .graph} next to it storing the graph.
+             */
+            private Path directory = Path.of("data", "vector-store");
+            /**
+             * The maximum number of neighbours of a node in the graph. Nodes on level 0 have twice as many.
+             * Larger values increase the recall and the memory usage.
+             */
+            private int m = 16;
+            /**
+             * The size of the candidate list when inserting vectors.
+             * Larger values increase the quality of the graph, but slow down inserting.
+             */
+            private int efConstruction = 200;
+            /**
+             * The minimum size of the candidate list when searching.
+             * Larger values increase the recall, but slow down searching.
+             */
+            private int efSearch = 64;
+            /**
+             * The compact codes kept next to the full vectors to navigate the graph with when searching.
+             * The candidates found with the codes are rescored with the full vectors.
+             */
+            private Quantization quantization = Quantization.NONE;
+            /**
+             * The factor by which the number of candidates found with the quantized codes is multiplied before
+             * they are rescored. Binary codes need a larger factor than int8 codes for the same recall.
+             */
+            private int oversampling = 4;
+
+            public enum Quantization {
+                /**
+                 * Only the full vectors are used.
+                 */
+                NONE,
+                /**
+                 * One byte per dimension.
+                 * <p>
+                 * HNSW: {@link de.uol.pgdoener.civicsage.business.embedding.hnsw.HnswGraph.Quantization#INT8}
+                 */
+                INT8,
+                /**
+                 * One bit per dimension.
+                 * <p>
+                 * HNSW: {@link de.uol.pgdoener.civicsage.business.embedding.hnsw.HnswGraph.Quantization#BINARY}
+                 */
+                BINARY
+            }
         }
 
         public enum Distance {
@@ -116,6 +337,7 @@ public class AIProperties {
              * <p>
              * MariaDB: {@link org.springframework.ai.vectorstore.mariadb.MariaDBVectorStore.MariaDBDistanceType#COSINE}
              * PostgreSQL: {@link org.springframework.ai.vectorstore.pgvector.PgVectorStore.PgDistanceType#COSINE_DISTANCE}
+             * HNSW: {@link de.uol.pgdoener.civicsage.business.embedding.hnsw.HnswGraph.Metric#COSINE}
              */
             COSINE,
             /**
@@ -123,6 +345,7 @@ public class AIProperties {
              * <p>
              * MariaDB: {@link org.springframework.ai.vectorstore.mariadb.MariaDBVectorStore.MariaDBDistanceType#EUCLIDEAN}
              * PostgreSQL: {@link org.springframework.ai.vectorstore.pgvector.PgVectorStore.PgDistanceType#EUCLIDEAN_DISTANCE}
+             * HNSW: {@link de.uol.pgdoener.civicsage.business.embedding.hnsw.HnswGraph.Metric#EUCLIDEAN}
              */
             EUCLIDEAN,
             /**
@@ -130,6 +353,7 @@ public class AIProperties {
              * <p>
              * MariaDB: N/A
              * PostgreSQL: {@link org.springframework.ai.vectorstore.pgvector.PgVectorStore.PgDistanceType#NEGATIVE_INNER_PRODUCT}
+             * HNSW: {@link de.uol.pgdoener.civicsage.business.embedding.hnsw.HnswGraph.Metric#NEGATIVE_INNER_PRODUCT}
              */
             NEGATIVE_INNER_PRODUCT
         }
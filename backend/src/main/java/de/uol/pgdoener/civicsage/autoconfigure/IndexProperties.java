@@ -0,0 +1,53 @@
+package de.uol.pgdoener.civicsage.autoconfigure;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "civicsage.index")
+public class IndexProperties {
+
+    private Job job = new Job();
+    private Pipeline pipeline = new Pipeline();
+
+    @Data
+    public static class Job {
+        /**
+         * The maximum number of files indexed at the same time across all indexing jobs.
+         * Further files wait in the queue of their job.
+         */
+        private int maxConcurrentFiles = 4;
+        /**
+         * How long an indexing job can be requested after it was created.
+         * Jobs with files, which are still being processed, are kept longer.
+         * Default is 1 hour.
+         */
+        private Duration retention = Duration.ofHours(1);
+    }
+
+    @Data
+    public static class Pipeline {
+        /**
+         * The maximum number of files loaded from the storage at the same time.
+         */
+        private int fetchConcurrency = 4;
+        /**
+         * The maximum number of files parsed at the same time.
+         * Defaults to the number of available processors.
+         */
+        private int parseConcurrency = Runtime.getRuntime().availableProcessors();
+        /**
+         * The maximum number of documents split at the same time.
+         * Defaults to the number of available processors.
+         */
+        private int splitConcurrency = Runtime.getRuntime().availableProcessors();
+        /**
+         * The maximum number of parsed documents of a file waiting to be split.
+         * Parsing the file pauses while the queue is full.
+         */
+        private int queueCapacity = 16;
+    }
+
+}
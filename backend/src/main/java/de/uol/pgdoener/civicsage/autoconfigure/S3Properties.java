@@ -3,6 +3,7 @@ package de.uol.pgdoener.civicsage.autoconfigure;
 
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
 
 @Data
 @ConfigurationProperties(prefix = "civicsage.s3")
@@ -26,6 +27,7 @@ public class S3Properties {
     private String region = "garage";
 
     private Bucket bucket = new Bucket();
+    private Multipart multipart = new Multipart();
 
     @Data
     public static class Bucket {
@@ -34,4 +36,17 @@ public class S3Properties {
          */
         private String name = "civicsage-bucket";
     }
+
+    @Data
+    public static class Multipart {
+        /**
+         * The size of the parts large objects are uploaded in. S3 requires at least 5MB.
+         */
+        private DataSize partSize = DataSize.ofMegabytes(16);
+        /**
+         * The maximum number of parts of a file uploaded at the same time.
+         * Set to 1 to upload the parts one after another.
+         */
+        private int parallelParts = 4;
+    }
 }
@@ -0,0 +1,88 @@
+package de.uol.pgdoener.civicsage.autoconfigure;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.convert.DataSizeUnit;
+import org.springframework.util.unit.DataSize;
+import org.springframework.util.unit.DataUnit;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "civicsage.search")
+public class SearchProperties {
+
+    /**
+     * How documents are retrieved for a search query.
+     */
+    private Mode mode = Mode.VECTOR;
+    private Hybrid hybrid = new Hybrid();
+    private Cache cache = new Cache();
+    private Session session = new Session();
+
+    public enum Mode {
+        /**
+         * Only the similarity of the embeddings is used.
+         */
+        VECTOR,
+        /**
+         * A similarity search and a full-text search are performed in parallel and their rankings are fused.
+         */
+        HYBRID
+    }
+
+    @Data
+    public static class Hybrid {
+        /**
+         * The constant k of the reciprocal rank fusion. A document at rank r contributes 1 / (k + r) to its score.
+         * Larger values reduce the influence of the top ranks.
+         */
+        private int rankConstant = 60;
+        /**
+         * The text search configuration used by PostgreSQL to parse documents and queries, e.g. {@code german}.
+         * Changing it requires dropping the full-text index, so it is created again.
+         */
+        private String textSearchConfiguration = "german";
+    }
+
+    @Data
+    public static class Cache {
+        /**
+         * The maximum size of the cached search results, i.e. the ids and scores of the found documents.
+         * Values without a unit are interpreted as megabytes.
+         */
+        @DataSizeUnit(DataUnit.MEGABYTES)
+        private DataSize maxSize = DataSize.ofMegabytes(16);
+        /**
+         * The maximum size of the texts and metadata of the documents contained in cached search results.
+         * Documents are stored once, no matter how many results contain them.
+         * Values without a unit are interpreted as megabytes.
+         */
+        @DataSizeUnit(DataUnit.MEGABYTES)
+        private DataSize chunkStoreSize = DataSize.ofMegabytes(128);
+        /**
+         * Whether to store search results in direct buffers outside the Java heap.
+         * The JVM may need a larger {@code -XX:MaxDirectMemorySize} when enabling this.
+         */
+        private boolean offHeap = false;
+        /**
+         * Search results not used for this duration are removed from the cache.
+         */
+        private Duration timeToLive = Duration.ofMinutes(10);
+    }
+
+    @Data
+    public static class Session {
+        /**
+         * The maximum size of the rankings kept for paging through search results with a cursor.
+         * Values without a unit are interpreted as megabytes.
+         */
+        @DataSizeUnit(DataUnit.MEGABYTES)
+        private DataSize maxSize = DataSize.ofMegabytes(16);
+        /**
+         * Rankings not used for this duration are removed and their cursors expire.
+         */
+        private Duration timeToLive = Duration.ofMinutes(10);
+    }
+
+}
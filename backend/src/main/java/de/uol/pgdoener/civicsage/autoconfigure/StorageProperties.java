@@ -0,0 +1,58 @@
+package de.uol.pgdoener.civicsage.autoconfigure;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.convert.DataSizeUnit;
+import org.springframework.util.unit.DataSize;
+import org.springframework.util.unit.DataUnit;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "civicsage.storage")
+public class StorageProperties {
+
+    private Staging staging = new Staging();
+    private Cache cache = new Cache();
+
+    @Data
+    public static class Staging {
+        /**
+         * The directory where uploads are spooled to before they are stored in the object storage.
+         * Defaults to a directory in the temporary directory of the system.
+         */
+        private Path directory = Path.of(System.getProperty("java.io.tmpdir"), "civicsage-staging");
+        /**
+         * How long the local copy of an uploaded file is kept after it has been used last.
+         * While the copy exists, indexing the file does not need to download it from the object storage.
+         */
+        private Duration retention = Duration.ofMinutes(15);
+    }
+
+    @Data
+    public static class Cache {
+        /**
+         * Whether loaded objects are cached on the local disk.
+         */
+        private boolean enabled = true;
+        /**
+         * The directory where the cached objects are kept. It is used exclusively by the cache.
+         * Defaults to a directory in the temporary directory of the system.
+         */
+        private Path directory = Path.of(System.getProperty("java.io.tmpdir"), "civicsage-cache");
+        /**
+         * The maximum total size of the cached objects. The least recently used objects are evicted first.
+         * Values without a unit are interpreted as megabytes.
+         */
+        @DataSizeUnit(DataUnit.MEGABYTES)
+        private DataSize maxSize = DataSize.ofGigabytes(1);
+        /**
+         * Objects larger than this are not cached.
+         * Values without a unit are interpreted as megabytes.
+         */
+        @DataSizeUnit(DataUnit.MEGABYTES)
+        private DataSize maxObjectSize = DataSize.ofMegabytes(100);
+    }
+
+}
@@ -67,7 +67,7 @@ public class BootstrapService {
                     // not sure if additional properties are the right place to mark this document to be loaded at startup.
                     // Maybe a dedicated metadata entry would be better... Or no marking necessary at all?
                     request.putAdditionalProperty(MetadataKeys.STARTUP_DOCUMENT.getValue(), true);
-                    indexService.indexFile(request, EmbeddingPriority.LOW);
+                    indexService.indexFile(request, EmbeddingPriority.BULK);
                 } catch (SourceCollisionException e) {
                     log.debug("File {} already indexed", f.getName());
                 } catch (RuntimeException e) {
@@ -114,7 +114,7 @@ public class BootstrapService {
             request.setFileId(fileSource.getObjectStorageId());
             request.title(fileSource.getFileName());
             request.putAdditionalProperty(MetadataKeys.STARTUP_DOCUMENT.getValue(), true);
-            indexService.indexFile(request, EmbeddingPriority.LOW);
+            indexService.indexFile(request, EmbeddingPriority.BULK);
         }
     }
 
@@ -124,7 +124,7 @@ public class BootstrapService {
             IndexWebsiteRequestDto request = new IndexWebsiteRequestDto();
             request.setUrl(websiteSource.getUrl());
             request.putAdditionalProperty(MetadataKeys.STARTUP_DOCUMENT.getValue(), true);
-            indexService.indexURL(request, EmbeddingPriority.LOW);
+            indexService.indexURL(request, EmbeddingPriority.BULK);
         }
     }
 
@@ -0,0 +1,33 @@
+package de.uol.pgdoener.civicsage.business.cleanup;
+
+import de.uol.pgdoener.civicsage.autoconfigure.AIProperties;
+import de.uol.pgdoener.civicsage.business.completion.ConvertedMediaRepository;
+import de.uol.pgdoener.civicsage.business.index.TimeFactory;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ScheduledConvertedMediaDeletion {
+
+    private final AIProperties aiProperties;
+    private final TimeFactory timeFactory;
+    private final ConvertedMediaRepository convertedMediaRepository;
+
+    @Scheduled(cron = "0 30 0 * * *")
+    public void deleteUnusedConvertedMedia() {
+        final Duration convertedMediaLifetime = aiProperties.getChat().getConvertedMediaLifetime();
+        final OffsetDateTime now = timeFactory.getCurrentTime();
+        final OffsetDateTime threshold = now.minus(convertedMediaLifetime);
+        log.info("Deleting converted media last used before {}", threshold);
+        long deleted = convertedMediaRepository.deleteByLastUsedBefore(threshold);
+        log.info("Deleted {} converted media", deleted);
+    }
+
+}
@@ -0,0 +1,32 @@
+package de.uol.pgdoener.civicsage.business.cleanup;
+
+import de.uol.pgdoener.civicsage.autoconfigure.IndexProperties;
+import de.uol.pgdoener.civicsage.business.index.TimeFactory;
+import de.uol.pgdoener.civicsage.business.index.job.IndexJobService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ScheduledIndexJobDeletion {
+
+    private final IndexProperties indexProperties;
+    private final TimeFactory timeFactory;
+    private final IndexJobService indexJobService;
+
+    @Scheduled(cron = "0 */10 * * * *")
+    public void deleteOldIndexJobs() {
+        final Duration retention = indexProperties.getJob().getRetention();
+        final OffsetDateTime now = timeFactory.getCurrentTime();
+        final OffsetDateTime threshold = now.minus(retention);
+        int deleted = indexJobService.deleteJobsCreatedBefore(threshold);
+        log.debug("Deleted {} indexing jobs created before {}", deleted, threshold);
+    }
+
+}
@@ -0,0 +1,32 @@
+package de.uol.pgdoener.civicsage.business.cleanup;
+
+import de.uol.pgdoener.civicsage.autoconfigure.StorageProperties;
+import de.uol.pgdoener.civicsage.business.index.TimeFactory;
+import de.uol.pgdoener.civicsage.business.storage.UploadStagingService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ScheduledStagedFileDeletion {
+
+    private final StorageProperties storageProperties;
+    private final TimeFactory timeFactory;
+    private final UploadStagingService uploadStagingService;
+
+    @Scheduled(cron = "0 */5 * * * *")
+    public void deleteUnusedStagedFiles() {
+        final Duration retention = storageProperties.getStaging().getRetention();
+        final OffsetDateTime now = timeFactory.getCurrentTime();
+        final OffsetDateTime threshold = now.minus(retention);
+        int deleted = uploadStagingService.deleteUnusedBefore(threshold.toInstant());
+        log.debug("Deleted {} staged files unused since {}", deleted, threshold);
+    }
+
+}
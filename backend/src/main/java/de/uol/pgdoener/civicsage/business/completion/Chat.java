@@ -5,6 +5,7 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.ColumnDefault;
 import org.hibernate.annotations.TimeZoneStorage;
 import org.hibernate.annotations.TimeZoneStorageType;
 
@@ -18,6 +19,7 @@ import java.util.UUID;
  * The messages are stored in the order they were added.
  * The chat is identified by a unique UUID.
  * The id is generated automatically.
+ * Older messages of long chats are summarized by the {@link HistoryCompactor}.
  */
 @Entity
 @Getter
@@ -46,4 +48,23 @@ public class Chat {
     @TimeZoneStorage(TimeZoneStorageType.COLUMN)
     private OffsetDateTime lastInteraction;
 
+    /**
+     * A summary of the oldest messages, which are no longer sent to the chat model verbatim.
+     */
+    @Setter
+    @Column(columnDefinition = "TEXT")
+    private String summary;
+
+    /**
+     * The number of messages from the start of the chat, which are covered by the {@link #summary}.
+     */
+    @Setter
+    @Column(nullable = false)
+    @ColumnDefault("0")
+    private int summarizedMessages;
+
+    public Chat(UUID id, List<UUID> documentIds, String systemPrompt, List<ChatMessage> messages, OffsetDateTime lastInteraction) {
+        this(id, documentIds, systemPrompt, messages, lastInteraction, null, 0);
+    }
+
 }
@@ -15,6 +15,8 @@ import de.uol.pgdoener.civicsage.business.source.FileSource;
 import de.uol.pgdoener.civicsage.business.source.SourceService;
 import de.uol.pgdoener.civicsage.business.source.exception.SourceNotFoundException;
 import de.uol.pgdoener.civicsage.business.storage.StorageService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
@@ -24,13 +26,20 @@ import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.content.Media;
 import org.springframework.ai.retry.NonTransientAiException;
 import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.MimeType;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.io.FileNotFoundException;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -45,6 +54,8 @@ public class ChatService {
     private final StorageService storageService;
     private final SourceService sourceService;
     private final TimeFactory timeFactory;
+    private final MeterRegistry meterRegistry;
+    private final HistoryCompactor historyCompactor;
 
     /**
      * Creates a new chat with a unique ID and empty message list.
@@ -112,7 +123,9 @@ public class ChatService {
                     return chat.getSystemPrompt();
                 }),
                 chat.getMessages(), // Keep the existing messages
-                timeFactory.getCurrentTime()
+                timeFactory.getCurrentTime(),
+                chat.getSummary(),
+                chat.getSummarizedMessages()
         );
         chatRepository.save(newChat);
     }
@@ -134,6 +147,66 @@ public class ChatService {
      */
     @Transactional
     public ChatDto sendMessage(UUID chatId, ChatMessageDto message) throws ChatNotFoundException {
+        PreparedMessage prepared = prepareMessage(chatId, message);
+
+        String content = callModel(prepared.chat(), prepared.mediaMetadataMap(), prepared.messages());
+
+        return saveResponse(prepared.chat(), content);
+    }
+
+    /**
+     * Sends a message in the specified chat like {@link #sendMessage(UUID, ChatMessageDto)}, but streams the response
+     * of the model while it is generated.
+     * The message and the response are only saved once the response is complete, so the chat stays unchanged if the
+     * stream fails or is cancelled.
+     * The time from receiving the message until the first part of the response arrives is recorded, because it is the
+     * latency users perceive.
+     * Only the existence of the chat is checked when this method is called. The message is prepared once the
+     * response is subscribed to, on a thread meant for blocking work, since summarizing the history and converting
+     * media may block for as long as the chat model takes to respond.
+     *
+     * @param chatId  the ID of the chat to send the message in
+     * @param message the ChatMessageDto containing the message data
+     * @param onSaved receives the updated ChatDto after the response has been saved
+     * @return the parts of the response in the order they are generated
+     * @throws ChatNotFoundException if the chat with the given ID does not exist
+     */
+    public Flux<String> streamMessage(UUID chatId, ChatMessageDto message, Consumer<ChatDto> onSaved)
+            throws ChatNotFoundException {
+        if (!chatRepository.existsById(chatId))
+            throw new ChatNotFoundException();
+
+        // preparing the message may summarize the history and convert media, which users wait for as well
+        Timer.Sample firstToken = Timer.start(meterRegistry);
+        return Mono.fromCallable(() -> prepareMessage(chatId, message))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(prepared -> {
+                    StringBuilder content = new StringBuilder();
+                    return streamModel(prepared.chat(), prepared.mediaMetadataMap(), prepared.messages())
+                            .doOnNext(token -> {
+                                if (content.isEmpty() && !token.isEmpty())
+                                    firstToken.stop(timeToFirstTokenTimer());
+                                content.append(token);
+                            })
+                            .doOnComplete(() -> onSaved.accept(saveResponse(prepared.chat(), content.toString())));
+                });
+    }
+
+    /**
+     * Adds the message to the chat without saving it and converts the history of the chat for the chat model.
+     * The history is limited by the {@link HistoryCompactor}, which may update the summary of the chat.
+     * The files and websites of the messages are converted to text by the {@link MediaConversionAdvisor}, which
+     * caches the text, so they are only read and converted once across all turns of the chat.
+     * The files and websites of summarized messages are not sent anymore, since the converted text of every
+     * attachment of the chat would otherwise be resent with each message. The summary covers what has been said
+     * about them.
+     *
+     * @param chatId  the ID of the chat to send the message in
+     * @param message the ChatMessageDto containing the message data
+     * @return the chat with the new message and the converted messages
+     * @throws ChatNotFoundException if the chat with the given ID does not exist
+     */
+    private PreparedMessage prepareMessage(UUID chatId, ChatMessageDto message) throws ChatNotFoundException {
         Chat chat = chatRepository.findById(chatId)
                 .orElseThrow(ChatNotFoundException::new);
         message.role(ChatMessageDto.RoleEnum.USER); // Ensure the role is USER for incoming messages
@@ -142,14 +215,23 @@ public class ChatService {
         chat.getMessages().add(chatMessage);
         log.debug("Adding message to chat {}", chatId);
 
+        List<ChatMessage> history = historyCompactor.compact(chat);
         Map<String, MediaConversionAdvisor.MediaMetadata> mediaMetadataMap = new HashMap<>();
-        List<Message> messages = chat.getMessages().stream()
+        List<Message> messages = history.stream()
                 .map(cm -> createMessage(chat, cm, mediaMetadataMap))
                 .toList();
         log.debug("Sending message to chat {} with {} messages", chatId, messages.size());
+        return new PreparedMessage(chat, mediaMetadataMap, messages);
+    }
 
-        String content = callModel(chat, mediaMetadataMap, messages);
-
+    /**
+     * Adds the response of the model as an assistant message to the chat and saves the chat.
+     *
+     * @param chat    the chat containing the message the model responded to
+     * @param content the content of the model's response
+     * @return the updated ChatDto
+     */
+    private ChatDto saveResponse(Chat chat, String content) {
         ChatMessage responseMessage = new ChatMessage(
                 null,
                 chat,
@@ -183,7 +265,7 @@ public class ChatService {
         String content;
         try {
             content = chatClient.prompt()
-                    .system(chat.getSystemPrompt())
+                    .system(historyCompactor.systemPrompt(chat))
                     .advisors(advisor -> {
                         advisor.param(DocumentAdvisor.DOCUMENT_IDS_CONTEXT_KEY, chat.getDocumentIds());
                         advisor.param(MediaConversionAdvisor.MEDIA_METADATA_CONTEXT_KEY, mediaMetadataMap);
@@ -202,6 +284,43 @@ public class ChatService {
         return content;
     }
 
+    /**
+     * Streams the response of the chat model like {@link #callModel(Chat, Map, List)}.
+     * Rate limit problems are signalled as a ChatRateLimitException.
+     *
+     * @param chat             the chat which contains the system prompt and document IDs
+     * @param mediaMetadataMap a map of media IDs to their metadata
+     * @param messages         the list of messages to send to the model
+     * @return the parts of the model's response
+     */
+    private Flux<String> streamModel(Chat chat, Map<String, MediaConversionAdvisor.MediaMetadata> mediaMetadataMap, List<Message> messages) {
+        return chatClient.prompt()
+                .system(historyCompactor.systemPrompt(chat))
+                .advisors(advisor -> {
+                    advisor.param(DocumentAdvisor.DOCUMENT_IDS_CONTEXT_KEY, chat.getDocumentIds());
+                    advisor.param(MediaConversionAdvisor.MEDIA_METADATA_CONTEXT_KEY, mediaMetadataMap);
+                })
+                .messages(messages)
+                .stream()
+                .content()
+                .onErrorMap(ChatService::isRateLimitExceeded, e -> {
+                    log.error("Rate limit exceeded for chat completion", e);
+                    return new ChatRateLimitException();
+                });
+    }
+
+    private static boolean isRateLimitExceeded(Throwable e) {
+        if (e instanceof WebClientResponseException responseException)
+            return responseException.getStatusCode().value() == 429;
+        return e instanceof NonTransientAiException && e.getMessage() != null && e.getMessage().startsWith("HTTP 429");
+    }
+
+    private Timer timeToFirstTokenTimer() {
+        return Timer.builder("civicsage.chat.time.to.first.token")
+                .description("Time from receiving a message until the first part of the streamed response arrives")
+                .register(meterRegistry);
+    }
+
     /**
      * Creates a Spring AI Message object from a ChatMessage.
      * It processes both file IDs and URLs to create Media objects, collecting their metadata in the provided map.
@@ -243,16 +362,15 @@ public class ChatService {
      * Creates a Media object from a file ID and adds its metadata to the provided map.
      * If the file is temporary and not already associated with the chat, the chat ID is added to the file's usedByChats
      * set.
-     * If the file cannot be found or read, a ReadFileException is thrown.
+     * The content of the file is only loaded from the storage, if its text is not cached by the
+     * {@link MediaConversionAdvisor}.
      *
      * @param chat             the chat which is using the file
      * @param fileId           the ID of the file to create the Media from
      * @param mediaMetadataMap the map to store media metadata
      * @return the created Media object
-     * @throws ReadFileException if the file cannot be found or read
      */
-    private Media createMedia(Chat chat, UUID fileId, Map<String, MediaConversionAdvisor.MediaMetadata> mediaMetadataMap)
-            throws ReadFileException {
+    private Media createMedia(Chat chat, UUID fileId, Map<String, MediaConversionAdvisor.MediaMetadata> mediaMetadataMap) {
         FileSource fileSource = sourceService.getFileSourceByIdWithTemporary(fileId).orElseThrow(() -> new SourceNotFoundException("Could not find file source with ID: " + fileId));
         Set<UUID> chatsUsingFile = new HashSet<>(fileSource.getUsedByChats());
         chatsUsingFile.add(chat.getId());
@@ -268,20 +386,14 @@ public class ChatService {
         );
         sourceService.save(fileSource);
         String fileName = fileSource.getFileName();
-        Media media;
-        try {
-            media = storageService.load(fileId)
-                    .map(is -> Media.builder()
-                            .id(UUID.randomUUID().toString())
-                            .data(new InputStreamResource(is))
-                            .mimeType(getMimeTypeForFileName(fileName))
-                            .build())
-                    .orElseThrow(() -> new ReadFileException("Could not find file with ID: " + fileId));
-        } catch (IllegalArgumentException e) {
-            log.error("Failed to create media for file ID {}: {}", fileId, e.getMessage());
-            throw new ReadFileException("Failed to read file with ID: " + fileId, e);
-        }
-        mediaMetadataMap.put(media.getId(), MediaConversionAdvisor.MediaMetadata.forFile(fileName));
+        Resource resource = new InputStreamResource(() -> storageService.load(fileId)
+                .orElseThrow(() -> new FileNotFoundException("Could not find file with ID: " + fileId)));
+        Media media = Media.builder()
+                .id(UUID.randomUUID().toString())
+                .data((Object) resource)
+                .mimeType(getMimeTypeForFileName(fileName))
+                .build();
+        mediaMetadataMap.put(media.getId(), MediaConversionAdvisor.MediaMetadata.forFile(fileName, fileSource.getHash()));
         return media;
     }
 
@@ -308,19 +420,20 @@ public class ChatService {
 
     /**
      * Creates a Media object from a URI and adds its metadata to the provided map.
-     * If the URI is malformed or cannot be read, a ReadUrlException is thrown.
+     * The website is only fetched, if its text is not cached by the {@link MediaConversionAdvisor}.
+     * If the URI is malformed, a ReadUrlException is thrown.
      *
      * @param uri              the URI to create the Media from
      * @param mediaMetadataMap the map to store media metadata
      * @return the created Media object
-     * @throws ReadUrlException if the URI is malformed or cannot be read
+     * @throws ReadUrlException if the URI is malformed
      */
     private Media createMedia(URI uri, Map<String, MediaConversionAdvisor.MediaMetadata> mediaMetadataMap)
             throws ReadUrlException {
         try {
             Media media = Media.builder()
                     .id(UUID.randomUUID().toString())
-                    .data(new CivicSageUrlResource(uri))
+                    .data((Object) new CivicSageUrlResource(uri))
                     .mimeType(Media.Format.DOC_HTML)
                     .build();
             mediaMetadataMap.put(media.getId(), MediaConversionAdvisor.MediaMetadata.forWebsite(uri.toString()));
@@ -408,4 +521,16 @@ public class ChatService {
                 );
     }
 
+    /**
+     * A message added to a chat, which has not been sent to the chat model yet.
+     *
+     * @param chat             the chat containing the new message
+     * @param mediaMetadataMap the metadata of the media of all messages
+     * @param messages         all messages of the chat converted for the chat model
+     */
+    private record PreparedMessage(Chat chat,
+                                   Map<String, MediaConversionAdvisor.MediaMetadata> mediaMetadataMap,
+                                   List<Message> messages) {
+    }
+
 }
@@ -0,0 +1,180 @@
+package de.uol.pgdoener.civicsage.business.completion;
+
+import com.knuddels.jtokkit.api.EncodingType;
+import de.uol.pgdoener.civicsage.autoconfigure.AIProperties;
+import de.uol.pgdoener.civicsage.business.index.document.MetadataKeys;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Packs the contents of documents into a text for the prompt of the chat model, which does not exceed the token
+ * budget for documents.
+ * <p>
+ * The budget is the share {@link AIProperties.Chat.Model#getDocumentContextRatio()} of the
+ * {@link AIProperties.Chat.Model#getContextLength() context length} of the chat model.
+ * Tokens are counted with the same encoding used for splitting documents into chunks.
+ * The documents are expected to be ordered by relevance and are packed in this order until the budget is used up.
+ * Chunks from the same source are grouped under one heading and ordered by their position in the source.
+ * Chunks which are contained in another chunk of the same source are skipped and overlapping text of adjacent chunks
+ * is only included once.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ContextPacker {
+
+    // the minimum length of an overlap between adjacent chunks to be removed
+    private static final int MIN_OVERLAP = 20;
+    // the maximum length of an overlap between adjacent chunks, which is searched for
+    private static final int MAX_OVERLAP = 1000;
+
+    private final AIProperties aiProperties;
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator(EncodingType.CL100K_BASE);
+
+    /**
+     * @return the maximum number of tokens of the text created by {@link #pack(List)}
+     */
+    public int getBudget() {
+        AIProperties.Chat.Model model = aiProperties.getChat().getModel();
+        return (int) (model.getContextLength() * model.getDocumentContextRatio());
+    }
+
+    /**
+     * Packs the most relevant documents into a text, which fits into the budget.
+     *
+     * @param documents the documents ordered by relevance, starting with the most relevant
+     * @return a text containing the contents of the documents grouped by source
+     */
+    public String pack(List<Document> documents) {
+        int budget = getBudget();
+        int usedTokens = 0;
+        Map<String, Section> sections = new LinkedHashMap<>();
+        for (int i = 0; i < documents.size(); i++) {
+            Document document = documents.get(i);
+            String text = document.getText();
+            if (text == null || text.isBlank())
+                continue;
+
+            String sourceKey = getSourceKey(document);
+            Section section = sections.get(sourceKey);
+            int tokens = tokenCountEstimator.estimate(text);
+            int headingTokens = 0;
+            if (section == null) {
+                section = new Section(createHeading(document));
+                headingTokens = tokenCountEstimator.estimate(section.heading);
+            } else if (section.chunks.stream().anyMatch(chunk -> chunk.text.contains(text))) {
+                log.debug("Skipping document {}, which is contained in another document of the same source", document.getId());
+                continue;
+            }
+            // chunks contained in the new chunk are replaced by it
+            int containedTokens = section.chunks.stream()
+                    .filter(chunk -> text.contains(chunk.text))
+                    .mapToInt(Chunk::tokens)
+                    .sum();
+            if (usedTokens + headingTokens + tokens - containedTokens > budget) {
+                log.debug("Token budget of {} reached after {} of {} documents", budget, i, documents.size());
+                break;
+            }
+            section.chunks.removeIf(chunk -> text.contains(chunk.text));
+            section.chunks.add(new Chunk(getPosition(document), text, tokens));
+            sections.putIfAbsent(sourceKey, section);
+            usedTokens += headingTokens + tokens - containedTokens;
+        }
+        log.debug("Packed documents from {} sources with about {} tokens", sections.size(), usedTokens);
+
+        StringBuilder builder = new StringBuilder();
+        for (Section section : sections.values()) {
+            builder.append(section.heading);
+            section.chunks.sort(Comparator.comparing(Chunk::position));
+            String previous = "";
+            for (Chunk chunk : section.chunks) {
+                builder.append(chunk.text, overlap(previous, chunk.text), chunk.text.length()).append('\n');
+                previous = chunk.text;
+            }
+        }
+        return builder.toString();
+    }
+
+    private String createHeading(Document document) {
+        String title = (String) document.getMetadata().getOrDefault(MetadataKeys.TITLE.getValue(), "Kein Titel");
+        return "Suchergebnis aus der folgenden Quelle: " + getSource(document) + " mit dem folgenden Titel: \"" + title + "\":\n";
+    }
+
+    private String getSource(Document document) {
+        String fileName = (String) document.getMetadata().get(MetadataKeys.FILE_NAME.getValue());
+        String url = (String) document.getMetadata().get(MetadataKeys.URL.getValue());
+        return Objects.requireNonNullElseGet(fileName,
+                () -> Objects.requireNonNullElse(url, "Unbekannte Quelle"));
+    }
+
+    private String getSourceKey(Document document) {
+        Object sourceId = document.getMetadata().get(MetadataKeys.SOURCE_ID.getValue());
+        if (sourceId != null)
+            return sourceId.toString();
+        return getSource(document) + "\n" + document.getMetadata().get(MetadataKeys.TITLE.getValue());
+    }
+
+    /**
+     * Determines the position of the document in its source from the page and line numbers.
+     * Documents without position are placed at the end of the source.
+     */
+    private Position getPosition(Document document) {
+        Map<String, Object> metadata = document.getMetadata();
+        return new Position(
+                getNumber(metadata.get(MetadataKeys.START_PAGE.getValue())),
+                getNumber(metadata.get(MetadataKeys.LINE_NUMBER.getValue()))
+        );
+    }
+
+    private static int getNumber(Object value) {
+        if (value instanceof Number number)
+            return number.intValue();
+        if (value instanceof String string) {
+            try {
+                return Integer.parseInt(string);
+            } catch (NumberFormatException e) {
+                return Integer.MAX_VALUE;
+            }
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * @return the length of the longest suffix of the previous text, which is a prefix of the next text
+     */
+    private static int overlap(String previous, String next) {
+        int maxLength = Math.min(MAX_OVERLAP, Math.min(previous.length(), next.length()));
+        for (int length = maxLength; length >= MIN_OVERLAP; length--) {
+            if (previous.regionMatches(previous.length() - length, next, 0, length))
+                return length;
+        }
+        return 0;
+    }
+
+    private record Position(int page, int line) implements Comparable<Position> {
+        @Override
+        public int compareTo(Position other) {
+            int result = Integer.compare(page, other.page);
+            return result != 0 ? result : Integer.compare(line, other.line);
+        }
+    }
+
+    private record Chunk(Position position, String text, int tokens) {
+    }
+
+    private static class Section {
+        private final String heading;
+        private final List<Chunk> chunks = new ArrayList<>();
+
+        private Section(String heading) {
+            this.heading = heading;
+        }
+    }
+
+}
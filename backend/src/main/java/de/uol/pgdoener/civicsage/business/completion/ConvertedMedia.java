@@ -0,0 +1,46 @@
+package de.uol.pgdoener.civicsage.business.completion;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.annotations.TimeZoneStorage;
+import org.hibernate.annotations.TimeZoneStorageType;
+import org.hibernate.type.SqlTypes;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * Entity representing the text extracted from a file or website, which was attached to a chat message.
+ * The id is derived from the content, i.e. the hash of a file or the URL and version of a website.
+ *
+ * @see MediaTextCache
+ */
+@Entity
+@Getter
+@AllArgsConstructor
+@NoArgsConstructor
+public class ConvertedMedia {
+
+    @Id
+    private UUID id;
+
+    // LONG32VARCHAR, because the text of larger documents does not fit into a TEXT column in MariaDB
+    @Column(nullable = false)
+    @JdbcTypeCode(SqlTypes.LONG32VARCHAR)
+    private String text;
+
+    @Column(columnDefinition = "TEXT")
+    private String title;
+
+    @Setter
+    @Column(nullable = false)
+    @TimeZoneStorage(TimeZoneStorageType.COLUMN)
+    private OffsetDateTime lastUsed;
+
+}
@@ -0,0 +1,17 @@
+package de.uol.pgdoener.civicsage.business.completion;
+
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+@Repository
+public interface ConvertedMediaRepository
+        extends CrudRepository<ConvertedMedia, UUID> {
+
+    @Transactional
+    long deleteByLastUsedBefore(OffsetDateTime threshold);
+
+}
@@ -0,0 +1,129 @@
+package de.uol.pgdoener.civicsage.business.completion;
+
+import de.uol.pgdoener.civicsage.autoconfigure.AIProperties;
+import de.uol.pgdoener.civicsage.business.completion.exception.ChatRateLimitException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.util.List;
+
+/**
+ * Limits the history of a chat sent to the chat model, so the prompt does not grow with the length of the chat.
+ * <p>
+ * The newest messages are sent verbatim as long as they fit into the share
+ * {@link AIProperties.Chat.History#getContextRatio()} of the {@link AIProperties.Chat.Model#getContextLength() context
+ * length}. If they do not fit, the oldest messages are folded into the rolling {@link Chat#getSummary() summary} of
+ * the chat until the remaining messages fit into the share {@link AIProperties.Chat.History#getRetainedRatio()} of
+ * this budget.
+ * Because fewer tokens are retained than allowed, the summary only has to be updated every few messages.
+ * The summary is stored on the chat and sent as part of the system prompt.
+ * Files and websites of summarized messages are not sent anymore, only references to them are passed on to the
+ * summary.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class HistoryCompactor {
+
+    private static final String SUMMARY_SYSTEM_PROMPT = """
+            Fasse den folgenden Gesprächsverlauf zwischen einem Nutzer und einem Assistenten knapp zusammen.
+            Behalte alle Fakten, Fragen und Antworten, auf die sich spätere Nachrichten beziehen könnten.
+            Antworte ausschließlich mit der Zusammenfassung.
+            """;
+    private static final String SUMMARY_PREFIX = "\n\nZusammenfassung des bisherigen Gesprächs:\n";
+
+    private final ChatModel chatModel;
+    private final AIProperties aiProperties;
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+
+    /**
+     * Selects the messages to send verbatim and updates the summary of the chat if older messages have to be
+     * summarized. The chat is not saved.
+     *
+     * @param chat the chat including the new message
+     * @return the newest messages of the chat, which are not covered by the summary
+     * @throws ChatRateLimitException if the chat model is rate limited while summarizing
+     */
+    public List<ChatMessage> compact(Chat chat) throws ChatRateLimitException {
+        List<ChatMessage> messages = chat.getMessages();
+        int first = Math.min(chat.getSummarizedMessages(), messages.size() - 1);
+        AIProperties.Chat.History history = aiProperties.getChat().getHistory();
+        int maxTokens = (int) (aiProperties.getChat().getModel().getContextLength() * history.getContextRatio());
+        int maxRetainedTokens = (int) (maxTokens * history.getRetainedRatio());
+
+        int[] tokens = new int[messages.size()];
+        int totalTokens = 0;
+        for (int i = messages.size() - 1; i >= first; i--) {
+            tokens[i] = tokenCountEstimator.estimate(messages.get(i).getContent());
+            totalTokens += tokens[i];
+        }
+        if (totalTokens <= maxTokens)
+            return messages.subList(first, messages.size());
+
+        // The new message is always kept, even if it exceeds the budget on its own
+        int keepFrom = messages.size() - 1;
+        int retainedTokens = tokens[keepFrom];
+        while (keepFrom - 1 > first && retainedTokens + tokens[keepFrom - 1] <= maxRetainedTokens) {
+            keepFrom--;
+            retainedTokens += tokens[keepFrom];
+        }
+        log.debug("Summarizing messages {} to {} of chat {}", first, keepFrom, chat.getId());
+        chat.setSummary(summarize(chat.getSummary(), messages.subList(first, keepFrom)));
+        chat.setSummarizedMessages(keepFrom);
+        return messages.subList(keepFrom, messages.size());
+    }
+
+    /**
+     * @return the system prompt of the chat extended by its summary
+     */
+    public String systemPrompt(Chat chat) {
+        if (chat.getSummary() == null || chat.getSummary().isBlank())
+            return chat.getSystemPrompt();
+        return chat.getSystemPrompt() + SUMMARY_PREFIX + chat.getSummary();
+    }
+
+    /**
+     * @throws ChatRateLimitException if the chat model is rate limited
+     */
+    private String summarize(String summary, List<ChatMessage> messages) throws ChatRateLimitException {
+        StringBuilder conversation = new StringBuilder();
+        if (summary != null && !summary.isBlank())
+            conversation.append("Bisherige Zusammenfassung:\n").append(summary).append("\n\nWeitere Nachrichten:\n");
+        for (ChatMessage message : messages) {
+            conversation.append(message.getRole() == Role.USER ? "Nutzer: " : "Assistent: ")
+                    .append(message.getContent());
+            if (!message.getUrls().isEmpty())
+                conversation.append(" (Webseiten: ")
+                        .append(String.join(", ", message.getUrls().stream().map(URI::toString).toList()))
+                        .append(')');
+            if (!message.getFileIds().isEmpty())
+                conversation.append(" (Angehängte Dateien: ").append(message.getFileIds().size()).append(')');
+            conversation.append('\n');
+        }
+        String newSummary;
+        try {
+            newSummary = chatModel.call(new Prompt(List.of(
+                    new SystemMessage(SUMMARY_SYSTEM_PROMPT),
+                    new UserMessage(conversation.toString())
+            ))).getResult().getOutput().getText();
+        } catch (NonTransientAiException e) {
+            if (e.getMessage().startsWith("HTTP 429")) {
+                log.error("Rate limit exceeded for summarizing the chat history", e);
+                throw new ChatRateLimitException();
+            }
+            log.error("Unknown error while summarizing the chat history", e);
+            throw e;
+        }
+        return newSummary == null ? summary : newSummary.trim();
+    }
+
+}
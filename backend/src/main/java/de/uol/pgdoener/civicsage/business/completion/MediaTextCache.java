@@ -0,0 +1,121 @@
+package de.uol.pgdoener.civicsage.business.completion;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import de.uol.pgdoener.civicsage.autoconfigure.AIProperties;
+import de.uol.pgdoener.civicsage.business.index.CivicSageUrlResource;
+import de.uol.pgdoener.civicsage.business.index.TimeFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Persistent cache for the text extracted from files and websites attached to chat messages.
+ * <p>
+ * The cache is content-addressed, so a file or website is only read and converted again if its content changed.
+ * Files are identified by their hash.
+ * Websites are identified by their URL and version, which is the {@code ETag} or {@code Last-Modified} header of
+ * the server. Websites without version are not cached, since a change of their content cannot be detected.
+ * The version is requested with a short timeout and kept in memory for a short time, so a slow server does not delay
+ * every message of a chat.
+ * Entries, which have not been used for some time, are deleted by the
+ * {@link de.uol.pgdoener.civicsage.business.cleanup.ScheduledConvertedMediaDeletion}.
+ */
+@Slf4j
+@Service
+public class MediaTextCache {
+
+    private static final int MAX_WEBSITE_VERSIONS = 1_000;
+
+    private final ConvertedMediaRepository convertedMediaRepository;
+    private final TimeFactory timeFactory;
+    private final Duration websiteVersionTimeout;
+    private final Cache<String, Optional<String>> websiteVersions;
+
+    public MediaTextCache(ConvertedMediaRepository convertedMediaRepository, TimeFactory timeFactory, AIProperties aiProperties) {
+        this.convertedMediaRepository = convertedMediaRepository;
+        this.timeFactory = timeFactory;
+        this.websiteVersionTimeout = aiProperties.getChat().getWebsiteVersionTimeout();
+        this.websiteVersions = Caffeine.newBuilder()
+                .maximumSize(MAX_WEBSITE_VERSIONS)
+                .expireAfterWrite(aiProperties.getChat().getWebsiteVersionLifetime())
+                .build();
+    }
+
+    /**
+     * Returns the cached text of the file with the given hash or converts the file and caches the text.
+     *
+     * @param hash      the hash of the file or {@code null} if the file has no hash
+     * @param converter reads the file and extracts its text
+     * @return the text of the file
+     */
+    public MediaText getFileText(@Nullable String hash, Supplier<MediaText> converter) {
+        if (hash == null) {
+            log.debug("File has no hash, converting it without cache");
+            return converter.get();
+        }
+        return get("file:" + hash, converter);
+    }
+
+    /**
+     * Returns the cached text of the current version of the website or converts the website and caches the text.
+     *
+     * @param url       the URL of the website
+     * @param converter reads the website and extracts its text
+     * @return the text of the website
+     */
+    public MediaText getWebsiteText(String url, Supplier<MediaText> converter) {
+        Optional<String> version = websiteVersions.get(url, this::getWebsiteVersion);
+        if (version.isEmpty()) {
+            log.debug("Website {} has no version, converting it without cache", url);
+            return converter.get();
+        }
+        return get("url:" + url + "\n" + version.get(), converter);
+    }
+
+    /**
+     * @return the version of the website or an empty optional, if it has none or the request failed
+     */
+    private Optional<String> getWebsiteVersion(String url) {
+        try {
+            return new CivicSageUrlResource(url).getVersion(websiteVersionTimeout);
+        } catch (IOException e) {
+            log.warn("Could not determine version of website {}: {}", url, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private MediaText get(String key, Supplier<MediaText> converter) {
+        UUID id = UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8));
+        Optional<ConvertedMedia> cached = convertedMediaRepository.findById(id);
+        if (cached.isPresent()) {
+            log.debug("Found converted media {} in cache", id);
+            ConvertedMedia convertedMedia = cached.get();
+            convertedMedia.setLastUsed(timeFactory.getCurrentTime());
+            convertedMediaRepository.save(convertedMedia);
+            return new MediaText(convertedMedia.getText(), convertedMedia.getTitle());
+        }
+
+        MediaText mediaText = converter.get();
+        convertedMediaRepository.save(new ConvertedMedia(id, mediaText.text(), mediaText.title(), timeFactory.getCurrentTime()));
+        log.debug("Stored converted media {} in cache", id);
+        return mediaText;
+    }
+
+    /**
+     * The text extracted from a file or website.
+     *
+     * @param text  the text of all documents read from the media
+     * @param title the title of the website or {@code null}
+     */
+    public record MediaText(String text, @Nullable String title) {
+    }
+
+}
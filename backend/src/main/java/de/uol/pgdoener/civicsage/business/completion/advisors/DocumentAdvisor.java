@@ -1,7 +1,7 @@
 package de.uol.pgdoener.civicsage.business.completion.advisors;
 
-import de.uol.pgdoener.civicsage.business.embedding.VectorStoreExtension;
-import de.uol.pgdoener.civicsage.business.index.document.MetadataKeys;
+import de.uol.pgdoener.civicsage.business.completion.ContextPacker;
+import de.uol.pgdoener.civicsage.business.embedding.EmbeddingService;
 import lombok.Builder;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -15,11 +15,12 @@ import org.springframework.ai.document.Document;
 
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.UUID;
 
 /**
  * This advisor appends the content of the documents with the ids provided in the context to the system prompt.
+ * The documents are packed by the {@link ContextPacker}, so they do not exceed the token budget for documents.
+ * The ids are expected to be ordered by relevance.
  * This advisor is added as a default advisor to the {@link org.springframework.ai.chat.client.ChatClient} created
  * in the {@link de.uol.pgdoener.civicsage.config.ChatConfig#documentChatClient()}.
  */
@@ -36,12 +37,13 @@ public class DocumentAdvisor implements BaseAdvisor {
             
             """;
 
-    private final VectorStoreExtension vectorStoreExtension;
+    private final EmbeddingService embeddingService;
+    private final ContextPacker contextPacker;
 
     /**
      * This method is called before the prompt is sent to the model. It retrieves the documents from the vector store
      * and appends them to the system prompt. The string appended is generated by the
-     * {@link DocumentAdvisor#createDocumentText(List)} method.
+     * {@link ContextPacker#pack(List)} method.
      *
      * @param chatClientRequest the request before the advisor acted
      * @param advisorChain      the advisor chain this advisor is in
@@ -60,8 +62,8 @@ public class DocumentAdvisor implements BaseAdvisor {
             return chatClientRequest;
         }
 
-        List<Document> documents = vectorStoreExtension.getById(documentIds);
-        String documentsText = createDocumentText(documents);
+        List<Document> documents = embeddingService.getById(documentIds);
+        String documentsText = contextPacker.pack(documents);
 
         prompt = prompt.augmentSystemMessage(systemMessage -> {
             String systemMessageText = systemMessage.getText();
@@ -73,26 +75,6 @@ public class DocumentAdvisor implements BaseAdvisor {
         return new ChatClientRequest(prompt, context);
     }
 
-    /**
-     * This method concatenates the contents of the document to be provided to the chat model as context.
-     *
-     * @param documents the documents to add
-     * @return a string containing context for the chat model
-     */
-    private String createDocumentText(List<Document> documents) {
-        return documents.stream()
-                .map(document -> {
-                    String documentText = document.getText();
-                    String title = (String) document.getMetadata().getOrDefault(MetadataKeys.TITLE.getValue(), "Kein Titel");
-                    String fileName = (String) document.getMetadata().get(MetadataKeys.FILE_NAME.getValue());
-                    String url = (String) document.getMetadata().get(MetadataKeys.URL.getValue());
-                    String source = Objects.requireNonNullElseGet(fileName,
-                            () -> Objects.requireNonNullElse(url, "Unbekannte Quelle"));
-                    return "Suchergebnis aus der folgenden Quelle: " + source + " mit dem folgenden Titel: \"" + title + "\":\n" + documentText;
-                })
-                .reduce("", (current, d) -> current + d + "\n");
-    }
-
     @NotNull
     @Override
     public ChatClientResponse after(@NotNull ChatClientResponse chatClientResponse, @NotNull AdvisorChain advisorChain) {
@@ -1,6 +1,9 @@
 package de.uol.pgdoener.civicsage.business.completion.advisors;
 
+import de.uol.pgdoener.civicsage.business.completion.MediaTextCache;
 import de.uol.pgdoener.civicsage.business.index.document.DocumentReaderService;
+import de.uol.pgdoener.civicsage.business.index.exception.ReadFileException;
+import de.uol.pgdoener.civicsage.business.index.exception.ReadUrlException;
 import lombok.Builder;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -15,13 +18,18 @@ import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.content.Media;
 import org.springframework.ai.document.Document;
 import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 
 /**
  * This advisor converts {@link Media} objects in user messages to text and prepends the text to the message content.
  * It uses the {@link DocumentReaderService} to read the content of the media.
+ * The extracted text is cached in the {@link MediaTextCache}, so the same file or website is only read once.
+ * The data of the media may be a {@link Resource}, which is then only read if the text is not cached.
  * This advisor can be used to use files and websites as part of the prompt with models that do not
  * support media natively.
  * <p>
@@ -36,7 +44,7 @@ import java.util.Map;
  * <pre>
  * {@code
  * Map<String, MediaConversionAdvisor.MediaMetadata> mediaMetadataMap = new HashMap<>();
- * mediaMetadataMap.put(mediaId1, MediaConversionAdvisor.MediaMetadata.forFile("document.pdf"));
+ * mediaMetadataMap.put(mediaId1, MediaConversionAdvisor.MediaMetadata.forFile("document.pdf", hash));
  * mediaMetadataMap.put(mediaId2, MediaConversionAdvisor.MediaMetadata.forWebsite("https://example.com"));
  * ...
  * chatClient.prompt()
@@ -62,6 +70,7 @@ public class MediaConversionAdvisor implements BaseAdvisor {
     public static final String MEDIA_METADATA_CONTEXT_KEY = "media-metadata-context";
 
     private final DocumentReaderService documentReaderService;
+    private final MediaTextCache mediaTextCache;
 
     @NotNull
     @Override
@@ -106,29 +115,52 @@ public class MediaConversionAdvisor implements BaseAdvisor {
     }
 
     private String convertMediaToText(Media media, MediaMetadata metadata) {
-        List<Document> documents = switch (metadata) {
-            case FileMetadata(String fileName) ->
-                    documentReaderService.read(new ByteArrayResource(media.getDataAsByteArray()), fileName);
-            case WebsiteMetadata(String url) ->
-                    documentReaderService.readURL(url, new ByteArrayResource(media.getDataAsByteArray()));
-        };
-        log.debug("Read {} documents from Media", documents.size());
-        String mediaText = documents.stream()
-                .map(Document::getText)
-                .reduce("", (acc, text) -> acc + "\n" + text).trim();
-        switch (metadata) {
-            case FileMetadata(String fileName) ->
-                    mediaText = "Hier ist der Inhalt der Datei mit dem Namen: '" + fileName + "':\n" + mediaText;
+        return switch (metadata) {
+            case FileMetadata(String fileName, String hash) -> {
+                MediaTextCache.MediaText mediaText = mediaTextCache.getFileText(hash, () -> {
+                    byte[] data = getData(media, e -> new ReadFileException("Could not read file: " + fileName, e));
+                    List<Document> documents = documentReaderService.read(new ByteArrayResource(data), fileName);
+                    return toMediaText(documents, null);
+                });
+                yield "Hier ist der Inhalt der Datei mit dem Namen: '" + fileName + "':\n" + mediaText.text();
+            }
             case WebsiteMetadata(String url) -> {
-                String title = documents.getFirst().getMetadata().get("title").toString();
+                MediaTextCache.MediaText mediaText = mediaTextCache.getWebsiteText(url, () -> {
+                    byte[] data = getData(media, e -> new ReadUrlException("Could not read URL: " + url, e));
+                    List<Document> documents = documentReaderService.readURL(url, new ByteArrayResource(data));
+                    Object title = documents.getFirst().getMetadata().get("title");
+                    return toMediaText(documents, title == null ? null : title.toString());
+                });
+                String title = mediaText.title();
                 if (title != null && !title.isBlank()) {
-                    mediaText = "Hier ist der Inhalt der Webseite mit dem Titel: \"" + title + "\" von der URL: " + url + ":\n\n" + mediaText;
-                    break;
+                    yield "Hier ist der Inhalt der Webseite mit dem Titel: \"" + title + "\" von der URL: " + url + ":\n\n" + mediaText.text();
                 }
-                mediaText = "Hier ist der Inhalt der Webseite von der URL: " + url + ":\n\n" + mediaText;
+                yield "Hier ist der Inhalt der Webseite von der URL: " + url + ":\n\n" + mediaText.text();
+            }
+        };
+    }
+
+    private MediaTextCache.MediaText toMediaText(List<Document> documents, String title) {
+        log.debug("Read {} documents from Media", documents.size());
+        String text = documents.stream()
+                .map(Document::getText)
+                .reduce("", (acc, t) -> acc + "\n" + t).trim();
+        return new MediaTextCache.MediaText(text, title);
+    }
+
+    /**
+     * Returns the data of the media. If the data is a {@link Resource}, it is read now.
+     */
+    private byte[] getData(Media media, Function<IOException, RuntimeException> exceptionFactory) {
+        if (media.getData() instanceof Resource resource) {
+            try {
+                return resource.getContentAsByteArray();
+            } catch (IOException e) {
+                log.error("Failed to read media {}: {}", media.getId(), e.getMessage());
+                throw exceptionFactory.apply(e);
             }
         }
-        return mediaText;
+        return media.getDataAsByteArray();
     }
 
     @NotNull
@@ -152,10 +184,11 @@ public class MediaConversionAdvisor implements BaseAdvisor {
          * Creates metadata for a media object containing a file.
          *
          * @param fileName the name of the file, including the extension
+         * @param hash     the hash of the content of the file or {@code null} if it is unknown
          * @return the metadata to pass to the advisor
          */
-        static MediaMetadata forFile(String fileName) {
-            return new FileMetadata(fileName);
+        static MediaMetadata forFile(String fileName, String hash) {
+            return new FileMetadata(fileName, hash);
         }
 
         /**
@@ -169,7 +202,7 @@ public class MediaConversionAdvisor implements BaseAdvisor {
         }
     }
 
-    private record FileMetadata(String fileName) implements MediaMetadata {
+    private record FileMetadata(String fileName, String hash) implements MediaMetadata {
     }
 
     private record WebsiteMetadata(String url) implements MediaMetadata {
@@ -0,0 +1,109 @@
+package de.uol.pgdoener.civicsage.business.embedding;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import de.uol.pgdoener.civicsage.autoconfigure.AIProperties;
+import de.uol.pgdoener.civicsage.business.embedding.exception.EmbeddingRateLimitException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.*;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Decorates the {@link EmbeddingModel} of the vector store with a cache for query embeddings.
+ * <p>
+ * The vector stores embed search queries using {@link #embed(String)}, while documents are embedded
+ * using the batch methods. Therefore, only {@link #embed(String)} is cached.
+ * Queries are normalized before they are used as key, so queries only differing in whitespace, case
+ * or Unicode representation share an embedding.
+ * <p>
+ * On a cache miss, a permit of the {@link EmbeddingRateLimiter} is required to embed the query.
+ */
+@Slf4j
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+    public static final String CACHE_NAME = "queryEmbeddings";
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final EmbeddingModel delegate;
+    private final String modelName;
+    private final EmbeddingRateLimiter rateLimiter;
+    private final Duration queryMaxWait;
+    private final Cache<Key, float[]> cache;
+
+    public CachingEmbeddingModel(EmbeddingModel delegate,
+                                 String modelName,
+                                 EmbeddingRateLimiter rateLimiter,
+                                 AIProperties aiProperties,
+                                 MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.modelName = modelName;
+        this.rateLimiter = rateLimiter;
+        this.queryMaxWait = aiProperties.getEmbedding().getRateLimit().getQueryMaxWait();
+        AIProperties.Embedding.QueryCache properties = aiProperties.getEmbedding().getQueryCache();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfterWrite(properties.getTimeToLive())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    @Override
+    public float[] embed(String text) {
+        float[] embedding = cache.get(new Key(modelName, normalize(text)), key -> {
+            log.debug("Cache miss for query embedding");
+            acquirePermit();
+            // embed the normalized query, so the cached embedding does not depend on which variant came first
+            return delegate.embed(key.query());
+        });
+        return embedding.clone();
+    }
+
+    private void acquirePermit() {
+        try {
+            if (!rateLimiter.tryAcquire(queryMaxWait))
+                throw new EmbeddingRateLimitException("The embedding model is rate limited, no permit within " + queryMaxWait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EmbeddingRateLimitException("Interrupted while waiting for the rate limiter");
+        }
+    }
+
+    private static String normalize(String text) {
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFC);
+        return WHITESPACE.matcher(normalized).replaceAll(" ").strip().toLowerCase(Locale.ROOT);
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        return delegate.call(request);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return delegate.embed(document);
+    }
+
+    @Override
+    public List<float[]> embed(List<Document> documents, EmbeddingOptions options, BatchingStrategy batchingStrategy) {
+        return delegate.embed(documents, options, batchingStrategy);
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    private record Key(String modelName, String query) {
+    }
+
+}
@@ -0,0 +1,72 @@
+package de.uol.pgdoener.civicsage.business.embedding;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Reports the responses of the embedding model to the {@link EmbeddingRateLimiter}.
+ * Only requests to an {@code /embeddings} endpoint are considered, so the interceptor can be registered
+ * with the {@link org.springframework.web.client.RestClient.Builder} shared by all models.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class EmbeddingRateLimitInterceptor implements ClientHttpRequestInterceptor {
+
+    private static final String EMBEDDINGS_PATH = "/embeddings";
+    private static final String RETRY_AFTER_MS = "retry-after-ms";
+
+    private final EmbeddingRateLimiter rateLimiter;
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+        ClientHttpResponse response = execution.execute(request, body);
+        String path = request.getURI().getPath();
+        if (path == null || !path.endsWith(EMBEDDINGS_PATH))
+            return response;
+
+        if (response.getStatusCode().isSameCodeAs(HttpStatus.TOO_MANY_REQUESTS)) {
+            rateLimiter.onRateLimited(parseRetryAfter(response.getHeaders()));
+        } else if (response.getStatusCode().is2xxSuccessful()) {
+            rateLimiter.onSuccess();
+        }
+        return response;
+    }
+
+    /**
+     * Parses the {@code retry-after-ms} header sent by OpenAI compatible APIs or the standard
+     * {@code Retry-After} header, which contains either seconds or an HTTP date.
+     *
+     * @return the duration to wait or null if no valid header is present
+     */
+    private Duration parseRetryAfter(HttpHeaders headers) {
+        try {
+            String retryAfterMs = headers.getFirst(RETRY_AFTER_MS);
+            if (retryAfterMs != null)
+                return Duration.ofMillis((long) Double.parseDouble(retryAfterMs.trim()));
+            String retryAfter = headers.getFirst(HttpHeaders.RETRY_AFTER);
+            if (retryAfter == null)
+                return null;
+            retryAfter = retryAfter.trim();
+            if (!retryAfter.isEmpty() && Character.isDigit(retryAfter.charAt(0)))
+                return Duration.ofMillis((long) (Double.parseDouble(retryAfter) * 1000));
+            ZonedDateTime date = ZonedDateTime.parse(retryAfter, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Duration.between(ZonedDateTime.now(), date);
+        } catch (NumberFormatException | DateTimeParseException e) {
+            log.debug("Could not parse Retry-After header: {}", e.getMessage());
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,141 @@
+package de.uol.pgdoener.civicsage.business.embedding;
+
+import de.uol.pgdoener.civicsage.autoconfigure.AIProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * A client-side rate limiter for requests to the embedding model.
+ * It is shared by the embedding of documents and of search queries.
+ * <p>
+ * The limiter is a token bucket whose rate adapts to the capacity of the provider
+ * using additive increase and multiplicative decrease (AIMD):
+ * Each successful request slowly increases the rate, while each rate limited request
+ * ({@code HTTP 429}) cuts it.
+ * If the provider sends a {@code Retry-After} header, no permits are handed out until then.
+ * <p>
+ * The responses are reported by the {@link EmbeddingRateLimitInterceptor}.
+ */
+@Slf4j
+@Component
+public class EmbeddingRateLimiter {
+
+    private final AIProperties.Embedding.RateLimit properties;
+
+    private double rate;
+    private double tokens;
+    private long lastRefill;
+    private long blockedUntil;
+    private long lastDecrease;
+
+    public EmbeddingRateLimiter(AIProperties aiProperties) {
+        this.properties = aiProperties.getEmbedding().getRateLimit();
+        this.rate = properties.getInitialRate();
+        this.tokens = 1;
+        this.lastRefill = System.nanoTime();
+        this.blockedUntil = lastRefill;
+        this.lastDecrease = lastRefill - Duration.ofSeconds(1).toNanos();
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * @return the current number of requests per second
+     */
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    /**
+     * Blocks until a request to the embedding model may be sent.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+        if (!isEnabled())
+            return;
+        long waitNanos;
+        while ((waitNanos = tryAcquireNanos()) > 0) {
+            Thread.sleep(Duration.ofNanos(waitNanos));
+        }
+    }
+
+    /**
+     * Waits for at most the given duration until a request to the embedding model may be sent.
+     *
+     * @param maxWait the maximum time to wait
+     * @return true if the request may be sent, false if the wait time would exceed the given duration
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public boolean tryAcquire(Duration maxWait) throws InterruptedException {
+        if (!isEnabled())
+            return true;
+        long deadline = System.nanoTime() + maxWait.toNanos();
+        long waitNanos;
+        while ((waitNanos = tryAcquireNanos()) > 0) {
+            if (System.nanoTime() + waitNanos > deadline)
+                return false;
+            Thread.sleep(Duration.ofNanos(waitNanos));
+        }
+        return true;
+    }
+
+    /**
+     * Takes a token if one is available.
+     *
+     * @return 0 if a token has been taken, otherwise the time in nanoseconds until the next token is available
+     */
+    private synchronized long tryAcquireNanos() {
+        long now = System.nanoTime();
+        if (now < blockedUntil)
+            return blockedUntil - now;
+        refill(now);
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return Math.max(1, (long) ((1 - tokens) / rate * 1_000_000_000L));
+    }
+
+    private void refill(long now) {
+        double burst = Math.max(1, rate * properties.getBurst().toNanos() / 1_000_000_000d);
+        tokens = Math.min(burst, tokens + (now - lastRefill) * rate / 1_000_000_000d);
+        lastRefill = now;
+    }
+
+    /**
+     * Increases the rate after a successful request.
+     * The increase is inversely proportional to the current rate,
+     * so the rate grows by about {@code additive-increase} requests per second every second.
+     */
+    public synchronized void onSuccess() {
+        refill(System.nanoTime());
+        rate = Math.min(properties.getMaxRate(), rate + properties.getAdditiveIncrease() / rate);
+    }
+
+    /**
+     * Decreases the rate after a request has been rejected by the provider.
+     * Rejections of requests sent concurrently only decrease the rate once.
+     *
+     * @param retryAfter the duration given by the provider until requests are accepted again, may be null
+     */
+    public synchronized void onRateLimited(Duration retryAfter) {
+        long now = System.nanoTime();
+        refill(now);
+        tokens = 0;
+        if (now - lastDecrease > Math.max(1, 1_000_000_000L / rate)) {
+            rate = Math.max(properties.getMinRate(), rate * properties.getDecreaseFactor());
+            lastDecrease = now;
+            log.info("Embedding model rate limit exceeded, reducing rate to {} requests per second", String.format("%.2f", rate));
+        }
+        if (retryAfter != null && !retryAfter.isNegative()) {
+            blockedUntil = Math.max(blockedUntil, now + retryAfter.toNanos());
+            log.info("Pausing requests to the embedding model for {}", retryAfter);
+        }
+    }
+
+}
@@ -1,24 +1,26 @@
 package de.uol.pgdoener.civicsage.business.embedding;
 
+import de.uol.pgdoener.civicsage.autoconfigure.SearchProperties;
 import de.uol.pgdoener.civicsage.business.embedding.backlog.EmbeddingBacklog;
 import de.uol.pgdoener.civicsage.business.embedding.backlog.EmbeddingPriority;
 import de.uol.pgdoener.civicsage.business.embedding.backlog.EmbeddingTask;
+import de.uol.pgdoener.civicsage.business.embedding.exception.DocumentNotFoundException;
 import de.uol.pgdoener.civicsage.business.index.document.MetadataKeys;
-import de.uol.pgdoener.civicsage.config.CachingConfig;
+import de.uol.pgdoener.civicsage.business.search.RankFusion;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
-import java.util.Collection;
-import java.util.List;
-import java.util.Optional;
-import java.util.UUID;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Slf4j
 @Service
@@ -28,24 +30,103 @@ public class EmbeddingService {
     private final VectorStore vectorStore;
     private final EmbeddingBacklog embeddingBacklog;
     private final UnusedModelsVectorStores unusedModelsVectorStores;
+    private final SearchResultCache searchResultCache;
+    private final SearchChunkStore searchChunkStore;
+    private final VectorStoreExtension vectorStoreExtension;
+    private final SearchProperties searchProperties;
+
+    private final ExecutorService searchExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @PreDestroy
+    void stop() {
+        searchExecutor.shutdownNow();
+    }
 
     public void save(List<Document> documents, UUID sourceId, EmbeddingPriority priority) {
         EmbeddingTask task = new EmbeddingTask(sourceId, documents);
         embeddingBacklog.add(task, priority);
     }
 
-    @Cacheable(
-            cacheNames = CachingConfig.SEARCH_CACHE_NAME
-    )
     public List<Document> search(SearchRequest search) {
-        log.debug("Cache miss for embedding search");
-        return vectorStore.similaritySearch(search);
+        return searchResultCache.get(search, () -> switch (searchProperties.getMode()) {
+            case VECTOR -> vectorStore.similaritySearch(search);
+            case HYBRID -> hybridSearch(search);
+        });
+    }
+
+    /**
+     * Performs a similarity search and a full-text search in parallel and fuses their rankings.
+     * Both retrievals return up to {@code topK} documents, so documents found by only one of them can still be
+     * part of the result.
+     */
+    private List<Document> hybridSearch(SearchRequest search) {
+        CompletableFuture<List<Document>> fullText = CompletableFuture.supplyAsync(
+                () -> vectorStoreExtension.fullTextSearch(search.getQuery(), search.getFilterExpression(), search.getTopK()),
+                searchExecutor
+        );
+        List<Document> similar = vectorStore.similaritySearch(search);
+        List<Document> lexical;
+        try {
+            lexical = fullText.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            throw e;
+        }
+        log.debug("Fusing {} similar and {} lexical documents", similar.size(), lexical.size());
+        return RankFusion.reciprocalRankFusion(
+                List.of(similar, lexical),
+                searchProperties.getHybrid().getRankConstant(),
+                search.getTopK()
+        );
+    }
+
+    /**
+     * Retrieves the existing documents with the given ids in the order of the ids.
+     * Documents are taken from the {@link SearchChunkStore} if possible and loaded from the vector store otherwise.
+     * The returned documents have no score.
+     *
+     * @param documentIds the ids of the documents
+     * @return the documents found
+     */
+    public List<Document> findById(List<UUID> documentIds) {
+        Map<UUID, Document> documents = new HashMap<>();
+        List<UUID> missing = new ArrayList<>();
+        for (UUID id : documentIds) {
+            searchChunkStore.get(id, null, null).ifPresentOrElse(
+                    document -> documents.put(id, document),
+                    () -> missing.add(id));
+        }
+        if (!missing.isEmpty()) {
+            log.debug("Loading {} of {} documents from the vector store", missing.size(), documentIds.size());
+            for (Document document : vectorStoreExtension.findById(missing)) {
+                UUID id = UUID.fromString(document.getId());
+                documents.put(id, document);
+                searchChunkStore.put(id, document);
+            }
+        }
+        return documentIds.stream()
+                .map(documents::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    /**
+     * Retrieves the documents with the given ids in the order of the ids like {@link #findById(List)}.
+     * Chats request the same documents on every message, so they are served from the {@link SearchChunkStore}
+     * after the first message.
+     *
+     * @param documentIds the ids of the documents
+     * @return the documents
+     * @throws DocumentNotFoundException if at least one of the documents does not exist
+     */
+    public List<Document> getById(List<UUID> documentIds) {
+        List<Document> documents = findById(documentIds);
+        if (documents.size() != documentIds.size())
+            throw new DocumentNotFoundException("Could not find all requested documents");
+        return documents;
     }
 
-    @CacheEvict(
-            cacheNames = CachingConfig.SEARCH_CACHE_NAME,
-            allEntries = true
-    )
     public void delete(UUID sourceId) {
         log.info("Deleting embeddings for source with id: {}", sourceId);
         Optional<EmbeddingTask> optTask = embeddingBacklog.remove(sourceId);
@@ -67,21 +148,26 @@ public class EmbeddingService {
 
         vectorStore.delete(op.build());
         unusedModelsVectorStores.delete(op.build());
+        searchResultCache.onSourceDeleted(sourceId);
     }
 
-    @Cacheable(
-            cacheNames = CachingConfig.SEARCH_CACHE_NAME
-    )
+    /**
+     * Returns the ids of all sources which have not been embedded completely yet.
+     * This is not cached, because the backlog may be shared with other instances.
+     *
+     * @return the ids of sources with pending embedding tasks
+     */
     public Collection<UUID> getPendingSourceIds() {
         return embeddingBacklog.getSourceIds();
     }
 
-    @CacheEvict(
-            cacheNames = CachingConfig.SEARCH_CACHE_NAME,
-            allEntries = true
-    )
-    public void clearCache() {
-        log.debug("Clearing embedding cache");
+    /**
+     * Invalidates cached search results which could contain the given documents.
+     *
+     * @param documents documents that have been added to the vector store
+     */
+    public void onDocumentsEmbedded(List<Document> documents) {
+        searchResultCache.onDocumentsAdded(documents);
     }
 
 }
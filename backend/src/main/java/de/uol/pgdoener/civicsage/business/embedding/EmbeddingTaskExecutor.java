@@ -6,12 +6,16 @@ import de.uol.pgdoener.civicsage.business.embedding.backlog.EmbeddingTask;
 import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.BatchingStrategy;
 import org.springframework.ai.retry.NonTransientAiException;
 import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
@@ -24,64 +28,92 @@ public class EmbeddingTaskExecutor {
     private final EmbeddingService embeddingService;
     private final EmbeddingBacklog embeddingBacklog;
     private final VectorStore vectorStore;
+    private final BatchingStrategy batchingStrategy;
+    private final EmbeddingRateLimiter rateLimiter;
     private final AIProperties aiProperties;
 
-    private Thread taskExecutorThread;
+    private final List<Thread> workerThreads = new CopyOnWriteArrayList<>();
 
     /**
      * This counter is used to track the number of unknown errors that occur during the processing of embedding tasks.
-     * If too many unknown errors occur in succession, the task executor thread will be stopped to prevent excessive
-     * resource usage.
+     * It is shared between all workers. If too many unknown errors occur in succession, all worker threads will be
+     * stopped to prevent excessive resource usage.
      */
     private final AtomicInteger unknownErrorCount = new AtomicInteger(0);
 
     @EventListener(ApplicationReadyEvent.class)
     public void start() {
-        taskExecutorThread = Thread.ofVirtual()
-                .name("embedding-task-executor")
-                .start(() -> {
-                    log.info("Started embedding task executor thread");
-                    while (!Thread.currentThread().isInterrupted()) {
-                        try {
-                            EmbeddingTask task = embeddingBacklog.peek();
-                            task.isProcessing().set(true);
-                            log.info("Embedding task with {} documents started", task.documents().size());
-                            processTask(task);
-                            embeddingBacklog.remove(task);
-                            task.doneLatch().countDown();
-                            embeddingService.clearCache();
-                            log.info("Successfully processed embedding task with {} documents", task.documents().size());
-                        } catch (InterruptedException e) {
-                            Thread.currentThread().interrupt();
-                            break;
-                        } catch (NonTransientAiException e) {
-                            // This exception is handled in the processTask method, so we can ignore it here
-                        } catch (Throwable t) {
-                            log.error("Error processing embedding task", t);
-                        }
-                    }
-                });
+        int workers = Math.max(1, aiProperties.getEmbedding().getWorkers());
+        for (int i = 0; i < workers; i++) {
+            workerThreads.add(Thread.ofVirtual()
+                    .name("embedding-task-executor-" + i)
+                    .start(this::runWorker));
+        }
+        log.info("Started {} embedding task executor threads", workers);
     }
 
     @PreDestroy
     public void stop() {
-        log.info("Stopping embedding task executor thread");
-        if (taskExecutorThread != null && taskExecutorThread.isAlive()) {
-            taskExecutorThread.interrupt();
+        log.info("Stopping embedding task executor threads");
+        stopWorkers();
+        for (Thread workerThread : workerThreads) {
             try {
-                taskExecutorThread.join();
+                workerThread.join();
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
-                log.error("Failed to stop embedding task executor thread gracefully", e);
+                log.error("Failed to stop embedding task executor threads gracefully", e);
+                break;
             }
         }
-        log.info("Embedding task executor thread stopped");
+        workerThreads.clear();
+        log.info("Embedding task executor threads stopped");
+    }
+
+    private void runWorker() {
+        log.debug("Started embedding task executor thread {}", Thread.currentThread().getName());
+        while (!Thread.currentThread().isInterrupted()) {
+            EmbeddingTask task;
+            try {
+                task = embeddingBacklog.claim();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            try {
+                log.info("Embedding task with {} documents started", task.documents().size());
+                processTask(task);
+                if (task.isCancelled().get()) {
+                    log.info("Embedding task with {} documents was cancelled", task.documents().size());
+                } else {
+                    embeddingBacklog.remove(task);
+                    log.info("Successfully processed embedding task with {} documents", task.documents().size());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                embeddingBacklog.release(task);
+            } catch (NonTransientAiException e) {
+                // This exception is handled in the processTask method, so we can ignore it here
+            } catch (Throwable t) {
+                log.error("Error processing embedding task", t);
+                embeddingBacklog.defer(task);
+            } finally {
+                // signal EmbeddingService.delete that this worker no longer works on the task
+                task.doneLatch().countDown();
+            }
+        }
+        log.debug("Stopped embedding task executor thread {}", Thread.currentThread().getName());
+    }
+
+    private void stopWorkers() {
+        for (Thread workerThread : workerThreads) {
+            workerThread.interrupt();
+        }
     }
 
     private void processTask(EmbeddingTask task) throws InterruptedException {
         while (!task.isCancelled().get()) {
             try {
-                vectorStore.add(task.documents());
+                processRemainingBatches(task);
                 unknownErrorCount.set(0);
                 break;
             } catch (NonTransientAiException e) {
@@ -91,19 +123,88 @@ public class EmbeddingTaskExecutor {
         }
     }
 
+    /**
+     * Splits the documents which have not been persisted yet into batches and adds them to the vector store.
+     * While one batch is being written, the next batch is already being embedded.
+     * The progress of the task is advanced after each persisted batch, so a retry resumes at the first batch
+     * which has not been persisted.
+     * Adding a batch twice is harmless, because the vector stores update existing documents.
+     */
+    private void processRemainingBatches(EmbeddingTask task) throws InterruptedException {
+        List<Document> documents = task.documents();
+        List<List<Document>> batches = batchingStrategy.batch(documents.subList(task.progress().get(), documents.size()));
+        log.debug("Embedding {} remaining documents in {} batches", documents.size() - task.progress().get(), batches.size());
+
+        try (ExecutorService batchExecutor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<?> inFlight = null;
+            List<Document> inFlightBatch = List.of();
+            for (List<Document> batch : batches) {
+                if (task.isCancelled().get())
+                    break;
+                Future<?> next = batchExecutor.submit(() -> {
+                    rateLimiter.acquire();
+                    vectorStore.add(batch);
+                    return null;
+                });
+                if (inFlight != null) {
+                    awaitBatch(inFlight, next);
+                    commitBatch(task, inFlightBatch);
+                }
+                inFlight = next;
+                inFlightBatch = batch;
+            }
+            if (inFlight != null) {
+                awaitBatch(inFlight, null);
+                commitBatch(task, inFlightBatch);
+            }
+        }
+    }
+
+    private void awaitBatch(Future<?> batch, Future<?> next) throws InterruptedException {
+        try {
+            batch.get();
+        } catch (ExecutionException e) {
+            if (next != null)
+                next.cancel(true);
+            switch (e.getCause()) {
+                case RuntimeException re -> throw re;
+                case Error err -> throw err;
+                default -> throw new IllegalStateException(e.getCause());
+            }
+        } catch (InterruptedException e) {
+            batch.cancel(true);
+            if (next != null)
+                next.cancel(true);
+            throw e;
+        }
+    }
+
+    private void commitBatch(EmbeddingTask task, List<Document> batch) {
+        int progress = task.progress().addAndGet(batch.size());
+        embeddingBacklog.checkpoint(task);
+        // make the persisted documents visible to searches right away
+        embeddingService.onDocumentsEmbedded(batch);
+        log.debug("Persisted {} of {} documents", progress, task.documents().size());
+    }
+
     private void handleException(EmbeddingTask task, NonTransientAiException e) throws InterruptedException {
         if (e.getMessage().startsWith("HTTP 429")) {
-            log.warn("Rate limit exceeded, retrying after a delay");
-            Thread.sleep(aiProperties.getEmbedding().getRetryDelay());
+            if (rateLimiter.isEnabled()) {
+                // the rate limiter has been informed about the rejected request and delays the next one
+                log.warn("Rate limit exceeded, retrying with a reduced rate");
+            } else {
+                log.warn("Rate limit exceeded, retrying after a delay");
+                Thread.sleep(aiProperties.getEmbedding().getRetryDelay());
+            }
         } else {
             log.error("Non-recoverable error occurred moving task to the end of the backlog to try again later. Verify the configuration of the embedding model and database: {}", e.getMessage(), e);
             embeddingBacklog.defer(task);
             int currentCount = unknownErrorCount.incrementAndGet();
             if (currentCount > MAX_UNKNOWN_ERROR_COUNT) {
-                log.error("Too many unknown errors occurred, stopping the embedding task executor thread");
-                Thread.currentThread().interrupt();
+                log.error("Too many unknown errors occurred, stopping the embedding task executor threads");
+                stopWorkers();
             } else if (currentCount > MAX_UNKNOWN_ERROR_COUNT / 2) {
-                log.error("Too many unknown errors occurred, blocking task executor thread for a while to prevent too many network requests. It is recommended not to run this application until the issue is resolved.");
+                log.error("Too many unknown errors occurred, blocking task executor threads for a while to prevent too many network requests. It is recommended not to run this application until the issue is resolved.");
                 Thread.sleep(aiProperties.getEmbedding().getRetryDelay().multipliedBy(2));
             }
             throw e;
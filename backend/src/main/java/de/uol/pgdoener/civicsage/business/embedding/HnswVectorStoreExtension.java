@@ -0,0 +1,39 @@
+package de.uol.pgdoener.civicsage.business.embedding;
+
+import de.uol.pgdoener.civicsage.business.embedding.hnsw.HnswVectorStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "civicsage.ai.vectorstore.type", havingValue = "HNSW")
+public class HnswVectorStoreExtension implements VectorStoreExtension {
+
+    private final HnswVectorStore hnswVectorStore;
+
+    public HnswVectorStoreExtension(VectorStore vectorStore) {
+        Optional<HnswVectorStore> optStore = vectorStore.getNativeClient();
+        hnswVectorStore = optStore.orElseThrow(() -> new RuntimeException("Could not get native client from HnswVectorStore"));
+    }
+
+    @Override
+    public List<Document> findById(List<UUID> documentIds) {
+        List<Document> documents = hnswVectorStore.findById(documentIds.stream().map(UUID::toString).toList());
+        log.debug("Retrieved {} documents", documents.size());
+        return documents;
+    }
+
+    @Override
+    public List<Document> fullTextSearch(String query, Filter.Expression filterExpression, int topK) {
+        return hnswVectorStore.fullTextSearch(query, filterExpression, topK);
+    }
+
+}
@@ -0,0 +1,109 @@
+package de.uol.pgdoener.civicsage.business.embedding;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * The common part of the extensions for vector stores, which store their documents in a table accessed with a
+ * {@link JdbcTemplate}.
+ * <p>
+ * Documents are retrieved by id in batches of at most {@link #MAX_IDS_PER_QUERY} ids, so large id sets neither
+ * exceed the limits of the database for bind parameters nor produce huge statements.
+ * The metadata is parsed directly from the character stream of the column with a reader prepared once.
+ */
+@Slf4j
+abstract class JdbcVectorStoreExtension implements VectorStoreExtension {
+
+    static final int MAX_IDS_PER_QUERY = 500;
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<>() {
+    };
+
+    protected final JdbcTemplate template;
+    protected final String tableName;
+    private final ObjectReader metadataReader;
+
+    protected JdbcVectorStoreExtension(JdbcTemplate template, String tableName, ObjectMapper objectMapper) {
+        this.template = template;
+        this.tableName = tableName;
+        this.metadataReader = objectMapper.readerFor(METADATA_TYPE);
+    }
+
+    protected static JdbcTemplate nativeTemplate(VectorStore vectorStore) {
+        Optional<JdbcTemplate> optTemplate = vectorStore.getNativeClient();
+        return optTemplate.orElseThrow(() -> new RuntimeException("Could not get native client from " + vectorStore.getName()));
+    }
+
+    //https://www.baeldung.com/spring-jdbctemplate-in-list
+    @Override
+    public List<Document> findById(List<UUID> documentIds) {
+        if (documentIds.isEmpty())
+            return List.of();
+        List<UUID> distinctIds = documentIds.stream().distinct().toList();
+        Map<String, Document> documentsById = HashMap.newHashMap(distinctIds.size());
+        for (int from = 0; from < distinctIds.size(); from += MAX_IDS_PER_QUERY) {
+            List<UUID> batch = distinctIds.subList(from, Math.min(from + MAX_IDS_PER_QUERY, distinctIds.size()));
+            String sql = buildSQL(batch.size());
+            log.debug("Created SQL statement: {}", sql);
+            template.query(
+                    sql,
+                    rs -> {
+                        Document document = getDocument(rs, null);
+                        documentsById.put(document.getId(), document);
+                    },
+                    batch.toArray()
+            );
+        }
+        log.debug("Retrieved {} documents", documentsById.size());
+
+        return documentIds.stream()
+                .map(id -> documentsById.get(id.toString()))
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    /**
+     * Creates a document from the columns {@code id}, {@code content} and {@code metadata} of the current row.
+     *
+     * @param score the score of the document or {@code null}
+     */
+    protected Document getDocument(ResultSet rs, Double score) throws SQLException {
+        return Document.builder()
+                .id(rs.getObject("id").toString())
+                .text(rs.getString("content"))
+                .metadata(getMetadata(rs))
+                .score(score)
+                .build();
+    }
+
+    private Map<String, Object> getMetadata(ResultSet rs) {
+        try (Reader reader = rs.getCharacterStream("metadata")) {
+            if (reader == null)
+                return Map.of();
+            return metadataReader.readValue(reader);
+        } catch (IOException e) {
+            log.error("Could not parse metadata", e);
+            return Map.of();
+        } catch (SQLException e) {
+            log.error("Could not read metadata from result set", e);
+            return Map.of();
+        }
+    }
+
+    private String buildSQL(int idsCount) {
+        String idPlaceHolders = String.join(",", Collections.nCopies(idsCount, "?"));
+
+        return "SELECT id, content, metadata FROM " + tableName + " WHERE id IN (" + idPlaceHolders + ")";
+    }
+
+}
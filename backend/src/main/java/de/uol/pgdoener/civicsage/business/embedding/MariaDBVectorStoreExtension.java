@@ -1,74 +1,73 @@
 package de.uol.pgdoener.civicsage.business.embedding;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import de.uol.pgdoener.civicsage.business.embedding.exception.DocumentNotFoundException;
+import de.uol.pgdoener.civicsage.autoconfigure.SearchProperties;
 import de.uol.pgdoener.civicsage.config.VectorStoreTableNameProvider;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.mariadb.MariaDBFilterExpressionConverter;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
-import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Component;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.util.*;
+import java.util.List;
+import java.util.regex.Pattern;
 
+/**
+ * Full-text search in MariaDB uses a FULLTEXT index in boolean mode. The operators of the boolean mode are removed
+ * from the query, so every word of the query is optional and the documents are ranked by their relevance.
+ * <p>
+ * InnoDB only indexes words with at least {@code innodb_ft_min_token_size} characters, which is 3 by default.
+ * Short tokens like "§4" are only found if the server is started with {@code --innodb-ft-min-token-size=2}
+ * or less, as done in the provided docker compose files. The index has to be rebuilt after changing the setting.
+ */
 @Slf4j
 @Component
 @ConditionalOnProperty(name = "civicsage.ai.vectorstore.type", havingValue = "MARIADB")
-public class MariaDBVectorStoreExtension implements VectorStoreExtension {
+public class MariaDBVectorStoreExtension extends JdbcVectorStoreExtension {
 
-    private final JdbcTemplate template;
-    private final String tableName;
-    private final ObjectMapper objectMapper;
+    private static final Pattern BOOLEAN_OPERATORS = Pattern.compile("[+\\-<>()~*\"@]");
 
-    public MariaDBVectorStoreExtension(VectorStore mariaDBVectorStore, VectorStoreTableNameProvider tableNameProvider, ObjectMapper objectMapper) {
-        this.tableName = tableNameProvider.getTableName();
-        this.objectMapper = objectMapper;
-        Optional<JdbcTemplate> optTemplate = mariaDBVectorStore.getNativeClient();
-        template = optTemplate.orElseThrow(() -> new RuntimeException("Could not get native client from MariaDBVectorStore"));
-    }
-
-    //https://www.baeldung.com/spring-jdbctemplate-in-list
-    @Override
-    public List<Document> getById(List<UUID> documentIds) {
-        String sql = buildSQL(documentIds.size());
-        log.debug("Created SQL statement: {}", sql);
-        List<Document> documents = template.query(
-                sql,
-                (rs, rowNum) -> Document.builder()
-                        .id(rs.getObject("id").toString())
-                        .text(rs.getString("content"))
-                        .metadata(getMetadata(rs))
-                        .build(),
-                documentIds.toArray()
-        );
-        log.debug("Retrieved {} documents", documents.size());
+    private final SearchProperties searchProperties;
+    private final MariaDBFilterExpressionConverter filterExpressionConverter = new MariaDBFilterExpressionConverter("metadata");
 
-        if (documents.size() != documentIds.size())
-            throw new DocumentNotFoundException("Could not find all requested documents");
-        return documents;
+    public MariaDBVectorStoreExtension(VectorStore mariaDBVectorStore, VectorStoreTableNameProvider tableNameProvider, ObjectMapper objectMapper, SearchProperties searchProperties) {
+        super(nativeTemplate(mariaDBVectorStore), tableNameProvider.getTableName(), objectMapper);
+        this.searchProperties = searchProperties;
     }
 
-    private Map<String, Object> getMetadata(ResultSet rs) {
+    @PostConstruct
+    public void createFullTextIndex() {
+        if (searchProperties.getMode() != SearchProperties.Mode.HYBRID)
+            return;
+        String sql = "CREATE FULLTEXT INDEX IF NOT EXISTS " + tableName + "_content_fulltext ON " + tableName + " (content)";
+        log.info("Creating full-text index for table {}", tableName);
         try {
-            //noinspection unchecked
-            return objectMapper.readValue(rs.getString("metadata"), Map.class);
-        } catch (JsonProcessingException e) {
-            log.error("Could not parse metadata", e);
-            return Map.of();
-        } catch (SQLException e) {
-            log.error("Could not read metadata from result set", e);
-            return Map.of();
+            template.execute(sql);
+        } catch (DataAccessException e) {
+            log.error("Could not create full-text index for table {}. Hybrid search will fail.", tableName, e);
         }
     }
 
-    private String buildSQL(int idsCount) {
-        String idPlaceHolders = String.join(",", Collections.nCopies(idsCount, "?"));
-
-        return "SELECT id, content, metadata FROM " + tableName + " WHERE id IN (" + idPlaceHolders + ")";
+    @Override
+    public List<Document> fullTextSearch(String query, Filter.Expression filterExpression, int topK) {
+        String terms = BOOLEAN_OPERATORS.matcher(query).replaceAll(" ").strip();
+        if (terms.isEmpty())
+            return List.of();
+        String where = "MATCH (content) AGAINST (? IN BOOLEAN MODE)";
+        if (filterExpression != null)
+            where += " AND " + filterExpressionConverter.convertExpression(filterExpression);
+        String sql = "SELECT id, content, metadata, MATCH (content) AGAINST (? IN BOOLEAN MODE) AS score FROM "
+                + tableName + " WHERE " + where + " ORDER BY score DESC LIMIT ?";
+        log.debug("Created SQL statement: {}", sql);
+        return template.query(
+                sql,
+                (rs, rowNum) -> getDocument(rs, rs.getDouble("score")),
+                terms, terms, topK
+        );
     }
 
 }
@@ -1,57 +1,76 @@
 package de.uol.pgdoener.civicsage.business.embedding;
 
-import de.uol.pgdoener.civicsage.business.embedding.exception.DocumentNotFoundException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.uol.pgdoener.civicsage.autoconfigure.SearchProperties;
 import de.uol.pgdoener.civicsage.config.VectorStoreTableNameProvider;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.pgvector.PgVectorFilterExpressionConverter;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
-import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Component;
 
-import java.util.Collections;
 import java.util.List;
-import java.util.Optional;
-import java.util.UUID;
 
 @Slf4j
 @Component
 @ConditionalOnProperty(name = "civicsage.ai.vectorstore.type", havingValue = "POSTGRESQL")
-public class PgVectorStoreExtension implements VectorStoreExtension {
+public class PgVectorStoreExtension extends JdbcVectorStoreExtension {
 
-    private final JdbcTemplate template;
-    private final String tableName;
+    private final SearchProperties searchProperties;
+    private final PgVectorFilterExpressionConverter filterExpressionConverter = new PgVectorFilterExpressionConverter();
 
-    public PgVectorStoreExtension(VectorStore pgVectorStore, VectorStoreTableNameProvider tableNameProvider) {
-        this.tableName = tableNameProvider.getTableName();
-        Optional<JdbcTemplate> optTemplate = pgVectorStore.getNativeClient();
-        template = optTemplate.orElseThrow(() -> new RuntimeException("Could not get native client from PgVectorStore"));
+    public PgVectorStoreExtension(VectorStore pgVectorStore, VectorStoreTableNameProvider tableNameProvider, ObjectMapper objectMapper, SearchProperties searchProperties) {
+        super(nativeTemplate(pgVectorStore), tableNameProvider.getTableName(), objectMapper);
+        this.searchProperties = searchProperties;
+    }
+
+    /**
+     * Creates an expression index, so the text search vectors do not have to be stored in a separate column.
+     * Queries have to use the same expression to use the index.
+     */
+    @PostConstruct
+    public void createFullTextIndex() {
+        if (searchProperties.getMode() != SearchProperties.Mode.HYBRID)
+            return;
+        String sql = "CREATE INDEX IF NOT EXISTS " + tableName + "_content_fulltext ON " + tableName
+                + " USING gin (" + textSearchVector() + ")";
+        log.info("Creating full-text index for table {}", tableName);
+        try {
+            template.execute(sql);
+        } catch (DataAccessException e) {
+            log.error("Could not create full-text index for table {}. Hybrid search will fail.", tableName, e);
+        }
     }
 
-    //https://www.baeldung.com/spring-jdbctemplate-in-list
     @Override
-    public List<Document> getById(List<UUID> documentIds) {
-        String sql = buildSQL(documentIds.size());
+    public List<Document> fullTextSearch(String query, Filter.Expression filterExpression, int topK) {
+        String textSearchQuery = "websearch_to_tsquery(" + textSearchConfiguration() + ", ?)";
+        String where = textSearchVector() + " @@ " + textSearchQuery;
+        if (filterExpression != null)
+            where += " AND metadata::jsonb @@ '" + filterExpressionConverter.convertExpression(filterExpression) + "'::jsonpath";
+        String sql = "SELECT id, content, metadata, ts_rank_cd(" + textSearchVector() + ", " + textSearchQuery + ") AS score FROM "
+                + tableName + " WHERE " + where + " ORDER BY score DESC LIMIT ?";
         log.debug("Created SQL statement: {}", sql);
-        List<Document> documents = template.query(
+        return template.query(
                 sql,
-                (rs, rowNum) -> Document.builder()
-                        .id(rs.getObject("id").toString())
-                        .text(rs.getString("content"))
-                        .build(),
-                documentIds.toArray()
+                (rs, rowNum) -> getDocument(rs, rs.getDouble("score")),
+                query, query, topK
         );
-        log.debug("Retrieved {} documents", documents.size());
-
-        if (documents.size() != documentIds.size())
-            throw new DocumentNotFoundException("Could not find all requested documents");
-        return documents;
     }
 
-    private String buildSQL(int idsCount) {
-        String idPlaceHolders = String.join(",", Collections.nCopies(idsCount, "?"));
+    private String textSearchVector() {
+        return "to_tsvector(" + textSearchConfiguration() + ", content)";
+    }
 
-        return "SELECT id, content FROM " + tableName + " WHERE id IN (" + idPlaceHolders + ")";
+    private String textSearchConfiguration() {
+        String configuration = searchProperties.getHybrid().getTextSearchConfiguration();
+        if (!configuration.matches("\\w+"))
+            throw new IllegalStateException("Invalid text search configuration: " + configuration);
+        return "'" + configuration + "'::regconfig";
     }
 
 }
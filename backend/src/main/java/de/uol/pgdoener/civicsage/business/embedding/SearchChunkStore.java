@@ -0,0 +1,218 @@
+package de.uol.pgdoener.civicsage.business.embedding;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import de.uol.pgdoener.civicsage.autoconfigure.SearchProperties;
+import de.uol.pgdoener.civicsage.business.index.document.MetadataKeys;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.DocumentMetadata;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stores the text and metadata of documents returned by searches or loaded by id in a compact, serialized form.
+ * <p>
+ * Chunks are shared by all cached search results and chats, so a document contained in many results is only stored
+ * once. Chunks do not change once they are embedded, so they only have to be removed when their source is deleted.
+ * The store is weighed by the size of the serialized chunks and can keep them off-heap in direct buffers,
+ * see {@link SearchProperties.Cache}.
+ * <p>
+ * A chunk is encoded as the id of its source, the length of the UTF-8 encoded text, the text and the metadata as JSON.
+ * The distance added to the metadata by the vector store depends on the query and is therefore not part of the chunk.
+ * <p>
+ * The ids of the stored documents are indexed by their source, so all chunks of a deleted source can be removed.
+ */
+@Slf4j
+@Component
+public class SearchChunkStore {
+
+    public static final String CACHE_NAME = "searchResultChunks";
+
+    /**
+     * Rough size of the key, the buffer object and the entry of the cache on the heap.
+     */
+    private static final int CHUNK_OVERHEAD = 128;
+    private static final int TEXT_LENGTH_OFFSET = 2 * Long.BYTES;
+    private static final int HEADER_BYTES = TEXT_LENGTH_OFFSET + Integer.BYTES;
+    private static final UUID NO_SOURCE = new UUID(0, 0);
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<>() {
+    };
+
+    private final ObjectMapper objectMapper;
+    private final boolean offHeap;
+    private final Cache<UUID, ByteBuffer> chunks;
+    private final Map<UUID, Set<UUID>> chunksBySource = new ConcurrentHashMap<>();
+
+    public SearchChunkStore(ObjectMapper objectMapper,
+                            SearchProperties searchProperties,
+                            MeterRegistry meterRegistry) {
+        this.objectMapper = objectMapper;
+        SearchProperties.Cache properties = searchProperties.getCache();
+        this.offHeap = properties.isOffHeap();
+        this.chunks = Caffeine.newBuilder()
+                .maximumWeight(properties.getChunkStoreSize().toBytes())
+                .weigher((UUID id, ByteBuffer chunk) -> CHUNK_OVERHEAD + chunk.capacity())
+                .expireAfterAccess(properties.getTimeToLive())
+                .removalListener(this::onRemoval)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, chunks, CACHE_NAME);
+        Gauge.builder("civicsage.search.cache.size", chunks, SearchChunkStore::weightedSize)
+                .description("Estimated size of the search result cache")
+                .baseUnit("bytes")
+                .tag("tier", "chunks")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Stores the text and metadata of the document, replacing an older version of it.
+     *
+     * @param id       the id of the document
+     * @param document the document to store
+     * @return whether the document has been stored
+     */
+    public boolean put(UUID id, Document document) {
+        Map<String, Object> metadata = new HashMap<>(document.getMetadata());
+        metadata.remove(DocumentMetadata.DISTANCE.value());
+        byte[] text = document.getText() != null ? document.getText().getBytes(StandardCharsets.UTF_8) : null;
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(metadata);
+        } catch (JsonProcessingException e) {
+            log.debug("Could not serialize metadata of document {}", id, e);
+            return false;
+        }
+
+        UUID sourceId = sourceId(metadata);
+        int textLength = text != null ? text.length : -1;
+        ByteBuffer chunk = allocate(HEADER_BYTES + Math.max(textLength, 0) + json.length);
+        chunk.putLong(sourceId.getMostSignificantBits());
+        chunk.putLong(sourceId.getLeastSignificantBits());
+        chunk.putInt(textLength);
+        if (text != null)
+            chunk.put(text);
+        chunk.put(json);
+        if (!sourceId.equals(NO_SOURCE))
+            chunksBySource.computeIfAbsent(sourceId, key -> ConcurrentHashMap.newKeySet()).add(id);
+        chunks.put(id, chunk.flip().asReadOnlyBuffer());
+        return true;
+    }
+
+    /**
+     * Restores a document with the given score.
+     *
+     * @param id       the id of the document
+     * @param score    the score of the document for the query, or {@code null}
+     * @param distance the distance of the document to the query, or {@code null}
+     * @return the document, or an empty Optional if it is not stored
+     */
+    public Optional<Document> get(UUID id, Double score, Float distance) {
+        ByteBuffer chunk = chunks.getIfPresent(id);
+        if (chunk == null)
+            return Optional.empty();
+
+        // absolute reads, because the buffer is shared between threads
+        int textLength = chunk.getInt(TEXT_LENGTH_OFFSET);
+        int textOffset = HEADER_BYTES;
+        String text = null;
+        if (textLength >= 0) {
+            byte[] bytes = new byte[textLength];
+            chunk.get(textOffset, bytes);
+            text = new String(bytes, StandardCharsets.UTF_8);
+            textOffset += textLength;
+        }
+        byte[] json = new byte[chunk.limit() - textOffset];
+        chunk.get(textOffset, json);
+
+        Map<String, Object> metadata;
+        try {
+            metadata = objectMapper.readValue(json, METADATA_TYPE);
+        } catch (IOException e) {
+            log.warn("Could not deserialize metadata of document {}", id, e);
+            chunks.invalidate(id);
+            return Optional.empty();
+        }
+        if (distance != null)
+            metadata.put(DocumentMetadata.DISTANCE.value(), distance);
+
+        return Optional.of(Document.builder()
+                .id(id.toString())
+                .text(text)
+                .metadata(metadata)
+                .score(score)
+                .build());
+    }
+
+    /**
+     * Removes the document from the store.
+     *
+     * @param id the id of the document
+     */
+    public void remove(UUID id) {
+        chunks.invalidate(id);
+    }
+
+    /**
+     * Removes all documents of the source from the store.
+     *
+     * @param sourceId the id of the source
+     */
+    public void removeSource(UUID sourceId) {
+        Set<UUID> ids = chunksBySource.remove(sourceId);
+        if (ids != null)
+            chunks.invalidateAll(ids);
+    }
+
+    /**
+     * Allocates a buffer on the heap or off-heap depending on the configuration.
+     *
+     * @param capacity the capacity of the buffer in bytes
+     * @return the new buffer
+     */
+    ByteBuffer allocate(int capacity) {
+        return offHeap ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    private void onRemoval(UUID id, ByteBuffer chunk, RemovalCause cause) {
+        if (id == null || chunk == null || cause == RemovalCause.REPLACED)
+            return;
+        UUID sourceId = new UUID(chunk.getLong(0), chunk.getLong(Long.BYTES));
+        chunksBySource.computeIfPresent(sourceId, (key, ids) -> {
+            // the document may have been stored again in the meantime
+            if (chunks.asMap().get(id) == null)
+                ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    private static UUID sourceId(Map<String, Object> metadata) {
+        Object sourceId = metadata.get(MetadataKeys.SOURCE_ID.getValue());
+        if (sourceId == null)
+            return NO_SOURCE;
+        try {
+            return UUID.fromString(sourceId.toString());
+        } catch (IllegalArgumentException e) {
+            return NO_SOURCE;
+        }
+    }
+
+    static double weightedSize(Cache<?, ?> cache) {
+        return cache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0))
+                .orElse(0L);
+    }
+
+}
@@ -0,0 +1,326 @@
+package de.uol.pgdoener.civicsage.business.embedding;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import de.uol.pgdoener.civicsage.autoconfigure.SearchProperties;
+import de.uol.pgdoener.civicsage.business.index.document.MetadataKeys;
+import de.uol.pgdoener.civicsage.business.search.FilterExpressionEvaluator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.DocumentMetadata;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Caches the results of similarity searches and invalidates them selectively.
+ * <p>
+ * Each cached result is tagged with the ids of the sources it contains and with the generation of its
+ * filter expression at the time the search has been started.
+ * <ul>
+ *     <li>When documents are added to the vector store, the generation of every filter expression matching at
+ *     least one of the documents is increased. Results of these filter expressions become stale, because the new
+ *     documents may rank among them. Results of other filter expressions stay valid.</li>
+ *     <li>When a source is deleted, only results containing documents of this source are evicted.
+ *     Deleting documents cannot change results which do not contain them.</li>
+ * </ul>
+ * Generations are taken from a global clock, so a filter expression whose generation has been dropped from
+ * the cache starts with a generation newer than all results cached before.
+ * <p>
+ * Results are stored compactly as the ids, scores and distances of their documents and are weighed by their size
+ * in bytes. The text and metadata of the documents are kept in the {@link SearchChunkStore}, which is shared by all
+ * results. If a chunk of a cached result has been evicted from the chunk store, the result is treated as a miss.
+ */
+@Slf4j
+@Component
+public class SearchResultCache {
+
+    public static final String CACHE_NAME = "searchResults";
+
+    /**
+     * The most significant and least significant bits of the id, the score and the distance.
+     */
+    private static final int RESULT_BYTES = 2 * Long.BYTES + Double.BYTES + Float.BYTES;
+    /**
+     * Rough size of the key, the entry object and the entry of the cache on the heap.
+     */
+    private static final int ENTRY_OVERHEAD = 256;
+    private static final int SOURCE_ID_OVERHEAD = 64;
+    private static final long MAXIMUM_FILTER_EXPRESSIONS = 10_000;
+
+    private final FilterExpressionEvaluator filterExpressionEvaluator;
+    private final SearchChunkStore chunkStore;
+
+    private final AtomicLong clock = new AtomicLong();
+    private final Cache<FilterKey, Long> generations;
+    private final Cache<SearchRequest, Entry> entries;
+    private final Map<UUID, Set<SearchRequest>> requestsBySource = new ConcurrentHashMap<>();
+    /**
+     * The clock values at which sources have been deleted recently.
+     * Used to avoid caching results of searches which ran concurrently to the deletion.
+     */
+    private final Cache<UUID, Long> recentlyDeletedSources = Caffeine.newBuilder()
+            .expireAfterWrite(Duration.ofMinutes(5))
+            .build();
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter staleCounter;
+    private final Counter sourceDeletedCounter;
+    private final Counter chunkEvictedCounter;
+
+    public SearchResultCache(FilterExpressionEvaluator filterExpressionEvaluator,
+                             SearchChunkStore chunkStore,
+                             SearchProperties searchProperties,
+                             MeterRegistry meterRegistry) {
+        this.filterExpressionEvaluator = filterExpressionEvaluator;
+        this.chunkStore = chunkStore;
+        SearchProperties.Cache properties = searchProperties.getCache();
+        this.entries = Caffeine.newBuilder()
+                .maximumWeight(properties.getMaxSize().toBytes())
+                .weigher(SearchResultCache::weigh)
+                .expireAfterAccess(properties.getTimeToLive())
+                .removalListener(this::onRemoval)
+                .recordStats()
+                .build();
+        this.generations = Caffeine.newBuilder()
+                .maximumSize(MAXIMUM_FILTER_EXPRESSIONS)
+                .expireAfterAccess(properties.getTimeToLive())
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, entries, CACHE_NAME);
+        Gauge.builder("civicsage.search.cache.size", entries, SearchChunkStore::weightedSize)
+                .description("Estimated size of the search result cache")
+                .baseUnit("bytes")
+                .tag("tier", "results")
+                .register(meterRegistry);
+        this.hitCounter = requestCounter(meterRegistry, "hit");
+        this.missCounter = requestCounter(meterRegistry, "miss");
+        this.staleCounter = invalidationCounter(meterRegistry, "source_added");
+        this.sourceDeletedCounter = invalidationCounter(meterRegistry, "source_deleted");
+        this.chunkEvictedCounter = invalidationCounter(meterRegistry, "chunk_evicted");
+    }
+
+    /**
+     * Hits and misses are counted separately from the statistics of the cache,
+     * because a stale entry is a hit for the cache but a miss for the search.
+     */
+    private static Counter requestCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("civicsage.search.cache.requests")
+                .description("Searches answered from the cache or by the vector store")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private static Counter invalidationCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("civicsage.search.cache.invalidations")
+                .description("Search results removed from the cache because the vector store has changed")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the cached result for the request or performs the search and caches its result.
+     *
+     * @param request the search request
+     * @param search  performs the search if no valid result is cached
+     * @return the result of the search
+     */
+    public List<Document> get(SearchRequest request, Supplier<List<Document>> search) {
+        FilterKey filterKey = new FilterKey(request.getFilterExpression());
+        Entry cached = entries.asMap().get(request);
+        // The generation has to be read before searching, so documents added during the search invalidate the result.
+        long generation = generation(filterKey);
+        if (cached != null) {
+            if (cached.generation() == generation) {
+                Optional<List<Document>> documents = restore(cached);
+                if (documents.isPresent()) {
+                    hitCounter.increment();
+                    return documents.get();
+                }
+                chunkEvictedCounter.increment();
+            } else {
+                staleCounter.increment();
+            }
+            entries.asMap().remove(request, cached);
+        }
+
+        log.debug("Cache miss for embedding search");
+        missCounter.increment();
+        long started = clock.get();
+        List<Document> documents = search.get();
+        Optional<Entry> encoded = encode(documents, generation);
+        if (encoded.isEmpty())
+            return documents;
+        Entry entry = encoded.get();
+        entries.put(request, entry);
+        for (UUID sourceId : entry.sourceIds()) {
+            requestsBySource.compute(sourceId, (id, requests) -> {
+                Set<SearchRequest> result = requests != null ? requests : ConcurrentHashMap.newKeySet();
+                result.add(request);
+                return result;
+            });
+        }
+        // A source of the result may have been deleted while searching. This is checked after indexing the entry,
+        // so the deletion either evicts the entry via the index or is noticed here.
+        if (containsDeletedSource(entry, started))
+            entries.asMap().remove(request, entry);
+        return documents;
+    }
+
+    /**
+     * Invalidates the results of all filter expressions matching at least one of the documents.
+     *
+     * @param documents the documents added to the vector store
+     */
+    public void onDocumentsAdded(List<Document> documents) {
+        long next = clock.incrementAndGet();
+        for (FilterKey filterKey : generations.asMap().keySet()) {
+            boolean affected = documents.stream()
+                    .anyMatch(document -> matches(filterKey, document));
+            if (affected)
+                generations.put(filterKey, next);
+        }
+    }
+
+    /**
+     * Evicts all results and chunks containing documents of the source.
+     *
+     * @param sourceId the id of the deleted source
+     */
+    public void onSourceDeleted(UUID sourceId) {
+        recentlyDeletedSources.put(sourceId, clock.incrementAndGet());
+        chunkStore.removeSource(sourceId);
+        Set<SearchRequest> requests = requestsBySource.remove(sourceId);
+        if (requests == null)
+            return;
+        for (SearchRequest request : requests) {
+            if (entries.asMap().remove(request) != null)
+                sourceDeletedCounter.increment();
+        }
+    }
+
+    /**
+     * Encodes the ids, scores and distances of the documents and stores their chunks.
+     *
+     * @return the entry, or an empty Optional if the documents cannot be cached
+     */
+    private Optional<Entry> encode(List<Document> documents, long generation) {
+        ByteBuffer results = chunkStore.allocate(documents.size() * RESULT_BYTES);
+        for (Document document : documents) {
+            UUID id;
+            try {
+                id = UUID.fromString(document.getId());
+            } catch (IllegalArgumentException e) {
+                log.debug("Not caching search result with document id {}", document.getId());
+                return Optional.empty();
+            }
+            if (!chunkStore.put(id, document))
+                return Optional.empty();
+            results.putLong(id.getMostSignificantBits());
+            results.putLong(id.getLeastSignificantBits());
+            results.putDouble(document.getScore() != null ? document.getScore() : Double.NaN);
+            results.putFloat(document.getMetadata().get(DocumentMetadata.DISTANCE.value()) instanceof Number distance
+                    ? distance.floatValue() : Float.NaN);
+        }
+        return Optional.of(new Entry(results.flip().asReadOnlyBuffer(), sourceIds(documents), generation));
+    }
+
+    /**
+     * Restores the documents of the entry from the chunk store.
+     *
+     * @return the documents, or an empty Optional if at least one chunk has been evicted
+     */
+    private Optional<List<Document>> restore(Entry entry) {
+        ByteBuffer results = entry.results();
+        int count = results.limit() / RESULT_BYTES;
+        List<Document> documents = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            // absolute reads, because the buffer is shared between threads
+            int offset = i * RESULT_BYTES;
+            UUID id = new UUID(results.getLong(offset), results.getLong(offset + Long.BYTES));
+            double score = results.getDouble(offset + 2 * Long.BYTES);
+            float distance = results.getFloat(offset + 2 * Long.BYTES + Double.BYTES);
+            Optional<Document> document = chunkStore.get(id,
+                    Double.isNaN(score) ? null : score,
+                    Float.isNaN(distance) ? null : distance);
+            if (document.isEmpty())
+                return Optional.empty();
+            documents.add(document.get());
+        }
+        return Optional.of(documents);
+    }
+
+    private static int weigh(SearchRequest request, Entry entry) {
+        long weight = ENTRY_OVERHEAD
+                + (long) request.getQuery().length() * Character.BYTES
+                + entry.results().capacity()
+                + (long) entry.sourceIds().size() * SOURCE_ID_OVERHEAD;
+        return (int) Math.min(weight, Integer.MAX_VALUE);
+    }
+
+    private boolean containsDeletedSource(Entry entry, long searchStarted) {
+        for (UUID sourceId : entry.sourceIds()) {
+            Long deletedAt = recentlyDeletedSources.getIfPresent(sourceId);
+            if (deletedAt != null && deletedAt > searchStarted)
+                return true;
+        }
+        return false;
+    }
+
+    private long generation(FilterKey filterKey) {
+        return generations.get(filterKey, key -> clock.get());
+    }
+
+    private boolean matches(FilterKey filterKey, Document document) {
+        try {
+            return filterExpressionEvaluator.matches(filterKey.expression(), document.getMetadata());
+        } catch (RuntimeException e) {
+            // invalidating too much is safe
+            log.debug("Could not evaluate filter expression {}", filterKey.expression(), e);
+            return true;
+        }
+    }
+
+    private void onRemoval(SearchRequest request, Entry entry, RemovalCause cause) {
+        if (request == null || entry == null || cause == RemovalCause.REPLACED)
+            return;
+        for (UUID sourceId : entry.sourceIds()) {
+            requestsBySource.computeIfPresent(sourceId, (id, requests) -> {
+                // the request may have been cached again in the meantime
+                Entry current = entries.asMap().get(request);
+                if (current == null || !current.sourceIds().contains(id))
+                    requests.remove(request);
+                return requests.isEmpty() ? null : requests;
+            });
+        }
+    }
+
+    private static Set<UUID> sourceIds(List<Document> documents) {
+        Set<UUID> sourceIds = new HashSet<>();
+        for (Document document : documents) {
+            Object sourceId = document.getMetadata().get(MetadataKeys.SOURCE_ID.getValue());
+            if (sourceId != null)
+                sourceIds.add(UUID.fromString(sourceId.toString()));
+        }
+        return Set.copyOf(sourceIds);
+    }
+
+    private record FilterKey(Filter.Expression expression) {
+    }
+
+    private record Entry(ByteBuffer results, Set<UUID> sourceIds, long generation) {
+    }
+
+}
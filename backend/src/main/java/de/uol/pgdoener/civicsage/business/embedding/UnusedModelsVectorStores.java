@@ -1,6 +1,8 @@
 package de.uol.pgdoener.civicsage.business.embedding;
 
 import de.uol.pgdoener.civicsage.autoconfigure.AIProperties;
+import de.uol.pgdoener.civicsage.business.embedding.hnsw.HnswVectorStore;
+import de.uol.pgdoener.civicsage.config.VectorStoreConfig;
 import de.uol.pgdoener.civicsage.config.VectorStoreTableNameProvider;
 import io.micrometer.common.lang.NonNullApi;
 import jakarta.annotation.PostConstruct;
@@ -18,6 +20,10 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 
 import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
@@ -41,7 +47,9 @@ public class UnusedModelsVectorStores {
 
     @PostConstruct
     public void init() {
-        List<TableLocation> vectorStoreTables = getVectorStoreTables();
+        List<TableLocation> vectorStoreTables = aiProperties.getVectorStore().getType() == AIProperties.VectorStore.Type.HNSW
+                ? getHnswVectorStoreFiles()
+                : getVectorStoreTables();
         // remove the vector store table for the current model
         vectorStoreTables.removeIf(l ->
                 l.tableName.equals(vectorStoreTableNameProvider.getTableName()) &&
@@ -84,6 +92,27 @@ public class UnusedModelsVectorStores {
         return tables;
     }
 
+    /**
+     * HNSW vector stores are files named after the table name. They are represented by table locations in the
+     * configured schema, so the file of the current model is recognized.
+     */
+    private List<TableLocation> getHnswVectorStoreFiles() {
+        List<TableLocation> files = new ArrayList<>();
+        Path directory = aiProperties.getVectorStore().getHnsw().getDirectory();
+        if (!Files.isDirectory(directory))
+            return files;
+        String glob = aiProperties.getVectorStore().getTableNamePrefix() + "*" + VectorStoreConfig.HNSW_FILE_SUFFIX;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, glob)) {
+            for (Path file : stream) {
+                String fileName = file.getFileName().toString();
+                files.add(new TableLocation(aiProperties.getVectorStore().getSchemaName(), fileName.substring(0, fileName.length() - VectorStoreConfig.HNSW_FILE_SUFFIX.length())));
+            }
+        } catch (IOException e) {
+            log.error("Failed to list files of vector stores. Embeddings will not be deleted from them, if a source is deleted!", e);
+        }
+        return files;
+    }
+
     private VectorStore createVectorStore(TableLocation tableLocation) {
         return switch (aiProperties.getVectorStore().getType()) {
             case MARIADB -> MariaDBVectorStore.builder(jdbcTemplate, new NoOpEmbeddingModel())
@@ -100,6 +129,10 @@ public class UnusedModelsVectorStores {
                     .vectorTableValidationsEnabled(false)
                     .vectorTableName(tableLocation.tableName())
                     .build();
+            case HNSW -> HnswVectorStore.builder(
+                            VectorStoreConfig.hnswPath(aiProperties, tableLocation.tableName()), new NoOpEmbeddingModel())
+                    .indexed(false)
+                    .build();
         };
     }
 
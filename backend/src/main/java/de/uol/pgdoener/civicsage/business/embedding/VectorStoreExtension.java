@@ -1,6 +1,8 @@
 package de.uol.pgdoener.civicsage.business.embedding;
 
+import de.uol.pgdoener.civicsage.business.embedding.exception.DocumentNotFoundException;
 import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.filter.Filter;
 
 import java.util.List;
 import java.util.UUID;
@@ -14,6 +16,39 @@ import java.util.UUID;
  */
 public interface VectorStoreExtension {
 
-    List<Document> getById(List<UUID> documentIds);
+    /**
+     * Retrieves the documents with the given ids in the order of the ids.
+     *
+     * @param documentIds the ids of the documents
+     * @return the documents
+     * @throws DocumentNotFoundException if at least one of the documents does not exist
+     */
+    default List<Document> getById(List<UUID> documentIds) {
+        List<Document> documents = findById(documentIds);
+        if (documents.size() != documentIds.size())
+            throw new DocumentNotFoundException("Could not find all requested documents");
+        return documents;
+    }
+
+    /**
+     * Retrieves the existing documents with the given ids in the order of the ids.
+     * Ids of documents which do not exist are skipped.
+     *
+     * @param documentIds the ids of the documents
+     * @return the documents found
+     */
+    List<Document> findById(List<UUID> documentIds);
+
+    /**
+     * Searches the content of the documents using the full-text index.
+     * The index is created at startup if {@link de.uol.pgdoener.civicsage.autoconfigure.SearchProperties.Mode#HYBRID}
+     * search is enabled.
+     *
+     * @param query            the query as typed by the user
+     * @param filterExpression the filter expression for the metadata, or {@code null}
+     * @param topK             the maximum number of documents to return
+     * @return the matching documents in the order of their lexical relevance, which is used as their score
+     */
+    List<Document> fullTextSearch(String query, Filter.Expression filterExpression, int topK);
 
 }
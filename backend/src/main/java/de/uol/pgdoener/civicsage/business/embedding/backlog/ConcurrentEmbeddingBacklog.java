@@ -0,0 +1,183 @@
+package de.uol.pgdoener.civicsage.business.embedding.backlog;
+
+import de.uol.pgdoener.civicsage.autoconfigure.AIProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * An in-memory {@link EmbeddingBacklog} which does not use a global lock.
+ * <p>
+ * Every task is wrapped in a {@link Node} which is indexed by its source id in a concurrent map
+ * and referenced by a lock-free queue per priority.
+ * Removing a task only removes it from the map and marks its node as removed.
+ * The node stays in its queue as a tombstone and is discarded when a worker polls it.
+ * This makes removal O(1) regardless of the size of the backlog.
+ * <p>
+ * A node is put into a queue exactly once.
+ * When a claimed task is released or deferred, a new node is created for a fresh copy of the task.
+ * <p>
+ * The class to claim from is chosen by a {@link WeightedFairScheduler}.
+ * This decision is the only short critical section shared by claiming workers.
+ */
+@Component
+@ConditionalOnProperty(name = "civicsage.ai.embedding.backlog.type", havingValue = "CONCURRENT")
+public class ConcurrentEmbeddingBacklog implements EmbeddingBacklog {
+
+    private final Map<UUID, Node> nodes = new ConcurrentHashMap<>();
+    private final Map<EmbeddingPriority, Deque<Node>> backlog = new EnumMap<>(EmbeddingPriority.class);
+
+    /**
+     * Has at most one permit per queued node.
+     * A worker which acquired a permit but only finds tombstones waits for the next permit.
+     */
+    private final Semaphore available = new Semaphore(0);
+    private final WeightedFairScheduler scheduler;
+
+    public ConcurrentEmbeddingBacklog(AIProperties aiProperties, MeterRegistry meterRegistry) {
+        this.scheduler = new WeightedFairScheduler(aiProperties.getEmbedding().getBacklog().getMaxWait(), meterRegistry);
+        for (EmbeddingPriority priority : EmbeddingPriority.values()) {
+            backlog.put(priority, new ConcurrentLinkedDeque<>());
+        }
+    }
+
+    @Override
+    public void add(EmbeddingTask task, EmbeddingPriority priority) {
+        Node node = new Node(task, priority, System.nanoTime());
+        if (nodes.putIfAbsent(task.sourceId(), node) != null)
+            return;
+        backlog.get(priority).offerLast(node);
+        available.release();
+    }
+
+    @Override
+    public EmbeddingTask claim() throws InterruptedException {
+        while (true) {
+            available.acquire();
+            EmbeddingPriority selected = scheduler.select(this::headEnqueuedAt);
+            if (selected == null)
+                continue;
+            EmbeddingTask task = claimFrom(backlog.get(selected));
+            // Another worker may have taken the last task of the selected class in the meantime.
+            Iterator<EmbeddingPriority> fallback = backlog.keySet().iterator();
+            while (task == null && fallback.hasNext()) {
+                task = claimFrom(backlog.get(fallback.next()));
+            }
+            if (task != null)
+                return task;
+        }
+    }
+
+    private Long headEnqueuedAt(EmbeddingPriority priority) {
+        Deque<Node> queue = backlog.get(priority);
+        Node head;
+        while ((head = queue.peekFirst()) != null) {
+            if (head.state.get() == State.QUEUED)
+                return head.enqueuedAt;
+            // discard tombstones, so they do not count as pending tasks
+            queue.removeFirstOccurrence(head);
+        }
+        return null;
+    }
+
+    private EmbeddingTask claimFrom(Deque<Node> queue) {
+        Node node;
+        while ((node = queue.pollFirst()) != null) {
+            if (node.state.get() != State.QUEUED)
+                continue;
+            // The task is marked as processing before the claim becomes visible, so a concurrent removal
+            // either prevents the claim or returns a task which is known to be processing.
+            node.task.isProcessing().set(true);
+            if (node.state.compareAndSet(State.QUEUED, State.CLAIMED)) {
+                scheduler.recordWait(node.priority, node.enqueuedAt);
+                return node.task;
+            }
+            // The task has been removed concurrently and the remover may wait for it.
+            node.task.isProcessing().set(false);
+            node.task.doneLatch().countDown();
+        }
+        return null;
+    }
+
+    @Override
+    public void release(EmbeddingTask task) {
+        requeue(task, null, true);
+    }
+
+    @Override
+    public Optional<EmbeddingTask> remove(EmbeddingTask task) {
+        Node node = nodes.remove(task.sourceId());
+        if (node == null)
+            return Optional.empty();
+        State previous = node.state.getAndSet(State.REMOVED);
+        if (previous == State.QUEUED) {
+            // Drop the permit of the tombstone. If a worker has taken it already, it finds no task and waits again.
+            available.tryAcquire();
+        }
+        return Optional.of(node.task);
+    }
+
+    @Override
+    public void defer(EmbeddingTask task) {
+        requeue(task, EmbeddingPriority.BACKGROUND, false);
+    }
+
+    /**
+     * Returns a copy of the source ids.
+     * The copy contains every source whose task was part of the backlog during the whole call.
+     */
+    @Override
+    public Collection<UUID> getSourceIds() {
+        return Set.copyOf(nodes.keySet());
+    }
+
+    private void requeue(EmbeddingTask task, EmbeddingPriority newPriority, boolean first) {
+        Node node = nodes.get(task.sourceId());
+        if (node == null || node.task != task || node.state.get() != State.CLAIMED)
+            return;
+        EmbeddingPriority priority = newPriority != null ? newPriority : node.priority;
+        // released tasks keep their position, deferred tasks start waiting again
+        long enqueuedAt = first ? node.enqueuedAt : System.nanoTime();
+        Node renewed = new Node(task.renew(), priority, enqueuedAt);
+        if (!nodes.replace(task.sourceId(), node, renewed))
+            return;
+        node.state.set(State.REMOVED);
+        if (first) {
+            backlog.get(priority).offerFirst(renewed);
+        } else {
+            backlog.get(priority).offerLast(renewed);
+        }
+        available.release();
+    }
+
+    private enum State {
+        QUEUED,
+        CLAIMED,
+        REMOVED,
+    }
+
+    private static final class Node {
+
+        private final EmbeddingTask task;
+        private final EmbeddingPriority priority;
+        /**
+         * The {@link System#nanoTime()} at which the task has been added.
+         */
+        private final long enqueuedAt;
+        private final AtomicReference<State> state = new AtomicReference<>(State.QUEUED);
+
+        private Node(EmbeddingTask task, EmbeddingPriority priority, long enqueuedAt) {
+            this.task = task;
+            this.priority = priority;
+            this.enqueuedAt = enqueuedAt;
+        }
+
+    }
+
+}
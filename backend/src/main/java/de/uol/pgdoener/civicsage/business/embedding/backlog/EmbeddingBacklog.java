@@ -8,13 +8,21 @@ import java.util.UUID;
 /**
  * An EmbeddingBacklog is a queue-like structure that holds embedding tasks.
  * Implementations of this interface must allow for concurrent access of
- * the add, remove and getSourceIds methods.
- * The peek method will only be called by a single thread, but has to be
- * thread-safe in respect to the other methods.
+ * all methods.
+ * <p>
+ * Tasks are handed out to workers using claim/release semantics.
+ * A task returned by {@link #claim()} is claimed by the calling worker and
+ * will not be returned to any other worker until it is released again using
+ * {@link #release(EmbeddingTask)} or {@link #defer(EmbeddingTask)}.
+ * A claimed task stays part of the backlog until it is removed using
+ * {@link #remove(EmbeddingTask)}.
+ * This way, it is still reported by {@link #getSourceIds()} and can be
+ * cancelled while it is being processed.
  * <p>
  * Furthermore, it is recommended that implementations make sure that
  * there is no task starvation.
- * Tasks should be provided in a fair order like a FIFO queue.
+ * Tasks of the same priority should be provided in a fair order like a FIFO queue,
+ * and lower priorities should still get a share of the workers, see {@link WeightedFairScheduler}.
  */
 public interface EmbeddingBacklog {
 
@@ -27,18 +35,31 @@ public interface EmbeddingBacklog {
     void add(EmbeddingTask task, EmbeddingPriority priority);
 
     /**
-     * Retrieves the next embedding task from the backlog.
+     * Claims the next unclaimed embedding task from the backlog.
      * If no task is available, this method will block until a task is added.
      * Notably, this method does not remove the task from the backlog.
-     * After calling this method, the returned task can be removed from the backlog
-     * using {@link #remove(EmbeddingTask)} if it is no longer needed.
+     * The returned task is marked as processing and will not be returned by
+     * another call to this method until it is released.
+     * After processing, the task should be removed from the backlog
+     * using {@link #remove(EmbeddingTask)}.
+     *
+     * @return The claimed embedding task.
+     * @throws InterruptedException if the calling thread is interrupted while waiting for a task
+     */
+    EmbeddingTask claim() throws InterruptedException;
+
+    /**
+     * Releases a claimed task, so it can be claimed again by any worker.
+     * The task keeps its priority.
+     * If the task has been removed in the meantime, this method will do nothing.
      *
-     * @return The next embedding task.
+     * @param task The claimed embedding task to release.
      */
-    EmbeddingTask peek() throws InterruptedException;
+    void release(EmbeddingTask task);
 
     /**
      * Removes a specific embedding task from the backlog.
+     * The task may be claimed or unclaimed.
      * If the task is not present, this method will do nothing.
      *
      * @param task The embedding task to remove.
@@ -59,17 +80,30 @@ public interface EmbeddingBacklog {
     }
 
     /**
-     * Defer an embedding task.
+     * Defer a claimed embedding task.
      * Implementations may choose how to handle deferring.
-     * By default, this method will remove the task from the backlog
-     * and add it back, giving it a low priority.
+     * By default, this method will release the task and move it to the end
+     * of the backlog, giving it the {@link EmbeddingPriority#BACKGROUND} priority.
+     * If the task has been removed in the meantime, this method will do nothing.
      *
      * @param task The embedding task to defer.
      */
     void defer(EmbeddingTask task);
 
+    /**
+     * Records the {@link EmbeddingTask#progress()} of a claimed task after a batch has been persisted.
+     * Persistent implementations should save the progress, so another worker resumes after the last persisted
+     * document if this worker stops, and may renew the claim at the same time.
+     * By default, this method does nothing, since the progress is kept in the task itself.
+     *
+     * @param task The claimed embedding task.
+     */
+    default void checkpoint(EmbeddingTask task) {
+    }
+
     /**
      * Retrieves the IDs of all sources that have pending embedding tasks.
+     * This includes tasks that are currently claimed.
      *
      * @return A collection of UUIDs representing the source IDs with pending tasks.
      */
@@ -0,0 +1,97 @@
+package de.uol.pgdoener.civicsage.business.embedding.backlog;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.annotations.TimeZoneStorage;
+import org.hibernate.annotations.TimeZoneStorageType;
+import org.hibernate.type.SqlTypes;
+import org.springframework.ai.document.Document;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Entity representing a pending embedding task in the database.
+ * It is used by the {@link JdbcEmbeddingBacklog}.
+ * A task is claimed by an instance if {@link #leaseOwner} is set and the lease has not expired yet.
+ */
+@Entity
+@Table(name = "embedding_backlog")
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class EmbeddingBacklogEntry {
+
+    @Id
+    private UUID sourceId;
+
+    /**
+     * Stored by name, so reordering {@link EmbeddingPriority} does not change the priority of stored tasks.
+     */
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    private EmbeddingPriority priority;
+
+    @Column(nullable = false)
+    @JdbcTypeCode(SqlTypes.JSON)
+    private List<StoredDocument> documents;
+
+    /**
+     * The number of times this task has been deferred because of an error.
+     */
+    @Column(nullable = false)
+    private int attempts;
+
+    /**
+     * The number of documents already persisted in the vector store.
+     */
+    @Column(nullable = false)
+    private int progress;
+
+    @Column(nullable = false)
+    @TimeZoneStorage(TimeZoneStorageType.NORMALIZE_UTC)
+    private OffsetDateTime enqueuedAt;
+
+    /**
+     * The id of the instance which has claimed this task.
+     */
+    private UUID leaseOwner;
+
+    @TimeZoneStorage(TimeZoneStorageType.NORMALIZE_UTC)
+    private OffsetDateTime leaseExpiresAt;
+
+    /**
+     * Set if the task has been removed while it was leased to another instance.
+     * The lease owner stops processing the task and deletes the entry afterward.
+     */
+    @Column(nullable = false)
+    private boolean cancelled;
+
+    public record StoredDocument(
+            String id,
+            String text,
+            Map<String, Object> metadata
+    ) {
+
+        public static StoredDocument of(Document document) {
+            return new StoredDocument(document.getId(), document.getText(), document.getMetadata());
+        }
+
+        public Document toDocument() {
+            return Document.builder()
+                    .id(id)
+                    .text(text)
+                    .metadata(metadata)
+                    .build();
+        }
+
+    }
+
+}
@@ -0,0 +1,111 @@
+package de.uol.pgdoener.civicsage.business.embedding.backlog;
+
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface EmbeddingBacklogEntryRepository
+        extends CrudRepository<EmbeddingBacklogEntry, UUID> {
+
+    /**
+     * Locks and returns the next entry which is not leased or whose lease has expired.
+     * Entries locked by other transactions are skipped, so concurrent workers never block each other.
+     * Must be called inside a transaction.
+     * <p>
+     * The timestamps of the native queries are passed as {@link Instant}, since the timestamps of the entries are
+     * stored normalized to UTC.
+     * Priorities are stored by name, so they are ordered in the order of {@link EmbeddingPriority} explicitly.
+     */
+    @Query(value = """
+            SELECT * FROM embedding_backlog
+            WHERE cancelled = false AND (lease_owner IS NULL OR lease_expires_at < :now)
+            ORDER BY CASE priority WHEN 'INTERACTIVE' THEN 0 WHEN 'BULK' THEN 1 ELSE 2 END, enqueued_at
+            LIMIT 1
+            FOR UPDATE SKIP LOCKED
+            """, nativeQuery = true)
+    Optional<EmbeddingBacklogEntry> findNextClaimableForUpdate(Instant now);
+
+    /**
+     * Like {@link #findNextClaimableForUpdate(Instant)}, but only considers entries of one priority.
+     *
+     * @param priority the name of the {@link EmbeddingPriority}
+     */
+    @Query(value = """
+            SELECT * FROM embedding_backlog
+            WHERE cancelled = false AND (lease_owner IS NULL OR lease_expires_at < :now)
+                AND priority = :priority
+            ORDER BY enqueued_at
+            LIMIT 1
+            FOR UPDATE SKIP LOCKED
+            """, nativeQuery = true)
+    Optional<EmbeddingBacklogEntry> findNextClaimableForUpdate(Instant now, String priority);
+
+    /**
+     * Like {@link #findNextClaimableForUpdate(Instant)}, but only considers entries which have been
+     * enqueued before the given threshold, regardless of their priority.
+     */
+    @Query(value = """
+            SELECT * FROM embedding_backlog
+            WHERE cancelled = false AND (lease_owner IS NULL OR lease_expires_at < :now)
+                AND enqueued_at < :enqueuedBefore
+            ORDER BY enqueued_at
+            LIMIT 1
+            FOR UPDATE SKIP LOCKED
+            """, nativeQuery = true)
+    Optional<EmbeddingBacklogEntry> findNextOverdueForUpdate(Instant now, Instant enqueuedBefore);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT e FROM EmbeddingBacklogEntry e WHERE e.sourceId = :sourceId")
+    Optional<EmbeddingBacklogEntry> findByIdForUpdate(UUID sourceId);
+
+    @Query("SELECT e.sourceId FROM EmbeddingBacklogEntry e")
+    List<UUID> findAllSourceIds();
+
+    @Query("SELECT e.sourceId FROM EmbeddingBacklogEntry e WHERE e.leaseOwner = :owner AND e.cancelled = true")
+    List<UUID> findCancelledSourceIdsByLeaseOwner(UUID owner);
+
+    @Modifying
+    @Query("""
+            UPDATE EmbeddingBacklogEntry e SET e.leaseExpiresAt = :expiresAt
+            WHERE e.sourceId IN :sourceIds AND e.leaseOwner = :owner
+            """)
+    int renewLeases(Collection<UUID> sourceIds, UUID owner, OffsetDateTime expiresAt);
+
+    /**
+     * Saves the progress of an entry and renews its lease, if it is still leased to the owner.
+     *
+     * @return the number of updated entries, 0 if the lease has been lost
+     */
+    @Modifying
+    @Query("""
+            UPDATE EmbeddingBacklogEntry e SET e.progress = :progress, e.leaseExpiresAt = :expiresAt
+            WHERE e.sourceId = :sourceId AND e.leaseOwner = :owner
+            """)
+    int checkpoint(UUID sourceId, UUID owner, int progress, OffsetDateTime expiresAt);
+
+    @Query("SELECT e.sourceId FROM EmbeddingBacklogEntry e WHERE e.sourceId IN :sourceIds AND e.leaseOwner = :owner")
+    List<UUID> findLeasedSourceIds(Collection<UUID> sourceIds, UUID owner);
+
+    @Modifying
+    @Query("DELETE FROM EmbeddingBacklogEntry e WHERE e.sourceId = :sourceId AND e.leaseOwner = :owner")
+    int deleteByIdAndLeaseOwner(UUID sourceId, UUID owner);
+
+    /**
+     * Deletes cancelled entries whose owner has stopped renewing the lease without deleting them.
+     */
+    @Modifying
+    @Query("DELETE FROM EmbeddingBacklogEntry e WHERE e.cancelled = true AND e.leaseExpiresAt < :now")
+    int deleteCancelledWithExpiredLease(OffsetDateTime now);
+
+}
@@ -1,6 +1,33 @@
 package de.uol.pgdoener.civicsage.business.embedding.backlog;
 
+import lombok.Getter;
+
+/**
+ * The priority classes of embedding tasks.
+ * Workers pick classes in a weighted round-robin fashion, so each class gets a share of the
+ * workers proportional to its weight as long as it has pending tasks.
+ * See {@link WeightedFairScheduler}.
+ */
+@Getter
 public enum EmbeddingPriority {
-    HIGH,
-    LOW,
+    /**
+     * Tasks a user is waiting for, e.g. uploads via the API.
+     */
+    INTERACTIVE(8),
+    /**
+     * Large amounts of tasks, e.g. when indexing the bootstrap directory or reindexing with a new model.
+     */
+    BULK(3),
+    /**
+     * Maintenance tasks and tasks deferred because of errors.
+     */
+    BACKGROUND(1),
+    ;
+
+    private final int weight;
+
+    EmbeddingPriority(int weight) {
+        this.weight = weight;
+    }
+
 }
@@ -7,17 +7,48 @@ import java.util.Objects;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * A task to embed the documents of one source.
+ *
+ * @param sourceId     the id of the source the documents belong to
+ * @param documents    the documents to embed
+ * @param isProcessing whether a worker has claimed this task
+ * @param isCancelled  whether the task has been cancelled and the worker should stop processing it
+ * @param doneLatch    counted down once the worker that claimed this task stops working on it
+ * @param progress     the number of documents from the start of {@code documents} already persisted in the
+ *                     vector store
+ */
 public record EmbeddingTask(
         UUID sourceId,
         List<Document> documents,
         AtomicBoolean isProcessing,
         AtomicBoolean isCancelled,
-        CountDownLatch doneLatch
+        CountDownLatch doneLatch,
+        AtomicInteger progress
 ) {
 
     public EmbeddingTask(UUID sourceId, List<Document> documents) {
-        this(sourceId, documents, new AtomicBoolean(false), new AtomicBoolean(false), new CountDownLatch(1));
+        this(sourceId, documents, 0);
+    }
+
+    private EmbeddingTask(UUID sourceId, List<Document> documents, int progress) {
+        this(sourceId, documents, new AtomicBoolean(false), new AtomicBoolean(false), new CountDownLatch(1),
+                new AtomicInteger(progress));
+    }
+
+    /**
+     * Creates a fresh, unclaimed copy of this task.
+     * Backlogs use this when a claimed task is put back, because the {@link #doneLatch()} of a task can only be
+     * counted down once. The worker that claimed the original task counts down its latch when it stops working
+     * on it, while the copy can be claimed and cancelled independently.
+     * The {@link #progress()} is carried over, so the copy resumes after the last persisted document.
+     *
+     * @return a new task for the same source and documents
+     */
+    public EmbeddingTask renew() {
+        return new EmbeddingTask(sourceId, documents, progress.get());
     }
 
     @Override
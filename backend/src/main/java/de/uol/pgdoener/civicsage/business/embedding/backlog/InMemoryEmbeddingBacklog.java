@@ -1,5 +1,8 @@
 package de.uol.pgdoener.civicsage.business.embedding.backlog;
 
+import de.uol.pgdoener.civicsage.autoconfigure.AIProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
 import java.util.*;
@@ -8,15 +11,24 @@ import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 @Component
+@ConditionalOnProperty(name = "civicsage.ai.embedding.backlog.type", havingValue = "IN_MEMORY", matchIfMissing = true)
 public class InMemoryEmbeddingBacklog implements EmbeddingBacklog {
 
-    private final Map<UUID, EmbeddingTask> taskMap = new HashMap<>();
-    private final Map<EmbeddingPriority, Deque<EmbeddingTask>> backlog = new EnumMap<>(EmbeddingPriority.class);
+    /**
+     * Contains all tasks of the backlog, including claimed ones.
+     */
+    private final Map<UUID, Entry> entries = new HashMap<>();
+    /**
+     * Contains only unclaimed tasks.
+     */
+    private final Map<EmbeddingPriority, Deque<Entry>> backlog = new EnumMap<>(EmbeddingPriority.class);
+    private final WeightedFairScheduler scheduler;
 
     private final Lock lock = new ReentrantLock();
     private final Condition notEmpty = lock.newCondition();
 
-    public InMemoryEmbeddingBacklog() {
+    public InMemoryEmbeddingBacklog(AIProperties aiProperties, MeterRegistry meterRegistry) {
+        this.scheduler = new WeightedFairScheduler(aiProperties.getEmbedding().getBacklog().getMaxWait(), meterRegistry);
         for (EmbeddingPriority priority : EmbeddingPriority.values()) {
             backlog.put(priority, new LinkedList<>());
         }
@@ -26,11 +38,11 @@ public class InMemoryEmbeddingBacklog implements EmbeddingBacklog {
     public void add(EmbeddingTask task, EmbeddingPriority priority) {
         lock.lock();
         try {
-            if (taskMap.containsKey(task.sourceId()))
+            if (entries.containsKey(task.sourceId()))
                 return;
-            taskMap.put(task.sourceId(), task);
-            Queue<EmbeddingTask> queue = backlog.get(priority);
-            queue.add(task);
+            Entry entry = new Entry(task, priority, System.nanoTime());
+            entries.put(task.sourceId(), entry);
+            backlog.get(priority).addLast(entry);
             notEmpty.signalAll();
         } finally {
             lock.unlock();
@@ -38,21 +50,36 @@ public class InMemoryEmbeddingBacklog implements EmbeddingBacklog {
     }
 
     @Override
-    public EmbeddingTask peek() throws InterruptedException {
+    public EmbeddingTask claim() throws InterruptedException {
         lock.lockInterruptibly();
         try {
-            while (taskMap.isEmpty()) {
+            EmbeddingPriority priority;
+            while ((priority = scheduler.select(this::headEnqueuedAt)) == null) {
                 notEmpty.await();
             }
-            for (EmbeddingPriority priority : EmbeddingPriority.values()) {
-                Deque<EmbeddingTask> queue = backlog.get(priority);
-                EmbeddingTask task = queue.peek();
-                if (task != null) {
-                    return task;
-                }
-            }
-            // This should never happen
-            throw new IllegalStateException("No tasks available in the backlog. This indicates a bug in the implementation.");
+            Entry entry = backlog.get(priority).pollFirst();
+            // the scheduler only selects classes with pending tasks
+            Objects.requireNonNull(entry);
+            entry.task().isProcessing().set(true);
+            scheduler.recordWait(priority, entry.enqueuedAt());
+            return entry.task();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void release(EmbeddingTask task) {
+        lock.lock();
+        try {
+            Entry current = entries.get(task.sourceId());
+            if (!isClaimed(current, task))
+                return;
+            // the task was at the head of its queue when it was claimed, so it is put back there
+            Entry renewed = new Entry(task.renew(), current.priority(), current.enqueuedAt());
+            entries.put(task.sourceId(), renewed);
+            backlog.get(renewed.priority()).addFirst(renewed);
+            notEmpty.signalAll();
         } finally {
             lock.unlock();
         }
@@ -62,33 +89,30 @@ public class InMemoryEmbeddingBacklog implements EmbeddingBacklog {
     public Optional<EmbeddingTask> remove(EmbeddingTask task) {
         lock.lock();
         try {
-            if (!taskMap.containsKey(task.sourceId()))
+            Entry removed = entries.remove(task.sourceId());
+            if (removed == null)
                 return Optional.empty();
-            taskMap.remove(task.sourceId());
-            for (EmbeddingPriority priority : EmbeddingPriority.values()) {
-                Deque<EmbeddingTask> queue = backlog.get(priority);
-                Iterator<EmbeddingTask> iterator = queue.iterator();
-                while (iterator.hasNext()) {
-                    EmbeddingTask currentTask = iterator.next();
-                    if (currentTask.equals(task)) {
-                        iterator.remove();
-                        // If the task was found and removed, we can exit early.
-                        return Optional.of(currentTask);
-                    }
-                }
+            // claimed tasks are not part of any queue
+            if (!removed.task().isProcessing().get()) {
+                backlog.get(removed.priority()).remove(removed);
             }
+            return Optional.of(removed.task());
         } finally {
             lock.unlock();
         }
-        return Optional.empty();
     }
 
     @Override
     public void defer(EmbeddingTask task) {
         lock.lock();
         try {
-            remove(task);
-            add(task, EmbeddingPriority.LOW);
+            Entry current = entries.get(task.sourceId());
+            if (!isClaimed(current, task))
+                return;
+            Entry renewed = new Entry(task.renew(), EmbeddingPriority.BACKGROUND, System.nanoTime());
+            entries.put(task.sourceId(), renewed);
+            backlog.get(renewed.priority()).addLast(renewed);
+            notEmpty.signalAll();
         } finally {
             lock.unlock();
         }
@@ -98,10 +122,25 @@ public class InMemoryEmbeddingBacklog implements EmbeddingBacklog {
     public Collection<UUID> getSourceIds() {
         lock.lock();
         try {
-            return Collections.unmodifiableSet(taskMap.keySet());
+            return Set.copyOf(entries.keySet());
         } finally {
             lock.unlock();
         }
     }
 
+    private Long headEnqueuedAt(EmbeddingPriority priority) {
+        Entry head = backlog.get(priority).peekFirst();
+        return head == null ? null : head.enqueuedAt();
+    }
+
+    private static boolean isClaimed(Entry current, EmbeddingTask task) {
+        return current != null && current.task() == task && task.isProcessing().get();
+    }
+
+    /**
+     * @param enqueuedAt the {@link System#nanoTime()} at which the task has been added
+     */
+    private record Entry(EmbeddingTask task, EmbeddingPriority priority, long enqueuedAt) {
+    }
+
 }
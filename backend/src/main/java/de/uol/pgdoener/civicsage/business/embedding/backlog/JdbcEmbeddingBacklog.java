@@ -0,0 +1,364 @@
+package de.uol.pgdoener.civicsage.business.embedding.backlog;
+
+import de.uol.pgdoener.civicsage.autoconfigure.AIProperties;
+import de.uol.pgdoener.civicsage.business.embedding.backlog.EmbeddingBacklogEntry.StoredDocument;
+import de.uol.pgdoener.civicsage.business.index.TimeFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An {@link EmbeddingBacklog} that stores its tasks in the database.
+ * Tasks survive restarts and are shared by all instances using the same database.
+ * Only the documents of claimed tasks are held in memory.
+ * <p>
+ * Workers claim tasks using {@code SELECT ... FOR UPDATE SKIP LOCKED}.
+ * A claimed task is leased to the claiming instance for a limited time.
+ * The lease is renewed by a heartbeat while the task is processed and whenever the progress of the task is saved
+ * after a persisted batch, see {@link #checkpoint(EmbeddingTask)}.
+ * If an instance stops, its leases expire and the tasks can be claimed by other instances.
+ * <p>
+ * Removing a task which is processed by another instance marks it as cancelled.
+ * The other instance notices this with its next heartbeat, stops processing the task
+ * and deletes it afterward.
+ * Until then, {@link #remove(EmbeddingTask)} blocks.
+ * <p>
+ * Since other instances may add tasks, workers poll the database
+ * in addition to being woken up when a task is added by this instance.
+ * <p>
+ * Tasks waiting longer than the maximum wait time are claimed first.
+ * Otherwise, the {@link WeightedFairScheduler} chooses the preferred priority class.
+ * Since the scheduler does not know which classes have pending tasks, it treats all classes as non-empty.
+ * If the preferred class has no claimable tasks, the task with the highest priority is claimed.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "civicsage.ai.embedding.backlog.type", havingValue = "JDBC")
+public class JdbcEmbeddingBacklog implements EmbeddingBacklog {
+
+    private final EmbeddingBacklogEntryRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final TimeFactory timeFactory;
+    private final Duration pollInterval;
+    private final Duration leaseDuration;
+    private final Duration maxWait;
+    private final WeightedFairScheduler scheduler;
+
+    /**
+     * Identifies this instance as the owner of leases.
+     */
+    private final UUID instanceId = UUID.randomUUID();
+
+    /**
+     * Tasks leased to this instance.
+     * They are needed to renew leases and to cancel a task which is being processed.
+     */
+    private final Map<UUID, EmbeddingTask> claimedTasks = new ConcurrentHashMap<>();
+
+    private final Lock lock = new ReentrantLock();
+    private final Condition taskAdded = lock.newCondition();
+
+    public JdbcEmbeddingBacklog(EmbeddingBacklogEntryRepository repository,
+                                TransactionTemplate transactionTemplate,
+                                TimeFactory timeFactory,
+                                AIProperties aiProperties,
+                                MeterRegistry meterRegistry) {
+        this.repository = repository;
+        this.transactionTemplate = transactionTemplate;
+        this.timeFactory = timeFactory;
+        this.pollInterval = aiProperties.getEmbedding().getBacklog().getPollInterval();
+        this.leaseDuration = aiProperties.getEmbedding().getBacklog().getLeaseDuration();
+        this.maxWait = aiProperties.getEmbedding().getBacklog().getMaxWait();
+        this.scheduler = new WeightedFairScheduler(maxWait, meterRegistry);
+        log.info("Using JDBC embedding backlog with instance id {}", instanceId);
+    }
+
+    @Override
+    public void add(EmbeddingTask task, EmbeddingPriority priority) {
+        transactionTemplate.executeWithoutResult(status -> {
+            if (repository.existsById(task.sourceId()))
+                return;
+            List<StoredDocument> documents = task.documents().stream()
+                    .map(StoredDocument::of)
+                    .toList();
+            repository.save(new EmbeddingBacklogEntry(
+                    task.sourceId(),
+                    priority,
+                    documents,
+                    0,
+                    task.progress().get(),
+                    timeFactory.getCurrentTime(),
+                    null,
+                    null,
+                    false
+            ));
+        });
+        signalTaskAdded();
+    }
+
+    @Override
+    public EmbeddingTask claim() throws InterruptedException {
+        while (true) {
+            Optional<EmbeddingTask> task = transactionTemplate.execute(status -> tryClaim());
+            if (task != null && task.isPresent())
+                return task.get();
+
+            lock.lockInterruptibly();
+            try {
+                taskAdded.await(pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private Optional<EmbeddingTask> tryClaim() {
+        OffsetDateTime now = timeFactory.getCurrentTime();
+        Optional<EmbeddingBacklogEntry> next = repository.findNextOverdueForUpdate(now.toInstant(),
+                now.minus(maxWait).toInstant());
+        if (next.isEmpty()) {
+            EmbeddingPriority preferred = scheduler.selectByWeight(EnumSet.allOf(EmbeddingPriority.class));
+            next = repository.findNextClaimableForUpdate(now.toInstant(), preferred.name());
+        }
+        if (next.isEmpty())
+            next = repository.findNextClaimableForUpdate(now.toInstant());
+        return next.map(entry -> {
+            if (entry.getLeaseOwner() != null)
+                log.warn("Reclaiming embedding task for source {} whose lease of instance {} expired",
+                        entry.getSourceId(), entry.getLeaseOwner());
+            entry.setLeaseOwner(instanceId);
+            entry.setLeaseExpiresAt(now.plus(leaseDuration));
+            repository.save(entry);
+            scheduler.recordWait(entry.getPriority(), Duration.between(entry.getEnqueuedAt(), now));
+            EmbeddingTask task = toTask(entry);
+            task.isProcessing().set(true);
+            claimedTasks.put(task.sourceId(), task);
+            return task;
+        });
+    }
+
+    @Override
+    public void release(EmbeddingTask task) {
+        if (!claimedTasks.remove(task.sourceId(), task))
+            return;
+        transactionTemplate.executeWithoutResult(status ->
+                findOwnedForUpdate(task.sourceId()).ifPresent(entry -> {
+                    entry.setLeaseOwner(null);
+                    entry.setLeaseExpiresAt(null);
+                    entry.setProgress(task.progress().get());
+                    repository.save(entry);
+                }));
+        signalTaskAdded();
+    }
+
+    @Override
+    public Optional<EmbeddingTask> remove(EmbeddingTask task) {
+        if (task.isProcessing().get()) {
+            // called by the worker which has processed the task
+            if (!claimedTasks.remove(task.sourceId(), task))
+                return Optional.empty(); // the lease has been lost
+            transactionTemplate.executeWithoutResult(status ->
+                    repository.deleteByIdAndLeaseOwner(task.sourceId(), instanceId));
+            return Optional.of(task);
+        }
+
+        RemoveResult result = transactionTemplate.execute(status -> {
+            Optional<EmbeddingBacklogEntry> optEntry = repository.findByIdForUpdate(task.sourceId());
+            if (optEntry.isEmpty())
+                return new RemoveResult(null, false);
+            EmbeddingBacklogEntry entry = optEntry.get();
+            if (instanceId.equals(entry.getLeaseOwner())) {
+                repository.delete(entry);
+                EmbeddingTask claimedTask = claimedTasks.remove(task.sourceId());
+                return new RemoveResult(claimedTask != null ? claimedTask : toTask(entry), false);
+            }
+            if (!isLeased(entry)) {
+                repository.delete(entry);
+                return new RemoveResult(toTask(entry), false);
+            }
+            entry.setCancelled(true);
+            repository.save(entry);
+            return new RemoveResult(toTask(entry), true);
+        });
+        if (result == null || result.task() == null)
+            return Optional.empty();
+        if (result.leasedByOtherInstance())
+            awaitRemoteRemoval(task.sourceId());
+        return Optional.of(result.task());
+    }
+
+    /**
+     * Waits until another instance has stopped processing a cancelled task and deleted it,
+     * or until its lease has expired.
+     */
+    private void awaitRemoteRemoval(UUID sourceId) {
+        log.debug("Waiting for another instance to stop processing the embedding task for source {}", sourceId);
+        while (true) {
+            try {
+                Thread.sleep(pollInterval);
+            } catch (InterruptedException e) {
+                // Interrupting the thread may cause the deletion to happen too early
+                Thread.currentThread().interrupt();
+                log.warn("Interrupted while waiting for another instance to stop processing source {}", sourceId, e);
+                return;
+            }
+            Boolean done = transactionTemplate.execute(status -> {
+                Optional<EmbeddingBacklogEntry> entry = repository.findByIdForUpdate(sourceId);
+                if (entry.isEmpty())
+                    return true;
+                if (isLeased(entry.get()))
+                    return false;
+                repository.delete(entry.get());
+                return true;
+            });
+            if (Boolean.TRUE.equals(done))
+                return;
+        }
+    }
+
+    @Override
+    public void defer(EmbeddingTask task) {
+        if (!claimedTasks.remove(task.sourceId(), task))
+            return;
+        transactionTemplate.executeWithoutResult(status ->
+                findOwnedForUpdate(task.sourceId()).ifPresent(entry -> {
+                    entry.setLeaseOwner(null);
+                    entry.setLeaseExpiresAt(null);
+                    entry.setProgress(task.progress().get());
+                    entry.setPriority(EmbeddingPriority.BACKGROUND);
+                    entry.setEnqueuedAt(timeFactory.getCurrentTime());
+                    entry.setAttempts(entry.getAttempts() + 1);
+                    repository.save(entry);
+                }));
+        signalTaskAdded();
+    }
+
+    /**
+     * Saves the progress of the task and renews its lease, so a worker taking over the task after a crash or an
+     * expired lease resumes after the last persisted batch.
+     * If the lease has been taken over by another instance in the meantime, the task is cancelled.
+     */
+    @Override
+    public void checkpoint(EmbeddingTask task) {
+        if (claimedTasks.get(task.sourceId()) != task)
+            return;
+        OffsetDateTime expiresAt = timeFactory.getCurrentTime().plus(leaseDuration);
+        Integer updated = transactionTemplate.execute(status ->
+                repository.checkpoint(task.sourceId(), instanceId, task.progress().get(), expiresAt));
+        if (updated != null && updated == 0 && claimedTasks.remove(task.sourceId(), task)) {
+            log.warn("Lost the lease of the embedding task for source {}, stopping to process it", task.sourceId());
+            task.isCancelled().set(true);
+        }
+    }
+
+    /**
+     * Returns the ids of all sources with pending tasks of all instances.
+     */
+    @Override
+    public Collection<UUID> getSourceIds() {
+        return Set.copyOf(repository.findAllSourceIds());
+    }
+
+    /**
+     * Renews the leases of all tasks claimed by this instance.
+     * Tasks which have been cancelled by another instance or whose lease has been taken over by another instance
+     * are cancelled, so the worker stops processing them.
+     * Cancelled tasks are deleted once the worker has stopped.
+     */
+    @Scheduled(fixedDelayString = "${civicsage.ai.embedding.backlog.heartbeat-interval:30s}")
+    public void heartbeat() {
+        transactionTemplate.executeWithoutResult(status ->
+                repository.deleteCancelledWithExpiredLease(timeFactory.getCurrentTime()));
+        if (claimedTasks.isEmpty())
+            return;
+
+        Set<UUID> sourceIds = Set.copyOf(claimedTasks.keySet());
+        OffsetDateTime expiresAt = timeFactory.getCurrentTime().plus(leaseDuration);
+        Set<UUID> leased = new HashSet<>();
+        Set<UUID> cancelled = new HashSet<>();
+        transactionTemplate.executeWithoutResult(status -> {
+            repository.renewLeases(sourceIds, instanceId, expiresAt);
+            leased.addAll(repository.findLeasedSourceIds(sourceIds, instanceId));
+            cancelled.addAll(repository.findCancelledSourceIdsByLeaseOwner(instanceId));
+        });
+
+        for (UUID sourceId : sourceIds) {
+            if (!leased.contains(sourceId)) {
+                EmbeddingTask task = claimedTasks.remove(sourceId);
+                if (task != null) {
+                    log.warn("Lost the lease of the embedding task for source {}, stopping to process it", sourceId);
+                    task.isCancelled().set(true);
+                }
+            } else if (cancelled.contains(sourceId)) {
+                EmbeddingTask task = claimedTasks.remove(sourceId);
+                if (task != null) {
+                    log.info("Embedding task for source {} has been cancelled by another instance", sourceId);
+                    task.isCancelled().set(true);
+                    deleteWhenDone(task);
+                }
+            }
+        }
+    }
+
+    private void deleteWhenDone(EmbeddingTask task) {
+        Thread.ofVirtual()
+                .name("embedding-backlog-cancellation-" + task.sourceId())
+                .start(() -> {
+                    try {
+                        task.doneLatch().await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    transactionTemplate.executeWithoutResult(status ->
+                            repository.deleteByIdAndLeaseOwner(task.sourceId(), instanceId));
+                });
+    }
+
+    private Optional<EmbeddingBacklogEntry> findOwnedForUpdate(UUID sourceId) {
+        return repository.findByIdForUpdate(sourceId)
+                .filter(entry -> instanceId.equals(entry.getLeaseOwner()));
+    }
+
+    private boolean isLeased(EmbeddingBacklogEntry entry) {
+        return entry.getLeaseOwner() != null
+                && entry.getLeaseExpiresAt() != null
+                && entry.getLeaseExpiresAt().isAfter(timeFactory.getCurrentTime());
+    }
+
+    private EmbeddingTask toTask(EmbeddingBacklogEntry entry) {
+        EmbeddingTask task = new EmbeddingTask(
+                entry.getSourceId(),
+                entry.getDocuments().stream()
+                        .map(StoredDocument::toDocument)
+                        .toList()
+        );
+        task.progress().set(entry.getProgress());
+        return task;
+    }
+
+    private void signalTaskAdded() {
+        lock.lock();
+        try {
+            taskAdded.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private record RemoveResult(EmbeddingTask task, boolean leasedByOtherInstance) {
+    }
+
+}
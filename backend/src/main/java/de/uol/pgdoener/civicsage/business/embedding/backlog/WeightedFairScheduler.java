@@ -0,0 +1,99 @@
+package de.uol.pgdoener.civicsage.business.embedding.backlog;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Decides from which {@link EmbeddingPriority} class the next task is taken.
+ * <p>
+ * Classes are chosen using smooth weighted round-robin among the classes with pending tasks,
+ * so no class starves and a steady stream of interactive tasks only slows down bulk work
+ * according to the weights.
+ * Additionally, tasks age: if the oldest task of a class has waited longer than the maximum wait time,
+ * the class with the longest waiting task is chosen regardless of the weights.
+ * <p>
+ * The wait time of claimed tasks is recorded per class in the {@value #WAIT_TIMER_NAME} timer.
+ */
+public class WeightedFairScheduler {
+
+    public static final String WAIT_TIMER_NAME = "civicsage.embedding.backlog.wait";
+
+    private final long maxWaitNanos;
+    private final Map<EmbeddingPriority, Integer> currentWeights = new EnumMap<>(EmbeddingPriority.class);
+    private final Map<EmbeddingPriority, Timer> waitTimers = new EnumMap<>(EmbeddingPriority.class);
+
+    public WeightedFairScheduler(Duration maxWait, MeterRegistry meterRegistry) {
+        this.maxWaitNanos = maxWait.toNanos();
+        for (EmbeddingPriority priority : EmbeddingPriority.values()) {
+            currentWeights.put(priority, 0);
+            waitTimers.put(priority, Timer.builder(WAIT_TIMER_NAME)
+                    .description("Time embedding tasks wait in the backlog before they are claimed")
+                    .tag("priority", priority.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * Selects the class to take the next task from.
+     *
+     * @param headEnqueuedAt returns the {@link System#nanoTime()} at which the oldest pending task of a class
+     *                       has been enqueued, or null if the class has no pending tasks
+     * @return the selected class or null if no class has pending tasks
+     */
+    public synchronized EmbeddingPriority select(Function<EmbeddingPriority, Long> headEnqueuedAt) {
+        long now = System.nanoTime();
+        EmbeddingPriority overdue = null;
+        long overdueEnqueuedAt = Long.MAX_VALUE;
+        Set<EmbeddingPriority> pending = EnumSet.noneOf(EmbeddingPriority.class);
+        for (EmbeddingPriority priority : EmbeddingPriority.values()) {
+            Long enqueuedAt = headEnqueuedAt.apply(priority);
+            if (enqueuedAt == null)
+                continue;
+            pending.add(priority);
+            if (now - enqueuedAt > maxWaitNanos && enqueuedAt < overdueEnqueuedAt) {
+                overdue = priority;
+                overdueEnqueuedAt = enqueuedAt;
+            }
+        }
+        if (overdue != null)
+            return overdue;
+        return selectByWeight(pending);
+    }
+
+    /**
+     * Selects one of the given classes using smooth weighted round-robin.
+     *
+     * @param candidates the classes with pending tasks
+     * @return the selected class or null if there are no candidates
+     */
+    public synchronized EmbeddingPriority selectByWeight(Collection<EmbeddingPriority> candidates) {
+        EmbeddingPriority selected = null;
+        int totalWeight = 0;
+        for (EmbeddingPriority priority : candidates) {
+            int current = currentWeights.get(priority) + priority.getWeight();
+            currentWeights.put(priority, current);
+            totalWeight += priority.getWeight();
+            if (selected == null || current > currentWeights.get(selected))
+                selected = priority;
+        }
+        if (selected != null)
+            currentWeights.put(selected, currentWeights.get(selected) - totalWeight);
+        return selected;
+    }
+
+    /**
+     * Records how long a task has waited before it has been claimed.
+     */
+    public void recordWait(EmbeddingPriority priority, Duration wait) {
+        waitTimers.get(priority).record(wait);
+    }
+
+    public void recordWait(EmbeddingPriority priority, long enqueuedAtNanos) {
+        recordWait(priority, Duration.ofNanos(System.nanoTime() - enqueuedAtNanos));
+    }
+
+}
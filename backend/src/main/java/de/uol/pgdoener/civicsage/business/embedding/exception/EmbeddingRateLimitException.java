@@ -0,0 +1,15 @@
+package de.uol.pgdoener.civicsage.business.embedding.exception;
+
+import de.uol.pgdoener.civicsage.business.embedding.EmbeddingRateLimiter;
+
+/**
+ * This exception is thrown if a request to the embedding model cannot be sent in time,
+ * because the {@link EmbeddingRateLimiter} does not permit it.
+ */
+public class EmbeddingRateLimitException extends RuntimeException {
+
+    public EmbeddingRateLimitException(String message) {
+        super(message);
+    }
+
+}
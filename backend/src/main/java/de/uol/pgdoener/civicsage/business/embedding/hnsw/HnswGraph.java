@@ -0,0 +1,777 @@
+package de.uol.pgdoener.civicsage.business.embedding.hnsw;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.IntPredicate;
+
+/**
+ * A hierarchical navigable small world graph for approximate nearest neighbour search.
+ * <p>
+ * Vectors and neighbour lists are kept in primitive arrays indexed by the number of the node,
+ * so there are no objects per vector. Only nodes on the upper levels, about {@code 1 / m} of all nodes,
+ * have an additional array for their upper neighbour lists.
+ * <p>
+ * Nodes cannot be removed from the graph. Deleted nodes are marked and still used to navigate the graph,
+ * but are never returned as results.
+ * <p>
+ * Optionally, a compact {@link Quantization quantized} code is kept next to each vector. Searches then navigate
+ * the graph using the codes, collect an oversampled list of candidates and rescore it with the full vectors.
+ * The graph itself is always built with the full vectors.
+ * <p>
+ * The levels and neighbour lists can be {@link #write(DataOutput) written} and {@link #read read} again, so the graph
+ * does not have to be rebuilt. The vectors are not written, they are {@link #restore(int, float[]) restored} from
+ * where the caller keeps them anyway.
+ * <p>
+ * This class is not thread-safe. Concurrent searches are safe as long as no node is added concurrently.
+ *
+ * @see <a href="https://arxiv.org/abs/1603.09320">Efficient and robust approximate nearest neighbor search using
+ * Hierarchical Navigable Small World graphs</a>
+ */
+public class HnswGraph {
+
+    private final int dimensions;
+    private final Metric metric;
+    /**
+     * The maximum number of neighbours of a node on the upper levels.
+     */
+    private final int m;
+    /**
+     * The maximum number of neighbours of a node on level 0.
+     */
+    private final int maxM0;
+    private final int efConstruction;
+    private final Quantization quantization;
+    /**
+     * The factor by which the number of candidates is multiplied before they are rescored with the full vectors.
+     */
+    private final int oversampling;
+    /**
+     * The number of longs of the binary code of a vector.
+     */
+    private final int binaryWords;
+    private final double levelMultiplier;
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    private float[] vectors;
+    private int[] levels;
+    /**
+     * The neighbours on level 0. Each node has a slot of {@code maxM0 + 1} entries,
+     * the number of neighbours followed by their nodes.
+     */
+    private int[] level0;
+    /**
+     * The neighbours on the upper levels in the same layout as {@link #level0}, {@code null} for nodes on level 0.
+     */
+    private int[][] upper;
+    private byte[] int8Codes;
+    /**
+     * The factor to multiply the int8 codes of a vector with to restore its values.
+     */
+    private float[] int8Scales;
+    private long[] binaryCodes;
+    private final BitSet deleted = new BitSet();
+
+    private int size = 0;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    public HnswGraph(int dimensions, Metric metric, int m, int efConstruction) {
+        this(dimensions, metric, m, efConstruction, Quantization.NONE, 1);
+    }
+
+    /**
+     * @param quantization the codes to navigate the graph with when searching
+     * @param oversampling the factor by which the number of candidates is multiplied before they are rescored
+     *                     with the full vectors, ignored without quantization
+     */
+    public HnswGraph(int dimensions, Metric metric, int m, int efConstruction, Quantization quantization, int oversampling) {
+        if (dimensions <= 0 || m < 2 || efConstruction < 1 || oversampling < 1)
+            throw new IllegalArgumentException("Invalid parameters for HNSW graph");
+        this.dimensions = dimensions;
+        this.metric = metric;
+        this.m = m;
+        this.maxM0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.quantization = quantization;
+        this.oversampling = oversampling;
+        this.binaryWords = (dimensions + Long.SIZE - 1) / Long.SIZE;
+        this.levelMultiplier = 1 / Math.log(m);
+        int initialCapacity = 1024;
+        this.vectors = new float[initialCapacity * dimensions];
+        this.levels = new int[initialCapacity];
+        this.level0 = new int[initialCapacity * (maxM0 + 1)];
+        this.upper = new int[initialCapacity][];
+        switch (quantization) {
+            case NONE -> {
+            }
+            case INT8 -> {
+                this.int8Codes = new byte[initialCapacity * dimensions];
+                this.int8Scales = new float[initialCapacity];
+            }
+            case BINARY -> this.binaryCodes = new long[initialCapacity * binaryWords];
+        }
+    }
+
+    /**
+     * Adds a vector to the graph.
+     *
+     * @param vector the vector to add
+     * @return the node of the vector, which is the number of nodes added before
+     */
+    public int add(float[] vector) {
+        if (vector.length != dimensions)
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions, but got " + vector.length);
+        int node = size;
+        ensureCapacity(node + 1);
+        System.arraycopy(metric.prepare(vector), 0, vectors, node * dimensions, dimensions);
+        encode(node);
+        int level = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+        levels[node] = level;
+        if (level > 0)
+            upper[node] = new int[level * (m + 1)];
+        size++;
+
+        if (entryPoint == -1) {
+            entryPoint = node;
+            maxLevel = level;
+            return node;
+        }
+
+        float[] query = Arrays.copyOfRange(vectors, node * dimensions, (node + 1) * dimensions);
+        NodeDistance toQuery = other -> distance(query, other);
+        int current = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            current = greedySearch(toQuery, current, l);
+        }
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            NodeHeap candidates = searchLayer(toQuery, current, efConstruction, l);
+            int[] selected = selectNeighbours(candidates.sortedAscending(), maxNeighbours(l));
+            setNeighbours(node, l, selected);
+            for (int neighbour : selected) {
+                connect(neighbour, node, l);
+            }
+            current = candidates.closest();
+        }
+
+        if (level > maxLevel) {
+            entryPoint = node;
+            maxLevel = level;
+        }
+        return node;
+    }
+
+    /**
+     * Writes the levels and neighbour lists of all nodes.
+     *
+     * @param out the output to write to
+     */
+    void write(DataOutput out) throws IOException {
+        out.writeInt(dimensions);
+        out.writeUTF(metric.name());
+        out.writeInt(m);
+        out.writeInt(size);
+        out.writeInt(entryPoint);
+        out.writeInt(maxLevel);
+        for (int node = 0; node < size; node++) {
+            out.writeInt(levels[node]);
+            for (int level = 0; level <= levels[node]; level++) {
+                int[] neighbours = neighbours(node, level);
+                int offset = offset(node, level);
+                for (int i = 0; i <= neighbours[offset]; i++) {
+                    out.writeInt(neighbours[offset + i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a graph written by {@link #write(DataOutput)}. The vectors of all nodes have to be
+     * {@link #restore(int, float[]) restored} before the graph is searched or nodes are added.
+     *
+     * @throws IllegalStateException if the graph was written with another metric or {@code m}
+     */
+    static HnswGraph read(DataInput in, Metric metric, int m, int efConstruction,
+                          Quantization quantization, int oversampling) throws IOException {
+        int dimensions = in.readInt();
+        if (!in.readUTF().equals(metric.name()) || in.readInt() != m)
+            throw new IllegalStateException("The graph was built with other parameters");
+        HnswGraph graph = new HnswGraph(dimensions, metric, m, efConstruction, quantization, oversampling);
+        int size = in.readInt();
+        graph.ensureCapacity(size);
+        graph.entryPoint = in.readInt();
+        graph.maxLevel = in.readInt();
+        for (int node = 0; node < size; node++) {
+            int level = in.readInt();
+            graph.levels[node] = level;
+            if (level > 0)
+                graph.upper[node] = new int[level * (m + 1)];
+            for (int l = 0; l <= level; l++) {
+                int[] neighbours = graph.neighbours(node, l);
+                int offset = graph.offset(node, l);
+                int count = in.readInt();
+                if (count > graph.maxNeighbours(l))
+                    throw new IllegalStateException("Node " + node + " has too many neighbours");
+                neighbours[offset] = count;
+                for (int i = 1; i <= count; i++) {
+                    neighbours[offset + i] = in.readInt();
+                }
+            }
+        }
+        graph.size = size;
+        return graph;
+    }
+
+    /**
+     * Sets the vector of a node of a graph which has been {@link #read read}.
+     *
+     * @param node   the node
+     * @param vector the vector the node has been added with
+     */
+    void restore(int node, float[] vector) {
+        if (node >= size)
+            throw new IllegalArgumentException("Node " + node + " does not exist");
+        if (vector.length != dimensions)
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions, but got " + vector.length);
+        System.arraycopy(metric.prepare(vector), 0, vectors, node * dimensions, dimensions);
+        encode(node);
+    }
+
+    /**
+     * Marks a node as deleted, so it is not returned by searches anymore.
+     *
+     * @param node the node to delete
+     */
+    public void delete(int node) {
+        deleted.set(node);
+    }
+
+    public boolean isDeleted(int node) {
+        return deleted.get(node);
+    }
+
+    /**
+     * @return the number of nodes including deleted ones
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of nodes which are not deleted
+     */
+    public int liveSize() {
+        return size - deleted.cardinality();
+    }
+
+    /**
+     * Searches the approximate nearest neighbours of the query.
+     * <p>
+     * With quantization, the graph is navigated using the codes and at least {@code k * oversampling} candidates
+     * are rescored with the full vectors, so the returned distances are always exact.
+     *
+     * @param query  the query vector
+     * @param k      the maximum number of results
+     * @param ef     the size of the dynamic candidate list, larger values increase the recall
+     * @param accept decides which nodes may be returned
+     * @return the accepted nodes in ascending order of their distance
+     */
+    public List<Result> search(float[] query, int k, int ef, IntPredicate accept) {
+        if (entryPoint == -1 || k <= 0)
+            return List.of();
+        float[] prepared = metric.prepare(query);
+        NodeDistance toQuery = approximateDistance(prepared);
+        int current = entryPoint;
+        for (int l = maxLevel; l > 0; l--) {
+            current = greedySearch(toQuery, current, l);
+        }
+
+        if (quantization == Quantization.NONE) {
+            NodeHeap candidates = searchLayer(toQuery, current, Math.max(ef, k), 0);
+            List<Result> results = new ArrayList<>(k);
+            for (Result result : candidates.sortedAscending()) {
+                if (results.size() == k)
+                    break;
+                if (!deleted.get(result.node()) && accept.test(result.node()))
+                    results.add(result);
+            }
+            return results;
+        }
+
+        NodeHeap candidates = searchLayer(toQuery, current, Math.max(ef, k * oversampling), 0);
+        NodeHeap results = new NodeHeap(k + 1);
+        for (Result candidate : candidates.sortedAscending()) {
+            if (!deleted.get(candidate.node()) && accept.test(candidate.node()))
+                results.pushBounded(candidate.node(), distance(prepared, candidate.node()), k);
+        }
+        return results.sortedAscending();
+    }
+
+    /**
+     * Compares the query with all nodes.
+     *
+     * @param query  the query vector
+     * @param k      the maximum number of results
+     * @param accept decides which nodes may be returned
+     * @return the accepted nodes in ascending order of their distance
+     */
+    public List<Result> exactSearch(float[] query, int k, IntPredicate accept) {
+        float[] prepared = metric.prepare(query);
+        NodeHeap results = new NodeHeap(k + 1);
+        for (int node = 0; node < size; node++) {
+            if (deleted.get(node) || !accept.test(node))
+                continue;
+            results.pushBounded(node, distance(prepared, node), k);
+        }
+        return results.sortedAscending();
+    }
+
+    /**
+     * @return a copy of the vector of the node as stored, i.e. normalized for {@link Metric#COSINE}
+     */
+    public float[] vector(int node) {
+        return Arrays.copyOfRange(vectors, node * dimensions, (node + 1) * dimensions);
+    }
+
+    /**
+     * @return the distance between the query and the vector of the node
+     */
+    public float distance(float[] query, int node) {
+        return metric.distance(query, vectors, node * dimensions, dimensions);
+    }
+
+    /**
+     * @return the distance between the prepared query and a node, approximated with the codes if there are any
+     */
+    private NodeDistance approximateDistance(float[] query) {
+        return switch (quantization) {
+            case NONE -> node -> distance(query, node);
+            case INT8 -> node -> metric.distance(query, int8Codes, node * dimensions, int8Scales[node], dimensions);
+            case BINARY -> {
+                long[] code = new long[binaryWords];
+                encodeSigns(query, 0, code, 0);
+                yield node -> hammingDistance(code, node);
+            }
+        };
+    }
+
+    private void encode(int node) {
+        int offset = node * dimensions;
+        switch (quantization) {
+            case NONE -> {
+            }
+            case INT8 -> {
+                float max = 0;
+                for (int i = 0; i < dimensions; i++) {
+                    max = Math.max(max, Math.abs(vectors[offset + i]));
+                }
+                float scale = max / Byte.MAX_VALUE;
+                int8Scales[node] = scale;
+                if (scale == 0)
+                    return;
+                for (int i = 0; i < dimensions; i++) {
+                    int8Codes[offset + i] = (byte) Math.round(vectors[offset + i] / scale);
+                }
+            }
+            case BINARY -> encodeSigns(vectors, offset, binaryCodes, node * binaryWords);
+        }
+    }
+
+    /**
+     * Sets one bit per positive value of the vector. The target has to be zeroed.
+     */
+    private void encodeSigns(float[] vector, int offset, long[] target, int targetOffset) {
+        for (int i = 0; i < dimensions; i++) {
+            if (vector[offset + i] > 0)
+                target[targetOffset + i / Long.SIZE] |= 1L << (i % Long.SIZE);
+        }
+    }
+
+    private float hammingDistance(long[] code, int node) {
+        int offset = node * binaryWords;
+        int bits = 0;
+        for (int i = 0; i < binaryWords; i++) {
+            bits += Long.bitCount(code[i] ^ binaryCodes[offset + i]);
+        }
+        return bits;
+    }
+
+    private int greedySearch(NodeDistance toQuery, int entry, int level) {
+        int current = entry;
+        float currentDistance = toQuery.to(current);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int[] neighbours = neighbours(current, level);
+            int offset = offset(current, level);
+            for (int i = 1; i <= neighbours[offset]; i++) {
+                int neighbour = neighbours[offset + i];
+                float d = toQuery.to(neighbour);
+                if (d < currentDistance) {
+                    current = neighbour;
+                    currentDistance = d;
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Searches the {@code ef} closest nodes on one level, including deleted nodes.
+     */
+    private NodeHeap searchLayer(NodeDistance toQuery, int entry, int ef, int level) {
+        BitSet visited = new BitSet(size);
+        NodeHeap candidates = new NodeHeap(ef + 1);
+        NodeHeap results = new NodeHeap(ef + 1);
+        float entryDistance = toQuery.to(entry);
+        candidates.push(entry, -entryDistance);
+        results.push(entry, entryDistance);
+        visited.set(entry);
+
+        while (!candidates.isEmpty()) {
+            float candidateDistance = -candidates.topDistance();
+            int candidate = candidates.pop();
+            if (results.size() >= ef && candidateDistance > results.topDistance())
+                break;
+            int[] neighbours = neighbours(candidate, level);
+            int offset = offset(candidate, level);
+            for (int i = 1; i <= neighbours[offset]; i++) {
+                int neighbour = neighbours[offset + i];
+                if (visited.get(neighbour))
+                    continue;
+                visited.set(neighbour);
+                float d = toQuery.to(neighbour);
+                if (results.size() < ef || d < results.topDistance()) {
+                    candidates.push(neighbour, -d);
+                    results.pushBounded(neighbour, d, ef);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Selects diverse neighbours: a candidate is only selected if it is closer to the new node than to all
+     * neighbours selected before. Remaining slots are filled with the closest discarded candidates.
+     */
+    private int[] selectNeighbours(List<Result> candidates, int maxNeighbours) {
+        int[] selected = new int[Math.min(maxNeighbours, candidates.size())];
+        int count = 0;
+        List<Result> discarded = new ArrayList<>();
+        float[] candidateVector = new float[dimensions];
+        for (Result candidate : candidates) {
+            if (count == selected.length)
+                break;
+            System.arraycopy(vectors, candidate.node() * dimensions, candidateVector, 0, dimensions);
+            boolean diverse = true;
+            for (int i = 0; i < count; i++) {
+                if (distance(candidateVector, selected[i]) < candidate.distance()) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse)
+                selected[count++] = candidate.node();
+            else
+                discarded.add(candidate);
+        }
+        for (int i = 0; count < selected.length && i < discarded.size(); i++) {
+            selected[count++] = discarded.get(i).node();
+        }
+        return selected;
+    }
+
+    private void connect(int node, int neighbour, int level) {
+        int[] neighbours = neighbours(node, level);
+        int offset = offset(node, level);
+        int count = neighbours[offset];
+        int maxNeighbours = maxNeighbours(level);
+        if (count < maxNeighbours) {
+            neighbours[offset + count + 1] = neighbour;
+            neighbours[offset]++;
+            return;
+        }
+
+        float[] vector = Arrays.copyOfRange(vectors, node * dimensions, (node + 1) * dimensions);
+        NodeHeap candidates = new NodeHeap(count + 2);
+        for (int i = 1; i <= count; i++) {
+            candidates.push(neighbours[offset + i], distance(vector, neighbours[offset + i]));
+        }
+        candidates.push(neighbour, distance(vector, neighbour));
+        setNeighbours(node, level, selectNeighbours(candidates.sortedAscending(), maxNeighbours));
+    }
+
+    private void setNeighbours(int node, int level, int[] selected) {
+        int[] neighbours = neighbours(node, level);
+        int offset = offset(node, level);
+        neighbours[offset] = selected.length;
+        System.arraycopy(selected, 0, neighbours, offset + 1, selected.length);
+    }
+
+    private int[] neighbours(int node, int level) {
+        return level == 0 ? level0 : upper[node];
+    }
+
+    private int offset(int node, int level) {
+        return level == 0 ? node * (maxM0 + 1) : (level - 1) * (m + 1);
+    }
+
+    private int maxNeighbours(int level) {
+        return level == 0 ? maxM0 : m;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= levels.length)
+            return;
+        int newCapacity = Math.max(capacity, levels.length + (levels.length >> 1));
+        vectors = Arrays.copyOf(vectors, newCapacity * dimensions);
+        levels = Arrays.copyOf(levels, newCapacity);
+        level0 = Arrays.copyOf(level0, newCapacity * (maxM0 + 1));
+        upper = Arrays.copyOf(upper, newCapacity);
+        if (int8Codes != null) {
+            int8Codes = Arrays.copyOf(int8Codes, newCapacity * dimensions);
+            int8Scales = Arrays.copyOf(int8Scales, newCapacity);
+        }
+        if (binaryCodes != null)
+            binaryCodes = Arrays.copyOf(binaryCodes, newCapacity * binaryWords);
+    }
+
+    @FunctionalInterface
+    private interface NodeDistance {
+        float to(int node);
+    }
+
+    /**
+     * A node found by a search.
+     *
+     * @param node     the node
+     * @param distance the distance of its vector to the query
+     */
+    public record Result(int node, float distance) {
+    }
+
+    /**
+     * The compact codes kept next to the full vectors.
+     */
+    public enum Quantization {
+        /**
+         * Only the full vectors are used.
+         */
+        NONE,
+        /**
+         * One signed byte per dimension, scaled by the largest absolute value of the vector.
+         * The codes are a quarter of the size of the full vectors.
+         */
+        INT8,
+        /**
+         * One bit per dimension, set if the value is positive. The hamming distance between the codes approximates
+         * the angle between the vectors, so this is best suited for {@link Metric#COSINE}.
+         * The codes are a 32nd of the size of the full vectors.
+         */
+        BINARY
+    }
+
+    /**
+     * The metric used to compare vectors. Smaller distances mean more similar vectors.
+     */
+    public enum Metric {
+        /**
+         * One minus the cosine similarity. Vectors are normalized when they are added, so the dot product can be
+         * used to compare them.
+         */
+        COSINE {
+            @Override
+            float[] prepare(float[] vector) {
+                double norm = 0;
+                for (float v : vector) {
+                    norm += v * v;
+                }
+                norm = Math.sqrt(norm);
+                float[] normalized = new float[vector.length];
+                if (norm == 0)
+                    return normalized;
+                for (int i = 0; i < vector.length; i++) {
+                    normalized[i] = (float) (vector[i] / norm);
+                }
+                return normalized;
+            }
+
+            @Override
+            float distance(float[] query, float[] vectors, int offset, int dimensions) {
+                return 1 - dot(query, vectors, offset, dimensions);
+            }
+
+            @Override
+            float distance(float[] query, byte[] codes, int offset, float scale, int dimensions) {
+                return 1 - scale * dot(query, codes, offset, dimensions);
+            }
+        },
+        EUCLIDEAN {
+            @Override
+            float distance(float[] query, float[] vectors, int offset, int dimensions) {
+                float sum = 0;
+                for (int i = 0; i < dimensions; i++) {
+                    float difference = query[i] - vectors[offset + i];
+                    sum += difference * difference;
+                }
+                return (float) Math.sqrt(sum);
+            }
+
+            @Override
+            float distance(float[] query, byte[] codes, int offset, float scale, int dimensions) {
+                float sum = 0;
+                for (int i = 0; i < dimensions; i++) {
+                    float difference = query[i] - scale * codes[offset + i];
+                    sum += difference * difference;
+                }
+                return (float) Math.sqrt(sum);
+            }
+        },
+        NEGATIVE_INNER_PRODUCT {
+            @Override
+            float distance(float[] query, float[] vectors, int offset, int dimensions) {
+                return -dot(query, vectors, offset, dimensions);
+            }
+
+            @Override
+            float distance(float[] query, byte[] codes, int offset, float scale, int dimensions) {
+                return -scale * dot(query, codes, offset, dimensions);
+            }
+        };
+
+        float[] prepare(float[] vector) {
+            return vector;
+        }
+
+        abstract float distance(float[] query, float[] vectors, int offset, int dimensions);
+
+        /**
+         * Compares the query with an int8 code, whose values are multiplied with the scale to restore the vector.
+         */
+        abstract float distance(float[] query, byte[] codes, int offset, float scale, int dimensions);
+
+        private static float dot(float[] query, float[] vectors, int offset, int dimensions) {
+            float sum = 0;
+            for (int i = 0; i < dimensions; i++) {
+                sum += query[i] * vectors[offset + i];
+            }
+            return sum;
+        }
+
+        private static float dot(float[] query, byte[] codes, int offset, int dimensions) {
+            float sum = 0;
+            for (int i = 0; i < dimensions; i++) {
+                sum += query[i] * codes[offset + i];
+            }
+            return sum;
+        }
+    }
+
+    /**
+     * A binary max-heap of nodes ordered by their distance.
+     * Min-heaps are emulated by pushing negated distances.
+     */
+    private static final class NodeHeap {
+
+        private int[] nodes;
+        private float[] distances;
+        private int size = 0;
+
+        NodeHeap(int capacity) {
+            nodes = new int[capacity];
+            distances = new float[capacity];
+        }
+
+        void push(int node, float distance) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                distances = Arrays.copyOf(distances, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (distances[parent] >= distance)
+                    break;
+                nodes[i] = nodes[parent];
+                distances[i] = distances[parent];
+                i = parent;
+            }
+            nodes[i] = node;
+            distances[i] = distance;
+        }
+
+        /**
+         * Pushes the node and removes the farthest node if the heap contains more than {@code bound} nodes.
+         */
+        void pushBounded(int node, float distance, int bound) {
+            if (size >= bound && distance >= distances[0])
+                return;
+            push(node, distance);
+            if (size > bound)
+                pop();
+        }
+
+        int pop() {
+            int top = nodes[0];
+            size--;
+            int lastNode = nodes[size];
+            float lastDistance = distances[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size)
+                    break;
+                if (child + 1 < size && distances[child + 1] > distances[child])
+                    child++;
+                if (distances[child] <= lastDistance)
+                    break;
+                nodes[i] = nodes[child];
+                distances[i] = distances[child];
+                i = child;
+            }
+            nodes[i] = lastNode;
+            distances[i] = lastDistance;
+            return top;
+        }
+
+        float topDistance() {
+            return distances[0];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int closest() {
+            int closest = nodes[0];
+            float closestDistance = distances[0];
+            for (int i = 1; i < size; i++) {
+                if (distances[i] < closestDistance) {
+                    closest = nodes[i];
+                    closestDistance = distances[i];
+                }
+            }
+            return closest;
+        }
+
+        List<Result> sortedAscending() {
+            Result[] results = new Result[size];
+            for (int i = 0; i < size; i++) {
+                results[i] = new Result(nodes[i], distances[i]);
+            }
+            Arrays.sort(results, (a, b) -> Float.compare(a.distance(), b.distance()));
+            return Arrays.asList(results);
+        }
+    }
+
+}
@@ -0,0 +1,304 @@
+package de.uol.pgdoener.civicsage.business.embedding.hnsw;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * An append-only log of the documents of a {@link HnswVectorStore}, stored in a memory-mapped file.
+ * <p>
+ * The file starts with a header containing a magic number, the version of the format and the length of the
+ * committed records. Records are only visible after the header has been updated, so a partially written record
+ * is ignored when the file is opened again. The file grows in steps and is remapped when it is full.
+ * It is mapped in segments of at most 1 GiB, so its size is not limited by the size of a single mapping.
+ * Records may span the boundary between two segments.
+ * <p>
+ * The HNSW graph itself is not stored in the log, see {@link HnswVectorStore} for how it is persisted.
+ */
+@Slf4j
+final class HnswStorage implements AutoCloseable {
+
+    private static final int MAGIC = 0x484E5357;
+    private static final int VERSION = 1;
+    private static final int LENGTH_OFFSET = 2 * Integer.BYTES;
+    private static final int HEADER_BYTES = LENGTH_OFFSET + Long.BYTES;
+    private static final long INITIAL_SIZE = 1 << 20;
+    private static final long SEGMENT_SIZE = 1L << 30;
+    private static final byte ADDED = 1;
+    private static final byte DELETED = 2;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final long segmentSize;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private long capacity;
+    private long length;
+
+    private HnswStorage(Path path, FileChannel channel, long segmentSize) {
+        this.path = path;
+        this.channel = channel;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Opens the log at the given path and creates it if it does not exist.
+     *
+     * @param path the path of the file
+     * @return the opened log
+     */
+    static HnswStorage open(Path path) {
+        return open(path, SEGMENT_SIZE);
+    }
+
+    /**
+     * @param segmentSize the maximum size of the mapped segments of the file
+     */
+    static HnswStorage open(Path path, long segmentSize) {
+        try {
+            if (path.getParent() != null)
+                Files.createDirectories(path.getParent());
+            FileChannel channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            HnswStorage storage = new HnswStorage(path, channel, segmentSize);
+            boolean created = channel.size() == 0;
+            storage.map(Math.max(channel.size(), INITIAL_SIZE));
+            MappedByteBuffer header = storage.segments.getFirst();
+            if (created) {
+                header.putInt(0, MAGIC);
+                header.putInt(Integer.BYTES, VERSION);
+                header.putLong(LENGTH_OFFSET, HEADER_BYTES);
+                header.force();
+            } else if (header.getInt(0) != MAGIC || header.getInt(Integer.BYTES) != VERSION) {
+                channel.close();
+                throw new IllegalStateException("Not a vector store file of a supported version: " + path);
+            }
+            storage.length = header.getLong(LENGTH_OFFSET);
+            return storage;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open vector store file " + path, e);
+        }
+    }
+
+    /**
+     * Writes a new log containing only the given records and replaces the log at the given path with it.
+     *
+     * @param path    the path of the log to replace
+     * @param records the records of the new log
+     */
+    static void rewrite(Path path, List<? extends Record> records) {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            Files.deleteIfExists(temporary);
+            try (HnswStorage storage = open(temporary)) {
+                storage.append(records);
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not rewrite vector store file " + path, e);
+        }
+    }
+
+    /**
+     * @return the length of the committed records including the header
+     */
+    long length() {
+        return length;
+    }
+
+    /**
+     * Reads all committed records in the order they have been appended.
+     *
+     * @param consumer receives the records
+     */
+    void replay(Consumer<Record> consumer) {
+        long position = HEADER_BYTES;
+        while (position < length) {
+            byte type = read(position, 1).get();
+            position++;
+            byte[] id = readBytes(position);
+            position += Integer.BYTES + id.length;
+            switch (type) {
+                case ADDED -> {
+                    float[] vector = new float[read(position, Integer.BYTES).getInt()];
+                    position += Integer.BYTES;
+                    read(position, vector.length * Float.BYTES).asFloatBuffer().get(vector);
+                    position += (long) vector.length * Float.BYTES;
+                    byte[] text = readBytes(position);
+                    position += Integer.BYTES + text.length;
+                    byte[] metadata = readBytes(position);
+                    position += Integer.BYTES + metadata.length;
+                    consumer.accept(new Added(new String(id, StandardCharsets.UTF_8), vector,
+                            new String(text, StandardCharsets.UTF_8), metadata));
+                }
+                case DELETED -> consumer.accept(new Deleted(new String(id, StandardCharsets.UTF_8)));
+                default -> throw new IllegalStateException("Corrupt vector store file " + path + " at " + position);
+            }
+        }
+    }
+
+    /**
+     * Appends the records and commits them.
+     * If writing a record fails, none of the records are committed and the next append overwrites them.
+     *
+     * @param records the records to append
+     */
+    void append(List<? extends Record> records) {
+        long position = length;
+        for (Record record : records) {
+            byte[] id = record.id().getBytes(StandardCharsets.UTF_8);
+            ByteBuffer encoded = switch (record) {
+                case Added added -> {
+                    byte[] text = added.text().getBytes(StandardCharsets.UTF_8);
+                    ByteBuffer buffer = ByteBuffer.allocate(1 + 4 * Integer.BYTES + id.length
+                            + added.vector().length * Float.BYTES + text.length + added.metadata().length);
+                    buffer.put(ADDED);
+                    putBytes(buffer, id);
+                    buffer.putInt(added.vector().length);
+                    for (float value : added.vector()) {
+                        buffer.putFloat(value);
+                    }
+                    putBytes(buffer, text);
+                    putBytes(buffer, added.metadata());
+                    yield buffer;
+                }
+                case Deleted ignored -> {
+                    ByteBuffer buffer = ByteBuffer.allocate(1 + Integer.BYTES + id.length);
+                    buffer.put(DELETED);
+                    putBytes(buffer, id);
+                    yield buffer;
+                }
+            };
+            ensureCapacity(position + encoded.capacity());
+            write(position, encoded.array());
+            position += encoded.capacity();
+        }
+        force();
+        length = position;
+        MappedByteBuffer header = segments.getFirst();
+        header.putLong(LENGTH_OFFSET, length);
+        header.force(0, HEADER_BYTES);
+    }
+
+    @Override
+    public void close() {
+        try {
+            force();
+            channel.close();
+        } catch (IOException e) {
+            log.error("Could not close vector store file {}", path, e);
+        }
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private byte[] readBytes(long position) {
+        int count = read(position, Integer.BYTES).getInt();
+        return read(position + Integer.BYTES, count).array();
+    }
+
+    /**
+     * Copies the bytes at the position, which may span several segments.
+     */
+    private ByteBuffer read(long position, int count) {
+        if (position + count > length)
+            throw new IllegalStateException("Corrupt vector store file " + path + " at " + position);
+        byte[] bytes = new byte[count];
+        int offset = 0;
+        while (offset < count) {
+            long current = position + offset;
+            MappedByteBuffer segment = segments.get((int) (current / segmentSize));
+            int index = (int) (current % segmentSize);
+            int chunk = Math.min(count - offset, segment.capacity() - index);
+            segment.get(index, bytes, offset, chunk);
+            offset += chunk;
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * Writes the bytes at the position, which may span several segments.
+     */
+    private void write(long position, byte[] bytes) {
+        int offset = 0;
+        while (offset < bytes.length) {
+            long current = position + offset;
+            MappedByteBuffer segment = segments.get((int) (current / segmentSize));
+            int index = (int) (current % segmentSize);
+            int chunk = Math.min(bytes.length - offset, segment.capacity() - index);
+            segment.put(index, bytes, offset, chunk);
+            offset += chunk;
+        }
+    }
+
+    private void force() {
+        segments.forEach(MappedByteBuffer::force);
+    }
+
+    private void ensureCapacity(long needed) {
+        if (needed <= capacity)
+            return;
+        try {
+            force();
+            map(Math.max(needed, 2 * capacity));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not grow vector store file " + path, e);
+        }
+    }
+
+    /**
+     * Maps the file with the given size, which grows the file if it is smaller.
+     * Segments which already have their full size are kept.
+     */
+    private void map(long size) throws IOException {
+        int count = (int) ((size + segmentSize - 1) / segmentSize);
+        for (int i = 0; i < count; i++) {
+            long start = i * segmentSize;
+            long segmentLength = Math.min(segmentSize, size - start);
+            if (i < segments.size() && segments.get(i).capacity() == segmentLength)
+                continue;
+            MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_WRITE, start, segmentLength);
+            if (i < segments.size())
+                segments.set(i, segment);
+            else
+                segments.add(segment);
+        }
+        capacity = size;
+    }
+
+    /**
+     * A record of the log.
+     */
+    sealed interface Record permits Added, Deleted {
+        String id();
+    }
+
+    /**
+     * A document has been added.
+     *
+     * @param metadata the metadata of the document as JSON
+     */
+    record Added(String id, float[] vector, String text, byte[] metadata) implements Record {
+    }
+
+    /**
+     * A document has been deleted.
+     */
+    record Deleted(String id) implements Record {
+    }
+
+}
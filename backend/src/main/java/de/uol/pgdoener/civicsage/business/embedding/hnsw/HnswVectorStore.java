@@ -0,0 +1,598 @@
+package de.uol.pgdoener.civicsage.business.embedding.hnsw;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.uol.pgdoener.civicsage.business.search.FilterExpressionEvaluator;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.DocumentMetadata;
+import org.springframework.ai.embedding.BatchingStrategy;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
+import org.springframework.ai.embedding.TokenCountBatchingStrategy;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A {@link VectorStore} keeping an {@link HnswGraph} in memory, so similarity searches need no database.
+ * <p>
+ * Documents are persisted in an append-only {@link HnswStorage} file. Added documents are inserted into the
+ * graph incrementally. Deleted documents are marked in the graph and removed from the file, once it contains
+ * more deleted than live records.
+ * <p>
+ * The neighbour lists of the graph are written to a second file next to the log when the store is closed and after
+ * every {@value #SNAPSHOT_INTERVAL} added nodes. It covers a prefix of the log. When the store is opened, the log is
+ * replayed: the nodes covered by the stored graph only get their vectors back, only the nodes added afterward are
+ * inserted into the graph again. Without a usable stored graph, e.g. after the log has been compacted, the graph is
+ * rebuilt from all vectors.
+ * <p>
+ * Filter expressions are evaluated in-process with the {@link FilterExpressionEvaluator}. If a filter rejects
+ * most of the candidates found by the graph, the search is repeated with a larger candidate list and finally
+ * falls back to an exact search.
+ * <p>
+ * A store which is not {@link Builder#indexed(boolean) indexed} keeps no vectors and builds no graph.
+ * It can only be used to delete documents, e.g. from the stores of unused embedding models.
+ */
+@Slf4j
+public class HnswVectorStore implements VectorStore, AutoCloseable {
+
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<>() {
+    };
+    private static final Pattern TERM = Pattern.compile("[\\p{L}\\p{N}]+");
+    private static final int MINIMUM_RECORDS_TO_COMPACT = 1000;
+    private static final int SNAPSHOT_INTERVAL = 10_000;
+    private static final int SNAPSHOT_MAGIC = 0x484E5347;
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private final Path path;
+    private final EmbeddingModel embeddingModel;
+    private final BatchingStrategy batchingStrategy;
+    private final HnswGraph.Metric metric;
+    private final int m;
+    private final int efConstruction;
+    private final int efSearch;
+    private final HnswGraph.Quantization quantization;
+    private final int oversampling;
+    private final boolean indexed;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final FilterExpressionEvaluator filterExpressionEvaluator = new FilterExpressionEvaluator();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> nodesById = new HashMap<>();
+    private String[] ids = new String[1024];
+    private String[] texts = new String[1024];
+    private Map<String, Object>[] metadata = newMetadataArray(1024);
+    private int size = 0;
+    private HnswGraph graph;
+    private HnswStorage storage;
+    /**
+     * The number of nodes read from the stored graph, whose vectors are restored when the log is replayed.
+     */
+    private int restoredNodes = 0;
+    /**
+     * The number of nodes in the stored graph.
+     */
+    private int storedNodes = 0;
+    /**
+     * Whether the nodes of the graph correspond to the records of the log, which is no longer the case after the
+     * log has been compacted.
+     */
+    private boolean graphMatchesLog = true;
+
+    private HnswVectorStore(Builder builder) {
+        this.path = builder.path;
+        this.embeddingModel = builder.embeddingModel;
+        this.batchingStrategy = builder.batchingStrategy;
+        this.metric = builder.metric;
+        this.m = builder.m;
+        this.efConstruction = builder.efConstruction;
+        this.efSearch = builder.efSearch;
+        this.quantization = builder.quantization;
+        this.oversampling = builder.oversampling;
+        this.indexed = builder.indexed;
+        open();
+    }
+
+    public static Builder builder(Path path, EmbeddingModel embeddingModel) {
+        return new Builder(path, embeddingModel);
+    }
+
+    private void open() {
+        storage = HnswStorage.open(path);
+        HnswGraph stored = indexed ? readGraph() : null;
+        int records;
+        try {
+            records = replay(stored);
+            if (stored != null && size < stored.size())
+                throw new IllegalStateException("The stored graph has more nodes than the log");
+        } catch (RuntimeException e) {
+            if (stored == null)
+                throw e;
+            log.warn("The graph stored in {} does not match the log, rebuilding it", graphPath(), e);
+            reset();
+            records = replay(null);
+        }
+        log.info("Loaded {} documents from {}, restored {} nodes of the graph", nodesById.size(), path, restoredNodes);
+
+        if (indexed && records >= MINIMUM_RECORDS_TO_COMPACT && records > 2 * nodesById.size())
+            compact();
+        else if (graph != null && graph.size() > storedNodes)
+            writeGraph();
+    }
+
+    /**
+     * @param stored the stored graph to restore the nodes of, or {@code null} to build the graph from scratch
+     * @return the number of records in the log
+     */
+    private int replay(HnswGraph stored) {
+        graph = stored;
+        restoredNodes = stored == null ? 0 : stored.size();
+        storedNodes = restoredNodes;
+        int[] records = {0};
+        storage.replay(record -> {
+            records[0]++;
+            switch (record) {
+                case HnswStorage.Added added -> insert(added.id(), added.vector(), added.text(), parse(added.metadata()));
+                case HnswStorage.Deleted deleted -> remove(deleted.id());
+            }
+        });
+        return records[0];
+    }
+
+    private void reset() {
+        nodesById.clear();
+        ids = new String[1024];
+        texts = new String[1024];
+        metadata = newMetadataArray(1024);
+        size = 0;
+    }
+
+    /**
+     * @return the stored graph, or {@code null} if there is none or it cannot be used
+     */
+    private HnswGraph readGraph() {
+        Path graphPath = graphPath();
+        if (!Files.exists(graphPath))
+            return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(graphPath), 1 << 16))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION)
+                throw new IllegalStateException("Not a graph file of a supported version");
+            if (in.readLong() > storage.length())
+                throw new IllegalStateException("The graph covers more records than the log contains");
+            return HnswGraph.read(in, metric, m, efConstruction, quantization, oversampling);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not read the graph stored in {}, rebuilding it", graphPath, e);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the graph, so it does not have to be rebuilt when the store is opened again.
+     * Failures are only logged, since the graph can always be rebuilt from the log.
+     */
+    private void writeGraph() {
+        if (!graphMatchesLog)
+            return;
+        Path graphPath = graphPath();
+        Path temporary = graphPath.resolveSibling(graphPath.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeLong(storage.length());
+                graph.write(out);
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(temporary, graphPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            storedNodes = graph.size();
+            log.debug("Stored graph with {} nodes in {}", storedNodes, graphPath);
+        } catch (IOException e) {
+            log.warn("Could not store the graph in {}", graphPath, e);
+        }
+    }
+
+    private Path graphPath() {
+        return path.resolveSibling(path.getFileName() + ".graph");
+    }
+
+    /**
+     * Rewrites the file with the live documents only. The graph keeps the deleted nodes until the store is
+     * opened again. Since the nodes no longer correspond to the records, the stored graph is deleted and the graph
+     * is rebuilt when the store is opened again.
+     */
+    private void compact() {
+        log.info("Compacting {}", path);
+        graphMatchesLog = false;
+        try {
+            Files.deleteIfExists(graphPath());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not delete the graph stored in " + graphPath(), e);
+        }
+        List<HnswStorage.Added> live = new ArrayList<>(nodesById.size());
+        nodesById.values().stream()
+                .sorted()
+                .forEach(node -> live.add(new HnswStorage.Added(
+                        ids[node], graph.vector(node), texts[node], serialize(metadata[node]))));
+        storage.close();
+        HnswStorage.rewrite(path, live);
+        storage = HnswStorage.open(path);
+    }
+
+    @Override
+    public void add(@NonNull List<Document> documents) {
+        if (!indexed)
+            throw new UnsupportedOperationException("This vector store can only be used to delete documents");
+        if (documents.isEmpty())
+            return;
+        List<float[]> embeddings = embeddingModel.embed(documents, EmbeddingOptionsBuilder.builder().build(), batchingStrategy);
+        List<HnswStorage.Added> records = new ArrayList<>(documents.size());
+        for (int i = 0; i < documents.size(); i++) {
+            Document document = documents.get(i);
+            String text = document.getText() != null ? document.getText() : "";
+            records.add(new HnswStorage.Added(document.getId(), embeddings.get(i), text, serialize(document.getMetadata())));
+        }
+
+        lock.writeLock().lock();
+        try {
+            storage.append(records);
+            for (HnswStorage.Added record : records) {
+                insert(record.id(), record.vector(), record.text(), parse(record.metadata()));
+            }
+            if (graph.size() - storedNodes >= SNAPSHOT_INTERVAL)
+                writeGraph();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(@NonNull List<String> idList) {
+        lock.writeLock().lock();
+        try {
+            List<HnswStorage.Deleted> records = idList.stream()
+                    .filter(nodesById::containsKey)
+                    .map(HnswStorage.Deleted::new)
+                    .toList();
+            storage.append(records);
+            records.forEach(record -> remove(record.id()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(@NonNull Filter.Expression filterExpression) {
+        List<String> matching = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<String, Integer> entry : nodesById.entrySet()) {
+                if (filterExpressionEvaluator.matches(filterExpression, metadata[entry.getValue()]))
+                    matching.add(entry.getKey());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        log.debug("Deleting {} documents matching {}", matching.size(), filterExpression);
+        delete(matching);
+    }
+
+    @Override
+    public List<Document> similaritySearch(@NonNull SearchRequest request) {
+        if (!indexed)
+            throw new UnsupportedOperationException("This vector store can only be used to delete documents");
+        float[] query = embeddingModel.embed(request.getQuery());
+        Filter.Expression filterExpression = request.getFilterExpression();
+        int k = request.getTopK();
+
+        lock.readLock().lock();
+        try {
+            if (graph == null)
+                return List.of();
+            IntPredicate accept = filterExpression == null
+                    ? node -> true
+                    : node -> filterExpressionEvaluator.matches(filterExpression, metadata[node]);
+            int ef = Math.max(efSearch, k);
+            List<HnswGraph.Result> results = graph.search(query, k, ef, accept);
+            while (results.size() < k && ef < graph.size()) {
+                ef *= 2;
+                results = graph.search(query, k, ef, accept);
+            }
+            if (results.size() < k && results.size() < nodesById.size()) {
+                log.debug("Falling back to exact search, because the filter rejected most candidates");
+                results = graph.exactSearch(query, k, accept);
+            }
+
+            List<Document> documents = new ArrayList<>(results.size());
+            for (HnswGraph.Result result : results) {
+                double score = 1 - result.distance();
+                if (request.getSimilarityThreshold() > SearchRequest.SIMILARITY_THRESHOLD_ACCEPT_ALL
+                        && score < request.getSimilarityThreshold())
+                    continue;
+                Map<String, Object> documentMetadata = new HashMap<>(metadata[result.node()]);
+                documentMetadata.put(DocumentMetadata.DISTANCE.value(), result.distance());
+                documents.add(Document.builder()
+                        .id(ids[result.node()])
+                        .text(texts[result.node()])
+                        .metadata(documentMetadata)
+                        .score(score)
+                        .build());
+            }
+            return documents;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the existing documents with the given ids in the order of the ids.
+     *
+     * @param documentIds the ids of the documents
+     * @return the documents found
+     */
+    public List<Document> findById(List<String> documentIds) {
+        lock.readLock().lock();
+        try {
+            List<Document> documents = new ArrayList<>(documentIds.size());
+            for (String id : documentIds) {
+                Integer node = nodesById.get(id);
+                if (node != null)
+                    documents.add(toDocument(node, null));
+            }
+            return documents;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Searches the texts of the documents for the terms of the query.
+     * Documents are ranked by the sum of {@code (1 + ln(tf)) * ln(1 + N / df)} over the matching terms.
+     * This scans all documents, which is fine for the small deployments this store is meant for.
+     *
+     * @param query            the query as typed by the user
+     * @param filterExpression the filter expression for the metadata, or {@code null}
+     * @param topK             the maximum number of documents to return
+     * @return the matching documents in the order of their relevance, which is used as their score
+     */
+    public List<Document> fullTextSearch(String query, Filter.Expression filterExpression, int topK) {
+        Set<String> terms = new HashSet<>(terms(query));
+        if (terms.isEmpty())
+            return List.of();
+
+        lock.readLock().lock();
+        try {
+            Map<Integer, Map<String, Integer>> frequencies = new HashMap<>();
+            Map<String, Integer> documentFrequencies = new HashMap<>();
+            for (int node : nodesById.values()) {
+                if (filterExpression != null && !filterExpressionEvaluator.matches(filterExpression, metadata[node]))
+                    continue;
+                Map<String, Integer> termFrequencies = new HashMap<>();
+                for (String term : terms(texts[node])) {
+                    if (terms.contains(term))
+                        termFrequencies.merge(term, 1, Integer::sum);
+                }
+                if (termFrequencies.isEmpty())
+                    continue;
+                frequencies.put(node, termFrequencies);
+                termFrequencies.keySet().forEach(term -> documentFrequencies.merge(term, 1, Integer::sum));
+            }
+
+            int documentCount = nodesById.size();
+            Map<Integer, Double> scores = new HashMap<>();
+            frequencies.forEach((node, termFrequencies) -> scores.put(node, termFrequencies.entrySet().stream()
+                    .mapToDouble(e -> (1 + Math.log(e.getValue()))
+                            * Math.log(1 + (double) documentCount / documentFrequencies.get(e.getKey())))
+                    .sum()));
+            return scores.entrySet().stream()
+                    .sorted(Map.Entry.<Integer, Double>comparingByValue().reversed())
+                    .limit(topK)
+                    .map(e -> toDocument(e.getKey(), e.getValue()))
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> Optional<T> getNativeClient() {
+        return Optional.of((T) this);
+    }
+
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (graph != null && graph.size() > storedNodes)
+                writeGraph();
+            storage.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void insert(String id, float[] vector, String text, Map<String, Object> documentMetadata) {
+        remove(id);
+        int node = size;
+        if (indexed && node < restoredNodes) {
+            graph.restore(node, vector);
+        } else if (indexed) {
+            if (graph == null)
+                graph = new HnswGraph(vector.length, metric, m, efConstruction, quantization, oversampling);
+            int graphNode = graph.add(vector);
+            assert graphNode == node;
+        }
+        ensureCapacity(node + 1);
+        ids[node] = id;
+        // the texts are not needed to delete documents
+        texts[node] = indexed ? text : null;
+        metadata[node] = documentMetadata;
+        nodesById.put(id, node);
+        size++;
+    }
+
+    private void remove(String id) {
+        Integer node = nodesById.remove(id);
+        if (node == null)
+            return;
+        if (graph != null)
+            graph.delete(node);
+        texts[node] = null;
+        metadata[node] = null;
+    }
+
+    private Document toDocument(int node, Double score) {
+        return Document.builder()
+                .id(ids[node])
+                .text(texts[node])
+                .metadata(new HashMap<>(metadata[node]))
+                .score(score)
+                .build();
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length)
+            return;
+        int newCapacity = Math.max(capacity, ids.length + (ids.length >> 1));
+        ids = Arrays.copyOf(ids, newCapacity);
+        texts = Arrays.copyOf(texts, newCapacity);
+        metadata = Arrays.copyOf(metadata, newCapacity);
+    }
+
+    private byte[] serialize(Map<String, Object> documentMetadata) {
+        try {
+            return objectMapper.writeValueAsBytes(documentMetadata);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Could not serialize metadata", e);
+        }
+    }
+
+    /**
+     * The metadata is kept as parsed from JSON, so the values have the same types as in the other vector stores.
+     */
+    private Map<String, Object> parse(byte[] json) {
+        try {
+            return objectMapper.readValue(json, METADATA_TYPE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not parse metadata in " + path, e);
+        }
+    }
+
+    private static List<String> terms(String text) {
+        List<String> terms = new ArrayList<>();
+        Matcher matcher = TERM.matcher(text.toLowerCase(Locale.ROOT));
+        while (matcher.find()) {
+            terms.add(matcher.group());
+        }
+        return terms;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object>[] newMetadataArray(int capacity) {
+        return (Map<String, Object>[]) new Map[capacity];
+    }
+
+    public static final class Builder {
+
+        private final Path path;
+        private final EmbeddingModel embeddingModel;
+        private BatchingStrategy batchingStrategy = new TokenCountBatchingStrategy();
+        private HnswGraph.Metric metric = HnswGraph.Metric.COSINE;
+        private int m = 16;
+        private int efConstruction = 200;
+        private int efSearch = 64;
+        private HnswGraph.Quantization quantization = HnswGraph.Quantization.NONE;
+        private int oversampling = 4;
+        private boolean indexed = true;
+
+        private Builder(Path path, EmbeddingModel embeddingModel) {
+            this.path = path;
+            this.embeddingModel = embeddingModel;
+        }
+
+        public Builder batchingStrategy(BatchingStrategy batchingStrategy) {
+            this.batchingStrategy = batchingStrategy;
+            return this;
+        }
+
+        public Builder metric(HnswGraph.Metric metric) {
+            this.metric = metric;
+            return this;
+        }
+
+        /**
+         * @param m the maximum number of neighbours of a node on the upper levels, twice as many on level 0
+         */
+        public Builder m(int m) {
+            this.m = m;
+            return this;
+        }
+
+        /**
+         * @param efConstruction the size of the candidate list when inserting vectors
+         */
+        public Builder efConstruction(int efConstruction) {
+            this.efConstruction = efConstruction;
+            return this;
+        }
+
+        /**
+         * @param efSearch the minimum size of the candidate list when searching
+         */
+        public Builder efSearch(int efSearch) {
+            this.efSearch = efSearch;
+            return this;
+        }
+
+        /**
+         * @param quantization the codes to navigate the graph with when searching
+         */
+        public Builder quantization(HnswGraph.Quantization quantization) {
+            this.quantization = quantization;
+            return this;
+        }
+
+        /**
+         * @param oversampling the factor by which the number of candidates found with the quantized codes is
+         *                     multiplied before they are rescored with the full vectors
+         */
+        public Builder oversampling(int oversampling) {
+            this.oversampling = oversampling;
+            return this;
+        }
+
+        /**
+         * @param indexed whether to build the graph. Stores without a graph can only delete documents.
+         */
+        public Builder indexed(boolean indexed) {
+            this.indexed = indexed;
+            return this;
+        }
+
+        public HnswVectorStore build() {
+            return new HnswVectorStore(this);
+        }
+
+    }
+
+}
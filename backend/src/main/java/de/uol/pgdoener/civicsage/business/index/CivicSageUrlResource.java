@@ -4,9 +4,12 @@ import org.jetbrains.annotations.NotNull;
 import org.springframework.core.io.UrlResource;
 
 import java.io.IOException;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URLConnection;
+import java.time.Duration;
+import java.util.Optional;
 
 /**
  * Custom UrlResource that sets a specific User-Agent header for HTTP requests.
@@ -27,4 +30,30 @@ public class CivicSageUrlResource extends UrlResource {
         con.addRequestProperty("User-Agent", "CivicSage Document Reader");
     }
 
+    /**
+     * Determines the version of the content with a HEAD request.
+     * The version is the {@code ETag} header or, if the server does not send one, the {@code Last-Modified} header.
+     *
+     * @param timeout the timeout for connecting to the server and for reading its response
+     * @return the version or an empty optional if the server provides neither header
+     * @throws IOException if the request fails or times out
+     */
+    public Optional<String> getVersion(Duration timeout) throws IOException {
+        URLConnection con = getURL().openConnection();
+        customizeConnection(con);
+        con.setConnectTimeout((int) timeout.toMillis());
+        con.setReadTimeout((int) timeout.toMillis());
+        if (!(con instanceof HttpURLConnection httpCon))
+            return Optional.empty();
+        try {
+            httpCon.setRequestMethod("HEAD");
+            String eTag = httpCon.getHeaderField("ETag");
+            if (eTag != null)
+                return Optional.of(eTag);
+            return Optional.ofNullable(httpCon.getHeaderField("Last-Modified"));
+        } finally {
+            httpCon.disconnect();
+        }
+    }
+
 }
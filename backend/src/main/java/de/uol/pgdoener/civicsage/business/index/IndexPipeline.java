@@ -0,0 +1,275 @@
+package de.uol.pgdoener.civicsage.business.index;
+
+import de.uol.pgdoener.civicsage.autoconfigure.IndexProperties;
+import de.uol.pgdoener.civicsage.business.index.document.DocumentReaderService;
+import de.uol.pgdoener.civicsage.business.index.exception.SplittingException;
+import de.uol.pgdoener.civicsage.business.index.exception.StorageException;
+import de.uol.pgdoener.civicsage.business.index.job.IndexProgressListener;
+import de.uol.pgdoener.civicsage.business.index.job.IndexStage;
+import de.uol.pgdoener.civicsage.business.storage.StorageService;
+import de.uol.pgdoener.civicsage.business.storage.UploadStagingService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.transformer.splitter.TextSplitter;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Turns a stored file into chunks ready to be embedded. The file passes the stages fetch, parse and split:
+ * <ol>
+ *     <li>The file is copied from the storage into a temporary file, so it is not held in memory. If the file has
+ *     been uploaded recently, the local copy in the {@link UploadStagingService staging area} is used instead.</li>
+ *     <li>The file is parsed into documents, which are passed on one after another while they are read.
+ *     Readers implementing {@link de.uol.pgdoener.civicsage.business.index.document.StreamingDocumentReader}
+ *     emit documents before the whole file has been parsed.</li>
+ *     <li>Each document is split into chunks as soon as it has been parsed.</li>
+ * </ol>
+ * Parsing and splitting of a file overlap. The documents are handed over through a bounded queue, so parsing pauses
+ * if splitting falls behind and only a few parsed documents of a file are held in memory at the same time.
+ * <p>
+ * Each stage runs on virtual threads and is bounded by its own number of permits configured in
+ * {@link IndexProperties.Pipeline}, so multiple files are processed concurrently without overloading a stage.
+ * Permits are only held while working, never while waiting for another stage, so the stages cannot block each other.
+ */
+@Slf4j
+@Component
+public class IndexPipeline {
+
+    private final StorageService storageService;
+    private final UploadStagingService uploadStagingService;
+    private final DocumentReaderService documentReaderService;
+    private final SemanticSplitterService semanticSplitterService;
+    private final TextSplitter textSplitter;
+    private final int queueCapacity;
+
+    private final Stage fetchStage;
+    private final Stage parseStage;
+    private final Stage splitStage;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public IndexPipeline(StorageService storageService,
+                         UploadStagingService uploadStagingService,
+                         DocumentReaderService documentReaderService,
+                         SemanticSplitterService semanticSplitterService,
+                         TextSplitter textSplitter,
+                         IndexProperties indexProperties) {
+        this.storageService = storageService;
+        this.uploadStagingService = uploadStagingService;
+        this.documentReaderService = documentReaderService;
+        this.semanticSplitterService = semanticSplitterService;
+        this.textSplitter = textSplitter;
+        IndexProperties.Pipeline pipeline = indexProperties.getPipeline();
+        this.queueCapacity = Math.max(1, pipeline.getQueueCapacity());
+        this.fetchStage = new Stage(pipeline.getFetchConcurrency());
+        this.parseStage = new Stage(pipeline.getParseConcurrency());
+        this.splitStage = new Stage(pipeline.getSplitConcurrency());
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Loads, parses and splits the file and reports the stages to the listener.
+     *
+     * @param fileId   the id of the file in the storage
+     * @param fileName the name of the file including the extension
+     * @param listener the listener to notify about the progress
+     * @return the chunks of the file without the metadata of the source
+     * @throws SplittingException if the file does not contain any text
+     */
+    public List<Document> process(UUID fileId, String fileName, IndexProgressListener listener) throws SplittingException {
+        Optional<Path> stagedFile = uploadStagingService.find(fileId);
+        if (stagedFile.isPresent()) {
+            log.debug("Using staged copy of file {}", fileName);
+            listener.onStage(IndexStage.DOWNLOADED);
+            return parseAndSplit(stagedFile.get(), fileName, listener);
+        }
+
+        Path file = fetchStage.run(() -> fetch(fileId, fileName));
+        try {
+            listener.onStage(IndexStage.DOWNLOADED);
+            return parseAndSplit(file, fileName, listener);
+        } finally {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Could not delete temporary file {}", file, e);
+            }
+        }
+    }
+
+    private Path fetch(UUID fileId, String fileName) {
+        Path file;
+        try {
+            file = Files.createTempFile("civicsage-index-", null);
+        } catch (IOException e) {
+            throw new StorageException("Could not create temporary file for " + fileName, e);
+        }
+        try (InputStream inputStream = storageService.load(fileId)
+                .orElseThrow(() -> new StorageException("Could not load file from storage"))) {
+            Files.copy(inputStream, file, StandardCopyOption.REPLACE_EXISTING);
+            log.debug("Loaded file {} into {}", fileName, file);
+            return file;
+        } catch (IOException | RuntimeException e) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            if (e instanceof RuntimeException runtimeException)
+                throw runtimeException;
+            throw new StorageException("Could not load file from storage", e);
+        }
+    }
+
+    private List<Document> parseAndSplit(Path file, String fileName, IndexProgressListener listener) {
+        Resource resource = new FileSystemResource(file) {
+            @NotNull
+            @Override
+            public String getFilename() {
+                return fileName;
+            }
+        };
+        BlockingQueue<Parsed> queue = new ArrayBlockingQueue<>(queueCapacity);
+        // the parser must not report its progress after the split stage has stopped
+        Object progressLock = new Object();
+        Future<?> parser = executor.submit(() -> parse(resource, fileName, queue, () -> {
+            synchronized (progressLock) {
+                if (!Thread.currentThread().isInterrupted())
+                    listener.onStage(IndexStage.PARSED);
+            }
+        }));
+        try {
+            List<Document> chunks = new ArrayList<>();
+            int documents = 0;
+            Parsed parsed;
+            while ((parsed = take(queue)) != Parsed.END) {
+                if (parsed.error() != null)
+                    throw parsed.error();
+                documents++;
+                Document document = parsed.document();
+                chunks.addAll(splitStage.run(() -> split(document)));
+            }
+            log.debug("Split {} documents of file {} into {} chunks to fit context window", documents, fileName, chunks.size());
+            listener.onStage(IndexStage.SPLIT);
+
+            if (chunks.isEmpty())
+                throw new SplittingException("Source does not have enough content to be indexed");
+            if (chunks.size() < documents)
+                log.warn("There are less documents after splitting than before.");
+            return chunks;
+        } finally {
+            synchronized (progressLock) {
+                parser.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Reads the documents of the file one after another and passes them to the split stage.
+     * A permit of the parse stage is held while a document is extracted, but released before the document is passed
+     * on, so a full queue does not block other files from being parsed.
+     *
+     * @param onParsed called once all documents have been read
+     */
+    private void parse(Resource resource, String fileName, BlockingQueue<Parsed> queue, Runnable onParsed) {
+        try (Stream<Document> documents = parseStage.run(() -> documentReaderService.stream(resource, fileName))) {
+            Iterator<Document> iterator = documents.iterator();
+            Document document;
+            while ((document = parseStage.run(() -> iterator.hasNext() ? iterator.next() : null)) != null) {
+                put(queue, new Parsed(document, null));
+            }
+            log.debug("Parsed file {}", fileName);
+            onParsed.run();
+            put(queue, Parsed.END);
+        } catch (CancellationException e) {
+            log.debug("Parsing of file {} was cancelled", fileName);
+        } catch (RuntimeException e) {
+            queue.clear();
+            put(queue, new Parsed(null, e));
+        } catch (Error e) {
+            // the split stage must not wait forever for the end of the file
+            queue.clear();
+            put(queue, new Parsed(null, new IllegalStateException("Could not parse file " + fileName, e)));
+            throw e;
+        }
+    }
+
+    private List<Document> split(Document document) {
+        return semanticSplitterService.process(List.of(document)).stream()
+                .flatMap(d -> textSplitter.split(d).stream())
+                .toList();
+    }
+
+    private static void put(BlockingQueue<Parsed> queue, Parsed parsed) {
+        try {
+            queue.put(parsed);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while passing documents to the split stage");
+        }
+    }
+
+    private static Parsed take(BlockingQueue<Parsed> queue) {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for parsed documents");
+        }
+    }
+
+    /**
+     * A parsed document or the error which stopped parsing.
+     */
+    private record Parsed(Document document, RuntimeException error) {
+        private static final Parsed END = new Parsed(null, null);
+    }
+
+    /**
+     * Limits the number of threads working in a stage at the same time.
+     */
+    private static final class Stage {
+
+        private final Semaphore permits;
+
+        private Stage(int concurrency) {
+            this.permits = new Semaphore(Math.max(1, concurrency));
+        }
+
+        private <T> T run(Supplier<T> work) {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for the stage");
+            }
+            try {
+                return work.get();
+            } finally {
+                permits.release();
+            }
+        }
+
+    }
+
+}
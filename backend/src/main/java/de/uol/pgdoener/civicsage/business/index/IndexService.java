@@ -6,25 +6,20 @@ import de.uol.pgdoener.civicsage.business.embedding.EmbeddingService;
 import de.uol.pgdoener.civicsage.business.embedding.backlog.EmbeddingPriority;
 import de.uol.pgdoener.civicsage.business.index.document.DocumentReaderService;
 import de.uol.pgdoener.civicsage.business.index.document.MetadataKeys;
-import de.uol.pgdoener.civicsage.business.index.exception.ReadFileException;
 import de.uol.pgdoener.civicsage.business.index.exception.SplittingException;
-import de.uol.pgdoener.civicsage.business.index.exception.StorageException;
+import de.uol.pgdoener.civicsage.business.index.job.IndexProgressListener;
+import de.uol.pgdoener.civicsage.business.index.job.IndexStage;
 import de.uol.pgdoener.civicsage.business.source.FileSource;
 import de.uol.pgdoener.civicsage.business.source.SourceService;
 import de.uol.pgdoener.civicsage.business.source.WebsiteSource;
 import de.uol.pgdoener.civicsage.business.source.exception.SourceCollisionException;
-import de.uol.pgdoener.civicsage.business.storage.StorageService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.transformer.splitter.TextSplitter;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.ByteArrayResource;
-import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 
-import java.io.IOException;
-import java.io.InputStream;
 import java.util.*;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -41,7 +36,7 @@ public class IndexService {
     private final SemanticSplitterService semanticSplitterService;
     private final EmbeddingService embeddingService;
     private final TextSplitter textSplitter;
-    private final StorageService storageService;
+    private final IndexPipeline indexPipeline;
     private final TimeFactory timeFactory;
 
     @Value("${spring.ai.openai.embedding.options.model}")
@@ -52,25 +47,45 @@ public class IndexService {
     // ######
 
     public void indexFile(IndexFilesRequestInnerDto indexFilesRequestInnerDto, EmbeddingPriority priority) {
+        indexFile(indexFilesRequestInnerDto, priority, IndexProgressListener.NONE);
+    }
+
+    /**
+     * Verifies that the file exists and is not already indexed for the current model.
+     *
+     * @param indexFilesRequestInnerDto the request to index the file
+     * @return the source of the file
+     * @throws SourceCollisionException if the file is already indexed for the current model
+     */
+    public FileSource checkFile(IndexFilesRequestInnerDto indexFilesRequestInnerDto) throws SourceCollisionException {
+        FileSource fileSource = sourceService.getFileSourceById(indexFilesRequestInnerDto.getFileId());
+        if (fileSource.getModels().contains(modelID)) {
+            throw new SourceCollisionException("File is already indexed for current model!");
+        }
+        return fileSource;
+    }
+
+    /**
+     * Indexes the file and reports the stages it reaches to the listener.
+     * The last stage reported is {@link IndexStage#EMBEDDING}, since the chunks are embedded in the background.
+     *
+     * @param indexFilesRequestInnerDto the request to index the file
+     * @param priority                  the priority of the embedding of the chunks
+     * @param listener                  the listener to notify about the progress
+     */
+    public void indexFile(IndexFilesRequestInnerDto indexFilesRequestInnerDto, EmbeddingPriority priority,
+                          IndexProgressListener listener) {
         UUID fileId = indexFilesRequestInnerDto.getFileId();
         Optional<String> title = indexFilesRequestInnerDto.getTitle();
         final Map<String, Object> additionalMetadata = indexFilesRequestInnerDto.getAdditionalProperties() == null ?
                 new HashMap<>() : indexFilesRequestInnerDto.getAdditionalProperties();
 
         // Verify that the file is not already indexed for the current model
-        FileSource fileSource = sourceService.getFileSourceById(fileId);
-        if (fileSource.getModels().contains(modelID)) {
-            throw new SourceCollisionException("File is already indexed for current model!");
-        }
+        FileSource fileSource = checkFile(indexFilesRequestInnerDto);
 
-        // Read the file from storage and process it
+        // Load, parse and split the file
         String fileName = fileSource.getFileName();
-        InputStream file = storageService.load(fileId).orElseThrow(() -> new StorageException("Could not load file from storage"));
-        Resource resource = toResource(file, fileName);
-        List<Document> documents = documentReaderService.read(resource, fileName);
-        log.debug("Read {} documents from file: {}", documents.size(), fileName);
-
-        documents = postProcessDocuments(documents);
+        List<Document> documents = indexPipeline.process(fileId, fileName, listener);
         documents.forEach(document -> {
             document.getMetadata().put(FILE_ID.getValue(), fileId);
             document.getMetadata().put(TITLE.getValue(), titleOrFileName(title, fileName));
@@ -89,6 +104,7 @@ public class IndexService {
         });
 
         embeddingService.save(documents, finalFileSource.getObjectStorageId(), priority);
+        listener.onStage(IndexStage.EMBEDDING);
     }
 
     private String titleOrFileName(Optional<String> title, String fileName) {
@@ -105,20 +121,6 @@ public class IndexService {
         });
     }
 
-    private Resource toResource(InputStream inputStream, String fileName) {
-        try {
-            byte[] data = inputStream.readAllBytes();
-            return new ByteArrayResource(data) {
-                @Override
-                public String getFilename() {
-                    return fileName;
-                }
-            };
-        } catch (IOException e) {
-            throw new ReadFileException("Could not read PDF file: " + fileName, e);
-        }
-    }
-
 
     // #########
     // Websites
@@ -181,7 +183,7 @@ public class IndexService {
                     new HashMap<>(websiteSource.getMetadata())
             );
             try {
-                doWebsiteIndexing(EmbeddingPriority.LOW, url, additionalProperties, ws);
+                doWebsiteIndexing(EmbeddingPriority.BACKGROUND, url, additionalProperties, ws);
             } catch (RuntimeException e) {
                 log.warn("Error while indexing website {}: {}", url, e.getMessage(), e);
                 exception = e;
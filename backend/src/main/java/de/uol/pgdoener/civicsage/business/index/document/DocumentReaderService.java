@@ -15,6 +15,7 @@ import org.springframework.stereotype.Service;
 import java.io.FileNotFoundException;
 import java.net.UnknownHostException;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
@@ -24,12 +25,32 @@ public class DocumentReaderService {
     private final DocumentReaderFactory documentReaderFactory;
 
     public List<Document> read(@NonNull Resource file, @NonNull String fileName) {
+        DocumentReader documentReader = createReader(file, fileName);
+        return documentReader.read();
+    }
+
+    /**
+     * Reads the documents of the file lazily, if the reader for the file type supports it.
+     * Otherwise, all documents are read at once and then streamed.
+     *
+     * @param file     the file to read
+     * @param fileName the name of the file including the extension
+     * @return a stream of the documents, which must be closed
+     * @see StreamingDocumentReader
+     */
+    public Stream<Document> stream(@NonNull Resource file, @NonNull String fileName) {
+        DocumentReader documentReader = createReader(file, fileName);
+        if (documentReader instanceof StreamingDocumentReader streamingDocumentReader)
+            return streamingDocumentReader.stream();
+        return documentReader.read().stream();
+    }
+
+    private DocumentReader createReader(Resource file, String fileName) {
         if (fileName.isBlank())
             throw new ReadFileException("File name is empty or null");
         final String fileEnding = fileName.substring(fileName.lastIndexOf('.') + 1).toLowerCase();
 
-        DocumentReader documentReader = documentReaderFactory.create(file, fileEnding, fileName);
-        return documentReader.read();
+        return documentReaderFactory.create(file, fileEnding, fileName);
     }
 
     public List<Document> readURL(@NonNull String url) {
@@ -0,0 +1,30 @@
+package de.uol.pgdoener.civicsage.business.index.document;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.DocumentReader;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * A {@link DocumentReader}, which can emit its documents one after another while they are read, e.g. page by page.
+ * This allows processing the first documents before the whole source has been read and keeps only a few documents
+ * in memory at the same time.
+ */
+public interface StreamingDocumentReader extends DocumentReader {
+
+    /**
+     * Reads the documents lazily. The stream holds the underlying source open and must be closed.
+     *
+     * @return a stream of the documents in the order they appear in the source
+     */
+    Stream<Document> stream();
+
+    @Override
+    default List<Document> get() {
+        try (Stream<Document> documents = stream()) {
+            return documents.toList();
+        }
+    }
+
+}
@@ -1,28 +1,254 @@
 package de.uol.pgdoener.civicsage.business.index.document.reader;
 
+import de.uol.pgdoener.civicsage.business.index.document.StreamingDocumentReader;
+import de.uol.pgdoener.civicsage.business.index.exception.ReadFileException;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.RandomAccessReadBuffer;
+import org.apache.pdfbox.io.RandomAccessReadMemoryMappedFile;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.interactive.action.PDActionGoTo;
+import org.apache.pdfbox.pdmodel.interactive.documentnavigation.destination.PDDestination;
+import org.apache.pdfbox.pdmodel.interactive.documentnavigation.destination.PDNamedDestination;
+import org.apache.pdfbox.pdmodel.interactive.documentnavigation.destination.PDPageXYZDestination;
+import org.apache.pdfbox.pdmodel.interactive.documentnavigation.outline.PDDocumentOutline;
+import org.apache.pdfbox.pdmodel.interactive.documentnavigation.outline.PDOutlineItem;
+import org.apache.pdfbox.pdmodel.interactive.documentnavigation.outline.PDOutlineNode;
+import org.apache.pdfbox.text.PDFTextStripperByArea;
 import org.springframework.ai.document.Document;
-import org.springframework.ai.document.DocumentReader;
-import org.springframework.ai.reader.pdf.PagePdfDocumentReader;
-import org.springframework.ai.reader.pdf.ParagraphPdfDocumentReader;
 import org.springframework.core.io.Resource;
 
-import java.util.List;
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
+import static de.uol.pgdoener.civicsage.business.index.document.MetadataKeys.*;
+
+/**
+ * Reads a PDF file. If the PDF has an outline, a document is created for the text between two consecutive headings
+ * of the outline. Otherwise, a document is created for each page.
+ * <p>
+ * The PDF is opened only once. Files are memory-mapped instead of being loaded onto the heap, and the documents are
+ * extracted lazily one after another while the stream is consumed.
+ */
+@Slf4j
 @RequiredArgsConstructor
-public class PdfDocumentReader implements DocumentReader {
+public class PdfDocumentReader implements StreamingDocumentReader {
+
+    private static final String REGION = "region";
+    private static final String LEVEL = "level";
 
     private final Resource resource;
 
     @Override
-    public List<Document> get() {
+    public Stream<Document> stream() {
+        PDDocument document = open();
         try {
-            ParagraphPdfDocumentReader reader = new ParagraphPdfDocumentReader(resource);
-            return reader.read();
+            List<Section> sections = getSections(document);
+            Stream<Document> documents;
+            if (sections.isEmpty()) {
+                log.debug("Reading PDF {} page by page", resource.getFilename());
+                documents = streamPages(document);
+            } else {
+                log.debug("Reading PDF {} by the {} sections of its outline", resource.getFilename(), sections.size());
+                documents = streamSections(document, sections);
+            }
+            return documents.onClose(() -> close(document));
         } catch (RuntimeException e) {
-            PagePdfDocumentReader reader = new PagePdfDocumentReader(resource);
-            return reader.read();
+            close(document);
+            throw e;
+        }
+    }
+
+    private PDDocument open() {
+        try {
+            if (resource.isFile() && resource.contentLength() <= Integer.MAX_VALUE)
+                return Loader.loadPDF(new RandomAccessReadMemoryMappedFile(resource.getFile()));
+            if (resource.isFile())
+                return Loader.loadPDF(resource.getFile());
+            try (InputStream inputStream = resource.getInputStream()) {
+                return Loader.loadPDF(new RandomAccessReadBuffer(inputStream));
+            }
+        } catch (IOException e) {
+            throw new ReadFileException("Could not read PDF file: " + resource.getFilename(), e);
         }
     }
 
+    private void close(PDDocument document) {
+        try {
+            document.close();
+        } catch (IOException e) {
+            log.warn("Could not close PDF file {}", resource.getFilename(), e);
+        }
+    }
+
+    // ######
+    // Pages
+    // ######
+
+    private Stream<Document> streamPages(PDDocument document) {
+        PDFTextStripperByArea stripper = createStripper();
+        return IntStream.range(0, document.getNumberOfPages())
+                .mapToObj(pageIndex -> {
+                    PDPage page = document.getPage(pageIndex);
+                    PDRectangle box = page.getCropBox();
+                    String text = extract(stripper, page, 0, box.getHeight());
+                    return toDocument(text, pageIndex, pageIndex, Map.of());
+                })
+                .filter(Objects::nonNull);
+    }
+
+    // #########
+    // Sections
+    // #########
+
+    private Stream<Document> streamSections(PDDocument document, List<Section> sections) {
+        PDFTextStripperByArea stripper = createStripper();
+        return IntStream.range(0, sections.size())
+                .mapToObj(i -> {
+                    Section section = sections.get(i);
+                    Position end = i + 1 < sections.size() ?
+                            sections.get(i + 1).start() :
+                            new Position(document.getNumberOfPages() - 1, Float.MAX_VALUE);
+                    StringBuilder text = new StringBuilder();
+                    // the next section may start at the top of a page, which then is not part of this section
+                    int lastPageIndex = section.start().pageIndex();
+                    for (int pageIndex = section.start().pageIndex(); pageIndex <= end.pageIndex(); pageIndex++) {
+                        PDPage page = document.getPage(pageIndex);
+                        float from = pageIndex == section.start().pageIndex() ? section.start().y() : 0;
+                        float to = pageIndex == end.pageIndex() ? end.y() : Float.MAX_VALUE;
+                        String pageText = extract(stripper, page, from, to);
+                        if (!pageText.isBlank())
+                            lastPageIndex = pageIndex;
+                        text.append(pageText);
+                    }
+                    Map<String, Object> metadata = section.level() < 0 ? Map.of() : Map.of(LEVEL, section.level());
+                    return toDocument(text.toString(), section.start().pageIndex(), lastPageIndex, metadata);
+                })
+                .filter(Objects::nonNull);
+    }
+
+    /**
+     * Creates the sections from the headings in the outline ordered by their position in the PDF.
+     * Text in front of the first heading is part of an additional section without a level.
+     *
+     * @return the sections or an empty list, if the PDF has no outline pointing into the PDF
+     */
+    private List<Section> getSections(PDDocument document) {
+        PDDocumentOutline outline = document.getDocumentCatalog().getDocumentOutline();
+        if (outline == null)
+            return List.of();
+        List<Section> sections = new ArrayList<>();
+        try {
+            addSections(document, outline, 1, sections);
+        } catch (IOException e) {
+            log.warn("Could not read outline of PDF {}, reading it page by page", resource.getFilename(), e);
+            return List.of();
+        }
+        if (sections.isEmpty())
+            return List.of();
+
+        sections.sort(Comparator.comparing(Section::start, Position.ORDER));
+        Position first = sections.getFirst().start();
+        if (first.pageIndex() > 0 || first.y() > 0)
+            sections.addFirst(new Section(new Position(0, 0), -1));
+        return sections;
+    }
+
+    private void addSections(PDDocument document, PDOutlineNode node, int level, List<Section> sections) throws IOException {
+        for (PDOutlineItem item : node.children()) {
+            PDPage page = item.findDestinationPage(document);
+            int pageIndex = page == null ? -1 : document.getPages().indexOf(page);
+            if (pageIndex >= 0)
+                sections.add(new Section(new Position(pageIndex, getY(document, item, page)), level));
+            addSections(document, item, level + 1, sections);
+        }
+    }
+
+    /**
+     * @return the distance of the heading from the top of the page or 0, if the destination has no position
+     */
+    private float getY(PDDocument document, PDOutlineItem item, PDPage page) throws IOException {
+        PDDestination destination = item.getDestination();
+        if (destination == null && item.getAction() instanceof PDActionGoTo goTo)
+            destination = goTo.getDestination();
+        if (destination instanceof PDNamedDestination namedDestination)
+            destination = document.getDocumentCatalog().findNamedDestinationPage(namedDestination);
+        if (destination instanceof PDPageXYZDestination xyzDestination && xyzDestination.getTop() >= 0)
+            return Math.max(0, page.getCropBox().getUpperRightY() - xyzDestination.getTop());
+        return 0;
+    }
+
+    // ########
+    // General
+    // ########
+
+    private PDFTextStripperByArea createStripper() {
+        try {
+            PDFTextStripperByArea stripper = new PDFTextStripperByArea();
+            stripper.setSortByPosition(true);
+            return stripper;
+        } catch (IOException e) {
+            throw new ReadFileException("Could not read PDF file: " + resource.getFilename(), e);
+        }
+    }
+
+    /**
+     * Extracts the text of the page between the given distances from the top of the page.
+     */
+    private String extract(PDFTextStripperByArea stripper, PDPage page, float from, float to) {
+        PDRectangle box = page.getCropBox();
+        float height = Math.min(to, box.getHeight()) - from;
+        if (height <= 0)
+            return "";
+        try {
+            stripper.addRegion(REGION, new Rectangle2D.Float(0, from, box.getWidth(), height));
+            stripper.extractRegions(page);
+            return stripper.getTextForRegion(REGION);
+        } catch (IOException e) {
+            throw new ReadFileException("Could not read PDF file: " + resource.getFilename(), e);
+        } finally {
+            stripper.removeRegion(REGION);
+        }
+    }
+
+    /**
+     * @return the document or {@code null}, if the text is blank
+     */
+    private Document toDocument(String text, int startPageIndex, int endPageIndex, Map<String, Object> metadata) {
+        if (text.isBlank())
+            return null;
+        Map<String, Object> documentMetadata = new HashMap<>(metadata);
+        documentMetadata.put(START_PAGE.getValue(), startPageIndex + 1);
+        documentMetadata.put(END_PAGE.getValue(), endPageIndex + 1);
+        if (resource.getFilename() != null)
+            documentMetadata.put(FILE_NAME.getValue(), resource.getFilename());
+        return new Document(text.strip(), documentMetadata);
+    }
+
+    /**
+     * A position in the PDF.
+     *
+     * @param pageIndex the index of the page starting at 0
+     * @param y         the distance from the top of the page
+     */
+    private record Position(int pageIndex, float y) {
+        private static final Comparator<Position> ORDER = Comparator.comparingInt(Position::pageIndex)
+                .thenComparingDouble(Position::y);
+    }
+
+    /**
+     * The text from the heading at the start to the next section.
+     *
+     * @param level the depth of the heading in the outline starting at 1 or -1 for text in front of the first heading
+     */
+    private record Section(Position start, int level) {
+    }
+
 }
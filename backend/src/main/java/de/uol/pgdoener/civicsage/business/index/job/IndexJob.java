@@ -0,0 +1,93 @@
+package de.uol.pgdoener.civicsage.business.index.job;
+
+import de.uol.pgdoener.civicsage.business.dto.IndexFilesRequestInnerDto;
+import lombok.Getter;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.*;
+
+/**
+ * An indexing job tracks the progress of the files of one indexing request.
+ * Jobs are only kept in memory by the {@link IndexJobService}.
+ */
+@Getter
+public class IndexJob {
+
+    private final UUID id;
+    private final OffsetDateTime createdAt;
+    private final List<FileProgress> files;
+
+    IndexJob(UUID id, OffsetDateTime createdAt, List<IndexFilesRequestInnerDto> requests) {
+        this.id = id;
+        this.createdAt = createdAt;
+        this.files = requests.stream()
+                .map(request -> new FileProgress(request, Instant.now()))
+                .toList();
+    }
+
+    /**
+     * @return whether all files have been added to the embedding backlog or failed
+     */
+    public boolean isProcessed() {
+        return files.stream().allMatch(file -> file.getStage().compareTo(IndexStage.EMBEDDING) >= 0);
+    }
+
+    /**
+     * The progress of a single file of an indexing job.
+     * The stage is updated by the thread indexing the file and read by requests for the job.
+     */
+    public static class FileProgress implements IndexProgressListener {
+
+        @Getter
+        private final IndexFilesRequestInnerDto request;
+        private final Map<IndexStage, Duration> durations = new EnumMap<>(IndexStage.class);
+        private IndexStage stage = IndexStage.QUEUED;
+        private Instant lastTransition;
+        private String error;
+
+        private FileProgress(IndexFilesRequestInnerDto request, Instant createdAt) {
+            this.request = request;
+            this.lastTransition = createdAt;
+        }
+
+        @Override
+        public synchronized void onStage(IndexStage stage) {
+            Instant now = Instant.now();
+            durations.put(stage, Duration.between(lastTransition, now));
+            lastTransition = now;
+            this.stage = stage;
+        }
+
+        /**
+         * Marks the file as done, if it is being embedded.
+         */
+        synchronized void embedded() {
+            if (stage == IndexStage.EMBEDDING)
+                onStage(IndexStage.DONE);
+        }
+
+        synchronized void fail(String error) {
+            onStage(IndexStage.FAILED);
+            this.error = error;
+        }
+
+        public synchronized IndexStage getStage() {
+            return stage;
+        }
+
+        public synchronized Optional<String> getError() {
+            return Optional.ofNullable(error);
+        }
+
+        /**
+         * @return the time it took to reach each stage from the previous stage
+         */
+        public synchronized Map<IndexStage, Duration> getDurations() {
+            return new EnumMap<>(durations);
+        }
+
+    }
+
+}
@@ -0,0 +1,49 @@
+package de.uol.pgdoener.civicsage.business.index.job;
+
+import de.uol.pgdoener.civicsage.business.dto.IndexJobDto;
+import de.uol.pgdoener.civicsage.business.dto.IndexJobFileDto;
+import lombok.NonNull;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Mapper for converting an IndexJob to an IndexJobDto.
+ */
+@Component
+public class IndexJobMapper {
+
+    public IndexJobDto toDto(@NonNull IndexJob job) {
+        return new IndexJobDto()
+                .id(job.getId())
+                .status(getStatus(job))
+                .createdAt(job.getCreatedAt())
+                .files(job.getFiles().stream()
+                        .map(this::toDto)
+                        .toList());
+    }
+
+    private IndexJobFileDto toDto(IndexJob.FileProgress file) {
+        Map<String, Long> durations = new LinkedHashMap<>();
+        file.getDurations().forEach((stage, duration) ->
+                durations.put(stage.name().toLowerCase(Locale.ROOT), duration.toMillis()));
+        IndexJobFileDto dto = new IndexJobFileDto()
+                .fileId(file.getRequest().getFileId())
+                .stage(IndexJobFileDto.StageEnum.valueOf(file.getStage().name()))
+                .durations(durations);
+        file.getRequest().getTitle().ifPresent(dto::title);
+        file.getError().ifPresent(dto::error);
+        return dto;
+    }
+
+    private IndexJobDto.StatusEnum getStatus(IndexJob job) {
+        if (!job.getFiles().stream().allMatch(file -> file.getStage().isFinished()))
+            return IndexJobDto.StatusEnum.RUNNING;
+        if (job.getFiles().stream().anyMatch(file -> file.getStage() == IndexStage.FAILED))
+            return IndexJobDto.StatusEnum.FAILED;
+        return IndexJobDto.StatusEnum.DONE;
+    }
+
+}
@@ -0,0 +1,141 @@
+package de.uol.pgdoener.civicsage.business.index.job;
+
+import de.uol.pgdoener.civicsage.autoconfigure.IndexProperties;
+import de.uol.pgdoener.civicsage.business.dto.IndexFilesRequestInnerDto;
+import de.uol.pgdoener.civicsage.business.embedding.EmbeddingService;
+import de.uol.pgdoener.civicsage.business.embedding.backlog.EmbeddingPriority;
+import de.uol.pgdoener.civicsage.business.index.IndexService;
+import de.uol.pgdoener.civicsage.business.index.TimeFactory;
+import de.uol.pgdoener.civicsage.business.index.job.exception.IndexJobNotFoundException;
+import de.uol.pgdoener.civicsage.business.source.exception.SourceCollisionException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Indexes files in the background and tracks the progress in {@link IndexJob}s.
+ * <p>
+ * The files are checked when the job is submitted, so requests for unknown or already indexed files are rejected
+ * immediately. Each file is then indexed on its own virtual thread. The number of files indexed at the same time is
+ * limited by {@link IndexProperties.Job#getMaxConcurrentFiles()}. A failing file does not affect the other files of
+ * the job.
+ * <p>
+ * Jobs are only kept in memory, so they are lost on restart and can only be requested from the instance which
+ * created them.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class IndexJobService {
+
+    private final IndexService indexService;
+    private final EmbeddingService embeddingService;
+    private final IndexProperties indexProperties;
+    private final TimeFactory timeFactory;
+
+    private final Map<UUID, IndexJob> jobs = new ConcurrentHashMap<>();
+    private final Set<UUID> filesInProgress = ConcurrentHashMap.newKeySet();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private Semaphore slots;
+
+    @PostConstruct
+    void init() {
+        slots = new Semaphore(Math.max(1, indexProperties.getJob().getMaxConcurrentFiles()));
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Checks the files and starts indexing them in the background.
+     *
+     * @param requests the files to index
+     * @return the job tracking the progress
+     * @throws SourceCollisionException if a file is already indexed or being indexed
+     */
+    public IndexJob submit(List<IndexFilesRequestInnerDto> requests) throws SourceCollisionException {
+        requests.forEach(indexService::checkFile);
+        List<UUID> reserved = new ArrayList<>();
+        for (IndexFilesRequestInnerDto request : requests) {
+            if (!filesInProgress.add(request.getFileId())) {
+                reserved.forEach(filesInProgress::remove);
+                throw new SourceCollisionException("File is already being indexed!");
+            }
+            reserved.add(request.getFileId());
+        }
+
+        IndexJob job = new IndexJob(UUID.randomUUID(), timeFactory.getCurrentTime(), requests);
+        jobs.put(job.getId(), job);
+        log.info("Created indexing job {} for {} files", job.getId(), requests.size());
+        job.getFiles().forEach(file -> executor.execute(() -> index(job, file)));
+        return job;
+    }
+
+    /**
+     * Returns the job with the given id. Files whose chunks have all been embedded are marked as done.
+     *
+     * @param jobId the id of the job
+     * @return the job
+     * @throws IndexJobNotFoundException if there is no job with the given id
+     */
+    public IndexJob getJob(UUID jobId) throws IndexJobNotFoundException {
+        IndexJob job = jobs.get(jobId);
+        if (job == null)
+            throw new IndexJobNotFoundException("Could not find indexing job with id " + jobId);
+
+        if (job.getFiles().stream().anyMatch(file -> file.getStage() == IndexStage.EMBEDDING)) {
+            Collection<UUID> pendingSourceIds = embeddingService.getPendingSourceIds();
+            job.getFiles().stream()
+                    .filter(file -> !pendingSourceIds.contains(file.getRequest().getFileId()))
+                    .forEach(IndexJob.FileProgress::embedded);
+        }
+        return job;
+    }
+
+    /**
+     * Deletes the jobs created before the threshold, whose files are no longer processed.
+     *
+     * @param threshold the time before which the jobs were created
+     * @return the number of deleted jobs
+     */
+    public int deleteJobsCreatedBefore(OffsetDateTime threshold) {
+        int sizeBefore = jobs.size();
+        jobs.values().removeIf(job -> job.getCreatedAt().isBefore(threshold) && job.isProcessed());
+        return sizeBefore - jobs.size();
+    }
+
+    private void index(IndexJob job, IndexJob.FileProgress file) {
+        UUID fileId = file.getRequest().getFileId();
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            file.fail("Indexing was interrupted");
+            filesInProgress.remove(fileId);
+            return;
+        }
+        try {
+            log.debug("Indexing file {} of job {}", fileId, job.getId());
+            indexService.indexFile(file.getRequest(), EmbeddingPriority.INTERACTIVE, file);
+            log.info("File {} of job {} indexed successfully", fileId, job.getId());
+        } catch (RuntimeException e) {
+            log.warn("Failed to index file {} of job {}: {}", fileId, job.getId(), e.getMessage(), e);
+            file.fail(e.getMessage());
+        } finally {
+            slots.release();
+            filesInProgress.remove(fileId);
+        }
+    }
+
+}
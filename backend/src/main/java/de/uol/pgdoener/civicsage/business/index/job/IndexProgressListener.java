@@ -0,0 +1,18 @@
+package de.uol.pgdoener.civicsage.business.index.job;
+
+/**
+ * Is notified by the {@link de.uol.pgdoener.civicsage.business.index.IndexService} whenever a file reaches the next
+ * stage of indexing.
+ */
+@FunctionalInterface
+public interface IndexProgressListener {
+
+    /**
+     * A listener which ignores all stages.
+     */
+    IndexProgressListener NONE = stage -> {
+    };
+
+    void onStage(IndexStage stage);
+
+}
@@ -0,0 +1,45 @@
+package de.uol.pgdoener.civicsage.business.index.job;
+
+/**
+ * The stages a file passes while it is indexed.
+ * A file reaches a stage when the work of the stage is completed.
+ */
+public enum IndexStage {
+
+    /**
+     * The file waits for a free slot to be processed.
+     */
+    QUEUED,
+    /**
+     * The file has been loaded from the storage.
+     */
+    DOWNLOADED,
+    /**
+     * The file has been read into documents.
+     */
+    PARSED,
+    /**
+     * The documents have been split into chunks.
+     */
+    SPLIT,
+    /**
+     * The chunks have been added to the embedding backlog and are being embedded.
+     */
+    EMBEDDING,
+    /**
+     * All chunks have been embedded.
+     */
+    DONE,
+    /**
+     * Indexing the file failed.
+     */
+    FAILED;
+
+    /**
+     * @return whether no more work is done for a file in this stage
+     */
+    public boolean isFinished() {
+        return this == DONE || this == FAILED;
+    }
+
+}
@@ -0,0 +1,9 @@
+package de.uol.pgdoener.civicsage.business.index.job.exception;
+
+public class IndexJobNotFoundException extends RuntimeException {
+
+    public IndexJobNotFoundException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,109 @@
+package de.uol.pgdoener.civicsage.business.search;
+
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.IntPredicate;
+
+/**
+ * This class evaluates filter expressions ({@link Filter.Expression}) against the metadata of a document
+ * in memory, similar to how the vector stores evaluate them in the database.
+ * <p>
+ * Keys containing dots which are not present in the metadata are resolved as paths into nested maps,
+ * e.g. {@code additional_properties.test}.
+ * Numbers are compared by their numeric value, all other values by their string representation.
+ */
+@Component
+public class FilterExpressionEvaluator {
+
+    /**
+     * This method checks whether the metadata matches the expression.
+     *
+     * @param expression the expression to evaluate, null matches everything
+     * @param metadata   the metadata of a document
+     * @return true if the metadata matches the expression, false otherwise
+     */
+    public boolean matches(Filter.Expression expression, Map<String, Object> metadata) {
+        if (expression == null)
+            return true;
+        return switch (expression.type()) {
+            case AND -> matches(expression.left(), metadata) && matches(expression.right(), metadata);
+            case OR -> matches(expression.left(), metadata) || matches(expression.right(), metadata);
+            case NOT -> !matches(expression.left(), metadata);
+            case EQ -> equal(resolve(expression, metadata), value(expression));
+            case NE -> !equal(resolve(expression, metadata), value(expression));
+            case GT -> compare(expression, metadata, c -> c > 0);
+            case GTE -> compare(expression, metadata, c -> c >= 0);
+            case LT -> compare(expression, metadata, c -> c < 0);
+            case LTE -> compare(expression, metadata, c -> c <= 0);
+            case IN -> in(resolve(expression, metadata), value(expression));
+            case NIN -> !in(resolve(expression, metadata), value(expression));
+        };
+    }
+
+    private boolean matches(Filter.Operand operand, Map<String, Object> metadata) {
+        if (operand instanceof Filter.Expression expression)
+            return matches(expression, metadata);
+        if (operand instanceof Filter.Group(Filter.Expression content))
+            return matches(content, metadata);
+        throw new IllegalStateException("Unsupported operand"); // this should not happen, if the spring implementation does not change
+    }
+
+    private Object resolve(Filter.Expression expression, Map<String, Object> metadata) {
+        String key = ((Filter.Key) expression.left()).key();
+        // keys with special characters are quoted in filter expressions
+        if (key.length() > 1 && (key.startsWith("'") && key.endsWith("'") || key.startsWith("\"") && key.endsWith("\"")))
+            key = key.substring(1, key.length() - 1);
+        if (metadata.containsKey(key))
+            return metadata.get(key);
+        Object current = metadata;
+        for (String part : key.split("\\.")) {
+            if (!(current instanceof Map<?, ?> map))
+                return null;
+            current = map.get(part);
+        }
+        return current;
+    }
+
+    private Object value(Filter.Expression expression) {
+        return ((Filter.Value) expression.right()).value();
+    }
+
+    private boolean equal(Object actual, Object expected) {
+        if (actual == null || expected == null)
+            return actual == expected;
+        if (actual instanceof Number a && expected instanceof Number e)
+            return Double.compare(a.doubleValue(), e.doubleValue()) == 0;
+        return Objects.equals(actual.toString(), expected.toString());
+    }
+
+    /**
+     * Values which cannot be compared never match, so a missing key does not match any comparison.
+     */
+    private boolean compare(Filter.Expression expression, Map<String, Object> metadata, IntPredicate condition) {
+        Object actual = resolve(expression, metadata);
+        Object expected = value(expression);
+        if (actual == null || expected == null)
+            return false;
+        if (actual instanceof Number a && expected instanceof Number e)
+            return condition.test(Double.compare(a.doubleValue(), e.doubleValue()));
+        if (actual instanceof String a && expected instanceof Number e) {
+            try {
+                return condition.test(Double.compare(Double.parseDouble(a), e.doubleValue()));
+            } catch (NumberFormatException ignored) {
+                return false;
+            }
+        }
+        return condition.test(actual.toString().compareTo(expected.toString()));
+    }
+
+    private boolean in(Object actual, Object expected) {
+        if (expected instanceof Collection<?> values)
+            return values.stream().anyMatch(value -> equal(actual, value));
+        return equal(actual, expected);
+    }
+
+}
@@ -0,0 +1,57 @@
+package de.uol.pgdoener.civicsage.business.search;
+
+import org.springframework.ai.document.Document;
+
+import java.util.*;
+
+/**
+ * Fuses the rankings of multiple retrievals using reciprocal rank fusion.
+ * <p>
+ * A document at rank r (starting at 1) of a ranking contributes {@code 1 / (k + r)} to its fused score.
+ * Only the ranks are used, so the scores of different retrievals do not have to be comparable.
+ * The fused score is divided by the highest possible score, so it lies between 0 and 1.
+ *
+ * @see <a href="https://plg.uwaterloo.ca/~gvcormac/cormacksigir09-rrf.pdf">Reciprocal Rank Fusion outperforms Condorcet and individual Rank Learning Methods</a>
+ */
+public final class RankFusion {
+
+    private RankFusion() {
+    }
+
+    /**
+     * Fuses the rankings into one ranking.
+     * If a document is contained in multiple rankings, the instance of the first ranking is kept.
+     *
+     * @param rankings     the rankings to fuse, each ordered by relevance
+     * @param rankConstant the constant k
+     * @param topK         the maximum number of documents to return
+     * @return the fused ranking with the normalized fused scores
+     */
+    public static List<Document> reciprocalRankFusion(List<List<Document>> rankings, int rankConstant, int topK) {
+        if (rankConstant < 0)
+            throw new IllegalArgumentException("The rank constant must not be negative");
+
+        Map<String, Document> documents = new LinkedHashMap<>();
+        Map<String, Double> scores = new HashMap<>();
+        for (List<Document> ranking : rankings) {
+            for (int i = 0; i < ranking.size(); i++) {
+                Document document = ranking.get(i);
+                documents.putIfAbsent(document.getId(), document);
+                scores.merge(document.getId(), 1.0 / (rankConstant + i + 1), Double::sum);
+            }
+        }
+
+        double maxScore = rankings.size() / (rankConstant + 1.0);
+        return documents.values().stream()
+                .sorted(Comparator.comparingDouble((Document document) -> scores.get(document.getId())).reversed())
+                .limit(topK)
+                .map(document -> Document.builder()
+                        .id(document.getId())
+                        .text(document.getText())
+                        .metadata(document.getMetadata())
+                        .score(scores.get(document.getId()) / maxScore)
+                        .build())
+                .toList();
+    }
+
+}
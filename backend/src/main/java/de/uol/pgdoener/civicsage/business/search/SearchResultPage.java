@@ -0,0 +1,15 @@
+package de.uol.pgdoener.civicsage.business.search;
+
+import de.uol.pgdoener.civicsage.business.dto.SearchResultDto;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * One page of search results.
+ *
+ * @param results the results on this page
+ * @param cursor  identifies the ranking of all results, so further pages can be requested without searching again
+ */
+public record SearchResultPage(List<SearchResultDto> results, UUID cursor) {
+}
@@ -3,6 +3,7 @@ package de.uol.pgdoener.civicsage.business.search;
 import de.uol.pgdoener.civicsage.business.dto.SearchQueryDto;
 import de.uol.pgdoener.civicsage.business.dto.SearchResultDto;
 import de.uol.pgdoener.civicsage.business.embedding.EmbeddingService;
+import de.uol.pgdoener.civicsage.business.embedding.exception.EmbeddingRateLimitException;
 import de.uol.pgdoener.civicsage.business.search.exception.NotEnoughResultsAvailableException;
 import de.uol.pgdoener.civicsage.business.search.exception.SearchRateLimitException;
 import lombok.RequiredArgsConstructor;
@@ -12,8 +13,7 @@ import org.springframework.ai.retry.NonTransientAiException;
 import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
 
 @Slf4j
 @Service
@@ -30,21 +30,78 @@ public class SearchService {
     private final EmbeddingService embeddingService;
     private final SearchResultMapper searchResultMapper;
     private final FilterExpressionValidator filterExpressionValidator;
+    private final SearchSessionStore searchSessionStore;
 
-    public List<SearchResultDto> search(SearchQueryDto query, Optional<Integer> pageNumber, Optional<Integer> pageSize) {
+    /**
+     * Searches for documents and returns the requested page of the results.
+     * <p>
+     * The ranking of the results is stored in a {@link SearchSession} identified by the returned cursor.
+     * If a valid cursor of the same query is given, the documents of the page are loaded by their ids instead of
+     * searching again. Only if the page is beyond the ranked documents, the ranking is extended by searching for
+     * at least twice as many documents.
+     * <p>
+     * Without a cursor, the ranking has to include all pages up to the requested one, because the vector store can
+     * only return the best results of a query and cannot skip them. The number of documents searched for therefore
+     * grows linearly with the page number. Clients paging deeply are expected to pass the cursor of a previous page.
+     *
+     * @param query      the search query
+     * @param pageNumber the number of the page
+     * @param pageSize   the number of results per page
+     * @param cursor     the cursor of a previous search with the same query
+     * @return the page and the cursor of its session
+     */
+    public SearchResultPage search(SearchQueryDto query, Optional<Integer> pageNumber, Optional<Integer> pageSize,
+                                   Optional<String> cursor) {
         log.info("Searching for documents with query {}", query);
         int pNumber = pageNumber.orElse(DEFAULT_PAGE_NUMBER);
         int pSize = pageSize.orElse(DEFAULT_PAGE_SIZE);
         int resultsToFetch = calculateResultsToFetch(pNumber, pSize);
-        log.debug("topK = {}", resultsToFetch);
 
         Optional<String> filterString = query.getFilterExpression();
         filterString.ifPresent(filterExpressionValidator::validate);
 
+        Optional<UUID> resumedCursor = cursor.flatMap(SearchService::parseCursor)
+                .filter(id -> searchSessionStore.get(id)
+                        .filter(session -> session.matches(query.getQuery(), filterString.orElse(null)))
+                        .isPresent());
+        UUID sessionCursor = resumedCursor.orElseGet(UUID::randomUUID);
+        Optional<SearchSession> session = resumedCursor.flatMap(searchSessionStore::get);
+        int endIndex = pNumber * pSize + pSize;
+
+        if (session.isPresent() && (session.get().size() >= endIndex || session.get().isComplete())) {
+            log.debug("Resuming search session {}", sessionCursor);
+            return new SearchResultPage(loadPage(session.get(), pNumber, pSize), sessionCursor);
+        }
+
+        // extend the ranking geometrically, so paging through all results searches only logarithmically often
+        if (session.isPresent())
+            resultsToFetch = Math.max(resultsToFetch, 2 * session.get().size());
+        log.debug("topK = {}", resultsToFetch);
+
         SearchRequest searchRequest = buildSearchRequest(query.getQuery(), filterString, resultsToFetch);
-        List<Document> documents;
+        List<Document> documents = search(searchRequest);
+        if (documents == null)
+            documents = List.of();
+        searchSessionStore.put(sessionCursor, SearchSession.of(query.getQuery(), filterString.orElse(null),
+                documents, documents.size() < resultsToFetch));
+
+        if (documents.isEmpty()) {
+            log.info("No documents found for query {}", query);
+            return new SearchResultPage(List.of(), sessionCursor);
+        }
+
+        log.info("Found {} documents", documents.size());
+        documents = applyPagination(documents, pNumber, pSize);
+
+        return new SearchResultPage(searchResultMapper.toDto(documents), sessionCursor);
+    }
+
+    private List<Document> search(SearchRequest searchRequest) {
         try {
-            documents = embeddingService.search(searchRequest);
+            return embeddingService.search(searchRequest);
+        } catch (EmbeddingRateLimitException e) {
+            log.warn("Rate limit exceeded while searching for documents: {}", e.getMessage());
+            throw new SearchRateLimitException();
         } catch (NonTransientAiException e) {
             if (e.getMessage().startsWith("HTTP 429")) {
                 log.warn("Rate limit exceeded while searching for documents: {}", e.getMessage());
@@ -53,16 +110,47 @@ public class SearchService {
             log.error("Error while searching for documents: {}", e.getMessage(), e);
             throw e;
         }
+    }
 
-        if (documents == null || documents.isEmpty()) {
-            log.info("No documents found for query {}", query);
+    /**
+     * Loads the documents of a page of the session by their ids.
+     * Documents deleted after the session has been created are skipped.
+     */
+    private List<SearchResultDto> loadPage(SearchSession session, int pageNumber, int pageSize) {
+        if (session.size() == 0)
             return List.of();
+        int startIndex = pageNumber * pageSize;
+        if (startIndex >= session.size())
+            throw new NotEnoughResultsAvailableException("Only " + session.size() + " results were found!");
+        int endIndex = Math.min(startIndex + pageSize, session.size());
+
+        Map<String, Document> documents = new HashMap<>();
+        for (Document document : embeddingService.findById(session.ids(startIndex, endIndex)))
+            documents.put(document.getId(), document);
+
+        List<Document> page = new ArrayList<>(endIndex - startIndex);
+        for (int rank = startIndex; rank < endIndex; rank++) {
+            Document document = documents.get(session.id(rank).toString());
+            if (document == null)
+                continue;
+            page.add(Document.builder()
+                    .id(document.getId())
+                    .text(document.getText())
+                    .metadata(document.getMetadata())
+                    .score(session.score(rank))
+                    .build());
         }
+        log.debug("Loaded {} of {} documents of the page", page.size(), endIndex - startIndex);
+        return searchResultMapper.toDto(page);
+    }
 
-        log.info("Found {} documents", documents.size());
-        documents = applyPagination(documents, pNumber, pSize);
-
-        return searchResultMapper.toDto(documents);
+    private static Optional<UUID> parseCursor(String cursor) {
+        try {
+            return Optional.of(UUID.fromString(cursor));
+        } catch (IllegalArgumentException e) {
+            log.debug("Ignoring invalid search cursor {}", cursor);
+            return Optional.empty();
+        }
     }
 
     private int calculateResultsToFetch(int pageNumber, int pageSize) {
@@ -0,0 +1,103 @@
+package de.uol.pgdoener.civicsage.business.search;
+
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * The ranking of the results of one search query, kept on the server to page through it with a cursor.
+ * Only the ids and scores of the documents are stored. The documents of a page are loaded by their ids.
+ */
+final class SearchSession {
+
+    private final String query;
+    private final String filterExpression;
+    private final long[] idBits;
+    private final double[] scores;
+    private final boolean complete;
+
+    private SearchSession(String query, String filterExpression, long[] idBits, double[] scores, boolean complete) {
+        this.query = query;
+        this.filterExpression = filterExpression;
+        this.idBits = idBits;
+        this.scores = scores;
+        this.complete = complete;
+    }
+
+    /**
+     * Creates a session from the results of a similarity search.
+     *
+     * @param query            the query of the search
+     * @param filterExpression the filter expression of the search, or {@code null}
+     * @param documents        the results of the search in the order of their rank
+     * @param complete         whether the search has returned all matching documents
+     * @return the new session
+     */
+    static SearchSession of(String query, String filterExpression, List<Document> documents, boolean complete) {
+        long[] idBits = new long[documents.size() * 2];
+        double[] scores = new double[documents.size()];
+        for (int i = 0; i < documents.size(); i++) {
+            Document document = documents.get(i);
+            UUID id = UUID.fromString(document.getId());
+            idBits[2 * i] = id.getMostSignificantBits();
+            idBits[2 * i + 1] = id.getLeastSignificantBits();
+            scores[i] = document.getScore() != null ? document.getScore() : Double.NaN;
+        }
+        return new SearchSession(query, filterExpression, idBits, scores, complete);
+    }
+
+    /**
+     * @return whether this session ranks the results of the given search
+     */
+    boolean matches(String query, String filterExpression) {
+        return Objects.equals(this.query, query) && Objects.equals(this.filterExpression, filterExpression);
+    }
+
+    /**
+     * @return the number of ranked documents
+     */
+    int size() {
+        return scores.length;
+    }
+
+    /**
+     * @return whether all matching documents have been ranked, so there are no results beyond {@link #size()}
+     */
+    boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @return the ids of the documents ranked from {@code from} (inclusive) to {@code to} (exclusive)
+     */
+    List<UUID> ids(int from, int to) {
+        List<UUID> ids = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            ids.add(id(i));
+        }
+        return ids;
+    }
+
+    UUID id(int rank) {
+        return new UUID(idBits[2 * rank], idBits[2 * rank + 1]);
+    }
+
+    /**
+     * @return the score of the document at the given rank, or {@code null} if the vector store did not provide one
+     */
+    Double score(int rank) {
+        return Double.isNaN(scores[rank]) ? null : scores[rank];
+    }
+
+    /**
+     * @return the estimated size of this session on the heap in bytes
+     */
+    int weight() {
+        return 128 + Long.BYTES * idBits.length + Double.BYTES * scores.length
+                + Character.BYTES * (query.length() + (filterExpression != null ? filterExpression.length() : 0));
+    }
+
+}
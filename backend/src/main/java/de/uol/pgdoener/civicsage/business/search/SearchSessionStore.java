@@ -0,0 +1,44 @@
+package de.uol.pgdoener.civicsage.business.search;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import de.uol.pgdoener.civicsage.autoconfigure.SearchProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Keeps the {@link SearchSession}s referenced by search cursors.
+ * Sessions are weighed by their size and expire if they have not been used for some time,
+ * see {@link SearchProperties.Session}.
+ */
+@Component
+class SearchSessionStore {
+
+    public static final String CACHE_NAME = "searchSessions";
+
+    private final Cache<UUID, SearchSession> sessions;
+
+    SearchSessionStore(SearchProperties searchProperties, MeterRegistry meterRegistry) {
+        SearchProperties.Session properties = searchProperties.getSession();
+        this.sessions = Caffeine.newBuilder()
+                .maximumWeight(properties.getMaxSize().toBytes())
+                .weigher((UUID cursor, SearchSession session) -> session.weight())
+                .expireAfterAccess(properties.getTimeToLive())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, sessions, CACHE_NAME);
+    }
+
+    Optional<SearchSession> get(UUID cursor) {
+        return Optional.ofNullable(sessions.getIfPresent(cursor));
+    }
+
+    void put(UUID cursor, SearchSession session) {
+        sessions.put(cursor, session);
+    }
+
+}
@@ -7,6 +7,10 @@ import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -30,11 +34,38 @@ public class FileHashingService {
         }
     }
 
+    /**
+     * Copies the content of the input stream into the target file and hashes it in the same pass.
+     *
+     * @param inputStream the content to copy and hash
+     * @param target      the file to write the content to. It is replaced if it exists.
+     * @return the hash of the content
+     */
+    public String copyAndHash(InputStream inputStream, Path target) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance(ALGORITHM);
+            try (var digestIn = new DigestInputStream(inputStream, digest)) {
+                Files.copy(digestIn, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return toHash(digest);
+        } catch (NoSuchAlgorithmException e) {
+            log.error("Error while hashing file: ", e);
+            throw new HashingException("Hashing algorithm exception", e);
+        } catch (IOException e) {
+            log.warn("Could not read file while hashing", e);
+            throw new ReadFileException("Could not read file while hashing", e);
+        }
+    }
+
     private String hashInternal(InputStream inputStream) throws NoSuchAlgorithmException, IOException {
         MessageDigest digest = MessageDigest.getInstance(ALGORITHM);
         try (var digestIn = new DigestInputStream(inputStream, digest)) {
-            digestIn.readAllBytes();
+            digestIn.transferTo(OutputStream.nullOutputStream());
         }
+        return toHash(digest);
+    }
+
+    private String toHash(MessageDigest digest) {
         String hash = HexFormat.of().formatHex(digest.digest());
         log.debug("Hash for file is {}", hash);
         return hash;
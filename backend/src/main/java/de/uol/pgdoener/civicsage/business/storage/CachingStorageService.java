@@ -0,0 +1,514 @@
+package de.uol.pgdoener.civicsage.business.storage;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import de.uol.pgdoener.civicsage.autoconfigure.StorageProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Keeps recently loaded objects of another {@link StorageService} on the local disk.
+ * <p>
+ * The content of an object never changes once it has been stored, so cached objects are identified by their id only.
+ * When an object which is not cached yet is loaded completely, it is streamed from the other storage and copied into
+ * the cache directory while it is read. Once it has been read to the end, it is added to the cache and later loads,
+ * including loads of ranges, read it from there. Loading a range of an object which is not cached yet loads the range
+ * from the other storage directly and downloads the object into the cache in the background. Loads of an object
+ * which is being copied into the cache never wait for the copy, but are loaded from the other storage directly.
+ * Objects larger than {@link StorageProperties.Cache#getMaxObjectSize()} are never cached and always loaded from the
+ * other storage. Storing objects is not cached, since stored files are kept locally by the
+ * {@link UploadStagingService} anyway.
+ * <p>
+ * Other instances may delete an object from the other storage. Therefore, the other storage is asked whether the
+ * object still exists before a cached object is returned. This costs a request for the metadata of the object, but
+ * saves transferring its content.
+ * <p>
+ * The total size of the cached objects is bounded. The least recently used objects are evicted first and their
+ * files are deleted. Files found in the cache directory on startup are added to the cache again.
+ */
+@Slf4j
+public class CachingStorageService implements StorageService {
+
+    public static final String CACHE_NAME = "storage";
+    private static final String DOWNLOAD_PREFIX = "download-";
+
+    private final StorageService delegate;
+    private final Path directory;
+    private final long maxObjectSize;
+    private final Cache<UUID, Long> objects;
+    /**
+     * The downloads into the cache which are in progress. They complete with whether the object has been cached.
+     * A download only adds its object to the cache if it is still registered here, so deleting the object can
+     * cancel it by removing it.
+     */
+    private final ConcurrentMap<UUID, CompletableFuture<Boolean>> downloads = new ConcurrentHashMap<>();
+
+    public CachingStorageService(StorageService delegate, StorageProperties storageProperties, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        StorageProperties.Cache properties = storageProperties.getCache();
+        this.directory = properties.getDirectory();
+        this.maxObjectSize = Math.min(properties.getMaxObjectSize().toBytes(), Integer.MAX_VALUE);
+        this.objects = Caffeine.newBuilder()
+                .maximumWeight(properties.getMaxSize().toBytes())
+                .weigher((UUID id, Long size) -> (int) Math.min(size, Integer.MAX_VALUE))
+                .evictionListener(this::onEviction)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, objects, CACHE_NAME);
+        Gauge.builder("civicsage.storage.cache.size", objects, CachingStorageService::weightedSize)
+                .description("Size of the objects cached on the local disk")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        restore();
+    }
+
+    @Override
+    public Optional<UUID> store(InputStream inputStream, long size) {
+        return delegate.store(inputStream, size);
+    }
+
+    @Override
+    public Optional<UUID> store(Path file) {
+        return delegate.store(file);
+    }
+
+    @Override
+    public Optional<InputStream> load(UUID objectID) {
+        return load(objectID, 0, -1);
+    }
+
+    @Override
+    public Optional<InputStream> load(UUID objectID, long offset, long length) {
+        Optional<Long> size = delegate.getSize(objectID);
+        if (objects.getIfPresent(objectID) != null) {
+            if (size.isEmpty()) {
+                log.debug("Cached object {} does not exist anymore", objectID);
+                evict(objectID);
+                return delegate.load(objectID, offset, length);
+            }
+            Optional<InputStream> cached = openCached(objectID, offset, length);
+            if (cached.isPresent())
+                return cached;
+        }
+
+        if (size.isEmpty() || size.get() > maxObjectSize || downloads.containsKey(objectID))
+            return delegate.load(objectID, offset, length);
+        if (offset > 0 || (length >= 0 && length < size.get())) {
+            // the range is usually much smaller than the object, so the object is downloaded in the background
+            download(objectID);
+            return delegate.load(objectID, offset, length);
+        }
+        return loadIntoCache(objectID);
+    }
+
+    /**
+     * Starts downloading the object into the cache, unless it is already being downloaded.
+     */
+    private void download(UUID objectID) {
+        CompletableFuture<Boolean> download = new CompletableFuture<>();
+        if (downloads.putIfAbsent(objectID, download) != null)
+            return;
+        Thread.ofVirtual().name("storage-cache-download").start(() -> {
+            try {
+                download.complete(downloadIntoCache(objectID, download));
+            } catch (Throwable t) {
+                log.warn("Could not cache object {}", objectID, t);
+                download.completeExceptionally(t);
+            } finally {
+                downloads.remove(objectID, download);
+            }
+        });
+    }
+
+    /**
+     * @return whether the object has been cached
+     */
+    private boolean downloadIntoCache(UUID objectID, CompletableFuture<Boolean> download) throws IOException {
+        Path file = Files.createTempFile(directory, DOWNLOAD_PREFIX, null);
+        try {
+            Optional<InputStream> optionalInputStream = delegate.load(objectID);
+            if (optionalInputStream.isEmpty()) {
+                delete(file);
+                return false;
+            }
+            try (InputStream inputStream = optionalInputStream.get()) {
+                Files.copy(inputStream, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            long size = Files.size(file);
+            log.debug("Downloaded object {} with {} bytes", objectID, size);
+            if (size <= maxObjectSize && put(objectID, file, size, download))
+                return true;
+            delete(file);
+            return false;
+        } catch (IOException | RuntimeException e) {
+            delete(file);
+            throw e;
+        }
+    }
+
+    /**
+     * Loads the object from the other storage and copies it into the cache while it is read.
+     * If another load is copying the object already, the object is loaded without copying it.
+     */
+    private Optional<InputStream> loadIntoCache(UUID objectID) {
+        CompletableFuture<Boolean> download = new CompletableFuture<>();
+        if (downloads.putIfAbsent(objectID, download) != null)
+            return delegate.load(objectID);
+        Path file = null;
+        OutputStream outputStream = null;
+        try {
+            file = Files.createTempFile(directory, DOWNLOAD_PREFIX, null);
+            outputStream = Files.newOutputStream(file);
+            Optional<InputStream> inputStream = delegate.load(objectID);
+            if (inputStream.isPresent())
+                return Optional.of(new CachingInputStream(inputStream.get(), objectID, file, outputStream, download));
+            closeAndDelete(outputStream, file);
+            finish(objectID, download, false);
+            return inputStream;
+        } catch (IOException e) {
+            log.warn("Could not create file to cache object {}, loading it without cache", objectID, e);
+            closeAndDelete(outputStream, file);
+            finish(objectID, download, false);
+            return delegate.load(objectID);
+        } catch (RuntimeException e) {
+            closeAndDelete(outputStream, file);
+            finish(objectID, download, false);
+            throw e;
+        }
+    }
+
+    @Override
+    public Optional<Long> getSize(UUID objectID) {
+        Long size = objects.getIfPresent(objectID);
+        if (size != null)
+            return Optional.of(size);
+        return delegate.getSize(objectID);
+    }
+
+    /**
+     * Deletes the object from the cache and the other storage.
+     * Other instances notice the deletion the next time they load the object.
+     */
+    @Override
+    public void delete(UUID id) {
+        // a running download would add the object to the cache again after it has been removed
+        downloads.remove(id);
+        evict(id);
+        delegate.delete(id);
+    }
+
+    private void evict(UUID objectID) {
+        objects.asMap().computeIfPresent(objectID, (key, size) -> {
+            delete(getPath(key));
+            return null;
+        });
+    }
+
+    /**
+     * Moves the downloaded file into place and adds it to the cache, if the download is still registered.
+     * This is done atomically, so neither an eviction nor a deletion of the same object can interfere.
+     *
+     * @return whether the object has been cached
+     */
+    private boolean put(UUID objectID, Path file, long size, CompletableFuture<Boolean> download) {
+        AtomicBoolean cached = new AtomicBoolean();
+        try {
+            objects.asMap().compute(objectID, (key, oldSize) -> {
+                if (downloads.get(key) != download)
+                    return oldSize;
+                try {
+                    Files.move(file, getPath(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                cached.set(true);
+                return size;
+            });
+            return cached.get();
+        } catch (UncheckedIOException e) {
+            log.warn("Could not add object {} to the cache", objectID, e.getCause());
+            return false;
+        }
+    }
+
+    private void finish(UUID objectID, CompletableFuture<Boolean> download, boolean cached) {
+        downloads.remove(objectID, download);
+        download.complete(cached);
+    }
+
+    private static void closeAndDelete(OutputStream outputStream, Path file) {
+        if (outputStream != null) {
+            try {
+                outputStream.close();
+            } catch (IOException e) {
+                log.debug("Could not close cached file {}", file, e);
+            }
+        }
+        if (file != null)
+            delete(file);
+    }
+
+    private Optional<InputStream> openCached(UUID objectID, long offset, long length) {
+        if (objects.getIfPresent(objectID) == null)
+            return Optional.empty();
+        try {
+            return Optional.of(open(getPath(objectID), offset, length));
+        } catch (NoSuchFileException e) {
+            // evicted concurrently or deleted from the disk
+            objects.invalidate(objectID);
+            return Optional.empty();
+        } catch (IOException e) {
+            log.warn("Could not read cached object {}", objectID, e);
+            return Optional.empty();
+        }
+    }
+
+    private static InputStream open(Path path, long offset, long length) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            channel.position(offset);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        InputStream inputStream = Channels.newInputStream(channel);
+        return length < 0 ? inputStream : new LimitedInputStream(inputStream, length);
+    }
+
+    /**
+     * Adds the files left in the cache directory by a previous run to the cache and deletes incomplete downloads.
+     */
+    private void restore() {
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path path : files.toList()) {
+                    Optional<UUID> objectID = toObjectID(path);
+                    if (objectID.isPresent())
+                        objects.put(objectID.get(), Files.size(path));
+                    else
+                        delete(path);
+                }
+            }
+            log.info("Restored {} cached objects from {}", objects.estimatedSize(), directory);
+        } catch (IOException e) {
+            log.warn("Could not restore cached objects from {}", directory, e);
+        }
+    }
+
+    private void onEviction(UUID objectID, Long size, RemovalCause cause) {
+        if (objectID != null && cause.wasEvicted()) {
+            log.debug("Evicting object {} from the cache", objectID);
+            delete(getPath(objectID));
+        }
+    }
+
+    private Path getPath(UUID objectID) {
+        return directory.resolve(objectID.toString());
+    }
+
+    private static Optional<UUID> toObjectID(Path path) {
+        try {
+            return Optional.of(UUID.fromString(path.getFileName().toString()));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete cached file {}", path, e);
+        }
+    }
+
+    private static double weightedSize(Cache<?, ?> cache) {
+        return cache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0))
+                .orElse(0L);
+    }
+
+    /**
+     * Copies the bytes read from the underlying stream into a file, which is added to the cache once the stream has
+     * been read to the end.
+     * If the stream is closed early or the file cannot be written, the object is not cached, but can still be read.
+     */
+    private class CachingInputStream extends FilterInputStream {
+
+        private final UUID objectID;
+        private final Path file;
+        private final CompletableFuture<Boolean> download;
+        private OutputStream outputStream;
+        private long size;
+
+        private CachingInputStream(InputStream in, UUID objectID, Path file, OutputStream outputStream,
+                                   CompletableFuture<Boolean> download) {
+            super(in);
+            this.objectID = objectID;
+            this.file = file;
+            this.outputStream = outputStream;
+            this.download = download;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0)
+                write(new byte[]{(byte) b}, 0, 1);
+            else
+                complete();
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0)
+                write(b, off, read);
+            else if (read < 0)
+                complete();
+            return read;
+        }
+
+        /**
+         * Reads the skipped bytes, so they are copied as well.
+         */
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] buffer = new byte[(int) Math.min(Math.max(n, 0), 8192)];
+            long skipped = 0;
+            while (skipped < n) {
+                int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+                if (read < 0)
+                    break;
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (outputStream != null) {
+                    // closed before the end has been read
+                    abort();
+                }
+            }
+        }
+
+        private void write(byte[] b, int off, int len) {
+            if (outputStream == null)
+                return;
+            size += len;
+            if (size > maxObjectSize) {
+                abort();
+                return;
+            }
+            try {
+                outputStream.write(b, off, len);
+            } catch (IOException e) {
+                log.warn("Could not write object {} into the cache", objectID, e);
+                abort();
+            }
+        }
+
+        private void complete() {
+            if (outputStream == null)
+                return;
+            try {
+                outputStream.close();
+            } catch (IOException e) {
+                log.warn("Could not write object {} into the cache", objectID, e);
+                abort();
+                return;
+            }
+            outputStream = null;
+            log.debug("Cached object {} with {} bytes while reading it", objectID, size);
+            boolean cached = put(objectID, file, size, download);
+            if (!cached)
+                delete(file);
+            finish(objectID, download, cached);
+        }
+
+        private void abort() {
+            closeAndDelete(outputStream, file);
+            outputStream = null;
+            finish(objectID, download, false);
+        }
+
+    }
+
+    /**
+     * Reads at most the given number of bytes from the underlying stream.
+     */
+    private static class LimitedInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        private LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0)
+                return -1;
+            int b = super.read();
+            if (b >= 0)
+                remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0)
+                return -1;
+            int read = super.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0)
+                remaining -= read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+    }
+
+}
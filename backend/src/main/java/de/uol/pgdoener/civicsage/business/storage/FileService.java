@@ -3,7 +3,6 @@ package de.uol.pgdoener.civicsage.business.storage;
 import de.uol.pgdoener.civicsage.business.index.TimeFactory;
 import de.uol.pgdoener.civicsage.business.index.exception.ReadFileException;
 import de.uol.pgdoener.civicsage.business.index.exception.StorageException;
-import de.uol.pgdoener.civicsage.business.source.FileHashingService;
 import de.uol.pgdoener.civicsage.business.source.FileSource;
 import de.uol.pgdoener.civicsage.business.source.SourceService;
 import de.uol.pgdoener.civicsage.business.source.exception.SourceCollisionException;
@@ -15,7 +14,6 @@ import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
 
@@ -29,7 +27,7 @@ public class FileService {
 
     private final StorageService storageService;
     private final SourceService sourceService;
-    private final FileHashingService fileHashingService;
+    private final UploadStagingService uploadStagingService;
     private final TimeFactory timeFactory;
 
     /**
@@ -58,6 +56,9 @@ public class FileService {
      * <p>
      * Whether the content of two files is the same is determined by hashing the file content and comparing the hashes.
      * File names are not considered for this comparison.
+     * <p>
+     * The file is read only once. It is spooled to the {@link UploadStagingService staging area} while it is hashed and
+     * stored from there. A newly stored file is kept in the staging area for a short time for indexing.
      *
      * @param iss       InputStreamSource of the file to be stored
      * @param fileName  Name of the file
@@ -70,12 +71,16 @@ public class FileService {
     @Transactional
     public UUID storeFile(InputStreamSource iss, String fileName, boolean temporary)
             throws ReadFileException, StorageException, SourceCollisionException {
-        String hash;
+        UploadStagingService.StagedFile stagedFile = uploadStagingService.stage(iss);
         try {
-            hash = fileHashingService.hash(iss.getInputStream());
-        } catch (IOException e) {
-            throw new ReadFileException("Could not read file.", e);
+            return storeStagedFile(stagedFile, fileName, temporary);
+        } finally {
+            uploadStagingService.discard(stagedFile);
         }
+    }
+
+    private UUID storeStagedFile(UploadStagingService.StagedFile stagedFile, String fileName, boolean temporary) {
+        String hash = stagedFile.hash();
         Optional<FileSource> fileSource = sourceService.getFileSourceByHash(hash);
 
         if (temporary) {
@@ -86,7 +91,7 @@ public class FileService {
                 log.info("File {} already exists as permanent file with ID {}", fileName, fileSource.get().getObjectStorageId());
                 return fileSource.get().getObjectStorageId();
             } else {
-                UUID objectID = storeInStorage(iss);
+                UUID objectID = storeInStorage(stagedFile);
                 sourceService.save(new FileSource(objectID, fileName, hash, timeFactory.getCurrentTime(), List.of(), Map.of(), true, Set.of()));
                 log.info("Temporary file {} uploaded successfully with ID {}", fileName, objectID);
                 return objectID;
@@ -110,7 +115,7 @@ public class FileService {
                 sourceService.save(updated);
                 return existing.getObjectStorageId();
             } else {
-                UUID objectID = storeInStorage(iss);
+                UUID objectID = storeInStorage(stagedFile);
                 sourceService.save(new FileSource(objectID, fileName, hash, timeFactory.getCurrentTime(), List.of(), Map.of(), false, Set.of()));
                 log.info("File {} uploaded successfully with ID {}", fileName, objectID);
                 return objectID;
@@ -131,7 +136,32 @@ public class FileService {
      */
     public Optional<DownloadFile> loadFile(UUID id) {
         log.info("Looking for file with id {} in ObjectStorage", id);
-        Optional<InputStream> optionalInputStream = storageService.load(id);
+        return toDownloadFile(id, storageService.load(id));
+    }
+
+    /**
+     * Loads a part of a file from the storage by its ID.
+     * See {@link #loadFile(UUID)} for details.
+     *
+     * @param id     UUID of the file to be loaded
+     * @param offset the position of the first byte to load
+     * @param length the number of bytes to load or -1 to load everything after the offset
+     * @return Optional containing the DownloadFile with the part of the file if found, otherwise empty
+     */
+    public Optional<DownloadFile> loadFile(UUID id, long offset, long length) {
+        log.info("Looking for bytes {} to {} of file with id {} in ObjectStorage", offset, length < 0 ? "end" : offset + length - 1, id);
+        return toDownloadFile(id, storageService.load(id, offset, length));
+    }
+
+    /**
+     * @param id UUID of the file
+     * @return Optional containing the size of the file in bytes if found, otherwise empty
+     */
+    public Optional<Long> getFileSize(UUID id) {
+        return storageService.getSize(id);
+    }
+
+    private Optional<DownloadFile> toDownloadFile(UUID id, Optional<InputStream> optionalInputStream) {
         if (optionalInputStream.isEmpty()) {
             return Optional.empty();
         }
@@ -150,18 +180,13 @@ public class FileService {
     public record DownloadFile(Resource resource, String filename) {
     }
 
-    private UUID storeInStorage(InputStreamSource iss) {
-        Optional<UUID> objectID;
-        try {
-            objectID = storageService.store(iss.getInputStream());
-            log.info("Stored file {}", objectID);
-        } catch (IOException e) {
-            log.error("Error storing file", e);
-            throw new ReadFileException("Could not read file", e);
-        }
+    private UUID storeInStorage(UploadStagingService.StagedFile stagedFile) {
+        Optional<UUID> objectID = storageService.store(stagedFile.path());
         if (objectID.isEmpty()) {
             throw new StorageException("Could not store file");
         }
+        log.info("Stored file {}", objectID.get());
+        uploadStagingService.keep(stagedFile, objectID.get());
         return objectID.get();
     }
 
@@ -1,18 +1,47 @@
 package de.uol.pgdoener.civicsage.business.storage;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Optional;
 import java.util.UUID;
 
 public interface StorageService {
 
+    /**
+     * Uploads a given inputStream of unknown length to the objectStorage
+     *
+     * @param inputStream InputStream of the object to store
+     * @return Optional with the UUID of the stored object if the upload was successful, empty Optional otherwise.
+     */
+    default Optional<UUID> store(InputStream inputStream) {
+        return store(inputStream, -1);
+    }
+
     /**
      * Uploads a given inputStream to the objectStorage
      *
      * @param inputStream InputStream of the object to store
+     * @param size        the number of bytes of the object or -1 if it is unknown. If the size is known, exactly this
+     *                    number of bytes is read from the inputStream.
      * @return Optional with the UUID of the stored object if the upload was successful, empty Optional otherwise.
      */
-    Optional<UUID> store(InputStream inputStream);
+    Optional<UUID> store(InputStream inputStream, long size);
+
+    /**
+     * Uploads the content of a local file to the objectStorage
+     *
+     * @param file Path of the file to store
+     * @return Optional with the UUID of the stored object if the upload was successful, empty Optional otherwise.
+     */
+    default Optional<UUID> store(Path file) {
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            return store(inputStream, Files.size(file));
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
 
     /**
      * @param objectID UUID of the object to load
@@ -20,6 +49,22 @@ public interface StorageService {
      */
     Optional<InputStream> load(UUID objectID);
 
+    /**
+     * Loads a part of an object.
+     *
+     * @param objectID UUID of the object to load
+     * @param offset   the position of the first byte to load
+     * @param length   the number of bytes to load or -1 to load everything after the offset
+     * @return Optional with the InputStream of the part if the object was found, empty Optional otherwise.
+     */
+    Optional<InputStream> load(UUID objectID, long offset, long length);
+
+    /**
+     * @param objectID UUID of the object
+     * @return Optional with the size of the object in bytes if it was found, empty Optional otherwise.
+     */
+    Optional<Long> getSize(UUID objectID);
+
     /**
      * Deletes the object with the given UUID from the objectStorage.
      *
@@ -0,0 +1,163 @@
+package de.uol.pgdoener.civicsage.business.storage;
+
+import de.uol.pgdoener.civicsage.autoconfigure.StorageProperties;
+import de.uol.pgdoener.civicsage.business.index.exception.ReadFileException;
+import de.uol.pgdoener.civicsage.business.index.exception.StorageException;
+import de.uol.pgdoener.civicsage.business.source.FileHashingService;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * A local staging area for uploaded files.
+ * <p>
+ * An upload is spooled to a file in the staging directory once, while its hash is computed in the same pass.
+ * The object storage is then fed from this file, so the upload is neither read twice nor held in memory.
+ * After the file has been stored, the staged copy is kept for a short time under the id of the object. Indexing the
+ * file, which usually follows the upload directly, reads the local copy instead of downloading the object again.
+ * Copies not used within {@link StorageProperties.Staging#getRetention()} are deleted by a scheduled job.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UploadStagingService {
+
+    private static final String UPLOAD_PREFIX = "upload-";
+
+    private final StorageProperties storageProperties;
+    private final FileHashingService fileHashingService;
+
+    @PostConstruct
+    void createDirectory() throws IOException {
+        Files.createDirectories(getDirectory());
+    }
+
+    /**
+     * Spools the content into the staging directory and hashes it.
+     * The staged file must be passed to {@link #keep(StagedFile, UUID)} or {@link #discard(StagedFile)}.
+     *
+     * @param iss the source of the content
+     * @return the staged file
+     * @throws ReadFileException if the content could not be read
+     * @throws StorageException  if the content could not be written to the staging directory
+     */
+    public StagedFile stage(InputStreamSource iss) throws ReadFileException, StorageException {
+        Path path;
+        try {
+            path = Files.createTempFile(getDirectory(), UPLOAD_PREFIX, null);
+        } catch (IOException e) {
+            throw new StorageException("Could not create file in staging directory", e);
+        }
+        try (InputStream inputStream = iss.getInputStream()) {
+            String hash = fileHashingService.copyAndHash(inputStream, path);
+            StagedFile stagedFile = new StagedFile(path, hash, Files.size(path));
+            log.debug("Staged upload with {} bytes in {}", stagedFile.size(), path);
+            return stagedFile;
+        } catch (IOException | RuntimeException e) {
+            delete(path);
+            if (e instanceof RuntimeException runtimeException)
+                throw runtimeException;
+            throw new ReadFileException("Could not read file.", e);
+        }
+    }
+
+    /**
+     * Keeps the staged file as the local copy of the stored object.
+     *
+     * @param stagedFile the staged file, which has been stored in the object storage
+     * @param objectID   the id of the object in the object storage
+     */
+    public void keep(StagedFile stagedFile, UUID objectID) {
+        Path target = getDirectory().resolve(objectID.toString());
+        try {
+            Files.move(stagedFile.path(), target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.debug("Keeping local copy of object {}", objectID);
+        } catch (IOException e) {
+            log.warn("Could not keep local copy of object {}", objectID, e);
+            discard(stagedFile);
+        }
+    }
+
+    /**
+     * Deletes the staged file, if it has not been kept.
+     *
+     * @param stagedFile the staged file
+     */
+    public void discard(StagedFile stagedFile) {
+        delete(stagedFile.path());
+    }
+
+    /**
+     * Returns the local copy of the object, if it still exists. Finding the copy counts as a use, so the copy is kept
+     * for the full retention period from now on.
+     *
+     * @param objectID the id of the object in the object storage
+     * @return the path of the local copy or an empty Optional
+     */
+    public Optional<Path> find(UUID objectID) {
+        Path path = getDirectory().resolve(objectID.toString());
+        try {
+            Files.setLastModifiedTime(path, FileTime.from(Instant.now()));
+            return Optional.of(path);
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            log.warn("Could not access local copy of object {}", objectID, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Deletes all files in the staging directory, which have not been used since the threshold.
+     * This includes uploads left behind by a crash while they were staged.
+     *
+     * @param threshold the time of the last use of the files to delete
+     * @return the number of deleted files
+     */
+    public int deleteUnusedBefore(Instant threshold) {
+        int deleted = 0;
+        try (Stream<Path> files = Files.list(getDirectory())) {
+            for (Path path : files.toList()) {
+                if (Files.getLastModifiedTime(path).toInstant().isBefore(threshold) && Files.deleteIfExists(path))
+                    deleted++;
+            }
+        } catch (IOException e) {
+            log.warn("Could not clean up staging directory", e);
+        }
+        return deleted;
+    }
+
+    private Path getDirectory() {
+        return storageProperties.getStaging().getDirectory();
+    }
+
+    private void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete staged file {}", path, e);
+        }
+    }
+
+    /**
+     * An upload spooled into the staging directory.
+     *
+     * @param path the location of the staged file
+     * @param hash the hash of the content
+     * @param size the size of the content in bytes
+     */
+    public record StagedFile(Path path, String hash, long size) {
+    }
+
+}
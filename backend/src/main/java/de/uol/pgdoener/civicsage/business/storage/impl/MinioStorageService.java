@@ -2,20 +2,31 @@ package de.uol.pgdoener.civicsage.business.storage.impl;
 
 import de.uol.pgdoener.civicsage.autoconfigure.S3Properties;
 import de.uol.pgdoener.civicsage.business.storage.StorageService;
-import io.minio.GetObjectArgs;
-import io.minio.MinioClient;
-import io.minio.PutObjectArgs;
-import io.minio.RemoveObjectArgs;
+import io.minio.*;
+import io.minio.messages.Part;
 import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
+ * Stores objects in an S3 compatible object storage.
+ * <p>
+ * Objects larger than the configured part size are uploaded in multiple parts. Local files are uploaded as a multipart
+ * upload whose parts are sent in parallel. Failed uploads are aborted, so the object storage discards their parts.
+ *
  * @see <a href=https://gurselgazii.medium.com/integrating-minio-with-spring-boot-a-guide-to-simplified-object-storage-525d5a7686cc>medium.com</a>
  */
 @Slf4j
@@ -23,18 +34,17 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class MinioStorageService implements StorageService {
 
+    private static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+
     private final S3Properties s3Properties;
     private final MinioClient minioClient;
+    private final MinioAsyncClient minioAsyncClient;
 
     @Override
-    public Optional<UUID> store(InputStream inputStream) {
+    public Optional<UUID> store(InputStream inputStream, long size) {
         UUID objectID = UUID.randomUUID();
         try {
-            minioClient.putObject(PutObjectArgs.builder()
-                    .bucket(s3Properties.getBucket().getName())
-                    .object(objectID.toString())
-                    .stream(inputStream, inputStream.available(), -1)
-                    .build());
+            putObject(objectID.toString(), inputStream, size);
             log.debug("Stored object in objectStorage");
             return Optional.of(objectID);
         } catch (Exception e) {
@@ -43,6 +53,28 @@ public class MinioStorageService implements StorageService {
         }
     }
 
+    @Override
+    public Optional<UUID> store(Path file) {
+        UUID objectID = UUID.randomUUID();
+        try {
+            long size = Files.size(file);
+            long partSize = getPartSize();
+            int parallelParts = s3Properties.getMultipart().getParallelParts();
+            if (size <= partSize || parallelParts <= 1) {
+                try (InputStream inputStream = Files.newInputStream(file)) {
+                    putObject(objectID.toString(), inputStream, size);
+                }
+            } else {
+                uploadMultipart(objectID.toString(), file, size, partSize, parallelParts);
+            }
+            log.debug("Stored file in objectStorage");
+            return Optional.of(objectID);
+        } catch (Exception e) {
+            log.warn("Upload failed", e);
+            return Optional.empty();
+        }
+    }
+
     @Override
     public Optional<InputStream> load(UUID objectID) {
         try {
@@ -57,6 +89,36 @@ public class MinioStorageService implements StorageService {
         }
     }
 
+    @Override
+    public Optional<InputStream> load(UUID objectID, long offset, long length) {
+        try {
+            var response = minioClient.getObject(GetObjectArgs.builder()
+                    .bucket(s3Properties.getBucket().getName())
+                    .object(objectID.toString())
+                    .offset(offset)
+                    .length(length < 0 ? null : length)
+                    .build());
+            return Optional.of(response);
+        } catch (Exception e) {
+            log.warn("Download of range failed", e);
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public Optional<Long> getSize(UUID objectID) {
+        try {
+            StatObjectResponse response = minioClient.statObject(StatObjectArgs.builder()
+                    .bucket(s3Properties.getBucket().getName())
+                    .object(objectID.toString())
+                    .build());
+            return Optional.of(response.size());
+        } catch (Exception e) {
+            log.debug("Could not get size of object with ID: {}", objectID, e);
+            return Optional.empty();
+        }
+    }
+
     @Override
     public void delete(UUID objectID) {
         try {
@@ -75,4 +137,80 @@ public class MinioStorageService implements StorageService {
         log.warn("Bucket existence not ensured yet!");
         // FIXME implement this
     }
+
+    /**
+     * Uploads the stream. If the size is unknown or larger than the part size, the stream is uploaded in parts of the
+     * configured size one after another.
+     */
+    private void putObject(String objectName, InputStream inputStream, long size) throws Exception {
+        minioClient.putObject(PutObjectArgs.builder()
+                .bucket(s3Properties.getBucket().getName())
+                .object(objectName)
+                .stream(inputStream, size, getPartSize())
+                .build());
+    }
+
+    /**
+     * Uploads the file as a multipart upload whose parts are sent in parallel. Each part is streamed from its own
+     * handle of the file, so the parts are not copied onto the heap.
+     */
+    private void uploadMultipart(String objectName, Path file, long size, long partSize, int parallelParts) throws Exception {
+        String bucket = s3Properties.getBucket().getName();
+        String uploadId = minioAsyncClient.createMultipartUploadAsync(bucket, null, objectName, null, null)
+                .get().result().uploadId();
+        try {
+            Part[] parts = uploadParts(objectName, uploadId, file, size, partSize, parallelParts);
+            minioAsyncClient.completeMultipartUploadAsync(bucket, null, objectName, uploadId, parts, null, null).get();
+        } catch (Exception e) {
+            abortMultipart(objectName, uploadId);
+            throw e;
+        }
+        log.debug("Uploaded object in {} parts", Math.ceilDiv(size, partSize));
+    }
+
+    private Part[] uploadParts(String objectName, String uploadId, Path file, long size, long partSize, int parallelParts) throws Exception {
+        String bucket = s3Properties.getBucket().getName();
+        int partCount = (int) Math.ceilDiv(size, partSize);
+        try (ExecutorService executor = Executors.newFixedThreadPool(parallelParts, Thread.ofVirtual().factory())) {
+            List<Future<Part>> uploads = new ArrayList<>(partCount);
+            for (int i = 0; i < partCount; i++) {
+                int partNumber = i + 1;
+                long offset = i * partSize;
+                long length = Math.min(partSize, size - offset);
+                uploads.add(executor.submit(() -> {
+                    // the client reads the part from the current position of the file
+                    try (RandomAccessFile data = new RandomAccessFile(file.toFile(), "r")) {
+                        data.seek(offset);
+                        UploadPartResponse response = minioAsyncClient.uploadPartAsync(
+                                bucket, null, objectName, data, length, uploadId, partNumber, null, null).get();
+                        return new Part(partNumber, response.etag());
+                    }
+                }));
+            }
+            Part[] parts = new Part[partCount];
+            try {
+                for (int i = 0; i < partCount; i++) {
+                    parts[i] = uploads.get(i).get();
+                }
+            } catch (Exception e) {
+                executor.shutdownNow();
+                throw e;
+            }
+            return parts;
+        }
+    }
+
+    private void abortMultipart(String objectName, String uploadId) {
+        try {
+            minioAsyncClient.abortMultipartUploadAsync(
+                    s3Properties.getBucket().getName(), null, objectName, uploadId, null, null).get();
+        } catch (Exception e) {
+            log.warn("Failed to abort multipart upload of {}", objectName, e);
+        }
+    }
+
+    private long getPartSize() {
+        return Math.max(MIN_PART_SIZE, s3Properties.getMultipart().getPartSize().toBytes());
+    }
+
 }
@@ -6,7 +6,4 @@ import org.springframework.context.annotation.Configuration;
 @Configuration
 @EnableCaching
 public class CachingConfig {
-
-    public static final String SEARCH_CACHE_NAME = "embeddingSearch";
-
 }
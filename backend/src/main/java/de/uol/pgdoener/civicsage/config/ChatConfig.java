@@ -1,8 +1,10 @@
 package de.uol.pgdoener.civicsage.config;
 
+import de.uol.pgdoener.civicsage.business.completion.ContextPacker;
+import de.uol.pgdoener.civicsage.business.completion.MediaTextCache;
 import de.uol.pgdoener.civicsage.business.completion.advisors.DocumentAdvisor;
 import de.uol.pgdoener.civicsage.business.completion.advisors.MediaConversionAdvisor;
-import de.uol.pgdoener.civicsage.business.embedding.VectorStoreExtension;
+import de.uol.pgdoener.civicsage.business.embedding.EmbeddingService;
 import de.uol.pgdoener.civicsage.business.index.document.DocumentReaderService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.ai.chat.client.ChatClient;
@@ -16,16 +18,24 @@ import org.springframework.context.annotation.Configuration;
 public class ChatConfig {
 
     private final ChatModel chatModel;
-    private final VectorStoreExtension vectorStoreExtension;
+    private final EmbeddingService embeddingService;
+    private final ContextPacker contextPacker;
     private final DocumentReaderService documentReaderService;
+    private final MediaTextCache mediaTextCache;
 
     @Bean
     public ChatClient documentChatClient() {
         return ChatClient.builder(chatModel)
                 .defaultAdvisors(
                         SimpleLoggerAdvisor.builder().build(),
-                        DocumentAdvisor.builder().vectorStoreExtension(vectorStoreExtension).build(),
-                        MediaConversionAdvisor.builder().documentReaderService(documentReaderService).build()
+                        DocumentAdvisor.builder()
+                                .embeddingService(embeddingService)
+                                .contextPacker(contextPacker)
+                                .build(),
+                        MediaConversionAdvisor.builder()
+                                .documentReaderService(documentReaderService)
+                                .mediaTextCache(mediaTextCache)
+                                .build()
                 )
                 .build();
     }
@@ -2,11 +2,14 @@ package de.uol.pgdoener.civicsage.config;
 
 import com.knuddels.jtokkit.api.EncodingType;
 import de.uol.pgdoener.civicsage.autoconfigure.AIProperties;
+import de.uol.pgdoener.civicsage.business.embedding.EmbeddingRateLimitInterceptor;
+import de.uol.pgdoener.civicsage.business.embedding.EmbeddingRateLimiter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.embedding.BatchingStrategy;
 import org.springframework.ai.embedding.TokenCountBatchingStrategy;
 import org.springframework.ai.transformer.splitter.TextSplitter;
 import org.springframework.ai.transformer.splitter.TokenTextSplitter;
+import org.springframework.boot.web.client.RestClientCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -35,6 +38,15 @@ public class EmbeddingConfig {
         );
     }
 
+    /**
+     * Reports the responses of the embedding model to the rate limiter.
+     * The OpenAI models use the auto-configured {@link org.springframework.web.client.RestClient.Builder}.
+     */
+    @Bean
+    public RestClientCustomizer embeddingRateLimitCustomizer(EmbeddingRateLimiter embeddingRateLimiter) {
+        return builder -> builder.requestInterceptor(new EmbeddingRateLimitInterceptor(embeddingRateLimiter));
+    }
+
     @Bean
     public TextSplitter textSplitter() {
         return TokenTextSplitter.builder()
@@ -1,6 +1,7 @@
 package de.uol.pgdoener.civicsage.config;
 
 import de.uol.pgdoener.civicsage.autoconfigure.S3Properties;
+import io.minio.MinioAsyncClient;
 import io.minio.MinioClient;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
@@ -20,4 +21,13 @@ public class S3Config {
                 .region(s3Properties.getRegion())
                 .build();
     }
+
+    @Bean
+    public MinioAsyncClient minioAsyncClient() {
+        return MinioAsyncClient.builder()
+                .endpoint(s3Properties.getUrl())
+                .credentials(s3Properties.getAccessKey(), s3Properties.getSecretKey())
+                .region(s3Properties.getRegion())
+                .build();
+    }
 }
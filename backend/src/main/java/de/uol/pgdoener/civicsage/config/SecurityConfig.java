@@ -1,6 +1,7 @@
 package de.uol.pgdoener.civicsage.config;
 
 
+import de.uol.pgdoener.civicsage.api.controller.SearchController;
 import de.uol.pgdoener.civicsage.autoconfigure.SecurityProperties;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
@@ -35,6 +36,7 @@ public class SecurityConfig {
         config.setAllowedOrigins(securityProperties.getAllowedOrigins());
         config.setAllowedMethods(List.of("GET", "POST", "PUT", "DELETE", "OPTIONS", "PATCH"));
         config.setAllowedHeaders(List.of("*"));
+        config.setExposedHeaders(List.of(SearchController.SEARCH_CURSOR_HEADER));
         config.setAllowCredentials(true);
         source.registerCorsConfiguration("/**", config);
         return new CorsFilter(source);
@@ -0,0 +1,32 @@
+package de.uol.pgdoener.civicsage.config;
+
+import de.uol.pgdoener.civicsage.autoconfigure.StorageProperties;
+import de.uol.pgdoener.civicsage.business.storage.CachingStorageService;
+import de.uol.pgdoener.civicsage.business.storage.StorageService;
+import de.uol.pgdoener.civicsage.business.storage.impl.MinioStorageService;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+@Configuration
+@RequiredArgsConstructor
+public class StorageConfig {
+
+    private final StorageProperties storageProperties;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Caches the objects loaded from the object storage on the local disk.
+     * All users of the {@link StorageService} get this cache instead of the {@link MinioStorageService}.
+     */
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "civicsage.storage.cache.enabled", havingValue = "true", matchIfMissing = true)
+    public StorageService cachingStorageService(MinioStorageService minioStorageService) {
+        return new CachingStorageService(minioStorageService, storageProperties, meterRegistry);
+    }
+
+}
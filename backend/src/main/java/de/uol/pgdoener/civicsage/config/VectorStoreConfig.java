@@ -1,7 +1,13 @@
 package de.uol.pgdoener.civicsage.config;
 
 import de.uol.pgdoener.civicsage.autoconfigure.AIProperties;
+import de.uol.pgdoener.civicsage.business.embedding.CachingEmbeddingModel;
+import de.uol.pgdoener.civicsage.business.embedding.EmbeddingRateLimiter;
+import de.uol.pgdoener.civicsage.business.embedding.hnsw.HnswGraph;
+import de.uol.pgdoener.civicsage.business.embedding.hnsw.HnswVectorStore;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
+import org.springframework.ai.embedding.BatchingStrategy;
 import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.ai.vectorstore.mariadb.MariaDBVectorStore;
@@ -11,13 +17,20 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.jdbc.core.JdbcTemplate;
 
+import java.nio.file.Path;
+
 @Configuration
 @RequiredArgsConstructor
 public class VectorStoreConfig {
 
+    public static final String HNSW_FILE_SUFFIX = ".hnsw";
+
     private final AIProperties aiProperties;
     private final VectorStoreTableNameProvider vectorStoreTableNameProvider;
     private final EmbeddingModel embeddingModel;
+    private final BatchingStrategy batchingStrategy;
+    private final EmbeddingRateLimiter embeddingRateLimiter;
+    private final MeterRegistry meterRegistry;
 
     private final JdbcTemplate jdbcTemplate;
 
@@ -26,9 +39,13 @@ public class VectorStoreConfig {
 
     @Bean
     public VectorStore vectorStore() {
+        EmbeddingModel cachingEmbeddingModel = new CachingEmbeddingModel(
+                embeddingModel, modelName, embeddingRateLimiter, aiProperties, meterRegistry
+        );
         return switch (aiProperties.getVectorStore().getType()) {
-            case MARIADB -> createMariaDBVectorStore();
-            case POSTGRESQL -> createPgVectorStore();
+            case MARIADB -> createMariaDBVectorStore(cachingEmbeddingModel);
+            case POSTGRESQL -> createPgVectorStore(cachingEmbeddingModel);
+            case HNSW -> createHnswVectorStore(cachingEmbeddingModel);
         };
     }
 
@@ -36,8 +53,9 @@ public class VectorStoreConfig {
     // MariaDB Vector Store
     // #####################
 
-    private MariaDBVectorStore createMariaDBVectorStore() {
+    private MariaDBVectorStore createMariaDBVectorStore(EmbeddingModel embeddingModel) {
         return MariaDBVectorStore.builder(jdbcTemplate, embeddingModel)
+                .batchingStrategy(batchingStrategy)
                 .initializeSchema(aiProperties.getVectorStore().isInitializeSchema())
                 .removeExistingVectorStoreTable(aiProperties.getVectorStore().isRemoveExistingVectorStoreTable())
                 .schemaName(aiProperties.getVectorStore().getSchemaName())
@@ -61,8 +79,9 @@ public class VectorStoreConfig {
     // PostgreSQL Vector Store
     // ########################
 
-    private PgVectorStore createPgVectorStore() {
+    private PgVectorStore createPgVectorStore(EmbeddingModel embeddingModel) {
         return PgVectorStore.builder(jdbcTemplate, embeddingModel)
+                .batchingStrategy(batchingStrategy)
                 .initializeSchema(aiProperties.getVectorStore().isInitializeSchema())
                 .removeExistingVectorStoreTable(aiProperties.getVectorStore().isRemoveExistingVectorStoreTable())
                 .schemaName(aiProperties.getVectorStore().getSchemaName())
@@ -80,4 +99,44 @@ public class VectorStoreConfig {
         };
     }
 
+    // ###################
+    // HNSW Vector Store
+    // ###################
+
+    private HnswVectorStore createHnswVectorStore(EmbeddingModel embeddingModel) {
+        AIProperties.VectorStore.Hnsw hnsw = aiProperties.getVectorStore().getHnsw();
+        return HnswVectorStore.builder(hnswPath(aiProperties, vectorStoreTableNameProvider.getTableName()), embeddingModel)
+                .batchingStrategy(batchingStrategy)
+                .metric(createHnswMetric())
+                .m(hnsw.getM())
+                .efConstruction(hnsw.getEfConstruction())
+                .efSearch(hnsw.getEfSearch())
+                .quantization(createHnswQuantization())
+                .oversampling(hnsw.getOversampling())
+                .build();
+    }
+
+    private HnswGraph.Metric createHnswMetric() {
+        return switch (aiProperties.getVectorStore().getDistance()) {
+            case COSINE -> HnswGraph.Metric.COSINE;
+            case EUCLIDEAN -> HnswGraph.Metric.EUCLIDEAN;
+            case NEGATIVE_INNER_PRODUCT -> HnswGraph.Metric.NEGATIVE_INNER_PRODUCT;
+        };
+    }
+
+    private HnswGraph.Quantization createHnswQuantization() {
+        return switch (aiProperties.getVectorStore().getHnsw().getQuantization()) {
+            case NONE -> HnswGraph.Quantization.NONE;
+            case INT8 -> HnswGraph.Quantization.INT8;
+            case BINARY -> HnswGraph.Quantization.BINARY;
+        };
+    }
+
+    /**
+     * @return the path of the file of an HNSW vector store with the given table name
+     */
+    public static Path hnswPath(AIProperties aiProperties, String tableName) {
+        return aiProperties.getVectorStore().getHnsw().getDirectory().resolve(tableName + HNSW_FILE_SUFFIX);
+    }
+
 }
@@ -2,6 +2,7 @@ package de.uol.pgdoener.civicsage;
 
 import de.uol.pgdoener.civicsage.test.support.DummyEmbeddingModel;
 import de.uol.pgdoener.civicsage.test.support.MariaDBContainerFactory;
+import io.minio.MinioAsyncClient;
 import io.minio.MinioClient;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
@@ -33,6 +34,8 @@ class OpenApiIntIT {
     static MariaDBContainer<?> mariadb = MariaDBContainerFactory.create();
     @MockitoBean
     MinioClient minioClient;
+    @MockitoBean
+    MinioAsyncClient minioAsyncClient;
     @TestBean
     EmbeddingModel embeddingModel;
 
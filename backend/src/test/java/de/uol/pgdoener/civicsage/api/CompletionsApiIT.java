@@ -10,6 +10,7 @@ import de.uol.pgdoener.civicsage.test.support.DummyEmbeddingModel;
 import de.uol.pgdoener.civicsage.test.support.MariaDBContainerFactory;
 import io.minio.GetObjectArgs;
 import io.minio.GetObjectResponse;
+import io.minio.MinioAsyncClient;
 import io.minio.MinioClient;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
@@ -34,6 +35,7 @@ import org.springframework.test.web.servlet.MvcResult;
 import org.testcontainers.containers.MariaDBContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
+import reactor.core.publisher.Flux;
 
 import java.io.ByteArrayInputStream;
 import java.net.URI;
@@ -66,6 +68,8 @@ class CompletionsApiIT {
     @MockitoBean
     MinioClient minioClient;
     @MockitoBean
+    MinioAsyncClient minioAsyncClient;
+    @MockitoBean
     ChatModel chatModel;
     @TestBean
     EmbeddingModel embeddingModel;
@@ -421,6 +425,64 @@ class CompletionsApiIT {
         assertEquals("Chat Model Response", chat.get().getMessages().get(1).getContent());
     }
 
+    @Test
+    void testChatApiStreamMessage() throws Exception {
+        when(chatModel.stream(any(Prompt.class))).thenReturn(Flux.just(
+                new ChatResponse(List.of(new Generation(new AssistantMessage("Chat Model\n"))), null),
+                new ChatResponse(List.of(new Generation(new AssistantMessage("Response"))), null)
+        ));
+
+        MvcResult result = mockMvc.perform(get(API_BASE_PATH)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isCreated())
+                .andReturn();
+        String id = JsonPath.read(result.getResponse().getContentAsString(), "$.chatId");
+
+        MvcResult streamResult = mockMvc.perform(post(API_BASE_PATH + "/stream")
+                        .param("chatId", id)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.TEXT_EVENT_STREAM)
+                        .content("""
+                                {
+                                  "role": "user",
+                                  "content": "Hello, how are you?"
+                                }
+                                """))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(streamResult))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.TEXT_EVENT_STREAM));
+
+        String events = streamResult.getResponse().getContentAsString();
+        assertTrue(events.contains("event:token\ndata:\"Chat Model\\n\"\n\n"), events);
+        assertTrue(events.contains("event:token\ndata:\"Response\"\n\n"), events);
+        assertTrue(events.contains("event:chat\n"), events);
+        assertTrue(events.indexOf("event:chat") > events.lastIndexOf("event:token"), events);
+
+        Optional<Chat> chat = chatRepository.findById(UUID.fromString(id));
+        assertTrue(chat.isPresent());
+        assertEquals(2, chat.get().getMessages().size());
+        assertEquals(Role.USER, chat.get().getMessages().get(0).getRole());
+        assertEquals(Role.ASSISTANT, chat.get().getMessages().get(1).getRole());
+        assertEquals("Chat Model\nResponse", chat.get().getMessages().get(1).getContent());
+    }
+
+    @Test
+    void testChatApiStreamMessageNotFound() throws Exception {
+        UUID randomId = UUID.randomUUID();
+        mockMvc.perform(post(API_BASE_PATH + "/stream")
+                        .param("chatId", randomId.toString())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.TEXT_EVENT_STREAM, MediaType.APPLICATION_JSON)
+                        .content("""
+                                {
+                                  "content": "Hello, how are you?"
+                                }
+                                """))
+                .andExpect(status().isNotFound());
+    }
+
     @Test
     void testChatApiSendMessageWithFiles() throws Exception {
         when(chatModel.call(any(Prompt.class))).thenAnswer(invocation -> {
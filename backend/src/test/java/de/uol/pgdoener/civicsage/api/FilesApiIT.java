@@ -5,8 +5,11 @@ import de.uol.pgdoener.civicsage.autoconfigure.AIProperties;
 import de.uol.pgdoener.civicsage.business.source.FileSource;
 import de.uol.pgdoener.civicsage.business.source.FileSourceRepository;
 import de.uol.pgdoener.civicsage.test.support.MariaDBContainerFactory;
+import io.minio.GetObjectArgs;
 import io.minio.GetObjectResponse;
+import io.minio.MinioAsyncClient;
 import io.minio.MinioClient;
+import io.minio.StatObjectResponse;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
@@ -14,6 +17,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
@@ -46,6 +50,8 @@ class FilesApiIT {
     static MariaDBContainer<?> mariadb = MariaDBContainerFactory.create();
     @MockitoBean
     MinioClient minioClient;
+    @MockitoBean
+    MinioAsyncClient minioAsyncClient;
 
     @Autowired
     MockMvc mockMvc;
@@ -164,6 +170,44 @@ class FilesApiIT {
         assertEquals("attachment; filename=\"test.txt\"", downloadResult.getResponse().getHeader("Content-Disposition"));
     }
 
+    @Test
+    void testDownloadFileRange() throws Exception {
+        byte[] content = "file content 201".getBytes();
+        StatObjectResponse stat = mock(StatObjectResponse.class);
+        when(stat.size()).thenReturn((long) content.length);
+        when(minioClient.statObject(any())).thenReturn(stat);
+        when(minioClient.getObject(any())).thenAnswer(invocation -> {
+            GetObjectArgs args = invocation.getArgument(0);
+            int offset = args.offset() == null ? 0 : args.offset().intValue();
+            int length = args.length() == null ? content.length - offset : args.length().intValue();
+            return new GetObjectResponse(null, null, null, null, new ByteArrayInputStream(content, offset, length));
+        });
+
+        MvcResult uploadResult = mockMvc.perform(multipart(API_BASE_PATH)
+                        .file(new MockMultipartFile("file", "test.txt", MediaType.TEXT_PLAIN_VALUE, content))
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andReturn();
+        String id = JsonPath.read(uploadResult.getResponse().getContentAsString(), "$.id");
+
+        MvcResult downloadResult = mockMvc.perform(get(API_BASE_PATH)
+                        .param("id", id)
+                        .header(HttpHeaders.RANGE, "bytes=5-11")
+                        .accept(MediaType.APPLICATION_OCTET_STREAM))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 5-11/16"))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 7))
+                .andReturn();
+        assertEquals("content", downloadResult.getResponse().getContentAsString());
+
+        mockMvc.perform(get(API_BASE_PATH)
+                        .param("id", id)
+                        .header(HttpHeaders.RANGE, "bytes=100-")
+                        .accept(MediaType.APPLICATION_OCTET_STREAM))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */16"));
+    }
+
     // Temporary file upload
 
     @Test
@@ -4,8 +4,10 @@ import com.jayway.jsonpath.JsonPath;
 import de.uol.pgdoener.civicsage.business.source.FileSource;
 import de.uol.pgdoener.civicsage.business.source.FileSourceRepository;
 import de.uol.pgdoener.civicsage.test.support.DummyEmbeddingModel;
+import de.uol.pgdoener.civicsage.test.support.IndexJobs;
 import de.uol.pgdoener.civicsage.test.support.MariaDBContainerFactory;
 import io.minio.GetObjectResponse;
+import io.minio.MinioAsyncClient;
 import io.minio.MinioClient;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -35,6 +37,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
@@ -47,12 +50,15 @@ class IndexFileApiIT {
 
     static final String API_FILE_UPLOAD_PATH = "/api/v1/files";
     static final String API_BASE_PATH = "/api/v1/index/file";
+    static final String API_JOB_PATH = "/api/v1/index/jobs/{jobId}";
 
     @Container
     @ServiceConnection
     static MariaDBContainer<?> mariadb = MariaDBContainerFactory.create();
     @MockitoBean
     MinioClient minioClient;
+    @MockitoBean
+    MinioAsyncClient minioAsyncClient;
     @TestBean
     EmbeddingModel embeddingModel;
 
@@ -96,7 +102,7 @@ class IndexFileApiIT {
         String id = JsonPath.read(result.getResponse().getContentAsString(), "$.id");
         UUID uuid = UUID.fromString(id);
 
-        mockMvc.perform(post(API_BASE_PATH)
+        MvcResult indexResult = mockMvc.perform(post(API_BASE_PATH)
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(String.format("""
                                 [
@@ -107,7 +113,9 @@ class IndexFileApiIT {
                                 ]
                                 """, id))
                         .accept(MediaType.APPLICATION_JSON))
-                .andExpect(status().isAccepted());
+                .andExpect(status().isAccepted())
+                .andReturn();
+        IndexJobs.awaitDone(mockMvc, indexResult);
 
         FileSource source = fileSourceRepository.findById(uuid).orElseThrow();
         assertEquals(uuid, source.getObjectStorageId());
@@ -132,6 +140,13 @@ class IndexFileApiIT {
                 .andExpect(status().isNotFound());
     }
 
+    @Test
+    void testIndexApiJobNotFound() throws Exception {
+        mockMvc.perform(get(API_JOB_PATH, UUID.randomUUID())
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNotFound());
+    }
+
     @Test
     //FIXME
     @Disabled("Unsure what the correct behavior should be here")
@@ -214,7 +229,7 @@ class IndexFileApiIT {
         UUID uuid1 = UUID.fromString(id1);
         UUID uuid2 = UUID.fromString(id2);
 
-        mockMvc.perform(post(API_BASE_PATH)
+        MvcResult indexResult = mockMvc.perform(post(API_BASE_PATH)
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(String.format("""
                                 [
@@ -229,7 +244,9 @@ class IndexFileApiIT {
                                 ]
                                 """, id1, id2))
                         .accept(MediaType.APPLICATION_JSON))
-                .andExpect(status().isAccepted());
+                .andExpect(status().isAccepted())
+                .andReturn();
+        IndexJobs.awaitDone(mockMvc, indexResult);
 
         FileSource source1 = fileSourceRepository.findById(uuid1).orElseThrow();
         assertEquals(uuid1, source1.getObjectStorageId());
@@ -258,7 +275,7 @@ class IndexFileApiIT {
         String id = JsonPath.read(result.getResponse().getContentAsString(), "$.id");
         UUID uuid = UUID.fromString(id);
 
-        mockMvc.perform(post(API_BASE_PATH)
+        MvcResult indexResult = mockMvc.perform(post(API_BASE_PATH)
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(String.format("""
                                 [
@@ -269,7 +286,9 @@ class IndexFileApiIT {
                                 ]
                                 """, id))
                         .accept(MediaType.APPLICATION_JSON))
-                .andExpect(status().isAccepted());
+                .andExpect(status().isAccepted())
+                .andReturn();
+        IndexJobs.awaitDone(mockMvc, indexResult);
 
         mockMvc.perform(post(API_BASE_PATH)
                         .contentType(MediaType.APPLICATION_JSON)
@@ -338,7 +357,7 @@ class IndexFileApiIT {
         String id = JsonPath.read(result.getResponse().getContentAsString(), "$.id");
         UUID uuid = UUID.fromString(id);
 
-        mockMvc.perform(post(API_BASE_PATH)
+        MvcResult indexResult = mockMvc.perform(post(API_BASE_PATH)
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(String.format("""
                                 [
@@ -349,7 +368,9 @@ class IndexFileApiIT {
                                 ]
                                 """, id))
                         .accept(MediaType.APPLICATION_JSON))
-                .andExpect(status().isAccepted());
+                .andExpect(status().isAccepted())
+                .andReturn();
+        IndexJobs.awaitDone(mockMvc, indexResult);
         FileSource source = fileSourceRepository.findById(uuid).orElseThrow();
         assertEquals(uuid, source.getObjectStorageId());
         assertEquals(filename, source.getFileName());
@@ -4,6 +4,7 @@ import de.uol.pgdoener.civicsage.business.source.WebsiteSource;
 import de.uol.pgdoener.civicsage.business.source.WebsiteSourceRepository;
 import de.uol.pgdoener.civicsage.test.support.DummyEmbeddingModel;
 import de.uol.pgdoener.civicsage.test.support.MariaDBContainerFactory;
+import io.minio.MinioAsyncClient;
 import io.minio.MinioClient;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
@@ -42,6 +43,8 @@ class IndexUrlApiIT {
     static MariaDBContainer<?> mariadb = MariaDBContainerFactory.create();
     @MockitoBean
     MinioClient minioClient;
+    @MockitoBean
+    MinioAsyncClient minioAsyncClient;
     @TestBean
     EmbeddingModel embeddingModel;
 
@@ -1,9 +1,11 @@
 package de.uol.pgdoener.civicsage.api;
 
 import de.uol.pgdoener.civicsage.api.controller.IndexController;
+import de.uol.pgdoener.civicsage.api.controller.SearchController;
 import de.uol.pgdoener.civicsage.business.dto.IndexWebsiteRequestDto;
 import de.uol.pgdoener.civicsage.test.support.DummyEmbeddingModel;
 import de.uol.pgdoener.civicsage.test.support.MariaDBContainerFactory;
+import io.minio.MinioAsyncClient;
 import io.minio.MinioClient;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
@@ -42,6 +44,8 @@ class SearchApiIT {
     static MariaDBContainer<?> mariadb = MariaDBContainerFactory.create();
     @MockitoBean
     MinioClient minioClient;
+    @MockitoBean
+    MinioAsyncClient minioAsyncClient;
     @TestBean
     EmbeddingModel embeddingModel;
 
@@ -90,6 +94,48 @@ class SearchApiIT {
                 .andExpect(jsonPath("$.[0].fileId", String.class).isEmpty());
     }
 
+    @Test
+    void testSearchApiWithCursor() throws Exception {
+        String cursor = mockMvc.perform(post(API_BASE_PATH)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {
+                                  "query": "Hello World"
+                                }
+                                """)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(SearchController.SEARCH_CURSOR_HEADER))
+                .andReturn().getResponse().getHeader(SearchController.SEARCH_CURSOR_HEADER);
+
+        mockMvc.perform(post(API_BASE_PATH)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .queryParam("cursor", cursor)
+                        .content("""
+                                {
+                                  "query": "Hello World"
+                                }
+                                """)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string(SearchController.SEARCH_CURSOR_HEADER, cursor))
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$.[0].score", Double.class).isNotEmpty())
+                .andExpect(jsonPath("$.[0].url", is("https://www.example.com")));
+
+        mockMvc.perform(post(API_BASE_PATH)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .queryParam("cursor", cursor)
+                        .queryParam("pageNumber", "1")
+                        .content("""
+                                {
+                                  "query": "Hello World"
+                                }
+                                """)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest()); // because only one result exists
+    }
+
     @Test
     void testSearchApiMissingBody() throws Exception {
         mockMvc.perform(post(API_BASE_PATH)
@@ -4,8 +4,10 @@ import com.jayway.jsonpath.JsonPath;
 import de.uol.pgdoener.civicsage.business.source.FileSourceRepository;
 import de.uol.pgdoener.civicsage.business.source.WebsiteSourceRepository;
 import de.uol.pgdoener.civicsage.test.support.DummyEmbeddingModel;
+import de.uol.pgdoener.civicsage.test.support.IndexJobs;
 import de.uol.pgdoener.civicsage.test.support.MariaDBContainerFactory;
 import io.minio.GetObjectResponse;
+import io.minio.MinioAsyncClient;
 import io.minio.MinioClient;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
@@ -51,6 +53,8 @@ class SourcesApiIT {
     static MariaDBContainer<?> mariadb = MariaDBContainerFactory.create();
     @MockitoBean
     MinioClient minioClient;
+    @MockitoBean
+    MinioAsyncClient minioAsyncClient;
     @TestBean
     EmbeddingModel embeddingModel;
 
@@ -131,7 +135,7 @@ class SourcesApiIT {
                 .andReturn();
         String id = JsonPath.read(result.getResponse().getContentAsString(), "$.id");
 
-        mockMvc.perform(post(API_INDEX_FILE_PATH)
+        MvcResult indexResult = mockMvc.perform(post(API_INDEX_FILE_PATH)
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(String.format("""
                                 [
@@ -142,7 +146,9 @@ class SourcesApiIT {
                                 ]
                                 """, id))
                         .accept(MediaType.APPLICATION_JSON))
-                .andExpect(status().isAccepted());
+                .andExpect(status().isAccepted())
+                .andReturn();
+        IndexJobs.awaitDone(mockMvc, indexResult);
 
         // Wait a moment to ensure the file has been embedded
         Thread.sleep(500);
@@ -197,7 +203,7 @@ class SourcesApiIT {
                 .andReturn();
         String id2 = JsonPath.read(result2.getResponse().getContentAsString(), "$.id");
 
-        mockMvc.perform(post(API_INDEX_FILE_PATH)
+        MvcResult indexResult = mockMvc.perform(post(API_INDEX_FILE_PATH)
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(String.format("""
                                 [
@@ -212,7 +218,9 @@ class SourcesApiIT {
                                 ]
                                 """, id1, id2))
                         .accept(MediaType.APPLICATION_JSON))
-                .andExpect(status().isAccepted());
+                .andExpect(status().isAccepted())
+                .andReturn();
+        IndexJobs.awaitDone(mockMvc, indexResult);
 
         UUID websiteId1 = websiteSourceRepository.findByUrl("https://example.com").orElseThrow().getId();
         UUID websiteId2 = websiteSourceRepository.findByUrl("https://uol.de").orElseThrow().getId();
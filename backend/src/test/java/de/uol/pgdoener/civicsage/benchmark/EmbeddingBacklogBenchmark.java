@@ -0,0 +1,106 @@
+package de.uol.pgdoener.civicsage.benchmark;
+
+import de.uol.pgdoener.civicsage.autoconfigure.AIProperties;
+import de.uol.pgdoener.civicsage.business.embedding.backlog.ConcurrentEmbeddingBacklog;
+import de.uol.pgdoener.civicsage.business.embedding.backlog.EmbeddingBacklog;
+import de.uol.pgdoener.civicsage.business.embedding.backlog.EmbeddingPriority;
+import de.uol.pgdoener.civicsage.business.embedding.backlog.EmbeddingTask;
+import de.uol.pgdoener.civicsage.business.embedding.backlog.InMemoryEmbeddingBacklog;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the in-memory backlog implementations under a mixed load of
+ * adding, removing and claiming tasks while the pending sources are queried.
+ * <p>
+ * Every operation keeps the size of the backlog constant, so workers never block.
+ * Run the {@link #main(String[])} method from the test classpath, e.g. from the IDE.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmbeddingBacklogBenchmark {
+
+    @Param({"IN_MEMORY", "CONCURRENT"})
+    private String implementation;
+
+    @Param({"5000"})
+    private int pendingTasks;
+
+    private EmbeddingBacklog backlog;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        backlog = switch (implementation) {
+            case "IN_MEMORY" -> new InMemoryEmbeddingBacklog(new AIProperties(), new SimpleMeterRegistry());
+            case "CONCURRENT" -> new ConcurrentEmbeddingBacklog(new AIProperties(), new SimpleMeterRegistry());
+            default -> throw new IllegalArgumentException("Unknown implementation " + implementation);
+        };
+        for (int i = 0; i < pendingTasks; i++) {
+            backlog.add(newTask(), randomPriority());
+        }
+    }
+
+    /**
+     * Simulates uploads of sources which are deleted again before they are embedded.
+     */
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public void addAndRemove() {
+        EmbeddingTask task = newTask();
+        backlog.add(task, randomPriority());
+        backlog.remove(task.sourceId());
+    }
+
+    /**
+     * Simulates an upload and an embedding worker finishing a task.
+     */
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public void addAndClaim() throws InterruptedException {
+        backlog.add(newTask(), randomPriority());
+        EmbeddingTask task = backlog.claim();
+        backlog.remove(task);
+    }
+
+    /**
+     * Simulates requests for the state of all sources.
+     */
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public int sourceIds() {
+        return backlog.getSourceIds().size();
+    }
+
+    private static EmbeddingTask newTask() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return new EmbeddingTask(new UUID(random.nextLong(), random.nextLong()), List.of());
+    }
+
+    private static EmbeddingPriority randomPriority() {
+        EmbeddingPriority[] priorities = EmbeddingPriority.values();
+        return priorities[ThreadLocalRandom.current().nextInt(priorities.length)];
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(EmbeddingBacklogBenchmark.class.getSimpleName())
+                .build()
+        ).run();
+    }
+
+}
@@ -0,0 +1,124 @@
+package de.uol.pgdoener.civicsage.benchmark;
+
+import de.uol.pgdoener.civicsage.business.embedding.hnsw.HnswGraph;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the latency of searches in an HNSW graph with and without quantized codes.
+ * The recall@k of each configuration is reported by the {@link Recall} counters next to the latency.
+ * <p>
+ * The corpus consists of deterministic vectors derived from the texts of the chunks, like the
+ * {@code DummyEmbeddingModel}, which are grouped around a number of topics to resemble real embeddings.
+ * Run the {@link #main(String[])} method from the test classpath, e.g. from the IDE.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HnswQuantizationBenchmark {
+
+    private static final int TOPICS = 100;
+    private static final int QUERIES = 200;
+    private static final int K = 10;
+
+    @Param({"NONE", "INT8", "BINARY"})
+    private HnswGraph.Quantization quantization;
+
+    @Param({"4", "16"})
+    private int oversampling;
+
+    @Param({"1024"})
+    private int dimensions;
+
+    @Param({"10000"})
+    private int chunks;
+
+    @Param({"64"})
+    private int efSearch;
+
+    private HnswGraph graph;
+    private float[][] queries;
+    private List<Set<Integer>> exactResults;
+    private int next = 0;
+
+    /**
+     * Counts the exact top k results which have been found and which have been missed, so
+     * recall@k = {@code hits / (hits + misses)}.
+     * Comparing the results with the precomputed exact results adds little to the latency of a search.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Recall {
+
+        public long hits;
+        public long misses;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            hits = 0;
+            misses = 0;
+        }
+
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        graph = new HnswGraph(dimensions, HnswGraph.Metric.COSINE, 16, 100, quantization, oversampling);
+        for (int i = 0; i < chunks; i++) {
+            graph.add(embed("chunk " + i, i % TOPICS));
+        }
+        queries = new float[QUERIES][];
+        exactResults = new ArrayList<>(QUERIES);
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = embed("query " + i, i % TOPICS);
+            Set<Integer> exact = new HashSet<>();
+            graph.exactSearch(queries[i], K, node -> true).forEach(result -> exact.add(result.node()));
+            exactResults.add(exact);
+        }
+    }
+
+    @Benchmark
+    public List<HnswGraph.Result> search(Recall recall) {
+        int query = next;
+        next = (next + 1) % QUERIES;
+        List<HnswGraph.Result> results = graph.search(queries[query], K, efSearch, node -> true);
+        Set<Integer> exact = exactResults.get(query);
+        int hits = 0;
+        for (HnswGraph.Result result : results) {
+            if (exact.contains(result.node()))
+                hits++;
+        }
+        recall.hits += hits;
+        recall.misses += exact.size() - hits;
+        return results;
+    }
+
+    /**
+     * Derives a vector from the text, which lies close to the vector of the topic.
+     */
+    private float[] embed(String text, int topic) {
+        Random topicRandom = new Random(Objects.hashCode("topic " + topic));
+        Random random = new Random(Objects.hashCode(text));
+        float[] vector = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = (float) (topicRandom.nextGaussian() + 0.5 * random.nextGaussian());
+        }
+        return vector;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(HnswQuantizationBenchmark.class.getSimpleName())
+                .build()
+        ).run();
+    }
+
+}
@@ -0,0 +1,176 @@
+package de.uol.pgdoener.civicsage.completion;
+
+import de.uol.pgdoener.civicsage.autoconfigure.AIProperties;
+import de.uol.pgdoener.civicsage.business.completion.*;
+import de.uol.pgdoener.civicsage.business.completion.exception.ChatNotFoundException;
+import de.uol.pgdoener.civicsage.business.dto.ChatDto;
+import de.uol.pgdoener.civicsage.business.dto.ChatMessageDto;
+import de.uol.pgdoener.civicsage.business.index.TimeFactory;
+import de.uol.pgdoener.civicsage.business.source.SourceService;
+import de.uol.pgdoener.civicsage.business.storage.StorageService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.core.io.Resource;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ChatServiceTest {
+
+    private static final URI OLD_URL = URI.create("https://example.com/alt");
+    private static final URI NEW_URL = URI.create("https://example.com/neu");
+
+    private ChatRepository chatRepository;
+    private ChatModel chatModel;
+    private ChatModel summaryModel;
+    private ChatService chatService;
+
+    @BeforeEach
+    void setUp() {
+        chatRepository = mock(ChatRepository.class);
+        when(chatRepository.save(any(Chat.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        chatModel = mock(ChatModel.class);
+        when(chatModel.call(any(Prompt.class))).thenReturn(response("Antwort"));
+        summaryModel = mock(ChatModel.class);
+        when(summaryModel.call(any(Prompt.class))).thenReturn(response("Zusammenfassung"));
+        SourceService sourceService = mock(SourceService.class);
+        when(sourceService.getFileSourcesByIdWithTemporary(any())).thenReturn(List.of());
+
+        AIProperties aiProperties = new AIProperties();
+        // 60 tokens for the history, 30 of them are retained when summarizing
+        aiProperties.getChat().getModel().setContextLength(240);
+        aiProperties.getChat().getHistory().setContextRatio(0.25);
+        aiProperties.getChat().getHistory().setRetainedRatio(0.5);
+
+        chatService = new ChatService(
+                chatRepository,
+                new ChatMapper(),
+                mock(ChatFactory.class),
+                ChatClient.create(chatModel),
+                mock(StorageService.class),
+                sourceService,
+                new TimeFactory(),
+                new SimpleMeterRegistry(),
+                new HistoryCompactor(summaryModel, aiProperties)
+        );
+    }
+
+    @Test
+    void testMediaOfSummarizedMessagesAreNotSent() throws IOException {
+        Chat chat = chat(20);
+        when(chatRepository.findById(chat.getId())).thenReturn(Optional.of(chat));
+
+        chatService.sendMessage(chat.getId(), new ChatMessageDto()
+                .content("Was steht auf der neuen Seite?")
+                .websiteURLs(List.of(NEW_URL)));
+
+        assertTrue(chat.getSummarizedMessages() > 0);
+        List<URI> sentUrls = new ArrayList<>();
+        for (UserMessage userMessage : sentPrompt().getUserMessages()) {
+            for (var media : userMessage.getMedia()) {
+                sentUrls.add(((Resource) media.getData()).getURI());
+            }
+        }
+        assertEquals(List.of(NEW_URL), sentUrls);
+
+        // the summary still knows which website has been discussed
+        ArgumentCaptor<Prompt> summaryPrompt = ArgumentCaptor.forClass(Prompt.class);
+        verify(summaryModel).call(summaryPrompt.capture());
+        assertTrue(summaryPrompt.getValue().getContents().contains(OLD_URL.toString()));
+    }
+
+    @Test
+    void testMediaOfRetainedMessagesAreSent() throws IOException {
+        Chat chat = chat(2);
+        when(chatRepository.findById(chat.getId())).thenReturn(Optional.of(chat));
+
+        chatService.sendMessage(chat.getId(), new ChatMessageDto()
+                .content("Und auf der neuen Seite?")
+                .websiteURLs(List.of(NEW_URL)));
+
+        List<UserMessage> userMessages = sentPrompt().getUserMessages();
+        assertEquals(2, userMessages.size());
+        assertEquals(OLD_URL, ((Resource) userMessages.getFirst().getMedia().getFirst().getData()).getURI());
+        assertEquals(NEW_URL, ((Resource) userMessages.getLast().getMedia().getFirst().getData()).getURI());
+        verifyNoInteractions(summaryModel);
+    }
+
+    @Test
+    void testStreamMessagePreparesMessageOnSubscription() {
+        Chat chat = chat(20);
+        when(chatRepository.existsById(chat.getId())).thenReturn(true);
+        when(chatRepository.findById(chat.getId())).thenReturn(Optional.of(chat));
+        when(chatModel.stream(any(Prompt.class))).thenReturn(Flux.just(response("Ant"), response("wort")));
+        Thread caller = Thread.currentThread();
+        List<Thread> summaryThreads = new ArrayList<>();
+        when(summaryModel.call(any(Prompt.class))).thenAnswer(invocation -> {
+            summaryThreads.add(Thread.currentThread());
+            return response("Zusammenfassung");
+        });
+        List<ChatDto> saved = new ArrayList<>();
+
+        Flux<String> response = chatService.streamMessage(chat.getId(),
+                new ChatMessageDto().content("Noch eine Frage"), saved::add);
+
+        verify(chatRepository, never()).findById(any());
+        assertEquals("Antwort", String.join("", response.collectList().block()));
+        assertEquals(1, summaryThreads.size());
+        assertNotSame(caller, summaryThreads.getFirst());
+        assertEquals(1, saved.size());
+        assertEquals("Antwort", saved.getFirst().getMessages().getLast().getContent().orElseThrow());
+    }
+
+    @Test
+    void testStreamMessageToUnknownChat() {
+        UUID chatId = UUID.randomUUID();
+        when(chatRepository.existsById(chatId)).thenReturn(false);
+
+        assertThrows(ChatNotFoundException.class,
+                () -> chatService.streamMessage(chatId, new ChatMessageDto().content("Hallo"), chat -> {
+                }));
+        verify(chatModel, never()).stream(any(Prompt.class));
+        verifyNoInteractions(summaryModel);
+    }
+
+    private Prompt sentPrompt() {
+        ArgumentCaptor<Prompt> prompt = ArgumentCaptor.forClass(Prompt.class);
+        verify(chatModel).call(prompt.capture());
+        return prompt.getValue();
+    }
+
+    private static ChatResponse response(String content) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(content))));
+    }
+
+    /**
+     * @return a chat whose first message refers to {@link #OLD_URL}
+     */
+    private static Chat chat(int messages) {
+        Chat chat = new Chat(UUID.randomUUID(), List.of(), "System", new ArrayList<>(), OffsetDateTime.now());
+        for (int i = 0; i < messages; i++) {
+            chat.getMessages().add(new ChatMessage(null, chat, i % 2 == 0 ? Role.USER : Role.ASSISTANT,
+                    "Nachricht " + i + " mit etwas Text", List.of(), i == 0 ? List.of(OLD_URL) : List.of()));
+        }
+        return chat;
+    }
+
+}
@@ -0,0 +1,96 @@
+package de.uol.pgdoener.civicsage.completion;
+
+import de.uol.pgdoener.civicsage.autoconfigure.AIProperties;
+import de.uol.pgdoener.civicsage.business.completion.ContextPacker;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContextPackerTest {
+
+    private AIProperties aiProperties;
+    private ContextPacker contextPacker;
+
+    @BeforeEach
+    void setUp() {
+        aiProperties = new AIProperties();
+        aiProperties.getChat().getModel().setContextLength(400);
+        aiProperties.getChat().getModel().setDocumentContextRatio(0.5);
+        contextPacker = new ContextPacker(aiProperties);
+    }
+
+    @Test
+    void testDocumentsAreGroupedBySourceAndOrderedByPage() {
+        String text = contextPacker.pack(List.of(
+                document("a", 2, "Seite zwei der Satzung."),
+                document("b", 1, "Inhalt der Webseite."),
+                document("a", 1, "Seite eins der Satzung.")
+        ));
+
+        assertEquals(1, count(text, "Quelle: a.pdf"));
+        assertEquals(1, count(text, "Quelle: b.pdf"));
+        assertTrue(text.indexOf("Quelle: a.pdf") < text.indexOf("Quelle: b.pdf"));
+        assertTrue(text.indexOf("Seite eins") < text.indexOf("Seite zwei"));
+    }
+
+    @Test
+    void testContainedDocumentsAreSkipped() {
+        String text = contextPacker.pack(List.of(
+                document("a", 1, "Die Gebühr beträgt 20 Euro pro Jahr."),
+                document("a", 1, "Die Gebühr beträgt 20 Euro"),
+                document("b", 1, "Die Gebühr beträgt 20 Euro")
+        ));
+
+        assertEquals(2, count(text, "Die Gebühr beträgt 20 Euro"));
+    }
+
+    @Test
+    void testOverlapOfAdjacentDocumentsIsRemoved() {
+        String overlap = "Dieser Satz steht am Ende der ersten und am Anfang der zweiten Seite.";
+        String text = contextPacker.pack(List.of(
+                document("a", 1, "Erste Seite. " + overlap),
+                document("a", 2, overlap + " Zweite Seite.")
+        ));
+
+        assertEquals(1, count(text, overlap));
+        assertTrue(text.contains("Zweite Seite."));
+    }
+
+    @Test
+    void testBudgetIsNotExceeded() {
+        List<Document> documents = IntStream.range(0, 50)
+                .mapToObj(i -> document("s" + i, 1, "Dies ist der Inhalt des Dokuments mit der Nummer " + i + "."))
+                .toList();
+
+        String text = contextPacker.pack(documents);
+
+        assertTrue(new JTokkitTokenCountEstimator().estimate(text) <= contextPacker.getBudget() + 50);
+        assertTrue(text.contains("Nummer 0."));
+        assertFalse(text.contains("Nummer 49."));
+    }
+
+    private static Document document(String source, int page, String text) {
+        return new Document(text, Map.of(
+                "source_id", source,
+                "file_name", source + ".pdf",
+                "title", "Titel " + source,
+                "page_number", page
+        ));
+    }
+
+    private static int count(String text, String part) {
+        int count = 0;
+        for (int index = text.indexOf(part); index >= 0; index = text.indexOf(part, index + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+}
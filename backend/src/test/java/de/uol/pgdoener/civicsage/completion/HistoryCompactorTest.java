@@ -0,0 +1,121 @@
+package de.uol.pgdoener.civicsage.completion;
+
+import de.uol.pgdoener.civicsage.autoconfigure.AIProperties;
+import de.uol.pgdoener.civicsage.business.completion.Chat;
+import de.uol.pgdoener.civicsage.business.completion.ChatMessage;
+import de.uol.pgdoener.civicsage.business.completion.HistoryCompactor;
+import de.uol.pgdoener.civicsage.business.completion.Role;
+import de.uol.pgdoener.civicsage.business.completion.exception.ChatRateLimitException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.retry.NonTransientAiException;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class HistoryCompactorTest {
+
+    private ChatModel chatModel;
+    private HistoryCompactor historyCompactor;
+
+    @BeforeEach
+    void setUp() {
+        chatModel = mock(ChatModel.class);
+        when(chatModel.call(any(Prompt.class))).thenReturn(
+                new ChatResponse(List.of(new Generation(new AssistantMessage("Zusammenfassung"))))
+        );
+        AIProperties aiProperties = new AIProperties();
+        // 60 tokens for the history, 30 of them are retained when summarizing
+        aiProperties.getChat().getModel().setContextLength(240);
+        aiProperties.getChat().getHistory().setContextRatio(0.25);
+        aiProperties.getChat().getHistory().setRetainedRatio(0.5);
+        historyCompactor = new HistoryCompactor(chatModel, aiProperties);
+    }
+
+    @Test
+    void testShortHistoryIsKept() {
+        Chat chat = chat(3);
+
+        List<ChatMessage> history = historyCompactor.compact(chat);
+
+        assertEquals(chat.getMessages(), history);
+        assertNull(chat.getSummary());
+        assertEquals("System", historyCompactor.systemPrompt(chat));
+        verifyNoInteractions(chatModel);
+    }
+
+    @Test
+    void testLongHistoryIsSummarized() {
+        Chat chat = chat(20);
+
+        List<ChatMessage> history = historyCompactor.compact(chat);
+
+        assertFalse(history.isEmpty());
+        assertTrue(history.size() < 20);
+        assertEquals(chat.getMessages().getLast(), history.getLast());
+        assertEquals(20 - history.size(), chat.getSummarizedMessages());
+        assertEquals("Zusammenfassung", chat.getSummary());
+        assertTrue(historyCompactor.systemPrompt(chat).endsWith("Zusammenfassung"));
+        verify(chatModel, times(1)).call(any(Prompt.class));
+    }
+
+    @Test
+    void testSummaryIsNotUpdatedForEveryMessage() {
+        Chat chat = chat(20);
+        historyCompactor.compact(chat);
+        int summarizedMessages = chat.getSummarizedMessages();
+
+        chat.getMessages().add(message(chat, 20));
+        List<ChatMessage> history = historyCompactor.compact(chat);
+
+        assertEquals(summarizedMessages, chat.getSummarizedMessages());
+        assertEquals(21 - summarizedMessages, history.size());
+        verify(chatModel, times(1)).call(any(Prompt.class));
+    }
+
+    @Test
+    void testNewMessageIsKeptEvenIfItExceedsTheBudget() {
+        Chat chat = chat(2);
+        chat.getMessages().add(new ChatMessage(null, chat, Role.USER, "Wort ".repeat(200), List.of(), List.of()));
+
+        List<ChatMessage> history = historyCompactor.compact(chat);
+
+        assertEquals(List.of(chat.getMessages().getLast()), history);
+        assertEquals(2, chat.getSummarizedMessages());
+    }
+
+    @Test
+    void testRateLimitWhileSummarizing() {
+        when(chatModel.call(any(Prompt.class))).thenThrow(new NonTransientAiException("HTTP 429 - Too Many Requests"));
+        Chat chat = chat(20);
+
+        assertThrows(ChatRateLimitException.class, () -> historyCompactor.compact(chat));
+        assertNull(chat.getSummary());
+        assertEquals(0, chat.getSummarizedMessages());
+    }
+
+    private static Chat chat(int messages) {
+        Chat chat = new Chat(UUID.randomUUID(), List.of(), "System", new ArrayList<>(), OffsetDateTime.now());
+        for (int i = 0; i < messages; i++) {
+            chat.getMessages().add(message(chat, i));
+        }
+        return chat;
+    }
+
+    private static ChatMessage message(Chat chat, int i) {
+        return new ChatMessage(null, chat, i % 2 == 0 ? Role.USER : Role.ASSISTANT,
+                "Nachricht " + i + " mit etwas Text", List.of(), List.of());
+    }
+
+}
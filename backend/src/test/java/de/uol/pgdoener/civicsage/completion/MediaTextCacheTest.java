@@ -0,0 +1,114 @@
+package de.uol.pgdoener.civicsage.completion;
+
+import com.sun.net.httpserver.HttpServer;
+import de.uol.pgdoener.civicsage.autoconfigure.AIProperties;
+import de.uol.pgdoener.civicsage.business.completion.ConvertedMedia;
+import de.uol.pgdoener.civicsage.business.completion.ConvertedMediaRepository;
+import de.uol.pgdoener.civicsage.business.completion.MediaTextCache;
+import de.uol.pgdoener.civicsage.business.index.TimeFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MediaTextCacheTest {
+
+    private final Map<UUID, ConvertedMedia> stored = new HashMap<>();
+    private MediaTextCache mediaTextCache;
+
+    @BeforeEach
+    void setUp() {
+        ConvertedMediaRepository repository = mock(ConvertedMediaRepository.class);
+        when(repository.findById(any())).thenAnswer(invocation -> Optional.ofNullable(stored.get(invocation.<UUID>getArgument(0))));
+        when(repository.save(any())).thenAnswer(invocation -> {
+            ConvertedMedia convertedMedia = invocation.getArgument(0);
+            stored.put(convertedMedia.getId(), convertedMedia);
+            return convertedMedia;
+        });
+        mediaTextCache = new MediaTextCache(repository, new TimeFactory(), new AIProperties());
+    }
+
+    @Test
+    void testFileIsConvertedOnce() {
+        AtomicInteger conversions = new AtomicInteger();
+        Supplier<MediaTextCache.MediaText> converter = () -> {
+            conversions.incrementAndGet();
+            return new MediaTextCache.MediaText("Inhalt", null);
+        };
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals("Inhalt", mediaTextCache.getFileText("abc", converter).text());
+        }
+
+        assertEquals(1, conversions.get());
+        assertEquals(1, stored.size());
+    }
+
+    @Test
+    void testFilesWithDifferentHashesAreConvertedSeparately() {
+        mediaTextCache.getFileText("abc", () -> new MediaTextCache.MediaText("A", null));
+        MediaTextCache.MediaText text = mediaTextCache.getFileText("def", () -> new MediaTextCache.MediaText("B", null));
+
+        assertEquals("B", text.text());
+        assertEquals(2, stored.size());
+    }
+
+    @Test
+    void testFileWithoutHashIsNotCached() {
+        AtomicInteger conversions = new AtomicInteger();
+        Supplier<MediaTextCache.MediaText> converter = () -> {
+            conversions.incrementAndGet();
+            return new MediaTextCache.MediaText("Inhalt", null);
+        };
+
+        mediaTextCache.getFileText(null, converter);
+        mediaTextCache.getFileText(null, converter);
+
+        assertEquals(2, conversions.get());
+        assertEquals(0, stored.size());
+    }
+
+    @Test
+    void testWebsiteVersionIsRequestedOnce() throws IOException {
+        AtomicInteger versionRequests = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            versionRequests.incrementAndGet();
+            exchange.getResponseHeaders().add("ETag", "\"v1\"");
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+        try {
+            String url = "http://localhost:" + server.getAddress().getPort() + "/";
+            AtomicInteger conversions = new AtomicInteger();
+            Supplier<MediaTextCache.MediaText> converter = () -> {
+                conversions.incrementAndGet();
+                return new MediaTextCache.MediaText("Inhalt", "Titel");
+            };
+
+            for (int i = 0; i < 5; i++) {
+                assertEquals("Inhalt", mediaTextCache.getWebsiteText(url, converter).text());
+            }
+
+            assertEquals(1, versionRequests.get());
+            assertEquals(1, conversions.get());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+}
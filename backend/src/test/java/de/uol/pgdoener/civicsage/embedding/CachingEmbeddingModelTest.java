@@ -0,0 +1,94 @@
+package de.uol.pgdoener.civicsage.embedding;
+
+import de.uol.pgdoener.civicsage.autoconfigure.AIProperties;
+import de.uol.pgdoener.civicsage.business.embedding.CachingEmbeddingModel;
+import de.uol.pgdoener.civicsage.business.embedding.EmbeddingRateLimiter;
+import de.uol.pgdoener.civicsage.business.embedding.exception.EmbeddingRateLimitException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.embedding.EmbeddingModel;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class CachingEmbeddingModelTest {
+
+    private static final Duration TIME_TO_LIVE = Duration.ofMillis(500);
+
+    private EmbeddingModel delegate;
+    private EmbeddingRateLimiter rateLimiter;
+    private CachingEmbeddingModel embeddingModel;
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        delegate = mock(EmbeddingModel.class);
+        when(delegate.embed(anyString())).thenAnswer(invocation ->
+                new float[]{invocation.<String>getArgument(0).length()});
+        rateLimiter = mock(EmbeddingRateLimiter.class);
+        when(rateLimiter.tryAcquire(any())).thenReturn(true);
+        AIProperties aiProperties = new AIProperties();
+        aiProperties.getEmbedding().getQueryCache().setTimeToLive(TIME_TO_LIVE);
+        embeddingModel = new CachingEmbeddingModel(delegate, "model", rateLimiter, aiProperties,
+                new SimpleMeterRegistry());
+    }
+
+    @Test
+    void testQueriesDifferingInWhitespaceAndCaseShareEmbedding() {
+        float[] embedding = embeddingModel.embed("Öffnungszeiten des Rathauses");
+
+        assertArrayEquals(embedding, embeddingModel.embed("  öffnungszeiten\tdes   RATHAUSES\n"));
+        // decomposed umlaut
+        assertArrayEquals(embedding, embeddingModel.embed("O\u0308ffnungszeiten des Rathauses"));
+
+        verify(delegate).embed("öffnungszeiten des rathauses");
+        verify(delegate, times(1)).embed(anyString());
+    }
+
+    @Test
+    void testDifferentQueriesAreEmbeddedSeparately() {
+        embeddingModel.embed("Öffnungszeiten");
+        embeddingModel.embed("Parkplätze");
+
+        verify(delegate, times(2)).embed(anyString());
+    }
+
+    @Test
+    void testEmbeddingsExpireAfterWrite() throws InterruptedException {
+        embeddingModel.embed("Öffnungszeiten");
+        Thread.sleep(TIME_TO_LIVE.multipliedBy(3).dividedBy(5));
+        // reading the entry does not extend its lifetime
+        embeddingModel.embed("Öffnungszeiten");
+        verify(delegate, times(1)).embed(anyString());
+
+        Thread.sleep(TIME_TO_LIVE.multipliedBy(3).dividedBy(5));
+        embeddingModel.embed("Öffnungszeiten");
+
+        verify(delegate, times(2)).embed(anyString());
+    }
+
+    @Test
+    void testCachedEmbeddingCannotBeModified() {
+        embeddingModel.embed("Öffnungszeiten")[0] = -1;
+
+        assertEquals("öffnungszeiten".length(), embeddingModel.embed("Öffnungszeiten")[0]);
+    }
+
+    @Test
+    void testQueryIsNotEmbeddedWithoutPermit() throws InterruptedException {
+        when(rateLimiter.tryAcquire(any())).thenReturn(false);
+
+        assertThrows(EmbeddingRateLimitException.class, () -> embeddingModel.embed("Öffnungszeiten"));
+        verifyNoInteractions(delegate);
+
+        // the failure is not cached
+        when(rateLimiter.tryAcquire(any())).thenReturn(true);
+        embeddingModel.embed("Öffnungszeiten");
+        verify(delegate).embed("öffnungszeiten");
+    }
+
+}
@@ -0,0 +1,129 @@
+package de.uol.pgdoener.civicsage.embedding;
+
+import de.uol.pgdoener.civicsage.autoconfigure.AIProperties;
+import de.uol.pgdoener.civicsage.business.embedding.backlog.ConcurrentEmbeddingBacklog;
+import de.uol.pgdoener.civicsage.business.embedding.backlog.EmbeddingPriority;
+import de.uol.pgdoener.civicsage.business.embedding.backlog.EmbeddingTask;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentEmbeddingBacklogTest {
+
+    final ConcurrentEmbeddingBacklog backlog = new ConcurrentEmbeddingBacklog(new AIProperties(), new SimpleMeterRegistry());
+
+    @Test
+    void testClaimInterleavesPriorityClasses() throws InterruptedException {
+        EmbeddingTask bulk = newTask();
+        EmbeddingTask interactive1 = newTask();
+        EmbeddingTask interactive2 = newTask();
+        backlog.add(bulk, EmbeddingPriority.BULK);
+        backlog.add(interactive1, EmbeddingPriority.INTERACTIVE);
+        backlog.add(interactive2, EmbeddingPriority.INTERACTIVE);
+
+        assertSame(interactive1, backlog.claim());
+        assertSame(bulk, backlog.claim());
+        assertSame(interactive2, backlog.claim());
+        assertTrue(bulk.isProcessing().get());
+    }
+
+    @Test
+    void testRemovedTaskIsNotClaimed() throws InterruptedException {
+        EmbeddingTask removed = newTask();
+        EmbeddingTask kept = newTask();
+        backlog.add(removed, EmbeddingPriority.INTERACTIVE);
+        backlog.add(kept, EmbeddingPriority.INTERACTIVE);
+
+        assertEquals(removed, backlog.remove(removed.sourceId()).orElseThrow());
+        assertSame(kept, backlog.claim());
+        assertEquals(Set.of(kept.sourceId()), Set.copyOf(backlog.getSourceIds()));
+    }
+
+    @Test
+    void testClaimedTaskStaysPendingUntilRemoved() throws InterruptedException {
+        EmbeddingTask task = newTask();
+        backlog.add(task, EmbeddingPriority.INTERACTIVE);
+
+        EmbeddingTask claimed = backlog.claim();
+        assertTrue(backlog.getSourceIds().contains(task.sourceId()));
+        assertTrue(backlog.remove(claimed).orElseThrow().isProcessing().get());
+        assertTrue(backlog.getSourceIds().isEmpty());
+    }
+
+    @Test
+    void testConcurrentClaimsReturnEachTaskOnce() throws Exception {
+        List<EmbeddingTask> tasks = IntStream.range(0, 200).mapToObj(i -> newTask()).toList();
+        EmbeddingPriority[] priorities = EmbeddingPriority.values();
+        for (int i = 0; i < tasks.size(); i++) {
+            backlog.add(tasks.get(i), priorities[i % priorities.length]);
+        }
+
+        List<UUID> claimed;
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            List<Future<UUID>> claims = new ArrayList<>();
+            for (int i = 0; i < tasks.size(); i++) {
+                claims.add(executor.submit(() -> backlog.claim().sourceId()));
+            }
+            claimed = new ArrayList<>();
+            for (Future<UUID> claim : claims) {
+                claimed.add(claim.get(5, TimeUnit.SECONDS));
+            }
+        }
+
+        assertEquals(tasks.size(), Set.copyOf(claimed).size());
+        assertEquals(tasks.stream().map(EmbeddingTask::sourceId).collect(Collectors.toSet()), Set.copyOf(claimed));
+    }
+
+    @Test
+    void testReleasedTaskReturnsToHeadOfQueue() throws InterruptedException {
+        EmbeddingTask released = newTask();
+        EmbeddingTask next = newTask();
+        backlog.add(released, EmbeddingPriority.INTERACTIVE);
+        backlog.add(next, EmbeddingPriority.INTERACTIVE);
+        EmbeddingTask claimed = backlog.claim();
+        claimed.progress().set(3);
+
+        backlog.release(claimed);
+
+        EmbeddingTask reclaimed = backlog.claim();
+        assertNotSame(claimed, reclaimed);
+        assertEquals(released.sourceId(), reclaimed.sourceId());
+        assertEquals(3, reclaimed.progress().get());
+        assertSame(next, backlog.claim());
+    }
+
+    @Test
+    void testDeferredTaskDropsToBackgroundPriority() throws InterruptedException {
+        EmbeddingTask deferred = newTask();
+        backlog.add(deferred, EmbeddingPriority.INTERACTIVE);
+        EmbeddingTask claimed = backlog.claim();
+        EmbeddingTask background = newTask();
+        EmbeddingTask interactive = newTask();
+        backlog.add(background, EmbeddingPriority.BACKGROUND);
+        backlog.add(interactive, EmbeddingPriority.INTERACTIVE);
+
+        backlog.defer(claimed);
+
+        // the deferred task waits behind the interactive task and behind the older background task
+        assertSame(interactive, backlog.claim());
+        assertSame(background, backlog.claim());
+        assertEquals(deferred.sourceId(), backlog.claim().sourceId());
+    }
+
+    private static EmbeddingTask newTask() {
+        return new EmbeddingTask(UUID.randomUUID(), List.of());
+    }
+
+}
@@ -0,0 +1,112 @@
+package de.uol.pgdoener.civicsage.embedding;
+
+import de.uol.pgdoener.civicsage.business.embedding.EmbeddingRateLimitInterceptor;
+import de.uol.pgdoener.civicsage.business.embedding.EmbeddingRateLimiter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class EmbeddingRateLimitInterceptorTest {
+
+    private static final URI EMBEDDINGS_URI = URI.create("https://api.example.com/v1/embeddings");
+
+    private EmbeddingRateLimiter rateLimiter;
+    private EmbeddingRateLimitInterceptor interceptor;
+
+    @BeforeEach
+    void setUp() {
+        rateLimiter = mock(EmbeddingRateLimiter.class);
+        interceptor = new EmbeddingRateLimitInterceptor(rateLimiter);
+    }
+
+    @Test
+    void testRetryAfterSeconds() throws IOException {
+        assertEquals(Duration.ofSeconds(2), rateLimited(HttpHeaders.RETRY_AFTER, "2"));
+    }
+
+    @Test
+    void testRetryAfterHttpDate() throws IOException {
+        String date = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(30));
+
+        Duration retryAfter = rateLimited(HttpHeaders.RETRY_AFTER, date);
+
+        // the date is truncated to seconds
+        assertTrue(retryAfter.compareTo(Duration.ofSeconds(28)) > 0, retryAfter::toString);
+        assertTrue(retryAfter.compareTo(Duration.ofSeconds(30)) <= 0, retryAfter::toString);
+    }
+
+    @Test
+    void testRetryAfterMilliseconds() throws IOException {
+        assertEquals(Duration.ofMillis(1500), rateLimited("retry-after-ms", "1500"));
+    }
+
+    @Test
+    void testRetryAfterMillisecondsTakePrecedence() throws IOException {
+        MockClientHttpResponse response = new MockClientHttpResponse(new byte[0], HttpStatus.TOO_MANY_REQUESTS);
+        response.getHeaders().add(HttpHeaders.RETRY_AFTER, "20");
+        response.getHeaders().add("retry-after-ms", "250");
+
+        assertEquals(Duration.ofMillis(250), intercept(EMBEDDINGS_URI, response));
+    }
+
+    @Test
+    void testInvalidRetryAfterIsIgnored() throws IOException {
+        assertNull(rateLimited(HttpHeaders.RETRY_AFTER, "bald"));
+    }
+
+    @Test
+    void testSuccessIsReported() throws IOException {
+        intercept(EMBEDDINGS_URI, new MockClientHttpResponse(new byte[0], HttpStatus.OK));
+
+        verify(rateLimiter).onSuccess();
+        verify(rateLimiter, never()).onRateLimited(any());
+    }
+
+    @Test
+    void testOtherEndpointsAreIgnored() throws IOException {
+        MockClientHttpRequest request = new MockClientHttpRequest(HttpMethod.POST,
+                URI.create("https://api.example.com/v1/chat/completions"));
+        MockClientHttpResponse response = new MockClientHttpResponse(new byte[0], HttpStatus.TOO_MANY_REQUESTS);
+
+        assertSame(response, interceptor.intercept(request, new byte[0], (r, body) -> response));
+
+        verifyNoInteractions(rateLimiter);
+    }
+
+    private Duration rateLimited(String header, String value) throws IOException {
+        MockClientHttpResponse response = new MockClientHttpResponse(new byte[0], HttpStatus.TOO_MANY_REQUESTS);
+        response.getHeaders().add(header, value);
+        return intercept(EMBEDDINGS_URI, response);
+    }
+
+    /**
+     * @return the retry after reported to the rate limiter or null if no rate limit has been reported
+     */
+    private Duration intercept(URI uri, MockClientHttpResponse response) throws IOException {
+        MockClientHttpRequest request = new MockClientHttpRequest(HttpMethod.POST, uri);
+        assertSame(response, interceptor.intercept(request, new byte[0], (r, body) -> response));
+
+        if (!response.getStatusCode().isSameCodeAs(HttpStatus.TOO_MANY_REQUESTS))
+            return null;
+        ArgumentCaptor<Duration> retryAfter = ArgumentCaptor.forClass(Duration.class);
+        verify(rateLimiter).onRateLimited(retryAfter.capture());
+        verify(rateLimiter, never()).onSuccess();
+        return retryAfter.getValue();
+    }
+
+}
@@ -0,0 +1,112 @@
+package de.uol.pgdoener.civicsage.embedding;
+
+import de.uol.pgdoener.civicsage.autoconfigure.AIProperties;
+import de.uol.pgdoener.civicsage.business.embedding.EmbeddingRateLimiter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmbeddingRateLimiterTest {
+
+    private AIProperties aiProperties;
+    private AIProperties.Embedding.RateLimit properties;
+
+    @BeforeEach
+    void setUp() {
+        aiProperties = new AIProperties();
+        properties = aiProperties.getEmbedding().getRateLimit();
+        properties.setInitialRate(4);
+        properties.setMinRate(1);
+        properties.setMaxRate(8);
+        properties.setAdditiveIncrease(1);
+        properties.setDecreaseFactor(0.5);
+    }
+
+    @Test
+    void testRateIsDecreasedWhenRateLimited() {
+        EmbeddingRateLimiter rateLimiter = new EmbeddingRateLimiter(aiProperties);
+
+        rateLimiter.onRateLimited(null);
+        assertEquals(2, rateLimiter.getRate());
+
+        // rejections of requests sent at the same time only decrease the rate once
+        rateLimiter.onRateLimited(null);
+        assertEquals(2, rateLimiter.getRate());
+    }
+
+    @Test
+    void testRateIsNotDecreasedBelowMinimum() throws InterruptedException {
+        properties.setInitialRate(2);
+        EmbeddingRateLimiter rateLimiter = new EmbeddingRateLimiter(aiProperties);
+
+        for (int i = 0; i < 2; i++) {
+            rateLimiter.onRateLimited(null);
+            Thread.sleep(Duration.ofMillis(1_000 / (long) rateLimiter.getRate() + 10));
+        }
+
+        assertEquals(properties.getMinRate(), rateLimiter.getRate());
+    }
+
+    @Test
+    void testRateRecoversAfterSuccessfulRequests() {
+        EmbeddingRateLimiter rateLimiter = new EmbeddingRateLimiter(aiProperties);
+        rateLimiter.onRateLimited(null);
+
+        // each success adds additive-increase / rate, so the rate grows by about one request per second every second
+        rateLimiter.onSuccess();
+        rateLimiter.onSuccess();
+        assertEquals(2.5 + 1 / 2.5, rateLimiter.getRate(), 1e-9);
+
+        for (int i = 0; i < 100; i++) {
+            rateLimiter.onSuccess();
+        }
+        assertEquals(properties.getMaxRate(), rateLimiter.getRate());
+    }
+
+    @Test
+    void testAcquireBlocksWhileTokensAreExhausted() throws InterruptedException {
+        properties.setInitialRate(2);
+        EmbeddingRateLimiter rateLimiter = new EmbeddingRateLimiter(aiProperties);
+
+        long start = System.nanoTime();
+        rateLimiter.acquire();
+        assertTrue(System.nanoTime() - start < Duration.ofMillis(100).toNanos());
+
+        // the next token is available after half a second at a rate of two
+        rateLimiter.acquire();
+        long waited = System.nanoTime() - start;
+        assertTrue(waited >= Duration.ofMillis(450).toNanos(), "acquired after " + Duration.ofNanos(waited));
+        assertFalse(rateLimiter.tryAcquire(Duration.ofMillis(100)));
+    }
+
+    @Test
+    void testAcquireBlocksUntilRetryAfter() throws InterruptedException {
+        EmbeddingRateLimiter rateLimiter = new EmbeddingRateLimiter(aiProperties);
+
+        rateLimiter.onRateLimited(Duration.ofMillis(500));
+
+        assertFalse(rateLimiter.tryAcquire(Duration.ofMillis(200)));
+        long start = System.nanoTime();
+        rateLimiter.acquire();
+        long waited = System.nanoTime() - start;
+        assertTrue(waited >= Duration.ofMillis(250).toNanos(), "acquired after " + Duration.ofNanos(waited));
+    }
+
+    @Test
+    void testDisabledRateLimiterDoesNotBlock() throws InterruptedException {
+        properties.setEnabled(false);
+        EmbeddingRateLimiter rateLimiter = new EmbeddingRateLimiter(aiProperties);
+        rateLimiter.onRateLimited(Duration.ofHours(1));
+
+        assertTimeoutPreemptively(Duration.ofSeconds(1), () -> {
+            for (int i = 0; i < 100; i++) {
+                rateLimiter.acquire();
+            }
+        });
+        assertTrue(rateLimiter.tryAcquire(Duration.ZERO));
+    }
+
+}
@@ -0,0 +1,97 @@
+package de.uol.pgdoener.civicsage.embedding;
+
+import de.uol.pgdoener.civicsage.autoconfigure.AIProperties;
+import de.uol.pgdoener.civicsage.business.embedding.EmbeddingRateLimiter;
+import de.uol.pgdoener.civicsage.business.embedding.EmbeddingService;
+import de.uol.pgdoener.civicsage.business.embedding.EmbeddingTaskExecutor;
+import de.uol.pgdoener.civicsage.business.embedding.backlog.*;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Named;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.VectorStore;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class EmbeddingTaskExecutorTest {
+
+    private static final int WORKERS = 4;
+    private static final int TASKS = 40;
+    private static final int DOCUMENTS_PER_TASK = 3;
+
+    static Stream<Named<EmbeddingBacklog>> backlogs() {
+        return Stream.of(
+                Named.of("in-memory", new InMemoryEmbeddingBacklog(new AIProperties(), new SimpleMeterRegistry())),
+                Named.of("concurrent", new ConcurrentEmbeddingBacklog(new AIProperties(), new SimpleMeterRegistry()))
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("backlogs")
+    void testWorkersNeverProcessTheSameTaskTwice(EmbeddingBacklog backlog) throws InterruptedException {
+        Map<String, AtomicInteger> added = new ConcurrentHashMap<>();
+        Set<UUID> inProgress = ConcurrentHashMap.newKeySet();
+        AtomicInteger maxParallelTasks = new AtomicInteger();
+        // failures inside the workers are caught by them, so overlaps are only recorded
+        AtomicBoolean overlapping = new AtomicBoolean();
+        VectorStore vectorStore = mock(VectorStore.class);
+        doAnswer(invocation -> {
+            List<Document> batch = invocation.getArgument(0);
+            UUID sourceId = (UUID) batch.getFirst().getMetadata().get("sourceId");
+            if (!inProgress.add(sourceId))
+                overlapping.set(true);
+            maxParallelTasks.accumulateAndGet(inProgress.size(), Math::max);
+            Thread.sleep(5);
+            batch.forEach(document -> added.computeIfAbsent(document.getText(), text -> new AtomicInteger())
+                    .incrementAndGet());
+            inProgress.remove(sourceId);
+            return null;
+        }).when(vectorStore).add(anyList());
+        EmbeddingRateLimiter rateLimiter = mock(EmbeddingRateLimiter.class);
+        AIProperties aiProperties = new AIProperties();
+        aiProperties.getEmbedding().setWorkers(WORKERS);
+        EmbeddingTaskExecutor executor = new EmbeddingTaskExecutor(mock(EmbeddingService.class), backlog, vectorStore,
+                documents -> List.of(documents), rateLimiter, aiProperties);
+
+        for (int i = 0; i < TASKS; i++) {
+            backlog.add(task(i), EmbeddingPriority.values()[i % EmbeddingPriority.values().length]);
+        }
+        executor.start();
+        try {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (!backlog.getSourceIds().isEmpty() && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+        } finally {
+            executor.stop();
+        }
+
+        assertTrue(backlog.getSourceIds().isEmpty());
+        assertFalse(overlapping.get(), "a task has been processed by two workers at the same time");
+        assertEquals(TASKS * DOCUMENTS_PER_TASK, added.size());
+        added.forEach((text, count) -> assertEquals(1, count.get(), text));
+        assertTrue(maxParallelTasks.get() > 1, "tasks have not been processed in parallel");
+    }
+
+    private static EmbeddingTask task(int number) {
+        UUID sourceId = UUID.randomUUID();
+        return new EmbeddingTask(sourceId, IntStream.range(0, DOCUMENTS_PER_TASK)
+                .mapToObj(i -> new Document("Aufgabe " + number + ", Dokument " + i, Map.of("sourceId", sourceId)))
+                .toList());
+    }
+
+}
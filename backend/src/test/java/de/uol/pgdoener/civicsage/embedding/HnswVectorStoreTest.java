@@ -0,0 +1,241 @@
+package de.uol.pgdoener.civicsage.embedding;
+
+import de.uol.pgdoener.civicsage.business.embedding.hnsw.HnswGraph;
+import de.uol.pgdoener.civicsage.business.embedding.hnsw.HnswVectorStore;
+import de.uol.pgdoener.civicsage.test.support.DummyEmbeddingModel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.FilterExpressionTextParser;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HnswVectorStoreTest {
+
+    private static final double MIN_RECALL = 0.9;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testSearchReturnsTopK() {
+        try (HnswVectorStore store = open()) {
+            store.add(documents(200));
+
+            List<Document> results = store.similaritySearch(SearchRequest.builder().query("text 42").topK(3).build());
+
+            assertEquals(3, results.size());
+            for (int i = 1; i < results.size(); i++) {
+                assertTrue(results.get(i - 1).getScore() >= results.get(i).getScore());
+            }
+            assertTrue(results.getFirst().getScore() <= 1.0 + 1e-6);
+        }
+    }
+
+    @Test
+    void testSearchWithFilter() {
+        try (HnswVectorStore store = open()) {
+            store.add(documents(200));
+
+            List<Document> results = store.similaritySearch(SearchRequest.builder()
+                    .query("text 42")
+                    .topK(5)
+                    .filterExpression("group == 'g3'")
+                    .build());
+
+            assertEquals(5, results.size());
+            assertTrue(results.stream().allMatch(d -> "g3".equals(d.getMetadata().get("group"))));
+        }
+    }
+
+    @Test
+    void testDeleteAndReopen() {
+        List<Document> documents = documents(50);
+        try (HnswVectorStore store = open()) {
+            store.add(documents);
+            store.delete(List.of(documents.get(0).getId()));
+            store.delete(new FilterExpressionTextParser().parse("group == 'g1'"));
+        }
+
+        try (HnswVectorStore store = open()) {
+            List<String> ids = documents.stream().map(Document::getId).toList();
+            List<Document> found = store.findById(ids);
+
+            assertEquals(50 - 1 - 10, found.size());
+            assertTrue(found.stream().noneMatch(d -> d.getId().equals(documents.get(0).getId())));
+            assertTrue(found.stream().noneMatch(d -> "g1".equals(d.getMetadata().get("group"))));
+            List<Document> results = store.similaritySearch(SearchRequest.builder().query("text 0").topK(50).build());
+            assertEquals(found.size(), results.size());
+        }
+    }
+
+    @Test
+    void testGraphIsRestoredWhenReopened() {
+        SearchRequest request = SearchRequest.builder().query("text 42").topK(10).build();
+        List<String> expected;
+        try (HnswVectorStore store = open()) {
+            store.add(documents(200));
+            expected = store.similaritySearch(request).stream().map(Document::getId).toList();
+        }
+        assertTrue(Files.exists(directory.resolve("test.hnsw.graph")));
+
+        try (HnswVectorStore store = open()) {
+            assertEquals(expected, store.similaritySearch(request).stream().map(Document::getId).toList());
+
+            store.add(List.of(new Document("text 42", Map.of("group", "new"))));
+            assertEquals("new", store.similaritySearch(request).getFirst().getMetadata().get("group"));
+        }
+    }
+
+    @Test
+    void testCorruptGraphIsRebuilt() throws IOException {
+        try (HnswVectorStore store = open()) {
+            store.add(documents(200));
+        }
+        Files.write(directory.resolve("test.hnsw.graph"), new byte[]{1, 2, 3});
+
+        try (HnswVectorStore store = open()) {
+            assertEquals(10, store.similaritySearch(SearchRequest.builder().query("text 42").topK(10).build()).size());
+        }
+    }
+
+    @Test
+    void testFullTextSearch() {
+        try (HnswVectorStore store = open()) {
+            store.add(List.of(
+                    new Document("Satzung über die Gebühren der Stadt", Map.of("group", "a")),
+                    new Document("Satzung Satzung §4 Straßenreinigung", Map.of("group", "b")),
+                    new Document("Öffnungszeiten des Bürgerbüros", Map.of("group", "a"))
+            ));
+
+            List<Document> results = store.fullTextSearch("satzung straßenreinigung", null, 10);
+
+            assertEquals(2, results.size());
+            assertEquals("b", results.getFirst().getMetadata().get("group"));
+        }
+    }
+
+    @Test
+    void testGraphRecall() {
+        int dimensions = 16;
+        Random random = new Random(7);
+        HnswGraph graph = new HnswGraph(dimensions, HnswGraph.Metric.COSINE, 16, 100);
+        for (int i = 0; i < 2000; i++) {
+            graph.add(randomVector(random, dimensions));
+        }
+
+        int found = 0;
+        for (int q = 0; q < 50; q++) {
+            float[] query = randomVector(random, dimensions);
+            Set<Integer> exact = new HashSet<>();
+            graph.exactSearch(query, 10, n -> true).forEach(r -> exact.add(r.node()));
+            found += (int) graph.search(query, 10, 64, n -> true).stream()
+                    .filter(r -> exact.contains(r.node()))
+                    .count();
+        }
+
+        assertTrue(found / 500.0 > 0.9, "recall@10 was " + found / 500.0);
+    }
+
+    @Test
+    void testQuantizedGraphRescoresWithFullVectors() {
+        int dimensions = 16;
+        Random random = new Random(7);
+        HnswGraph graph = new HnswGraph(dimensions, HnswGraph.Metric.COSINE, 16, 100, HnswGraph.Quantization.INT8, 4);
+        for (int i = 0; i < 2000; i++) {
+            graph.add(randomVector(random, dimensions));
+        }
+
+        int found = 0;
+        for (int q = 0; q < 50; q++) {
+            float[] query = randomVector(random, dimensions);
+            float[] normalized = normalize(query);
+            Set<Integer> exact = new HashSet<>();
+            graph.exactSearch(query, 10, n -> true).forEach(r -> exact.add(r.node()));
+            List<HnswGraph.Result> results = graph.search(query, 10, 16, n -> true);
+            for (HnswGraph.Result result : results) {
+                assertEquals(graph.distance(normalized, result.node()), result.distance(), 1e-6);
+                if (exact.contains(result.node()))
+                    found++;
+            }
+        }
+
+        assertTrue(found / 500.0 > 0.9, "recall@10 was " + found / 500.0);
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = HnswGraph.Quantization.class, names = {"INT8", "BINARY"})
+    void testQuantizedGraphRecall(HnswGraph.Quantization quantization) {
+        int dimensions = 128;
+        Random random = new Random(7);
+        // clustered like real embeddings, since sign bits of unrelated random vectors carry little information
+        float[][] topics = new float[20][];
+        for (int i = 0; i < topics.length; i++) {
+            topics[i] = randomVector(random, dimensions);
+        }
+        HnswGraph graph = new HnswGraph(dimensions, HnswGraph.Metric.COSINE, 16, 100, quantization, 8);
+        for (int i = 0; i < 2000; i++) {
+            graph.add(nearVector(random, topics[i % topics.length]));
+        }
+
+        int found = 0;
+        for (int q = 0; q < 50; q++) {
+            float[] query = nearVector(random, topics[q % topics.length]);
+            Set<Integer> exact = new HashSet<>();
+            graph.exactSearch(query, 10, n -> true).forEach(r -> exact.add(r.node()));
+            found += (int) graph.search(query, 10, 64, n -> true).stream()
+                    .filter(r -> exact.contains(r.node()))
+                    .count();
+        }
+
+        assertTrue(found / 500.0 >= MIN_RECALL, quantization + " recall@10 was " + found / 500.0);
+    }
+
+    private HnswVectorStore open() {
+        return HnswVectorStore.builder(directory.resolve("test.hnsw"), new DummyEmbeddingModel()).build();
+    }
+
+    private static List<Document> documents(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> new Document("text " + i, Map.of("group", "g" + (i % 5))))
+                .toList();
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        float[] normalized = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = (float) (vector[i] / Math.sqrt(norm));
+        }
+        return normalized;
+    }
+
+    private static float[] nearVector(Random random, float[] topic) {
+        float[] vector = new float[topic.length];
+        for (int i = 0; i < topic.length; i++) {
+            vector[i] = (float) (topic[i] + 0.5 * random.nextGaussian());
+        }
+        return vector;
+    }
+
+    private static float[] randomVector(Random random, int dimensions) {
+        float[] vector = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+}
@@ -0,0 +1,294 @@
+package de.uol.pgdoener.civicsage.embedding;
+
+import de.uol.pgdoener.civicsage.autoconfigure.AIProperties;
+import de.uol.pgdoener.civicsage.business.embedding.backlog.*;
+import de.uol.pgdoener.civicsage.business.index.TimeFactory;
+import de.uol.pgdoener.civicsage.test.support.DummyEmbeddingModel;
+import de.uol.pgdoener.civicsage.test.support.MariaDBContainerFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.minio.MinioAsyncClient;
+import io.minio.MinioClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.test.context.bean.override.convention.TestBean;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.MariaDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs {@link JdbcEmbeddingBacklog} instances against a real database.
+ * The instances are created by the test, so they are not used by the workers of the application context and a
+ * restart can be simulated by creating a new instance.
+ * Most instances share a clock which can be advanced, so leases expire without waiting.
+ */
+@Testcontainers
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+class JdbcEmbeddingBacklogIT {
+
+    static final Duration LEASE_DURATION = Duration.ofMinutes(2);
+    static final Duration SHORT_LEASE_DURATION = Duration.ofSeconds(1);
+
+    @Container
+    @ServiceConnection
+    static MariaDBContainer<?> mariadb = MariaDBContainerFactory.create();
+    @MockitoBean
+    MinioClient minioClient;
+    @MockitoBean
+    MinioAsyncClient minioAsyncClient;
+    @TestBean
+    EmbeddingModel embeddingModel;
+
+    static EmbeddingModel embeddingModel() {
+        return new DummyEmbeddingModel();
+    }
+
+    @Autowired
+    EmbeddingBacklogEntryRepository repository;
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    TestClock clock;
+
+    @BeforeEach
+    void setUp() {
+        repository.deleteAll();
+        // not UTC, so the timestamps have to be normalized to be compared in the database
+        clock = new TestClock(OffsetDateTime.now(ZoneOffset.ofHours(2)));
+    }
+
+    @Test
+    void testClaimCheckpointAndResumeAfterRestart() {
+        JdbcEmbeddingBacklog backlog = backlog();
+        EmbeddingTask task = task(3);
+        backlog.add(task, EmbeddingPriority.INTERACTIVE);
+        assertEquals(Set.of(task.sourceId()), backlog.getSourceIds());
+
+        EmbeddingTask claimed = claim(backlog);
+        assertEquals(task.sourceId(), claimed.sourceId());
+        assertEquals(texts(task), texts(claimed));
+        assertTrue(claimed.isProcessing().get());
+        claimed.progress().set(2);
+        backlog.checkpoint(claimed);
+
+        // the instance stops without releasing the task, another instance takes over once the lease has expired
+        JdbcEmbeddingBacklog restarted = backlog();
+        clock.advance(LEASE_DURATION.plusSeconds(1));
+        EmbeddingTask resumed = claim(restarted);
+        assertEquals(task.sourceId(), resumed.sourceId());
+        assertEquals(2, resumed.progress().get());
+        assertEquals(texts(task), texts(resumed));
+
+        assertTrue(restarted.remove(resumed).isPresent());
+        assertTrue(restarted.getSourceIds().isEmpty());
+    }
+
+    @Test
+    void testTaskIsReclaimedWhenHeartbeatStops() throws Exception {
+        // the real clock and a short lease, so the lease expires like it would in production
+        TimeFactory timeFactory = new TimeFactory();
+        JdbcEmbeddingBacklog stopping = backlog(timeFactory, SHORT_LEASE_DURATION);
+        JdbcEmbeddingBacklog remaining = backlog(timeFactory, SHORT_LEASE_DURATION);
+        EmbeddingTask task = task(4);
+        stopping.add(task, EmbeddingPriority.INTERACTIVE);
+        EmbeddingTask claimed = claim(stopping);
+        claimed.progress().set(3);
+        stopping.checkpoint(claimed);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<EmbeddingTask> reclaim = executor.submit(remaining::claim);
+            // the lease is renewed by heartbeats for longer than its duration
+            long heartbeatUntil = System.nanoTime() + SHORT_LEASE_DURATION.multipliedBy(3).toNanos();
+            while (System.nanoTime() < heartbeatUntil) {
+                stopping.heartbeat();
+                Thread.sleep(SHORT_LEASE_DURATION.dividedBy(4));
+                assertFalse(reclaim.isDone());
+            }
+            assertFalse(claimed.isCancelled().get());
+
+            // the instance stops heartbeating, so its lease expires and the other instance reclaims the task
+            EmbeddingTask resumed = reclaim.get(10, TimeUnit.SECONDS);
+            assertEquals(task.sourceId(), resumed.sourceId());
+            assertEquals(3, resumed.progress().get());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // the stopped instance notices the lost lease with its next checkpoint and stops processing the task
+        claimed.progress().set(4);
+        stopping.checkpoint(claimed);
+        assertTrue(claimed.isCancelled().get());
+        assertEquals(3, repository.findById(task.sourceId()).orElseThrow().getProgress());
+    }
+
+    @Test
+    void testLeasedTaskIsNotClaimedTwice() throws InterruptedException {
+        JdbcEmbeddingBacklog first = backlog();
+        JdbcEmbeddingBacklog second = backlog();
+        EmbeddingTask task = task(1);
+        first.add(task, EmbeddingPriority.BULK);
+
+        assertEquals(task.sourceId(), claim(first).sourceId());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<EmbeddingTask> secondClaim = executor.submit(second::claim);
+            assertThrows(TimeoutException.class, () -> secondClaim.get(500, TimeUnit.MILLISECONDS));
+            secondClaim.cancel(true);
+        } finally {
+            executor.shutdownNow();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void testConcurrentClaimsSkipLockedEntries() throws Exception {
+        EmbeddingTask locked = task(1);
+        EmbeddingTask free = task(1);
+        JdbcEmbeddingBacklog backlog = backlog();
+        backlog.add(locked, EmbeddingPriority.INTERACTIVE);
+        clock.advance(Duration.ofSeconds(1));
+        backlog.add(free, EmbeddingPriority.INTERACTIVE);
+
+        CountDownLatch rowLocked = new CountDownLatch(1);
+        CountDownLatch claimDone = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // another claimer holds the lock on the oldest entry in an open transaction
+            Future<UUID> lockHolder = executor.submit(() -> transactionTemplate.execute(status -> {
+                UUID sourceId = repository.findNextClaimableForUpdate(clock.getCurrentTime().toInstant())
+                        .orElseThrow()
+                        .getSourceId();
+                rowLocked.countDown();
+                try {
+                    claimDone.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return sourceId;
+            }));
+            assertTrue(rowLocked.await(10, TimeUnit.SECONDS));
+
+            EmbeddingTask claimed = assertTimeoutPreemptively(Duration.ofSeconds(5), () -> claim(backlog()));
+            claimDone.countDown();
+            assertEquals(locked.sourceId(), lockHolder.get(10, TimeUnit.SECONDS));
+            assertEquals(free.sourceId(), claimed.sourceId());
+        } finally {
+            claimDone.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testConcurrentInstancesClaimEachTaskOnce() throws Exception {
+        List<JdbcEmbeddingBacklog> instances = List.of(backlog(), backlog());
+        List<EmbeddingTask> tasks = IntStream.range(0, 20).mapToObj(i -> task(1)).toList();
+        for (EmbeddingTask task : tasks) {
+            instances.getFirst().add(task, EmbeddingPriority.BULK);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<EmbeddingTask>> claims = new ArrayList<>();
+            for (int i = 0; i < tasks.size(); i++) {
+                claims.add(executor.submit(instances.get(i % instances.size())::claim));
+            }
+            Set<UUID> claimed = new HashSet<>();
+            for (Future<EmbeddingTask> claim : claims) {
+                assertTrue(claimed.add(claim.get(30, TimeUnit.SECONDS).sourceId()));
+            }
+            assertEquals(tasks.stream().map(EmbeddingTask::sourceId).collect(Collectors.toSet()), claimed);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testClaimsByPriorityName() {
+        JdbcEmbeddingBacklog backlog = backlog();
+        EmbeddingTask background = task(1);
+        EmbeddingTask bulk = task(1);
+        EmbeddingTask interactive = task(1);
+        backlog.add(background, EmbeddingPriority.BACKGROUND);
+        backlog.add(bulk, EmbeddingPriority.BULK);
+        backlog.add(interactive, EmbeddingPriority.INTERACTIVE);
+
+        List<UUID> order = transactionTemplate.execute(status -> {
+            List<UUID> sourceIds = new ArrayList<>();
+            Optional<EmbeddingBacklogEntry> next;
+            while ((next = repository.findNextClaimableForUpdate(clock.getCurrentTime().toInstant())).isPresent()) {
+                sourceIds.add(next.get().getSourceId());
+                next.get().setLeaseOwner(UUID.randomUUID());
+                next.get().setLeaseExpiresAt(clock.getCurrentTime().plus(LEASE_DURATION));
+                repository.save(next.get());
+            }
+            return sourceIds;
+        });
+
+        assertEquals(List.of(interactive.sourceId(), bulk.sourceId(), background.sourceId()), order);
+    }
+
+    private JdbcEmbeddingBacklog backlog() {
+        return backlog(clock, LEASE_DURATION);
+    }
+
+    private JdbcEmbeddingBacklog backlog(TimeFactory timeFactory, Duration leaseDuration) {
+        AIProperties aiProperties = new AIProperties();
+        AIProperties.Embedding.Backlog properties = aiProperties.getEmbedding().getBacklog();
+        properties.setPollInterval(Duration.ofMillis(50));
+        properties.setLeaseDuration(leaseDuration);
+        properties.setMaxWait(Duration.ofHours(1));
+        return new JdbcEmbeddingBacklog(repository, transactionTemplate, timeFactory, aiProperties,
+                new SimpleMeterRegistry());
+    }
+
+    private static EmbeddingTask claim(JdbcEmbeddingBacklog backlog) {
+        return assertTimeoutPreemptively(Duration.ofSeconds(5), backlog::claim);
+    }
+
+    private static EmbeddingTask task(int documents) {
+        return new EmbeddingTask(UUID.randomUUID(), IntStream.range(0, documents)
+                .mapToObj(i -> new Document("Dokument " + i))
+                .toList());
+    }
+
+    private static List<String> texts(EmbeddingTask task) {
+        return task.documents().stream().map(Document::getText).toList();
+    }
+
+    static class TestClock extends TimeFactory {
+
+        private volatile OffsetDateTime now;
+
+        TestClock(OffsetDateTime now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public OffsetDateTime getCurrentTime() {
+            return now;
+        }
+
+    }
+
+}
@@ -0,0 +1,62 @@
+package de.uol.pgdoener.civicsage.embedding;
+
+import de.uol.pgdoener.civicsage.business.embedding.backlog.EmbeddingPriority;
+import de.uol.pgdoener.civicsage.business.embedding.backlog.WeightedFairScheduler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WeightedFairSchedulerTest {
+
+    @Test
+    void testSelectionIsProportionalToWeights() {
+        WeightedFairScheduler scheduler = new WeightedFairScheduler(Duration.ofHours(1), new SimpleMeterRegistry());
+        Map<EmbeddingPriority, Integer> selections = new EnumMap<>(EmbeddingPriority.class);
+        int totalWeight = 0;
+        for (EmbeddingPriority priority : EmbeddingPriority.values()) {
+            totalWeight += priority.getWeight();
+        }
+
+        for (int i = 0; i < totalWeight; i++) {
+            EmbeddingPriority selected = scheduler.selectByWeight(EnumSet.allOf(EmbeddingPriority.class));
+            selections.merge(selected, 1, Integer::sum);
+        }
+
+        for (EmbeddingPriority priority : EmbeddingPriority.values()) {
+            assertEquals(priority.getWeight(), selections.get(priority));
+        }
+    }
+
+    @Test
+    void testSelectSkipsEmptyClasses() {
+        WeightedFairScheduler scheduler = new WeightedFairScheduler(Duration.ofHours(1), new SimpleMeterRegistry());
+        long now = System.nanoTime();
+
+        assertNull(scheduler.select(priority -> null));
+        for (int i = 0; i < 5; i++) {
+            assertEquals(EmbeddingPriority.BACKGROUND, scheduler.select(
+                    priority -> priority == EmbeddingPriority.BACKGROUND ? now : null
+            ));
+        }
+    }
+
+    @Test
+    void testOverdueTaskIsSelectedFirst() {
+        WeightedFairScheduler scheduler = new WeightedFairScheduler(Duration.ofMinutes(1), new SimpleMeterRegistry());
+        long now = System.nanoTime();
+        long overdue = now - Duration.ofMinutes(5).toNanos();
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(EmbeddingPriority.BACKGROUND, scheduler.select(
+                    priority -> priority == EmbeddingPriority.BACKGROUND ? overdue : now
+            ));
+        }
+    }
+
+}
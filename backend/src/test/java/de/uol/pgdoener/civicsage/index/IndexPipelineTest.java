@@ -0,0 +1,184 @@
+package de.uol.pgdoener.civicsage.index;
+
+import de.uol.pgdoener.civicsage.autoconfigure.IndexProperties;
+import de.uol.pgdoener.civicsage.business.index.IndexPipeline;
+import de.uol.pgdoener.civicsage.business.index.SemanticSplitterService;
+import de.uol.pgdoener.civicsage.business.index.document.DocumentReaderFactory;
+import de.uol.pgdoener.civicsage.business.index.document.DocumentReaderService;
+import de.uol.pgdoener.civicsage.business.index.document.StreamingDocumentReader;
+import de.uol.pgdoener.civicsage.business.index.exception.SplittingException;
+import de.uol.pgdoener.civicsage.business.index.job.IndexStage;
+import de.uol.pgdoener.civicsage.business.storage.StorageService;
+import de.uol.pgdoener.civicsage.business.storage.UploadStagingService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.transformer.splitter.TextSplitter;
+import org.springframework.core.io.Resource;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class IndexPipelineTest {
+
+    private static final int QUEUE_CAPACITY = 1;
+
+    private final UUID fileId = UUID.randomUUID();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final List<Path> temporaryFiles = new CopyOnWriteArrayList<>();
+
+    private StorageService storageService;
+    private DocumentReaderFactory documentReaderFactory;
+
+    @BeforeEach
+    void setUp() {
+        storageService = mock(StorageService.class);
+        when(storageService.load(fileId)).thenAnswer(invocation ->
+                Optional.of(new ByteArrayInputStream("Inhalt".getBytes())));
+        documentReaderFactory = mock(DocumentReaderFactory.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testParsingPausesWhileTheQueueIsFull() throws Exception {
+        AtomicInteger parsed = new AtomicInteger();
+        reader(() -> IntStream.range(0, 10).mapToObj(i -> {
+            parsed.incrementAndGet();
+            return new Document("Dokument " + i);
+        }));
+        CountDownLatch splitting = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        IndexPipeline pipeline = pipeline(text -> {
+            if (text.equals("Dokument 0")) {
+                splitting.countDown();
+                await(resume);
+            }
+            return List.of(text);
+        });
+        List<IndexStage> stages = new CopyOnWriteArrayList<>();
+
+        Future<List<Document>> chunks = executor.submit(() -> pipeline.process(fileId, "test.pdf", stages::add));
+        assertTrue(splitting.await(5, TimeUnit.SECONDS));
+        // one document is split, one waits in the queue and the parser blocks while passing on the next one
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (parsed.get() < QUEUE_CAPACITY + 2 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(200);
+        assertEquals(QUEUE_CAPACITY + 2, parsed.get());
+        assertFalse(chunks.isDone());
+
+        resume.countDown();
+        assertEquals(10, chunks.get(5, TimeUnit.SECONDS).size());
+        assertEquals(10, parsed.get());
+        assertEquals(List.of(IndexStage.DOWNLOADED, IndexStage.PARSED, IndexStage.SPLIT), stages);
+        assertTemporaryFilesDeleted();
+    }
+
+    @Test
+    void testParserExceptionReachesCaller() {
+        reader(() -> Stream.of(1, 2).map(page -> {
+            if (page == 2)
+                throw new IllegalStateException("Seite 2 ist beschädigt");
+            return new Document("Seite " + page);
+        }));
+        IndexPipeline pipeline = pipeline(List::of);
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> pipeline.process(fileId, "test.pdf", stage -> {
+                }));
+
+        assertEquals("Seite 2 ist beschädigt", e.getMessage());
+        assertTemporaryFilesDeleted();
+    }
+
+    @Test
+    void testParsingIsCancelledWhenSplittingFails() throws Exception {
+        CountDownLatch closed = new CountDownLatch(1);
+        reader(() -> Stream.generate(() -> new Document("Endlos"))
+                .onClose(closed::countDown));
+        IndexPipeline pipeline = pipeline(text -> {
+            throw new IllegalArgumentException("Text kann nicht geteilt werden");
+        });
+
+        assertThrows(IllegalArgumentException.class, () -> pipeline.process(fileId, "test.pdf", stage -> {
+        }));
+
+        assertTrue(closed.await(5, TimeUnit.SECONDS), "the parser has not been stopped");
+        assertTemporaryFilesDeleted();
+    }
+
+    @Test
+    void testFileWithoutTextCannotBeSplit() {
+        reader(Stream::empty);
+        IndexPipeline pipeline = pipeline(List::of);
+
+        assertThrows(SplittingException.class, () -> pipeline.process(fileId, "test.pdf", stage -> {
+        }));
+        assertTemporaryFilesDeleted();
+    }
+
+    /**
+     * Lets the reader of each file emit the documents of the supplied stream.
+     * The temporary files the reader is created for are recorded.
+     */
+    private void reader(Supplier<Stream<Document>> documents) {
+        when(documentReaderFactory.create(any(), any(), any())).thenAnswer(invocation -> {
+            Resource resource = invocation.getArgument(0);
+            temporaryFiles.add(resource.getFile().toPath());
+            return (StreamingDocumentReader) documents::get;
+        });
+    }
+
+    private IndexPipeline pipeline(Function<String, List<String>> split) {
+        IndexProperties indexProperties = new IndexProperties();
+        indexProperties.getPipeline().setQueueCapacity(QUEUE_CAPACITY);
+        return new IndexPipeline(
+                storageService,
+                mock(UploadStagingService.class),
+                new DocumentReaderService(documentReaderFactory),
+                new SemanticSplitterService(),
+                new TextSplitter() {
+                    @Override
+                    protected List<String> splitText(String text) {
+                        return split.apply(text);
+                    }
+                },
+                indexProperties
+        );
+    }
+
+    private void assertTemporaryFilesDeleted() {
+        assertEquals(1, temporaryFiles.size());
+        assertFalse(Files.exists(temporaryFiles.getFirst()));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,183 @@
+package de.uol.pgdoener.civicsage.index;
+
+import de.uol.pgdoener.civicsage.business.index.document.reader.PdfDocumentReader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.apache.pdfbox.pdmodel.interactive.documentnavigation.destination.PDPageXYZDestination;
+import org.apache.pdfbox.pdmodel.interactive.documentnavigation.outline.PDDocumentOutline;
+import org.apache.pdfbox.pdmodel.interactive.documentnavigation.outline.PDOutlineItem;
+import org.apache.pdfbox.pdmodel.interactive.documentnavigation.outline.PDOutlineNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PdfDocumentReaderTest {
+
+    private static final float TOP = PDRectangle.A4.getHeight();
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void testPdfWithoutOutlineIsReadPageByPage() throws IOException {
+        try (PDDocument pdf = new PDDocument()) {
+            write(pdf, addPage(pdf), 700, "Seite eins");
+            addPage(pdf); // blank pages are skipped
+            write(pdf, addPage(pdf), 700, "Seite drei");
+
+            List<Document> documents = read(pdf);
+
+            assertEquals(2, documents.size());
+            assertDocument(documents.get(0), "Seite eins", 1, 1, null);
+            assertDocument(documents.get(1), "Seite drei", 3, 3, null);
+        }
+    }
+
+    @Test
+    void testPdfWithOutlineIsReadBySections() throws IOException {
+        try (PDDocument pdf = new PDDocument()) {
+            PDPage first = addPage(pdf);
+            write(pdf, first, 780, "Vorwort");
+            write(pdf, first, 600, "Kapitel 1");
+            write(pdf, first, 580, "Inhalt eins");
+            PDPage second = addPage(pdf);
+            write(pdf, second, 780, "Fortsetzung eins");
+            write(pdf, second, 400, "Kapitel 2");
+            write(pdf, second, 380, "Inhalt zwei");
+            PDDocumentOutline outline = new PDDocumentOutline();
+            pdf.getDocumentCatalog().setDocumentOutline(outline);
+            addHeading(outline, "Kapitel 1", first, 612);
+            addHeading(outline, "Kapitel 2", second, 412);
+
+            List<Document> documents = read(pdf);
+
+            assertEquals(3, documents.size());
+            assertDocument(documents.get(0), "Vorwort", 1, 1, null);
+            assertDocument(documents.get(1), "Kapitel 1\nInhalt eins\nFortsetzung eins", 1, 2, 1);
+            assertDocument(documents.get(2), "Kapitel 2\nInhalt zwei", 2, 2, 1);
+        }
+    }
+
+    @Test
+    void testSectionEndingAtTheTopOfAPageEndsOnThePreviousPage() throws IOException {
+        try (PDDocument pdf = new PDDocument()) {
+            PDPage first = addPage(pdf);
+            write(pdf, first, 780, "Kapitel 1");
+            write(pdf, first, 760, "Inhalt eins");
+            PDPage second = addPage(pdf);
+            write(pdf, second, 780, "Kapitel 2");
+            PDDocumentOutline outline = new PDDocumentOutline();
+            pdf.getDocumentCatalog().setDocumentOutline(outline);
+            addHeading(outline, "Kapitel 1", first, (int) TOP);
+            addHeading(outline, "Kapitel 2", second, (int) TOP);
+
+            List<Document> documents = read(pdf);
+
+            assertEquals(2, documents.size());
+            assertDocument(documents.get(0), "Kapitel 1\nInhalt eins", 1, 1, 1);
+            assertDocument(documents.get(1), "Kapitel 2", 2, 2, 1);
+        }
+    }
+
+    @Test
+    void testNestedOutlineEntriesAreSectionsWithTheirLevel() throws IOException {
+        try (PDDocument pdf = new PDDocument()) {
+            PDPage page = addPage(pdf);
+            write(pdf, page, 780, "Kapitel 1");
+            write(pdf, page, 700, "Abschnitt 1.1");
+            write(pdf, page, 600, "Unterabschnitt 1.1.1");
+            write(pdf, page, 500, "Kapitel 2");
+            PDDocumentOutline outline = new PDDocumentOutline();
+            pdf.getDocumentCatalog().setDocumentOutline(outline);
+            PDOutlineItem chapter = addHeading(outline, "Kapitel 1", page, 792);
+            PDOutlineItem section = addHeading(chapter, "Abschnitt 1.1", page, 712);
+            addHeading(section, "Unterabschnitt 1.1.1", page, 612);
+            addHeading(outline, "Kapitel 2", page, 512);
+
+            List<Document> documents = read(pdf);
+
+            assertEquals(4, documents.size());
+            assertDocument(documents.get(0), "Kapitel 1", 1, 1, 1);
+            assertDocument(documents.get(1), "Abschnitt 1.1", 1, 1, 2);
+            assertDocument(documents.get(2), "Unterabschnitt 1.1.1", 1, 1, 3);
+            assertDocument(documents.get(3), "Kapitel 2", 1, 1, 1);
+        }
+    }
+
+    @Test
+    void testPdfIsReadFromMemory() throws IOException {
+        try (PDDocument pdf = new PDDocument()) {
+            write(pdf, addPage(pdf), 700, "Seite eins");
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            pdf.save(bytes);
+
+            List<Document> documents = new PdfDocumentReader(new ByteArrayResource(bytes.toByteArray())).get();
+
+            assertEquals(1, documents.size());
+            assertEquals("Seite eins", documents.getFirst().getText());
+            assertEquals(Map.of("page_number", 1, "end_page_number", 1), documents.getFirst().getMetadata());
+        }
+    }
+
+    private List<Document> read(PDDocument pdf) throws IOException {
+        Path file = directory.resolve("test.pdf");
+        pdf.save(file.toFile());
+        return new PdfDocumentReader(new FileSystemResource(file)).get();
+    }
+
+    private static void assertDocument(Document document, String text, int startPage, int endPage, Integer level) {
+        assertEquals(text, document.getText().replaceAll("\\s*\\n\\s*", "\n"));
+        assertEquals(startPage, document.getMetadata().get("page_number"));
+        assertEquals(endPage, document.getMetadata().get("end_page_number"));
+        assertEquals("test.pdf", document.getMetadata().get("file_name"));
+        assertEquals(level, document.getMetadata().get("level"));
+    }
+
+    private static PDPage addPage(PDDocument pdf) {
+        PDPage page = new PDPage(PDRectangle.A4);
+        pdf.addPage(page);
+        return page;
+    }
+
+    /**
+     * Writes a line of text with its baseline at the given distance from the bottom of the page.
+     */
+    private static void write(PDDocument pdf, PDPage page, float y, String text) throws IOException {
+        try (PDPageContentStream content = new PDPageContentStream(pdf, page, PDPageContentStream.AppendMode.APPEND, false)) {
+            content.beginText();
+            content.setFont(new PDType1Font(Standard14Fonts.FontName.HELVETICA), 10);
+            content.newLineAtOffset(72, y);
+            content.showText(text);
+            content.endText();
+        }
+    }
+
+    /**
+     * Adds a heading pointing to the given distance from the bottom of the page.
+     */
+    private static PDOutlineItem addHeading(PDOutlineNode parent, String title, PDPage page, int top) {
+        PDPageXYZDestination destination = new PDPageXYZDestination();
+        destination.setPage(page);
+        destination.setTop(top);
+        PDOutlineItem item = new PDOutlineItem();
+        item.setTitle(title);
+        item.setDestination(destination);
+        parent.addLast(item);
+        return item;
+    }
+
+}
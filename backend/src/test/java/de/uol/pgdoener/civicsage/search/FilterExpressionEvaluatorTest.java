@@ -0,0 +1,63 @@
+package de.uol.pgdoener.civicsage.search;
+
+import de.uol.pgdoener.civicsage.business.search.FilterExpressionEvaluator;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.FilterExpressionTextParser;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FilterExpressionEvaluatorTest {
+
+    final FilterExpressionEvaluator filterExpressionEvaluator = new FilterExpressionEvaluator();
+
+    final Map<String, Object> metadata = Map.of(
+            "file_name", "test.txt",
+            "title", "Test Title",
+            "page_number", 3,
+            "additional_properties", Map.of("district", "Mitte", "year", 2024)
+    );
+
+    @Test
+    void testMatchesComparisons() {
+        assertTrue(matches("file_name == 'test.txt'"));
+        assertFalse(matches("file_name != 'test.txt'"));
+        assertTrue(matches("page_number > 2 AND page_number <= 3"));
+        assertFalse(matches("page_number < 3"));
+        assertTrue(matches("title IN ['Other', 'Test Title']"));
+        assertTrue(matches("title NIN ['Other']"));
+    }
+
+    @Test
+    void testMatchesNestedKeys() {
+        assertTrue(matches("additional_properties.district == 'Mitte'"));
+        assertTrue(matches("additional_properties.year >= 2024"));
+        assertFalse(matches("additional_properties.district == 'Nord'"));
+    }
+
+    @Test
+    void testMatchesLogicalOperators() {
+        assertTrue(matches("file_name == 'other.txt' OR (title == 'Test Title' AND NOT page_number == 4)"));
+        assertFalse(matches("NOT (file_name == 'test.txt')"));
+    }
+
+    @Test
+    void testMissingKeyDoesNotMatchComparisons() {
+        assertFalse(matches("url == 'https://example.com'"));
+        assertFalse(matches("additional_properties.missing < 5"));
+        assertTrue(matches("url != 'https://example.com'"));
+    }
+
+    @Test
+    void testNullExpressionMatchesEverything() {
+        assertTrue(filterExpressionEvaluator.matches(null, metadata));
+    }
+
+    private boolean matches(String filter) {
+        Filter.Expression expression = new FilterExpressionTextParser().parse(filter);
+        return filterExpressionEvaluator.matches(expression, metadata);
+    }
+
+}
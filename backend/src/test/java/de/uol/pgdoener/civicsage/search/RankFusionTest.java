@@ -0,0 +1,55 @@
+package de.uol.pgdoener.civicsage.search;
+
+import de.uol.pgdoener.civicsage.business.search.RankFusion;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RankFusionTest {
+
+    @Test
+    void testDocumentsInBothRankingsRankFirst() {
+        List<Document> similar = List.of(document("a"), document("b"), document("c"));
+        List<Document> lexical = List.of(document("d"), document("c"));
+
+        List<Document> fused = RankFusion.reciprocalRankFusion(List.of(similar, lexical), 60, 10);
+
+        assertEquals(List.of("c", "a", "d", "b"), fused.stream().map(Document::getId).toList());
+    }
+
+    @Test
+    void testScoresAreNormalized() {
+        List<Document> ranking = List.of(document("a"), document("b"));
+
+        List<Document> fused = RankFusion.reciprocalRankFusion(List.of(ranking, ranking), 60, 10);
+
+        assertEquals(1.0, fused.getFirst().getScore(), 1e-9);
+        assertEquals(61.0 / 62.0, fused.get(1).getScore(), 1e-9);
+    }
+
+    @Test
+    void testTopK() {
+        List<Document> similar = List.of(document("a"), document("b"));
+        List<Document> lexical = List.of(document("c"), document("d"));
+
+        List<Document> fused = RankFusion.reciprocalRankFusion(List.of(similar, lexical), 60, 2);
+
+        assertEquals(List.of("a", "c"), fused.stream().map(Document::getId).toList());
+    }
+
+    @Test
+    void testNegativeRankConstant() {
+        assertThrows(IllegalArgumentException.class, () -> RankFusion.reciprocalRankFusion(List.of(), -1, 10));
+    }
+
+    private static Document document(String id) {
+        return Document.builder()
+                .id(id)
+                .text("text of " + id)
+                .build();
+    }
+
+}
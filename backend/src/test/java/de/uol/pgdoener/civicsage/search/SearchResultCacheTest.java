@@ -0,0 +1,156 @@
+package de.uol.pgdoener.civicsage.search;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.uol.pgdoener.civicsage.autoconfigure.SearchProperties;
+import de.uol.pgdoener.civicsage.business.embedding.SearchChunkStore;
+import de.uol.pgdoener.civicsage.business.embedding.SearchResultCache;
+import de.uol.pgdoener.civicsage.business.search.FilterExpressionEvaluator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchResultCacheTest {
+
+    final SearchProperties searchProperties = new SearchProperties();
+    final SearchChunkStore chunkStore = new SearchChunkStore(new ObjectMapper(), searchProperties, new SimpleMeterRegistry());
+    final SearchResultCache searchResultCache = new SearchResultCache(new FilterExpressionEvaluator(), chunkStore,
+            searchProperties, new SimpleMeterRegistry());
+
+    final UUID sourceId = UUID.randomUUID();
+    final Document document = Document.builder()
+            .id(UUID.randomUUID().toString())
+            .text("Satzung über die Erhebung von Gebühren")
+            .metadata(Map.of(
+                    "source_id", sourceId.toString(),
+                    "file_name", "satzung.pdf",
+                    "page_number", 4,
+                    "additional_properties", Map.of("district", "Mitte")))
+            .score(0.75)
+            .build();
+    final SearchRequest request = SearchRequest.builder().query("Satzung").topK(4).build();
+
+    @Test
+    void testRestoresDocumentsFromCompactEncoding() {
+        AtomicInteger searches = new AtomicInteger();
+
+        searchResultCache.get(request, () -> {
+            searches.incrementAndGet();
+            return List.of(document);
+        });
+        List<Document> cached = searchResultCache.get(request, () -> {
+            searches.incrementAndGet();
+            return List.of();
+        });
+
+        assertEquals(1, searches.get());
+        assertEquals(1, cached.size());
+        Document restored = cached.getFirst();
+        assertEquals(document.getId(), restored.getId());
+        assertEquals(document.getText(), restored.getText());
+        assertEquals(document.getScore(), restored.getScore());
+        assertEquals(document.getMetadata(), restored.getMetadata());
+    }
+
+    @Test
+    void testEvictedChunkIsMiss() {
+        AtomicInteger searches = new AtomicInteger();
+
+        searchResultCache.get(request, () -> {
+            searches.incrementAndGet();
+            return List.of(document);
+        });
+        chunkStore.remove(UUID.fromString(document.getId()));
+        List<Document> result = searchResultCache.get(request, () -> {
+            searches.incrementAndGet();
+            return List.of(document);
+        });
+
+        assertEquals(2, searches.get());
+        assertEquals(List.of(document), result);
+    }
+
+    @Test
+    void testDeletedSourceIsEvicted() {
+        AtomicInteger searches = new AtomicInteger();
+
+        searchResultCache.get(request, () -> {
+            searches.incrementAndGet();
+            return List.of(document);
+        });
+        searchResultCache.onSourceDeleted(sourceId);
+        List<Document> result = searchResultCache.get(request, () -> {
+            searches.incrementAndGet();
+            return List.of();
+        });
+
+        assertEquals(2, searches.get());
+        assertTrue(result.isEmpty());
+    }
+
+    @Test
+    void testAddedDocumentInvalidatesOnlyMatchingFilters() {
+        SearchRequest mitte = filtered("additional_properties.district == 'Mitte'");
+        SearchRequest nord = filtered("additional_properties.district == 'Nord'");
+        for (SearchRequest cached : List.of(mitte, nord, request)) {
+            assertTrue(searches(cached));
+            assertFalse(searches(cached));
+        }
+
+        searchResultCache.onDocumentsAdded(List.of(added("Mitte")));
+
+        assertTrue(searches(mitte));
+        assertFalse(searches(nord));
+        // the result without a filter may contain every new document
+        assertTrue(searches(request));
+    }
+
+    @Test
+    void testAddedDocumentMatchingNoFilterOnlyInvalidatesUnfilteredResults() {
+        SearchRequest mitte = filtered("additional_properties.district == 'Mitte'");
+        SearchRequest nord = filtered("additional_properties.district == 'Nord'");
+        for (SearchRequest cached : List.of(mitte, nord, request)) {
+            searches(cached);
+        }
+
+        searchResultCache.onDocumentsAdded(List.of(added("Süd")));
+
+        assertFalse(searches(mitte));
+        assertFalse(searches(nord));
+        assertTrue(searches(request));
+    }
+
+    /**
+     * @return whether the search has been performed instead of answered from the cache
+     */
+    private boolean searches(SearchRequest searchRequest) {
+        AtomicInteger searches = new AtomicInteger();
+        searchResultCache.get(searchRequest, () -> {
+            searches.incrementAndGet();
+            return List.of(document);
+        });
+        return searches.get() > 0;
+    }
+
+    private SearchRequest filtered(String filterExpression) {
+        return SearchRequest.from(request).filterExpression(filterExpression).build();
+    }
+
+    private static Document added(String district) {
+        return Document.builder()
+                .id(UUID.randomUUID().toString())
+                .text("Neue Satzung")
+                .metadata(Map.of(
+                        "source_id", UUID.randomUUID().toString(),
+                        "additional_properties", Map.of("district", district)))
+                .build();
+    }
+
+}
@@ -0,0 +1,262 @@
+package de.uol.pgdoener.civicsage.storage;
+
+import de.uol.pgdoener.civicsage.autoconfigure.StorageProperties;
+import de.uol.pgdoener.civicsage.business.storage.CachingStorageService;
+import de.uol.pgdoener.civicsage.business.storage.StorageService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingStorageServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private final InMemoryStorageService delegate = new InMemoryStorageService();
+    private final StorageProperties storageProperties = new StorageProperties();
+
+    @BeforeEach
+    void setUp() {
+        storageProperties.getCache().setDirectory(directory);
+        storageProperties.getCache().setMaxSize(DataSize.ofKilobytes(1));
+        storageProperties.getCache().setMaxObjectSize(DataSize.ofBytes(100));
+    }
+
+    @Test
+    void testObjectIsDownloadedOnce() throws IOException {
+        CachingStorageService cache = create();
+        UUID id = delegate.store(stream("Satzung der Stadt")).orElseThrow();
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals("Satzung der Stadt", read(cache.load(id)));
+        }
+
+        assertEquals(1, delegate.loads.get());
+        assertTrue(Files.exists(directory.resolve(id.toString())));
+    }
+
+    @Test
+    void testRangeIsServedFromCache() throws IOException {
+        CachingStorageService cache = create();
+        UUID id = delegate.store(stream("Satzung der Stadt")).orElseThrow();
+        read(cache.load(id));
+
+        assertEquals("der", read(cache.load(id, 8, 3)));
+        assertEquals("Stadt", read(cache.load(id, 12, -1)));
+        assertEquals(Optional.of(17L), cache.getSize(id));
+
+        assertEquals(1, delegate.loads.get());
+    }
+
+    @Test
+    void testUncachedRangeIsLoadedDirectly() throws IOException {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        CachingStorageService cache = new CachingStorageService(delegate, storageProperties, meterRegistry);
+        UUID id = delegate.store(stream("Satzung der Stadt")).orElseThrow();
+
+        assertEquals("der", read(cache.load(id, 8, 3)));
+        awaitCached(meterRegistry);
+        assertEquals("Satzung der Stadt", read(cache.load(id)));
+        assertEquals("Stadt", read(cache.load(id, 12, -1)));
+
+        assertEquals(1, delegate.rangeLoads.get());
+        assertEquals(2, delegate.loads.get());
+    }
+
+    @Test
+    void testObjectIsCachedWhileRead() throws IOException {
+        CachingStorageService cache = create();
+        UUID id = delegate.store(stream("Satzung der Stadt")).orElseThrow();
+
+        try (InputStream inputStream = cache.load(id).orElseThrow()) {
+            assertEquals("Satzung", new String(inputStream.readNBytes(7), StandardCharsets.UTF_8));
+            assertFalse(Files.exists(directory.resolve(id.toString())));
+            // loads during the copy do not wait for it
+            assertEquals("Satzung der Stadt", read(cache.load(id)));
+            assertEquals(" der Stadt", new String(inputStream.readAllBytes(), StandardCharsets.UTF_8));
+        }
+
+        assertTrue(Files.exists(directory.resolve(id.toString())));
+        assertEquals("Satzung der Stadt", read(cache.load(id)));
+        assertEquals(2, delegate.loads.get());
+    }
+
+    @Test
+    void testObjectIsNotCachedIfReadPartially() throws IOException {
+        CachingStorageService cache = create();
+        UUID id = delegate.store(stream("Satzung der Stadt")).orElseThrow();
+
+        try (InputStream inputStream = cache.load(id).orElseThrow()) {
+            assertEquals("Satzung", new String(inputStream.readNBytes(7), StandardCharsets.UTF_8));
+        }
+
+        try (var files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+        assertEquals("Satzung der Stadt", read(cache.load(id)));
+        assertEquals(2, delegate.loads.get());
+    }
+
+    @Test
+    void testObjectDeletedByOtherInstanceIsNotServed() throws IOException {
+        CachingStorageService cache = create();
+        UUID id = delegate.store(stream("Satzung der Stadt")).orElseThrow();
+        read(cache.load(id));
+
+        // another instance deletes the object from the storage only
+        delegate.delete(id);
+
+        assertTrue(cache.load(id).isEmpty());
+        assertFalse(Files.exists(directory.resolve(id.toString())));
+    }
+
+    @Test
+    void testRangeOfLargeObjectIsLoadedDirectly() throws IOException {
+        CachingStorageService cache = create();
+        String content = "x".repeat(150) + "Satzung";
+        UUID id = delegate.store(stream(content)).orElseThrow();
+
+        assertEquals("Satzung", read(cache.load(id, 150, 7)));
+
+        assertEquals(1, delegate.loads.get());
+        assertEquals(1, delegate.rangeLoads.get());
+        try (var files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void testLargeObjectIsNotCached() throws IOException {
+        CachingStorageService cache = create();
+        String content = "x".repeat(200);
+        UUID id = delegate.store(stream(content)).orElseThrow();
+
+        assertEquals(content, read(cache.load(id)));
+        assertEquals(content, read(cache.load(id)));
+
+        assertEquals(2, delegate.loads.get());
+        try (var files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void testMissingObject() {
+        CachingStorageService cache = create();
+
+        assertTrue(cache.load(UUID.randomUUID()).isEmpty());
+    }
+
+    @Test
+    void testDeleteRemovesCachedObject() throws IOException {
+        CachingStorageService cache = create();
+        UUID id = delegate.store(stream("Satzung der Stadt")).orElseThrow();
+        read(cache.load(id));
+
+        cache.delete(id);
+
+        assertFalse(Files.exists(directory.resolve(id.toString())));
+        assertTrue(cache.load(id).isEmpty());
+    }
+
+    @Test
+    void testCachedObjectsAreRestored() throws IOException {
+        UUID id = delegate.store(stream("Satzung der Stadt")).orElseThrow();
+        read(create().load(id));
+        Files.writeString(directory.resolve("download-incomplete"), "Satz");
+
+        CachingStorageService cache = create();
+
+        assertEquals("Satzung der Stadt", read(cache.load(id)));
+        assertEquals(1, delegate.loads.get());
+        assertFalse(Files.exists(directory.resolve("download-incomplete")));
+    }
+
+    /**
+     * Waits until the download started in the background has added the object to the cache.
+     */
+    private static void awaitCached(SimpleMeterRegistry meterRegistry) {
+        Gauge size = meterRegistry.get("civicsage.storage.cache.size").gauge();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (size.value() == 0 && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertTrue(size.value() > 0);
+    }
+
+    private CachingStorageService create() {
+        return new CachingStorageService(delegate, storageProperties, new SimpleMeterRegistry());
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(Optional<InputStream> inputStream) throws IOException {
+        try (InputStream in = inputStream.orElseThrow()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static class InMemoryStorageService implements StorageService {
+
+        private final Map<UUID, byte[]> objects = new ConcurrentHashMap<>();
+        private final AtomicInteger loads = new AtomicInteger();
+        private final AtomicInteger rangeLoads = new AtomicInteger();
+
+        @Override
+        public Optional<UUID> store(InputStream inputStream, long size) {
+            UUID id = UUID.randomUUID();
+            try {
+                objects.put(id, inputStream.readAllBytes());
+            } catch (IOException e) {
+                return Optional.empty();
+            }
+            return Optional.of(id);
+        }
+
+        @Override
+        public Optional<InputStream> load(UUID objectID) {
+            return load(objectID, 0, -1);
+        }
+
+        @Override
+        public Optional<InputStream> load(UUID objectID, long offset, long length) {
+            byte[] content = objects.get(objectID);
+            if (content == null)
+                return Optional.empty();
+            loads.incrementAndGet();
+            if (offset > 0 || length >= 0)
+                rangeLoads.incrementAndGet();
+            int end = length < 0 ? content.length : (int) (offset + length);
+            return Optional.of(new ByteArrayInputStream(content, (int) offset, end - (int) offset));
+        }
+
+        @Override
+        public Optional<Long> getSize(UUID objectID) {
+            return Optional.ofNullable(objects.get(objectID)).map(content -> (long) content.length);
+        }
+
+        @Override
+        public void delete(UUID id) {
+            objects.remove(id);
+        }
+
+    }
+
+}
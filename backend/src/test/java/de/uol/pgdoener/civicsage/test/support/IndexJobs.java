@@ -0,0 +1,51 @@
+package de.uol.pgdoener.civicsage.test.support;
+
+import com.jayway.jsonpath.JsonPath;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Helps to wait for the indexing jobs returned by the index file endpoint.
+ */
+public final class IndexJobs {
+
+    private static final String API_JOB_PATH = "/api/v1/index/jobs/{jobId}";
+    private static final long TIMEOUT_MILLIS = 30_000;
+
+    private IndexJobs() {
+    }
+
+    /**
+     * Waits until the job returned in the response is no longer running and asserts that all files are done.
+     *
+     * @param mockMvc the MockMvc to request the job with
+     * @param result  the result of the request to the index file endpoint
+     */
+    public static void awaitDone(MockMvc mockMvc, MvcResult result) throws Exception {
+        String jobId = JsonPath.read(result.getResponse().getContentAsString(), "$.id");
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            String job = mockMvc.perform(get(API_JOB_PATH, jobId)
+                            .accept(MediaType.APPLICATION_JSON))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+            String jobStatus = JsonPath.read(job, "$.status");
+            if (!"running".equals(jobStatus)) {
+                List<String> errors = JsonPath.read(job, "$.files[*].error");
+                assertEquals("done", jobStatus, "Indexing job failed: " + errors);
+                return;
+            }
+            Thread.sleep(50);
+        }
+        fail("Indexing job " + jobId + " did not finish in time");
+    }
+
+}
@@ -8,7 +8,8 @@ public class MariaDBContainerFactory {
         return new MariaDBContainer<>("mariadb:11.8.2-ubi9")
                 .withDatabaseName("test")
                 .withUsername("test")
-                .withPassword("test");
+                .withPassword("test")
+                .withCommand("--innodb-ft-min-token-size=2");
     }
 
 }